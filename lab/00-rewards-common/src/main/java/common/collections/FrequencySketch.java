@@ -0,0 +1,91 @@
+package common.collections;
+
+/**
+ * Estimates how often each key has been seen recently, in a fixed amount of memory whatever the number of keys: a
+ * count-min sketch of four rows of counters, each key counted in one counter per row and its frequency estimated as
+ * the smallest of them. Estimates may be too high when keys collide in every row, never too low.
+ *
+ * Counters saturate at 15, and all of them are halved once ten times as many keys as the sketch was sized for have
+ * been counted, so that keys popular long ago fade. Meant for caches that decide which of two entries is worth keeping
+ * by how often each was used, rather than only by how recently.
+ *
+ * Not thread-safe.
+ */
+public class FrequencySketch {
+
+	private static final int MAX_COUNT = 15;
+
+	private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+			0xcbf29ce484222325L };
+
+	/**
+	 * Row {@code r} holds its counters from {@code r * width} on.
+	 */
+	private final byte[] counters;
+
+	private final int width;
+
+	private final int sampleSize;
+
+	private int additions;
+
+	/**
+	 * Creates a sketch with all counters zero.
+	 * @param expectedKeys the number of distinct keys expected to be counted at a time, such as the maximum size of a
+	 * cache
+	 */
+	public FrequencySketch(int expectedKeys) {
+		if (expectedKeys < 1) {
+			throw new IllegalArgumentException("Expected keys must be positive; your value was " + expectedKeys);
+		}
+		if (expectedKeys > 1 << 26) {
+			throw new IllegalArgumentException("Expected keys too large: " + expectedKeys);
+		}
+		width = Math.max(16, Integer.highestOneBit(expectedKeys * 2 - 1));
+		counters = new byte[SEEDS.length * width];
+		sampleSize = 10 * width;
+	}
+
+	/**
+	 * Counts one more occurrence of the given key.
+	 * @param key the key, not null
+	 */
+	public void increment(Object key) {
+		int hash = key.hashCode();
+		for (int row = 0; row < SEEDS.length; row++) {
+			int index = indexOf(hash, row);
+			if (counters[index] < MAX_COUNT) {
+				counters[index]++;
+			}
+		}
+		if (++additions == sampleSize) {
+			age();
+		}
+	}
+
+	/**
+	 * Returns the estimated number of recent occurrences of the given key, at most 15.
+	 * @param key the key, not null
+	 */
+	public int frequency(Object key) {
+		int hash = key.hashCode();
+		int frequency = MAX_COUNT;
+		for (int row = 0; row < SEEDS.length; row++) {
+			frequency = Math.min(frequency, counters[indexOf(hash, row)]);
+		}
+		return frequency;
+	}
+
+	private int indexOf(int hash, int row) {
+		long h = (hash + SEEDS[row]) * SEEDS[row];
+		h ^= h >>> 32;
+		return row * width + ((int) h & (width - 1));
+	}
+
+	private void age() {
+		for (int i = 0; i < counters.length; i++) {
+			counters[i] >>= 1;
+		}
+		additions /= 2;
+	}
+}
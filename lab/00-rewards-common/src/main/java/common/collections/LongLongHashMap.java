@@ -0,0 +1,228 @@
+package common.collections;
+
+/**
+ * A hash map from long keys to long values, stored in one array of primitives with open addressing and linear
+ * probing. Takes 16 bytes per slot and no object per entry, where a {@code HashMap<Long, Long>} takes some 80 bytes
+ * per entry.
+ *
+ * Keys and values are interleaved in the array, so a lookup usually touches a single cache line. The table doubles
+ * when it is more than half full, keeping probe sequences short.
+ *
+ * Not thread-safe. However a {@link #get(long, long)} racing with a writer never fails or loops forever, it may only
+ * return a wrong result, so readers can use optimistic locking such as
+ * {@link java.util.concurrent.locks.StampedLock#tryOptimisticRead()} and retry when the read turns out invalid.
+ */
+public class LongLongHashMap {
+
+	/**
+	 * Marks a free slot. A zero key is kept outside the table.
+	 */
+	private static final long FREE = 0L;
+
+	private static final int MIN_CAPACITY = 16;
+
+	/**
+	 * Slot {@code i} holds its key at {@code 2 * i} and its value at {@code 2 * i + 1}.
+	 */
+	private long[] table;
+
+	private int size;
+
+	private boolean hasZeroKey;
+
+	private long zeroKeyValue;
+
+	/**
+	 * Creates a map sized to hold the given number of entries without growing.
+	 * @param expectedSize the expected number of entries
+	 */
+	public LongLongHashMap(int expectedSize) {
+		if (expectedSize < 0) {
+			throw new IllegalArgumentException("Expected size must not be negative; your value was " + expectedSize);
+		}
+		table = new long[2 * capacityFor(expectedSize)];
+	}
+
+	/**
+	 * Returns the value of the given key.
+	 * @param key the key
+	 * @param defaultValue the value to return if the key is not in this map
+	 * @return the value, or the default value
+	 */
+	public long get(long key, long defaultValue) {
+		if (key == FREE) {
+			return hasZeroKey ? zeroKeyValue : defaultValue;
+		}
+		long[] table = this.table;
+		int mask = (table.length >> 1) - 1;
+		int slot = slotOf(key, mask);
+		// bounded so that a read racing with a writer cannot spin forever
+		for (int probes = 0; probes <= mask; probes++) {
+			long existing = table[slot << 1];
+			if (existing == key) {
+				return table[(slot << 1) + 1];
+			}
+			if (existing == FREE) {
+				return defaultValue;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return defaultValue;
+	}
+
+	/**
+	 * Returns true if the given key is in this map.
+	 */
+	public boolean containsKey(long key) {
+		if (key == FREE) {
+			return hasZeroKey;
+		}
+		int mask = (table.length >> 1) - 1;
+		for (int slot = slotOf(key, mask);; slot = (slot + 1) & mask) {
+			long existing = table[slot << 1];
+			if (existing == key) {
+				return true;
+			}
+			if (existing == FREE) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Maps the key to the value, replacing any value it had.
+	 * @param key the key
+	 * @param value the value
+	 */
+	public void put(long key, long value) {
+		if (key == FREE) {
+			if (!hasZeroKey) {
+				hasZeroKey = true;
+				size++;
+			}
+			zeroKeyValue = value;
+			return;
+		}
+		int mask = (table.length >> 1) - 1;
+		int slot = slotOf(key, mask);
+		while (true) {
+			long existing = table[slot << 1];
+			if (existing == key) {
+				table[(slot << 1) + 1] = value;
+				return;
+			}
+			if (existing == FREE) {
+				break;
+			}
+			slot = (slot + 1) & mask;
+		}
+		if ((size + 1) * 2 > mask + 1) {
+			grow();
+			put(key, value);
+			return;
+		}
+		table[(slot << 1) + 1] = value;
+		table[slot << 1] = key;
+		size++;
+	}
+
+	/**
+	 * Removes the key from this map.
+	 * @param key the key
+	 * @return true if the key was in this map
+	 */
+	public boolean remove(long key) {
+		if (key == FREE) {
+			if (!hasZeroKey) {
+				return false;
+			}
+			hasZeroKey = false;
+			size--;
+			return true;
+		}
+		int mask = (table.length >> 1) - 1;
+		int slot = slotOf(key, mask);
+		while (true) {
+			long existing = table[slot << 1];
+			if (existing == FREE) {
+				return false;
+			}
+			if (existing == key) {
+				break;
+			}
+			slot = (slot + 1) & mask;
+		}
+		// shift later entries of the probe sequence back so that no lookup stops early at the freed slot
+		int free = slot;
+		for (int next = (free + 1) & mask;; next = (next + 1) & mask) {
+			long moving = table[next << 1];
+			if (moving == FREE) {
+				break;
+			}
+			int home = slotOf(moving, mask);
+			// move unless the entry's home lies cyclically within (free, next]
+			boolean stays = free <= next ? free < home && home <= next : free < home || home <= next;
+			if (!stays) {
+				table[(free << 1) + 1] = table[(next << 1) + 1];
+				table[free << 1] = moving;
+				free = next;
+			}
+		}
+		table[free << 1] = FREE;
+		table[(free << 1) + 1] = 0L;
+		size--;
+		return true;
+	}
+
+	/**
+	 * Returns the number of entries in this map.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of slots in the table, which doubles as entries are added.
+	 */
+	public int capacity() {
+		return table.length >> 1;
+	}
+
+	/**
+	 * Returns an estimate of the heap memory taken by this map, in bytes.
+	 */
+	public long getMemoryFootprint() {
+		// object and array headers plus the array itself
+		return 32 + 16 + 8L * table.length;
+	}
+
+	private void grow() {
+		long[] old = table;
+		table = new long[old.length * 2];
+		size = hasZeroKey ? 1 : 0;
+		for (int i = 0; i < old.length; i += 2) {
+			if (old[i] != FREE) {
+				put(old[i], old[i + 1]);
+			}
+		}
+	}
+
+	private static int slotOf(long key, int mask) {
+		// the finalizer of MurmurHash3, so that keys differing only in their high bits spread too
+		long h = key;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return (int) h & mask;
+	}
+
+	private static int capacityFor(int expectedSize) {
+		long capacity = Math.max(MIN_CAPACITY, Long.highestOneBit(Math.max(1, (long) expectedSize * 2 - 1)) << 1);
+		if (capacity > 1 << 29) {
+			throw new IllegalArgumentException("Expected size too large: " + expectedSize);
+		}
+		return (int) capacity;
+	}
+}
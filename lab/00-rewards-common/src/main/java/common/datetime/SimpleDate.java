@@ -55,6 +55,28 @@ public class SimpleDate implements Serializable {
 		return base.getTime();
 	}
 
+	/**
+	 * Returns the year of this date.
+	 */
+	public int getYear() {
+		return base.get(Calendar.YEAR);
+	}
+
+	/**
+	 * Returns the month of this date, from 1 for January to 12 for December.
+	 */
+	public int getMonth() {
+		return base.get(Calendar.MONTH) + 1;
+	}
+
+	/**
+	 * Returns the day of the week of this date, as a <code>java.util.Calendar</code> constant such as
+	 * {@link Calendar#SATURDAY}.
+	 */
+	public int getDayOfWeek() {
+		return base.get(Calendar.DAY_OF_WEEK);
+	}
+
 	/**
 	 * Returns this date in milliseconds since 1970.
 	 * @return
@@ -0,0 +1,48 @@
+package common.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * The columns a mapper reads from the rows of a result set, declared as the constants of an enum named after the
+ * column labels. {@link #bind(ResultSet) Binding} the layout to a result set resolves every label to its column
+ * ordinal once, so that each value of each row is then read by position instead of looking its label up again.
+ *
+ * Immutable and thread-safe: create one per query shape and keep it in a constant.
+ *
+ * @param <C> the enum of columns
+ */
+public final class ColumnLayout<C extends Enum<C>> {
+
+	private final String[] labels;
+
+	private ColumnLayout(C[] columns) {
+		labels = new String[columns.length];
+		for (C column : columns) {
+			labels[column.ordinal()] = column.name();
+		}
+	}
+
+	/**
+	 * Returns the layout of the given columns, labelled by their names.
+	 * @param columns the enum of columns
+	 * @return the layout
+	 */
+	public static <C extends Enum<C>> ColumnLayout<C> of(Class<C> columns) {
+		return new ColumnLayout<C>(columns.getEnumConstants());
+	}
+
+	/**
+	 * Resolves the columns of this layout in the given result set.
+	 * @param rs the result set
+	 * @return a reader of the current row of the result set, by column
+	 * @throws SQLException if a column of this layout is not in the result set
+	 */
+	public RowReader<C> bind(ResultSet rs) throws SQLException {
+		int[] ordinals = new int[labels.length];
+		for (int i = 0; i < labels.length; i++) {
+			ordinals[i] = rs.findColumn(labels[i]);
+		}
+		return new RowReader<C>(rs, ordinals);
+	}
+}
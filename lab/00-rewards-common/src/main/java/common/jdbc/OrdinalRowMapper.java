@@ -0,0 +1,49 @@
+package common.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.springframework.jdbc.core.RowMapper;
+
+/**
+ * A row mapper that reads rows through a {@link RowReader}, binding its column layout once per result set rather than
+ * resolving column labels on every row.
+ *
+ * Thread-safe: the reader of the result set last mapped is kept, and a thread mapping a different result set binds
+ * a reader of its own.
+ *
+ * @param <C> the enum of columns
+ * @param <T> the type of object each row is mapped to
+ */
+public abstract class OrdinalRowMapper<C extends Enum<C>, T> implements RowMapper<T> {
+
+	private final ColumnLayout<C> layout;
+
+	private volatile RowReader<C> lastReader;
+
+	/**
+	 * Creates a mapper of rows with the given columns.
+	 * @param columns the enum of columns, named after their labels
+	 */
+	protected OrdinalRowMapper(Class<C> columns) {
+		this.layout = ColumnLayout.of(columns);
+	}
+
+	public final T mapRow(ResultSet rs, int rowNum) throws SQLException {
+		RowReader<C> reader = lastReader;
+		if (reader == null || !reader.isBoundTo(rs)) {
+			reader = layout.bind(rs);
+			lastReader = reader;
+		}
+		return mapRow(reader, rowNum);
+	}
+
+	/**
+	 * Maps the current row.
+	 * @param row a reader of the current row
+	 * @param rowNum the number of the current row
+	 * @return the object the row maps to
+	 * @throws SQLException if a value could not be read
+	 */
+	protected abstract T mapRow(RowReader<C> row, int rowNum) throws SQLException;
+}
@@ -0,0 +1,97 @@
+package common.jdbc;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import common.money.MonetaryAmount;
+import common.money.Percentage;
+
+/**
+ * Reads the values of the current row of a result set by the columns of a {@link ColumnLayout}, whose ordinals were
+ * resolved when the layout was bound. Decimals are read as such and wrapped directly, rather than read as strings and
+ * parsed again.
+ *
+ * Used by one thread at a time, like the result set it reads.
+ *
+ * @param <C> the enum of columns
+ */
+public final class RowReader<C extends Enum<C>> {
+
+	private final ResultSet rs;
+
+	private final int[] ordinals;
+
+	RowReader(ResultSet rs, int[] ordinals) {
+		this.rs = rs;
+		this.ordinals = ordinals;
+	}
+
+	/**
+	 * Moves to the next row of the result set.
+	 * @return true if there is one
+	 */
+	public boolean next() throws SQLException {
+		return rs.next();
+	}
+
+	/**
+	 * Returns true if this reader reads the given result set.
+	 */
+	public boolean isBoundTo(ResultSet rs) {
+		return this.rs == rs;
+	}
+
+	/**
+	 * Returns the value of the column as a string, or null if SQL NULL.
+	 */
+	public String getString(C column) throws SQLException {
+		return rs.getString(ordinals[column.ordinal()]);
+	}
+
+	/**
+	 * Returns the value of the column as a long, 0 if SQL NULL.
+	 */
+	public long getLong(C column) throws SQLException {
+		return rs.getLong(ordinals[column.ordinal()]);
+	}
+
+	/**
+	 * Returns the value of the column as an int, 0 if SQL NULL.
+	 */
+	public int getInt(C column) throws SQLException {
+		return rs.getInt(ordinals[column.ordinal()]);
+	}
+
+	/**
+	 * Returns the value of the column as an integer, or null if SQL NULL.
+	 */
+	public Integer getInteger(C column) throws SQLException {
+		int value = rs.getInt(ordinals[column.ordinal()]);
+		return rs.wasNull() ? null : value;
+	}
+
+	/**
+	 * Returns the value of a date column, or null if SQL NULL.
+	 */
+	public Date getDate(C column) throws SQLException {
+		return rs.getDate(ordinals[column.ordinal()]);
+	}
+
+	/**
+	 * Returns the value of a decimal column as a monetary amount, or null if SQL NULL.
+	 */
+	public MonetaryAmount getMonetaryAmount(C column) throws SQLException {
+		BigDecimal value = rs.getBigDecimal(ordinals[column.ordinal()]);
+		return value == null ? null : new MonetaryAmount(value);
+	}
+
+	/**
+	 * Returns the value of a decimal column between 0 and 1 as a percentage, or null if SQL NULL.
+	 */
+	public Percentage getPercentage(C column) throws SQLException {
+		BigDecimal value = rs.getBigDecimal(ordinals[column.ordinal()]);
+		return value == null ? null : new Percentage(value);
+	}
+}
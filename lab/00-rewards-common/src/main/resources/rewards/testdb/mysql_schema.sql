@@ -5,11 +5,16 @@ drop table if exists T_RESTAURANT;
 drop table if exists T_REWARD;
 drop table if exists DUAL_REWARD_CONFIRMATION_NUMBER;
 
-create table T_ACCOUNT (ID INT NOT NULL AUTO_INCREMENT, PRIMARY KEY(ID), NUMBER varchar(9), NAME varchar(50));
+create table T_ACCOUNT (ID INT NOT NULL AUTO_INCREMENT, PRIMARY KEY(ID), NUMBER varchar(9), NAME varchar(50), VERSION INT NOT NULL DEFAULT 0);
 create table T_ACCOUNT_CREDIT_CARD (ID INT NOT NULL AUTO_INCREMENT, PRIMARY KEY(ID), ACCOUNT_ID integer, NUMBER varchar(16), unique(ACCOUNT_ID, NUMBER));
 create table T_ACCOUNT_BENEFICIARY (ID INT NOT NULL AUTO_INCREMENT, PRIMARY KEY(ID), ACCOUNT_ID integer, NAME varchar(50), ALLOCATION_PERCENTAGE decimal(3,2), SAVINGS decimal(8,2));
-create table T_RESTAURANT (ID INT NOT NULL AUTO_INCREMENT, PRIMARY KEY(ID), MERCHANT_NUMBER varchar(10), NAME varchar(80), BENEFIT_PERCENTAGE decimal(3,2), BENEFIT_AVAILABILITY_POLICY varchar(1));
-create table T_REWARD (ID INT NOT NULL AUTO_INCREMENT, PRIMARY KEY(ID), CONFIRMATION_NUMBER varchar(25), REWARD_AMOUNT decimal(8,2), REWARD_DATE date, ACCOUNT_NUMBER varchar(9), DINING_AMOUNT decimal(8,2), DINING_MERCHANT_NUMBER varchar(10), DINING_DATE date);
+create table T_RESTAURANT (ID INT NOT NULL AUTO_INCREMENT, PRIMARY KEY(ID), MERCHANT_NUMBER varchar(10), NAME varchar(80), BENEFIT_PERCENTAGE decimal(3,2), BENEFIT_AVAILABILITY_POLICY varchar(1), MAX_REWARDS_PER_MONTH INT, LAST_MODIFIED TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP);
+create table T_REWARD (ID INT NOT NULL AUTO_INCREMENT, PRIMARY KEY(ID), CONFIRMATION_NUMBER varchar(25), REWARD_AMOUNT decimal(8,2), REWARD_DATE date, ACCOUNT_NUMBER varchar(9), DINING_AMOUNT decimal(8,2), DINING_MERCHANT_NUMBER varchar(10), DINING_DATE date, DINING_FINGERPRINT varchar(32), UNIQUE(DINING_FINGERPRINT));
+
+create index IX_RESTAURANT_LAST_MODIFIED on T_RESTAURANT(LAST_MODIFIED);
+create unique index IX_REWARD_CONFIRMATION_NUMBER on T_REWARD(CONFIRMATION_NUMBER);
+create index IX_REWARD_ACCOUNT_DINING_DATE on T_REWARD(ACCOUNT_NUMBER, DINING_DATE desc, ID desc);
+create index IX_REWARD_MERCHANT_DINING_DATE on T_REWARD(DINING_MERCHANT_NUMBER, DINING_DATE desc, ID desc);
 
 create table DUAL_REWARD_CONFIRMATION_NUMBER (ZERO int);
 insert into DUAL_REWARD_CONFIRMATION_NUMBER values (0);
@@ -0,0 +1,47 @@
+package common.collections;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Unit tests that make sure the FrequencySketch class works in isolation.
+ */
+public class FrequencySketchTests {
+
+	@Test
+	public void testCountsOccurrences() {
+		FrequencySketch sketch = new FrequencySketch(100);
+		for (int i = 0; i < 5; i++) {
+			sketch.increment("1234123412341234");
+		}
+		sketch.increment("1234123412340001");
+
+		assertEquals(5, sketch.frequency("1234123412341234"));
+		assertEquals(1, sketch.frequency("1234123412340001"));
+		assertEquals(0, sketch.frequency("1234123412340002"));
+	}
+
+	@Test
+	public void testCountersSaturate() {
+		FrequencySketch sketch = new FrequencySketch(100);
+		for (int i = 0; i < 100; i++) {
+			sketch.increment("1234123412341234");
+		}
+		assertEquals(15, sketch.frequency("1234123412341234"));
+	}
+
+	@Test
+	public void testOldOccurrencesFade() {
+		FrequencySketch sketch = new FrequencySketch(16);
+		for (int i = 0; i < 10; i++) {
+			sketch.increment("hot");
+		}
+		assertEquals(10, sketch.frequency("hot"));
+		// sized for 16 keys, the sketch halves its counters every 160 additions
+		for (int i = 0; i < 150; i++) {
+			sketch.increment("cold");
+		}
+		assertEquals(5, sketch.frequency("hot"));
+		assertEquals(7, sketch.frequency("cold"));
+	}
+}
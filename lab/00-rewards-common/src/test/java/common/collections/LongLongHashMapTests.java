@@ -0,0 +1,74 @@
+package common.collections;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Unit tests that make sure the LongLongHashMap class works in isolation.
+ */
+public class LongLongHashMapTests {
+
+	@Test
+	public void testPutAndGet() {
+		LongLongHashMap map = new LongLongHashMap(4);
+		map.put(1234123412341234L, 0L);
+		map.put(1234123412340001L, 1L);
+		map.put(1234123412341234L, 2L);
+
+		assertEquals(2, map.size());
+		assertEquals(2L, map.get(1234123412341234L, -1L));
+		assertEquals(1L, map.get(1234123412340001L, -1L));
+		assertEquals(-1L, map.get(1234123412340002L, -1L));
+	}
+
+	@Test
+	public void testZeroKey() {
+		LongLongHashMap map = new LongLongHashMap(4);
+		assertFalse(map.containsKey(0L));
+		map.put(0L, 42L);
+
+		assertTrue(map.containsKey(0L));
+		assertEquals(42L, map.get(0L, -1L));
+		assertEquals(1, map.size());
+		assertTrue(map.remove(0L));
+		assertEquals(0, map.size());
+	}
+
+	@Test
+	public void testGrowsAtHalfFull() {
+		LongLongHashMap map = new LongLongHashMap(0);
+		assertEquals(16, map.capacity());
+		for (long key = 1; key <= 9; key++) {
+			map.put(key, key);
+		}
+		assertEquals(32, map.capacity());
+		assertEquals(16 * 32 + 48, map.getMemoryFootprint());
+	}
+
+	@Test
+	public void testSameAsHashMap() {
+		LongLongHashMap map = new LongLongHashMap(16);
+		Map<Long, Long> expected = new HashMap<Long, Long>();
+		Random random = new Random(42);
+		for (int i = 0; i < 100000; i++) {
+			// few distinct keys, so that removes often hit and probe sequences collide
+			long key = random.nextInt(5000) * 1000003L;
+			if (random.nextInt(3) == 0) {
+				assertEquals(expected.remove(key) != null, map.remove(key));
+			} else {
+				map.put(key, i);
+				expected.put(key, (long) i);
+			}
+		}
+		assertEquals(expected.size(), map.size());
+		for (long key = 0; key < 5000 * 1000003L; key += 1000003L) {
+			assertEquals(expected.getOrDefault(key, -1L).longValue(), map.get(key, -1L));
+		}
+	}
+}
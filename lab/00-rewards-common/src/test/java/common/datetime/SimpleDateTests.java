@@ -39,4 +39,12 @@ public class SimpleDateTests {
 		SimpleDate today2 = SimpleDate.valueOf(time);
 		assertEquals(today, today2);
 	}
+
+	@Test
+	public void testFields() {
+		SimpleDate date = new SimpleDate(12, 29, 1977);
+		assertEquals(1977, date.getYear());
+		assertEquals(12, date.getMonth());
+		assertEquals(Calendar.THURSDAY, date.getDayOfWeek());
+	}
 }
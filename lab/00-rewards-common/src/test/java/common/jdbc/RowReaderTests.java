@@ -0,0 +1,90 @@
+package common.jdbc;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.sql.SQLException;
+import java.util.List;
+
+import common.money.MonetaryAmount;
+import common.money.Percentage;
+
+/**
+ * Tests reading rows by column ordinal against an in-memory database.
+ */
+public class RowReaderTests {
+
+	private EmbeddedDatabase database;
+
+	private JdbcTemplate jdbcTemplate;
+
+	@BeforeEach
+	public void setUp() {
+		database = new EmbeddedDatabaseBuilder().setName("row-reader").build();
+		jdbcTemplate = new JdbcTemplate(database);
+		jdbcTemplate.execute("create table T_BENEFICIARY (ID integer, NAME varchar(50), ALLOCATION_PERCENTAGE decimal(3,2), SAVINGS decimal(8,2))");
+		jdbcTemplate.update("insert into T_BENEFICIARY values (0, 'Annabelle', .50, 123.45)");
+		jdbcTemplate.update("insert into T_BENEFICIARY values (1, 'Corgan', .50, null)");
+	}
+
+	@AfterEach
+	public void tearDown() {
+		database.shutdown();
+	}
+
+	@Test
+	public void testReadsByLabelInAnyColumnOrder() {
+		String sql = "select SAVINGS, ALLOCATION_PERCENTAGE, NAME, ID from T_BENEFICIARY order by ID";
+		ColumnLayout<Column> layout = ColumnLayout.of(Column.class);
+		jdbcTemplate.query(sql, (ResultSetExtractor<Void>) rs -> {
+			RowReader<Column> row = layout.bind(rs);
+			row.next();
+			assertEquals(0L, row.getLong(Column.ID));
+			assertEquals("Annabelle", row.getString(Column.NAME));
+			assertEquals(Percentage.valueOf("50%"), row.getPercentage(Column.ALLOCATION_PERCENTAGE));
+			assertEquals(MonetaryAmount.valueOf("123.45"), row.getMonetaryAmount(Column.SAVINGS));
+			row.next();
+			assertEquals(1, row.getInt(Column.ID));
+			assertEquals(Integer.valueOf(1), row.getInteger(Column.ID));
+			assertNull(row.getMonetaryAmount(Column.SAVINGS));
+			assertNull(row.getInteger(Column.SAVINGS));
+			return null;
+		});
+	}
+
+	@Test
+	public void testMissingColumn() {
+		String sql = "select ID, NAME from T_BENEFICIARY";
+		jdbcTemplate.query(sql, (ResultSetExtractor<Void>) rs -> {
+			assertThrows(SQLException.class, () -> ColumnLayout.of(Column.class).bind(rs));
+			return null;
+		});
+	}
+
+	@Test
+	public void testRowMapper() {
+		OrdinalRowMapper<Column, String> mapper = new OrdinalRowMapper<Column, String>(Column.class) {
+			protected String mapRow(RowReader<Column> row, int rowNum) throws SQLException {
+				return row.getString(Column.NAME) + " " + row.getPercentage(Column.ALLOCATION_PERCENTAGE);
+			}
+		};
+		List<String> names = jdbcTemplate.query("select * from T_BENEFICIARY order by ID", mapper);
+		assertEquals(List.of("Annabelle 50%", "Corgan 50%"), names);
+		// bound again to the result set of another query shape
+		names = jdbcTemplate.query("select NAME, SAVINGS, ID, ALLOCATION_PERCENTAGE from T_BENEFICIARY order by ID desc",
+				mapper);
+		assertEquals(List.of("Corgan 50%", "Annabelle 50%"), names);
+	}
+
+	private enum Column {
+		ID, NAME, ALLOCATION_PERCENTAGE, SAVINGS
+	}
+}
@@ -9,6 +9,7 @@ import rewards.internal.account.JpaAccountRepository;
 import rewards.internal.restaurant.JpaRestaurantRepository;
 import rewards.internal.restaurant.RestaurantRepository;
 import rewards.internal.reward.JdbcRewardRepository;
+import rewards.internal.reward.MonthlyRewardCounts;
 import rewards.internal.reward.RewardRepository;
 
 import javax.sql.DataSource;
@@ -35,13 +36,22 @@ public class AppConfig {
 	}
 
 	@Bean
-	public RestaurantRepository restaurantRepository() {
-		return new JpaRestaurantRepository();
+	public RestaurantRepository restaurantRepository(MonthlyRewardCounts monthlyRewardCounts) {
+		JpaRestaurantRepository repository = new JpaRestaurantRepository();
+		repository.setMonthlyRewardCounts(monthlyRewardCounts);
+		return repository;
 	}
 
 	@Bean
-	public RewardRepository rewardRepository(DataSource dataSource) {
-		return new JdbcRewardRepository(dataSource);
+	public RewardRepository rewardRepository(DataSource dataSource, MonthlyRewardCounts monthlyRewardCounts) {
+		JdbcRewardRepository repository = new JdbcRewardRepository(dataSource);
+		repository.setMonthlyRewardCounts(monthlyRewardCounts);
+		return repository;
+	}
+
+	@Bean
+	public MonthlyRewardCounts monthlyRewardCounts(DataSource dataSource) {
+		return new MonthlyRewardCounts(dataSource);
 	}
 
 }
@@ -3,6 +3,7 @@ package config;
 import java.util.Properties;
 import java.util.logging.Logger;
 
+import javax.persistence.SharedCacheMode;
 import javax.sql.DataSource;
 
 import org.springframework.beans.factory.annotation.Value;
@@ -25,6 +26,12 @@ import org.springframework.transaction.PlatformTransactionManager;
  * choices for JPA via Hibernate or JPA via EclipseLink. Only used by tests in
  * this class (since Spring Boot cannot be assumed).
  * <p>
+ * With Hibernate, restaurants are kept in a bounded second-level cache, see
+ * {@link InMemoryRegionFactory} and
+ * {@link rewards.internal.restaurant.JpaRestaurantRepository}. The
+ * "jpa-elink" profile sets up no query caching, so with EclipseLink each
+ * lookup runs its query.
+ * <p>
  * To simulate Spring Boot we load <code>application.properties</code> manually,
  * if it exists, and mimic Boot's <code>spring.jpa.show-sql</code> property.
  */
@@ -37,6 +44,12 @@ public class DbConfig {
 	@Value("${spring.jpa.show-sql:true}")  // Default to true if not set elsewhere
 	private String showSql;
 
+	@Value("${rewards.jpa.cache.max-entries:1000}")
+	private int cacheMaxEntries;
+
+	@Value("${rewards.jpa.cache.time-to-live-seconds:600}")
+	private long cacheTimeToLiveSeconds;
+
 	/**
 	 * Creates an in-memory "rewards" database populated with test data for fast
 	 * testing
@@ -80,11 +93,19 @@ public class DbConfig {
 		} else {
 			props.setProperty("hibernate.show_sql", String.valueOf(showSql));
 			props.setProperty("hibernate.format_sql", "true");
+			// EclipseLink has a shared cache built in, Hibernate needs a provider
+			props.setProperty("hibernate.cache.use_second_level_cache", "true");
+			props.setProperty("hibernate.cache.use_query_cache", "true");
+			props.setProperty("hibernate.cache.region.factory_class", InMemoryRegionFactory.class.getName());
+			props.setProperty(InMemoryRegionFactory.MAX_ENTRIES, String.valueOf(cacheMaxEntries));
+			props.setProperty(InMemoryRegionFactory.TIME_TO_LIVE_SECONDS, String.valueOf(cacheTimeToLiveSeconds));
 		}
 
 		LocalContainerEntityManagerFactoryBean emfb = new LocalContainerEntityManagerFactoryBean();
 		emfb.setPackagesToScan(DOMAIN_OBJECTS_PARENT_PACKAGE);
 		emfb.setJpaProperties(props);
+		// only entities marked @Cacheable, such as restaurants, go to the second-level cache
+		emfb.setSharedCacheMode(SharedCacheMode.ENABLE_SELECTIVE);
 		emfb.setJpaVendorAdapter(adapter);
 		emfb.setDataSource(dataSource());
 
@@ -0,0 +1,204 @@
+package config;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.hibernate.boot.spi.SessionFactoryOptions;
+import org.hibernate.cache.cfg.spi.DomainDataRegionBuildingContext;
+import org.hibernate.cache.cfg.spi.DomainDataRegionConfig;
+import org.hibernate.cache.spi.support.DomainDataStorageAccess;
+import org.hibernate.cache.spi.support.RegionFactoryTemplate;
+import org.hibernate.cache.spi.support.StorageAccess;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+
+/**
+ * A Hibernate second-level cache provider that keeps every region in a map on the heap of this process. Enough for
+ * small, rarely changing reference data such as restaurants, without the extra dependencies of a JCache provider.
+ * <p>
+ * Each entity and query results region holds at most {@link #MAX_ENTRIES} entries, evicting the least recently used,
+ * and drops an entry {@link #TIME_TO_LIVE_SECONDS} after it was put. Each process has its own cache, so the time to
+ * live bounds how long changes made to the database by other processes go unseen.
+ * <p>
+ * The timestamps region, which records when each table was last written, is never evicted: a query result whose
+ * tables have no timestamp is taken to be up to date. It holds one entry per table.
+ */
+public class InMemoryRegionFactory extends RegionFactoryTemplate {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The setting for the most entries a region may hold.
+	 */
+	public static final String MAX_ENTRIES = "rewards.cache.max_entries";
+
+	/**
+	 * The setting for the seconds an entry stays in its region after it was put.
+	 */
+	public static final String TIME_TO_LIVE_SECONDS = "rewards.cache.time_to_live_seconds";
+
+	static final int DEFAULT_MAX_ENTRIES = 1000;
+
+	static final long DEFAULT_TIME_TO_LIVE_SECONDS = 600;
+
+	private int maxEntries = DEFAULT_MAX_ENTRIES;
+
+	private long timeToLiveNanos = TimeUnit.SECONDS.toNanos(DEFAULT_TIME_TO_LIVE_SECONDS);
+
+	@Override
+	protected void prepareForUse(SessionFactoryOptions settings, @SuppressWarnings("rawtypes") Map configValues) {
+		Object maxEntries = configValues.get(MAX_ENTRIES);
+		if (maxEntries != null) {
+			this.maxEntries = Integer.parseInt(maxEntries.toString());
+			if (this.maxEntries < 1) {
+				throw new IllegalArgumentException(
+						"Max entries must be at least 1; your value was " + this.maxEntries);
+			}
+		}
+		Object timeToLiveSeconds = configValues.get(TIME_TO_LIVE_SECONDS);
+		if (timeToLiveSeconds != null) {
+			long seconds = Long.parseLong(timeToLiveSeconds.toString());
+			if (seconds < 1) {
+				throw new IllegalArgumentException("Time to live must be at least 1 second; your value was " + seconds);
+			}
+			this.timeToLiveNanos = TimeUnit.SECONDS.toNanos(seconds);
+		}
+	}
+
+	@Override
+	protected void releaseFromUse() {
+	}
+
+	@Override
+	protected DomainDataStorageAccess createDomainDataStorageAccess(DomainDataRegionConfig regionConfig,
+			DomainDataRegionBuildingContext buildingContext) {
+		return new BoundedStorageAccess(maxEntries, timeToLiveNanos, System::nanoTime);
+	}
+
+	@Override
+	protected StorageAccess createQueryResultsRegionStorageAccess(String regionName,
+			SessionFactoryImplementor sessionFactory) {
+		return new BoundedStorageAccess(maxEntries, timeToLiveNanos, System::nanoTime);
+	}
+
+	@Override
+	protected StorageAccess createTimestampsRegionStorageAccess(String regionName,
+			SessionFactoryImplementor sessionFactory) {
+		return new MapStorageAccess();
+	}
+
+	/**
+	 * The entries of a region, at most a given number of them and each for at most a given time.
+	 */
+	static class BoundedStorageAccess implements DomainDataStorageAccess {
+
+		private final int maxEntries;
+
+		private final long timeToLiveNanos;
+
+		private final LongSupplier nanoClock;
+
+		// in access order, so the eldest is the least recently used
+		private final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<Object, Entry>(16, 0.75f, true);
+
+		BoundedStorageAccess(int maxEntries, long timeToLiveNanos, LongSupplier nanoClock) {
+			this.maxEntries = maxEntries;
+			this.timeToLiveNanos = timeToLiveNanos;
+			this.nanoClock = nanoClock;
+		}
+
+		public synchronized Object getFromCache(Object key, SharedSessionContractImplementor session) {
+			Entry entry = entries.get(key);
+			if (entry == null) {
+				return null;
+			}
+			if (entry.isExpired(nanoClock.getAsLong())) {
+				entries.remove(key);
+				return null;
+			}
+			return entry.value;
+		}
+
+		public synchronized void putIntoCache(Object key, Object value, SharedSessionContractImplementor session) {
+			entries.put(key, new Entry(value, nanoClock.getAsLong() + timeToLiveNanos));
+			if (entries.size() > maxEntries) {
+				Iterator<Object> eldest = entries.keySet().iterator();
+				eldest.next();
+				eldest.remove();
+			}
+		}
+
+		public synchronized boolean contains(Object key) {
+			Entry entry = entries.get(key);
+			return entry != null && !entry.isExpired(nanoClock.getAsLong());
+		}
+
+		public synchronized void evictData() {
+			entries.clear();
+		}
+
+		public synchronized void evictData(Object key) {
+			entries.remove(key);
+		}
+
+		public synchronized void release() {
+			entries.clear();
+		}
+
+		synchronized int size() {
+			return entries.size();
+		}
+	}
+
+	private static class Entry {
+
+		private final Object value;
+
+		private final long expiresAtNanos;
+
+		Entry(Object value, long expiresAtNanos) {
+			this.value = value;
+			this.expiresAtNanos = expiresAtNanos;
+		}
+
+		boolean isExpired(long nowNanos) {
+			return nowNanos - expiresAtNanos >= 0;
+		}
+	}
+
+	/**
+	 * The entries of a region, kept until evicted.
+	 */
+	private static class MapStorageAccess implements DomainDataStorageAccess {
+
+		private final Map<Object, Object> entries = new ConcurrentHashMap<Object, Object>();
+
+		public Object getFromCache(Object key, SharedSessionContractImplementor session) {
+			return entries.get(key);
+		}
+
+		public void putIntoCache(Object key, Object value, SharedSessionContractImplementor session) {
+			entries.put(key, value);
+		}
+
+		public boolean contains(Object key) {
+			return entries.containsKey(key);
+		}
+
+		public void evictData() {
+			entries.clear();
+		}
+
+		public void evictData(Object key) {
+			entries.remove(key);
+		}
+
+		public void release() {
+			entries.clear();
+		}
+	}
+}
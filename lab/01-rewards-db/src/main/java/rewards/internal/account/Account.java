@@ -14,6 +14,7 @@ import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.OneToMany;
 import javax.persistence.Table;
+import javax.persistence.Version;
 
 import rewards.AccountContribution;
 import rewards.AccountContribution.Distribution;
@@ -45,6 +46,10 @@ public class Account {
 	@Column(name = "NAME")
 	private String name;
 
+	@Version
+	@Column(name = "VERSION")
+	private int version;
+
 	@OneToMany(cascade = CascadeType.ALL)
 	@JoinColumn(name = "ACCOUNT_ID")
 	private Set<Beneficiary> beneficiaries = new HashSet<Beneficiary>();
@@ -89,6 +94,19 @@ public class Account {
 		this.entityId = entityId;
 	}
 
+	/**
+	 * Returns the version of this account used for optimistic locking. The
+	 * version is incremented whenever the account or its set of beneficiaries
+	 * is written, and by repositories that write beneficiary savings, so a
+	 * transaction that loaded an older version fails to write the account
+	 * instead of overwriting changes it has not seen.
+	 * 
+	 * @return the version
+	 */
+	public int getVersion() {
+		return version;
+	}
+
 	/**
 	 * Returns the number used to uniquely identify this account.
 	 */
@@ -1,5 +1,8 @@
 package rewards.internal.account;
 
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * Loads account aggregates. Called by the reward network to find and reconstitute Account entities from an external
  * form such as a set of RDMS rows.
@@ -23,4 +26,12 @@ public interface AccountRepository {
 	 */
 	public Account findByCreditCard(String creditCardNumber);
 
+	/**
+	 * Load the accounts of several credit cards at once, in a bounded number of queries rather than one per card.
+	 * Cards of the same account map to the same account object.
+	 * @param creditCardNumbers the credit card numbers
+	 * @return the account objects by credit card number; cards with no account are absent
+	 */
+	public Map<String, Account> findByCreditCards(Collection<String> creditCardNumbers);
+
 }
\ No newline at end of file
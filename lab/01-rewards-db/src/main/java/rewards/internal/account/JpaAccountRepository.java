@@ -1,5 +1,13 @@
 package rewards.internal.account;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 
@@ -13,12 +21,25 @@ public class JpaAccountRepository implements AccountRepository {
 
 	public static final String ACCOUNT_BY_CC_QUERY = "select ACCOUNT_ID from T_ACCOUNT_CREDIT_CARD where NUMBER = :ccn";
 
+	public static final String ALL_CCS_QUERY = "select NUMBER, ACCOUNT_ID from T_ACCOUNT_CREDIT_CARD";
+
+	public static final String ACCOUNTS_BY_CC_QUERY = "select NUMBER, ACCOUNT_ID from T_ACCOUNT_CREDIT_CARD where NUMBER in (:ccns)";
+
+	public static final String ACCOUNTS_WITH_BENEFICIARIES_QUERY = "select distinct a from Account a left join fetch a.beneficiaries where a.entityId in (:ids)";
+
+	/**
+	 * The most credit card numbers {@link #findByCreditCards(Collection)} puts in the IN list of one query.
+	 */
+	public static final int IN_LIST_SIZE = 256;
+
 	public static final String INFO = "JPA";
 
 	private static final Logger logger = LoggerFactory.getLogger("config");
 	
 	private EntityManager entityManager;
 
+	private CreditCardIndex creditCardIndex;
+
 	public JpaAccountRepository() {
 		logger.info("Created JpaAccountManager");
 	}
@@ -33,14 +54,47 @@ public class JpaAccountRepository implements AccountRepository {
 		return INFO;
 	}
 
+	/**
+	 * Loads every credit card into the given index and from now on finds
+	 * accounts by the ids it holds, only querying T_ACCOUNT_CREDIT_CARD for
+	 * cards not indexed. Cards moved to another account must be updated in the
+	 * index.
+	 * @param creditCardIndex an index to load and keep up to date
+	 */
+	public void enableCreditCardIndex(CreditCardIndex creditCardIndex) {
+		@SuppressWarnings("unchecked")
+		List<Object[]> rows = entityManager.createNativeQuery(ALL_CCS_QUERY).getResultList();
+		for (Object[] row : rows) {
+			creditCardIndex.put((String) row[0], ((Number) row[1]).longValue());
+		}
+		this.creditCardIndex = creditCardIndex;
+	}
+
 	public Account findByCreditCard(String creditCardNumber) {
-		// Find id account of account with this credit-card using a direct
-		// SQL query on the unmapped T_ACCOUNT_CREDIT_CARD table.
-		Integer accountId = (Integer) entityManager
-				.createNativeQuery(ACCOUNT_BY_CC_QUERY)
-				.setParameter("ccn", creditCardNumber).getSingleResult();
+		Account account = null;
+		if (creditCardIndex != null) {
+			long indexedId = creditCardIndex.findAccountId(creditCardNumber);
+			if (indexedId != CreditCardIndex.NOT_INDEXED) {
+				account = entityManager.find(Account.class, indexedId);
+				if (account == null) {
+					// the account has gone since the card was indexed
+					creditCardIndex.remove(creditCardNumber);
+				}
+			}
+		}
+
+		if (account == null) {
+			// Find id account of account with this credit-card using a direct
+			// SQL query on the unmapped T_ACCOUNT_CREDIT_CARD table.
+			Integer accountId = (Integer) entityManager
+					.createNativeQuery(ACCOUNT_BY_CC_QUERY)
+					.setParameter("ccn", creditCardNumber).getSingleResult();
 
-		Account account = (Account) entityManager.find(Account.class, accountId.longValue());
+			account = entityManager.find(Account.class, accountId.longValue());
+			if (creditCardIndex != null) {
+				creditCardIndex.put(creditCardNumber, accountId.longValue());
+			}
+		}
 
 		// Force beneficiaries to load too - avoid Hibernate lazy loading error
 		account.getBeneficiaries().size();
@@ -48,4 +102,38 @@ public class JpaAccountRepository implements AccountRepository {
 		return account;
 	}
 
+	/**
+	 * Loads up to {@value #IN_LIST_SIZE} credit cards per chunk: one native query finds their account ids, and one
+	 * query fetches those accounts together with their beneficiaries.
+	 */
+	public Map<String, Account> findByCreditCards(Collection<String> creditCardNumbers) {
+		List<String> numbers = new ArrayList<String>(new LinkedHashSet<String>(creditCardNumbers));
+		Map<String, Account> accountsByCreditCard = new LinkedHashMap<String, Account>();
+		for (int from = 0; from < numbers.size(); from += IN_LIST_SIZE) {
+			List<String> chunk = numbers.subList(from, Math.min(from + IN_LIST_SIZE, numbers.size()));
+			@SuppressWarnings("unchecked")
+			List<Object[]> rows = entityManager.createNativeQuery(ACCOUNTS_BY_CC_QUERY)
+					.setParameter("ccns", chunk).getResultList();
+			if (rows.isEmpty()) {
+				continue;
+			}
+			Map<Long, List<String>> creditCardNumbersById = new HashMap<Long, List<String>>();
+			for (Object[] row : rows) {
+				creditCardNumbersById.computeIfAbsent(((Number) row[1]).longValue(), id -> new ArrayList<String>())
+						.add((String) row[0]);
+			}
+			List<Account> accounts = entityManager.createQuery(ACCOUNTS_WITH_BENEFICIARIES_QUERY, Account.class)
+					.setParameter("ids", creditCardNumbersById.keySet()).getResultList();
+			for (Account account : accounts) {
+				for (String creditCardNumber : creditCardNumbersById.get(account.getEntityId())) {
+					accountsByCreditCard.put(creditCardNumber, account);
+					if (creditCardIndex != null) {
+						creditCardIndex.put(creditCardNumber, account.getEntityId());
+					}
+				}
+			}
+		}
+		return accountsByCreditCard;
+	}
+
 }
\ No newline at end of file
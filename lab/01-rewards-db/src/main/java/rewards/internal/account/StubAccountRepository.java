@@ -1,5 +1,6 @@
 package rewards.internal.account;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -42,6 +43,17 @@ public class StubAccountRepository implements AccountRepository {
 		return account;
 	}
 
+	public Map<String, Account> findByCreditCards(Collection<String> creditCardNumbers) {
+		Map<String, Account> accounts = new HashMap<String, Account>();
+		for (String creditCardNumber : creditCardNumbers) {
+			Account account = accountsByCreditCard.get(creditCardNumber);
+			if (account != null) {
+				accounts.put(creditCardNumber, account);
+			}
+		}
+		return accounts;
+	}
+
 	public void updateBeneficiaries(Account account) {
 		// nothing to do, everything is in memory
 	}
@@ -8,8 +8,15 @@ import javax.persistence.PersistenceContext;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 
+import rewards.internal.reward.MonthlyRewardCounts;
+
 /**
  * Loads restaurants from a data source using JPA.
+ * <p>
+ * The query by merchant number is cached, with the restaurants it returns in
+ * the second-level cache, so that once warm a lookup runs no SQL. Hibernate
+ * and EclipseLink each take their own hint, ignoring the other's, and drop the
+ * cached results when restaurants are written through JPA.
  */
 public class JpaRestaurantRepository implements RestaurantRepository {
 
@@ -18,10 +25,24 @@ public class JpaRestaurantRepository implements RestaurantRepository {
 
 	public static final String INFO = "JPA";
 
+	/**
+	 * The Hibernate query hint that caches the results of a query, by name so
+	 * that this class does not depend on Hibernate.
+	 */
+	static final String CACHEABLE_HINT = "org.hibernate.cacheable";
+
+	/**
+	 * The EclipseLink query hint that caches the results of a query, by name so
+	 * that this class does not depend on EclipseLink.
+	 */
+	static final String QUERY_RESULTS_CACHE_HINT = "eclipselink.query-results-cache";
+
 	private static final Logger logger = LoggerFactory.getLogger("config");
 
 	private EntityManager entityManager;
 
+	private MonthlyRewardCounts monthlyRewardCounts;
+
 	public JpaRestaurantRepository() {
 		logger.info("Created JpaRestaurantRepository");
 	}
@@ -31,6 +52,14 @@ public class JpaRestaurantRepository implements RestaurantRepository {
 		this.entityManager = entityManager;
 	}
 
+	/**
+	 * Sets the monthly reward counts that restaurants with a 'max rewards per
+	 * month' policy check dinings against.
+	 */
+	public void setMonthlyRewardCounts(MonthlyRewardCounts monthlyRewardCounts) {
+		this.monthlyRewardCounts = monthlyRewardCounts;
+	}
+
 	@Override
 	public String getInfo() {
 		return INFO;
@@ -38,10 +67,14 @@ public class JpaRestaurantRepository implements RestaurantRepository {
 
 	@Override
 	public Restaurant findByMerchantNumber(String merchantNumber) {
-		return entityManager //
+		Restaurant restaurant = entityManager //
 				.createQuery(RESTAURANT_BY_MERCHANT_QUERY, Restaurant.class) //
 				.setParameter("merchantNumber", merchantNumber) //
+				.setHint(CACHEABLE_HINT, true) //
+				.setHint(QUERY_RESULTS_CACHE_HINT, true) //
 				.getSingleResult();
+		restaurant.setMonthlyRewardCounts(monthlyRewardCounts);
+		return restaurant;
 	}
 
 	@Override
@@ -0,0 +1,40 @@
+package rewards.internal.restaurant;
+
+import rewards.Dining;
+import rewards.internal.account.Account;
+import rewards.internal.reward.MonthlyRewardCounts;
+
+/**
+ * A benefit availabilty policy that returns true while the account has been rewarded for dining at a restaurant fewer
+ * than the restaurant's maximum number of times in the month of the dining, as counted in memory by
+ * {@link MonthlyRewardCounts}.
+ *
+ * Within a transaction the reward is reserved as it is checked, so concurrent transactions cannot both take the last
+ * reward of a month. Reads the maximum and the counts from the restaurant when evaluated, as JPA may set them after the
+ * policy code.
+ */
+public class MaxRewardsPerMonth implements BenefitAvailabilityPolicy {
+
+	private final Restaurant restaurant;
+
+	MaxRewardsPerMonth(Restaurant restaurant) {
+		this.restaurant = restaurant;
+	}
+
+	public boolean isBenefitAvailableFor(Account account, Dining dining) {
+		Integer maxRewardsPerMonth = restaurant.getMaxRewardsPerMonth();
+		if (maxRewardsPerMonth == null) {
+			throw new IllegalStateException("No MAX_REWARDS_PER_MONTH value for restaurant " + restaurant.getNumber());
+		}
+		MonthlyRewardCounts monthlyRewardCounts = restaurant.getMonthlyRewardCounts();
+		if (monthlyRewardCounts == null) {
+			throw new IllegalStateException("Monthly reward counts not set for restaurant " + restaurant.getNumber());
+		}
+		return monthlyRewardCounts.tryReserve(account.getNumber(), dining.getMerchantNumber(), dining.getDate(),
+				maxRewardsPerMonth);
+	}
+
+	public String toString() {
+		return "maxRewardsPerMonth(" + restaurant.getMaxRewardsPerMonth() + ")";
+	}
+}
@@ -3,6 +3,7 @@ package rewards.internal.restaurant;
 import javax.persistence.Access;
 import javax.persistence.AccessType;
 import javax.persistence.AttributeOverride;
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Embedded;
 import javax.persistence.Entity;
@@ -10,8 +11,12 @@ import javax.persistence.Id;
 import javax.persistence.Table;
 import javax.persistence.Transient;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import rewards.Dining;
 import rewards.internal.account.Account;
+import rewards.internal.reward.MonthlyRewardCounts;
 
 import common.money.MonetaryAmount;
 import common.money.Percentage;
@@ -21,9 +26,14 @@ import common.money.Percentage;
  * 
  * Restaurants calculate how much benefit may be awarded to an account for
  * dining based on an availability policy and a benefit percentage.
+ * <p>
+ * Restaurants change rarely and are read on every reward, so they are kept in
+ * the second-level cache.
  */
 @Entity
 @Table(name = "T_RESTAURANT")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class Restaurant {
 
 	@Id
@@ -53,6 +63,16 @@ public class Restaurant {
 	//@Column(name = "BENEFIT_AVAILABILITY_POLICY")
 	private BenefitAvailabilityPolicy benefitAvailabilityPolicy;
 
+	@Column(name = "MAX_REWARDS_PER_MONTH")
+	private Integer maxRewardsPerMonth;
+
+	/**
+	 * The counts a 'max rewards per month' policy checks dinings against, set
+	 * by the repository that loaded this restaurant.
+	 */
+	@Transient
+	private MonthlyRewardCounts monthlyRewardCounts;
+
 	protected Restaurant() {
 	}
 
@@ -116,6 +136,27 @@ public class Restaurant {
 		this.benefitAvailabilityPolicy = benefitAvailabilityPolicy;
 	}
 
+	/**
+	 * Sets the maximum number of rewards per account and month of a 'max
+	 * rewards per month' policy.
+	 * 
+	 * @param maxRewardsPerMonth
+	 *            the maximum number of rewards, or null if not applicable
+	 */
+	public void setMaxRewardsPerMonth(Integer maxRewardsPerMonth) {
+		this.maxRewardsPerMonth = maxRewardsPerMonth;
+	}
+
+	/**
+	 * Sets the counts a 'max rewards per month' policy checks dinings against.
+	 * 
+	 * @param monthlyRewardCounts
+	 *            the monthly reward counts
+	 */
+	public void setMonthlyRewardCounts(MonthlyRewardCounts monthlyRewardCounts) {
+		this.monthlyRewardCounts = monthlyRewardCounts;
+	}
+
 	/**
 	 * Returns the name of this restaurant.
 	 */
@@ -144,6 +185,22 @@ public class Restaurant {
 		return benefitAvailabilityPolicy;
 	}
 
+	/**
+	 * Returns the maximum number of rewards per account and month of a 'max
+	 * rewards per month' policy, or null if not applicable.
+	 */
+	public Integer getMaxRewardsPerMonth() {
+		return maxRewardsPerMonth;
+	}
+
+	/**
+	 * Returns the counts a 'max rewards per month' policy checks dinings
+	 * against, or null if not set.
+	 */
+	public MonthlyRewardCounts getMonthlyRewardCounts() {
+		return monthlyRewardCounts;
+	}
+
 	/**
 	 * Calculate the benefit eligible to this account for dining at this
 	 * restaurant.
@@ -175,6 +232,10 @@ public class Restaurant {
 			benefitAvailabilityPolicy = AlwaysAvailable.INSTANCE;
 		} else if ("N".equals(policyCode)) {
 			benefitAvailabilityPolicy = NeverAvailable.INSTANCE;
+		} else if ("W".equals(policyCode)) {
+			benefitAvailabilityPolicy = WeekdaysOnly.INSTANCE;
+		} else if ("M".equals(policyCode)) {
+			benefitAvailabilityPolicy = new MaxRewardsPerMonth(this);
 		} else {
 			throw new IllegalArgumentException("Not a supported policy code "
 					+ policyCode);
@@ -193,6 +254,10 @@ public class Restaurant {
 			return "A";
 		} else if (benefitAvailabilityPolicy == NeverAvailable.INSTANCE) {
 			return "N";
+		} else if (benefitAvailabilityPolicy == WeekdaysOnly.INSTANCE) {
+			return "W";
+		} else if (benefitAvailabilityPolicy instanceof MaxRewardsPerMonth) {
+			return "M";
 		} else {
 			throw new IllegalArgumentException("No policy code for "
 					+ benefitAvailabilityPolicy.getClass());
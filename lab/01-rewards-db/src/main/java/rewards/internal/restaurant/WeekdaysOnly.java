@@ -0,0 +1,22 @@
+package rewards.internal.restaurant;
+
+import java.util.Calendar;
+
+import rewards.Dining;
+import rewards.internal.account.Account;
+
+/**
+ * A benefit availabilty policy that returns true for dinings from Monday to Friday.
+ */
+public class WeekdaysOnly implements BenefitAvailabilityPolicy {
+	static final BenefitAvailabilityPolicy INSTANCE = new WeekdaysOnly();
+
+	public boolean isBenefitAvailableFor(Account account, Dining dining) {
+		int dayOfWeek = dining.getDate().getDayOfWeek();
+		return dayOfWeek != Calendar.SATURDAY && dayOfWeek != Calendar.SUNDAY;
+	}
+
+	public String toString() {
+		return "weekdaysOnly";
+	}
+}
@@ -24,12 +24,24 @@ public class JdbcRewardRepository implements RewardRepository {
 
 	private JdbcTemplate jdbcTemplate;
 
+	private MonthlyRewardCounts monthlyRewardCounts;
+
 	@Autowired
 	public JdbcRewardRepository(DataSource dataSource) {
 		this.jdbcTemplate = new JdbcTemplate(dataSource);
 		logger.info("Created JdbcRewardRepository");
 	}
 
+	/**
+	 * Sets the monthly reward counts to add every recorded reward to. A reward
+	 * is counted as soon as it is recorded, unless the restaurant's
+	 * {@link rewards.internal.restaurant.MaxRewardsPerMonth} policy already
+	 * reserved it, and taken away again if its transaction rolls back.
+	 */
+	public void setMonthlyRewardCounts(MonthlyRewardCounts monthlyRewardCounts) {
+		this.monthlyRewardCounts = monthlyRewardCounts;
+	}
+
 	@Override
 	public String getInfo() {
 		return TYPE;
@@ -42,9 +54,16 @@ public class JdbcRewardRepository implements RewardRepository {
 		jdbcTemplate.update(sql, confirmationNumber, contribution.getAmount().asBigDecimal(),
 				SimpleDate.today().asDate(), contribution.getAccountNumber(), dining.getMerchantNumber(),
 				dining.getDate().asDate(), dining.getAmount().asBigDecimal());
+		count(contribution, dining);
 		return new RewardConfirmation(confirmationNumber, contribution);
 	}
 
+	private void count(AccountContribution contribution, Dining dining) {
+		if (monthlyRewardCounts != null) {
+			monthlyRewardCounts.record(contribution.getAccountNumber(), dining.getMerchantNumber(), dining.getDate());
+		}
+	}
+
 	private String nextConfirmationNumber() {
 		String sql = "select next value for S_REWARD_CONFIRMATION_NUMBER from DUAL_REWARD_CONFIRMATION_NUMBER";
 		return jdbcTemplate.queryForObject(sql, String.class);
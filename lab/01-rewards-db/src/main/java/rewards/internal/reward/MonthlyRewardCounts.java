@@ -0,0 +1,310 @@
+package rewards.internal.reward;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import common.datetime.SimpleDate;
+
+/**
+ * Counts the rewards of each account for dining at each restaurant per month of dining, in memory, so that a
+ * maximum number of rewards per month can be enforced without counting T_REWARD rows for every dining.
+ *
+ * On creation, the rewards of dinings from the start of the previous month on are counted with one grouped query.
+ * From then on, the reward repository adds each reward it records. When a new month starts, the counts of months
+ * before the previous one are dropped; the few dinings still settled that late are counted in the database instead.
+ *
+ * Within a transaction, a maximum is enforced with {@link #tryReserve(String, String, SimpleDate, int)}, which checks
+ * and counts a reward in one atomic step, so that concurrent transactions cannot both take the last reward of a month.
+ * The count is taken away again unless the transaction commits having recorded the reward.
+ *
+ * Only rewards recorded by this process are added, so the counts are exact only while it is the sole writer of
+ * T_REWARD.
+ */
+public class MonthlyRewardCounts {
+
+	private static final String SEED_SQL = "select ACCOUNT_NUMBER, DINING_MERCHANT_NUMBER, year(DINING_DATE), month(DINING_DATE), count(*) from T_REWARD where DINING_DATE >= ? group by ACCOUNT_NUMBER, DINING_MERCHANT_NUMBER, year(DINING_DATE), month(DINING_DATE)";
+
+	private static final String COUNT_SQL = "select count(*) from T_REWARD where ACCOUNT_NUMBER = ? and DINING_MERCHANT_NUMBER = ? and DINING_DATE >= ? and DINING_DATE < ?";
+
+	private JdbcTemplate jdbcTemplate;
+
+	/**
+	 * Counts by month, as counted by {@link #monthOf(int, int)}, and by account and restaurant. Holds every month from
+	 * the earliest month on.
+	 */
+	private final Map<Integer, Map<Key, AtomicInteger>> countsByMonth = new ConcurrentHashMap<Integer, Map<Key, AtomicInteger>>();
+
+	private volatile int earliestMonth;
+
+	private final LongAdder databaseLookups = new LongAdder();
+
+	/**
+	 * Creates the counts, seeding them with the rewards already recorded for recent dinings.
+	 * @param dataSource the data source holding T_REWARD
+	 */
+	public MonthlyRewardCounts(DataSource dataSource) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		SimpleDate today = SimpleDate.today();
+		earliestMonth = monthOf(today.getYear(), today.getMonth()) - 1;
+		jdbcTemplate.query(SEED_SQL, (RowCallbackHandler) rs -> countsOf(monthOf(rs.getInt(3), rs.getInt(4)))
+				.put(new Key(rs.getString(1), rs.getString(2)), new AtomicInteger(rs.getInt(5))),
+				firstDayOf(earliestMonth).asDate());
+	}
+
+	/**
+	 * Returns the number of rewards of the account for dining at the restaurant in the month of the given date.
+	 * @param accountNumber the account number
+	 * @param merchantNumber the merchant number of the restaurant
+	 * @param diningDate any date in the month
+	 * @return the number of rewards
+	 */
+	public int getCount(String accountNumber, String merchantNumber, SimpleDate diningDate) {
+		int month = monthOf(diningDate.getYear(), diningDate.getMonth());
+		if (month < earliestMonth) {
+			databaseLookups.increment();
+			return jdbcTemplate.queryForObject(COUNT_SQL, Integer.class, accountNumber, merchantNumber,
+					firstDayOf(month).asDate(), firstDayOf(month + 1).asDate());
+		}
+		Map<Key, AtomicInteger> counts = countsByMonth.get(month);
+		AtomicInteger count = counts == null ? null : counts.get(new Key(accountNumber, merchantNumber));
+		return count == null ? 0 : count.get();
+	}
+
+	/**
+	 * Reserves a reward of the account for dining at the restaurant in the month of the given date, if the account has
+	 * fewer than the given number of rewards there that month, counting rewards reserved by other transactions.
+	 *
+	 * The reservation is held by the current transaction: {@link #record(String, String, SimpleDate)} of the reward
+	 * takes it up, and it is released when the transaction rolls back or commits without having recorded the reward.
+	 * Outside a thread-bound transaction, and for months counted in the database, the count is only checked.
+	 * @param accountNumber the account number
+	 * @param merchantNumber the merchant number of the restaurant
+	 * @param diningDate the dining date
+	 * @param maxRewards the maximum number of rewards in the month
+	 * @return true if reserved, false if the account already has the maximum number of rewards
+	 */
+	public boolean tryReserve(String accountNumber, String merchantNumber, SimpleDate diningDate, int maxRewards) {
+		int month = monthOf(diningDate.getYear(), diningDate.getMonth());
+		if (month < earliestMonth || !TransactionSynchronizationManager.isSynchronizationActive()) {
+			return getCount(accountNumber, merchantNumber, diningDate) < maxRewards;
+		}
+		Key key = new Key(accountNumber, merchantNumber);
+		AtomicInteger count = countsOf(month).computeIfAbsent(key, k -> new AtomicInteger());
+		int current;
+		do {
+			current = count.get();
+			if (current >= maxRewards) {
+				return false;
+			}
+		} while (!count.compareAndSet(current, current + 1));
+		currentTransaction().reserved.add(new MonthKey(month, key));
+		return true;
+	}
+
+	/**
+	 * Counts a reward recorded for the account for dining at the restaurant on the given date, taking up a reservation
+	 * of the current transaction if there is one. The count is taken away again should the transaction roll back.
+	 * @param accountNumber the account number
+	 * @param merchantNumber the merchant number of the restaurant
+	 * @param diningDate the dining date
+	 */
+	public void record(String accountNumber, String merchantNumber, SimpleDate diningDate) {
+		int month = monthOf(diningDate.getYear(), diningDate.getMonth());
+		if (month < earliestMonth) {
+			// counted in the database
+			return;
+		}
+		MonthKey monthKey = new MonthKey(month, new Key(accountNumber, merchantNumber));
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			add(monthKey, 1);
+			return;
+		}
+		TransactionCounts transaction = currentTransaction();
+		if (!transaction.reserved.remove(monthKey)) {
+			add(monthKey, 1);
+		}
+		transaction.recorded.add(monthKey);
+	}
+
+	/**
+	 * Adds a reward of the account for dining at the restaurant on the given date, or takes one away.
+	 * @param accountNumber the account number
+	 * @param merchantNumber the merchant number of the restaurant
+	 * @param diningDate the dining date
+	 * @param delta 1 to add a reward, -1 to take one away
+	 */
+	public void add(String accountNumber, String merchantNumber, SimpleDate diningDate, int delta) {
+		add(new MonthKey(monthOf(diningDate.getYear(), diningDate.getMonth()), new Key(accountNumber, merchantNumber)),
+				delta);
+	}
+
+	private void add(MonthKey monthKey, int delta) {
+		if (monthKey.month < earliestMonth) {
+			// counted in the database
+			return;
+		}
+		countsOf(monthKey.month).computeIfAbsent(monthKey.key, key -> new AtomicInteger()).addAndGet(delta);
+	}
+
+	/**
+	 * Returns the rewards reserved and recorded by the current transaction, registering them for its completion on first
+	 * use.
+	 */
+	private TransactionCounts currentTransaction() {
+		TransactionCounts transaction = (TransactionCounts) TransactionSynchronizationManager.getResource(this);
+		if (transaction == null) {
+			transaction = new TransactionCounts();
+			TransactionSynchronizationManager.bindResource(this, transaction);
+			TransactionSynchronizationManager.registerSynchronization(transaction);
+		}
+		return transaction;
+	}
+
+	/**
+	 * Returns the number of counts looked up in the database, for months no longer held in memory.
+	 */
+	public long getDatabaseLookupCount() {
+		return databaseLookups.sum();
+	}
+
+	/**
+	 * Returns the number of account and restaurant pairs counted, over all months held.
+	 */
+	public int size() {
+		int size = 0;
+		for (Map<Key, AtomicInteger> counts : countsByMonth.values()) {
+			size += counts.size();
+		}
+		return size;
+	}
+
+	public String toString() {
+		return "Counts = " + size() + ", database lookups = " + getDatabaseLookupCount();
+	}
+
+	private Map<Key, AtomicInteger> countsOf(int month) {
+		Map<Key, AtomicInteger> counts = countsByMonth.get(month);
+		if (counts == null) {
+			dropMonthsBeforePrevious();
+			counts = countsByMonth.computeIfAbsent(month, m -> new ConcurrentHashMap<Key, AtomicInteger>());
+		}
+		return counts;
+	}
+
+	private void dropMonthsBeforePrevious() {
+		SimpleDate today = SimpleDate.today();
+		int earliest = monthOf(today.getYear(), today.getMonth()) - 1;
+		if (earliest > earliestMonth) {
+			earliestMonth = earliest;
+			countsByMonth.keySet().removeIf(month -> month < earliest);
+		}
+	}
+
+	/**
+	 * Returns the number of months from the start of year 0 to the given month.
+	 */
+	private static int monthOf(int year, int month) {
+		return year * 12 + month - 1;
+	}
+
+	private static SimpleDate firstDayOf(int month) {
+		return new SimpleDate(month % 12 + 1, 1, month / 12);
+	}
+
+	/**
+	 * The rewards counted by one transaction, taken away again when it completes unless they were committed.
+	 */
+	private class TransactionCounts implements TransactionSynchronization {
+
+		private final List<MonthKey> reserved = new ArrayList<MonthKey>();
+
+		private final List<MonthKey> recorded = new ArrayList<MonthKey>();
+
+		// held apart while a transaction of its own suspends this one
+		public void suspend() {
+			TransactionSynchronizationManager.unbindResource(MonthlyRewardCounts.this);
+		}
+
+		public void resume() {
+			TransactionSynchronizationManager.bindResource(MonthlyRewardCounts.this, this);
+		}
+
+		public void afterCompletion(int status) {
+			TransactionSynchronizationManager.unbindResourceIfPossible(MonthlyRewardCounts.this);
+			for (MonthKey monthKey : reserved) {
+				add(monthKey, -1);
+			}
+			if (status != STATUS_COMMITTED) {
+				for (MonthKey monthKey : recorded) {
+					add(monthKey, -1);
+				}
+			}
+		}
+	}
+
+	/**
+	 * An account and a restaurant in a month.
+	 */
+	private static final class MonthKey {
+
+		private final int month;
+
+		private final Key key;
+
+		public MonthKey(int month, Key key) {
+			this.month = month;
+			this.key = key;
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof MonthKey)) {
+				return false;
+			}
+			MonthKey other = (MonthKey) o;
+			return month == other.month && key.equals(other.key);
+		}
+
+		public int hashCode() {
+			return 31 * month + key.hashCode();
+		}
+	}
+
+	/**
+	 * An account and a restaurant.
+	 */
+	private static final class Key {
+
+		private final String accountNumber;
+
+		private final String merchantNumber;
+
+		public Key(String accountNumber, String merchantNumber) {
+			this.accountNumber = accountNumber;
+			this.merchantNumber = merchantNumber;
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return accountNumber.equals(other.accountNumber) && merchantNumber.equals(other.merchantNumber);
+		}
+
+		public int hashCode() {
+			return Objects.hash(accountNumber, merchantNumber);
+		}
+	}
+}
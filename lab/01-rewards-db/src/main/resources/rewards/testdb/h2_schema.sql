@@ -0,0 +1,23 @@
+drop table T_ACCOUNT_BENEFICIARY if exists;
+drop table T_ACCOUNT_CREDIT_CARD if exists;
+drop table T_ACCOUNT if exists;
+drop table T_RESTAURANT if exists;
+drop table T_REWARD if exists;
+drop sequence S_REWARD_CONFIRMATION_NUMBER if exists;
+drop table DUAL_REWARD_CONFIRMATION_NUMBER if exists;
+
+create table T_ACCOUNT (ID integer generated by default as identity (start with 0) primary key, NUMBER varchar(9), NAME varchar(50) not null, VERSION integer default 0 not null, unique(NUMBER));
+create table T_ACCOUNT_CREDIT_CARD (ID integer generated by default as identity (start with 0) primary key, ACCOUNT_ID integer, NUMBER varchar(16), unique(ACCOUNT_ID, NUMBER));
+create table T_ACCOUNT_BENEFICIARY (ID integer generated by default as identity (start with 0) primary key, ACCOUNT_ID integer, NAME varchar(50), ALLOCATION_PERCENTAGE decimal(3,2) not null, SAVINGS decimal(8,2) not null, unique(ACCOUNT_ID, NAME));
+create table T_RESTAURANT (ID integer generated by default as identity (start with 0) primary key, MERCHANT_NUMBER varchar(10) not null, NAME varchar(80) not null, BENEFIT_PERCENTAGE decimal(3,2) not null, BENEFIT_AVAILABILITY_POLICY varchar(1) not null, MAX_REWARDS_PER_MONTH integer, LAST_MODIFIED timestamp default current_timestamp on update current_timestamp not null, unique(MERCHANT_NUMBER));
+create table T_REWARD (ID integer generated by default as identity (start with 0) primary key, CONFIRMATION_NUMBER varchar(25) not null, REWARD_AMOUNT decimal(8,2) not null, REWARD_DATE date not null, ACCOUNT_NUMBER varchar(9) not null, DINING_AMOUNT decimal not null, DINING_MERCHANT_NUMBER varchar(10) not null, DINING_DATE date not null, DINING_FINGERPRINT varchar(32), unique(CONFIRMATION_NUMBER), unique(DINING_FINGERPRINT));
+create index IX_RESTAURANT_LAST_MODIFIED on T_RESTAURANT(LAST_MODIFIED);
+create index IX_REWARD_ACCOUNT_DINING_DATE on T_REWARD(ACCOUNT_NUMBER, DINING_DATE desc, ID desc);
+create index IX_REWARD_MERCHANT_DINING_DATE on T_REWARD(DINING_MERCHANT_NUMBER, DINING_DATE desc, ID desc);
+
+create sequence S_REWARD_CONFIRMATION_NUMBER start with 1;
+create table DUAL_REWARD_CONFIRMATION_NUMBER (ZERO integer);
+insert into DUAL_REWARD_CONFIRMATION_NUMBER values (0);
+       
+alter table T_ACCOUNT_CREDIT_CARD add constraint FK_ACCOUNT_CREDIT_CARD foreign key (ACCOUNT_ID) references T_ACCOUNT(ID) on delete cascade;
+alter table T_ACCOUNT_BENEFICIARY add constraint FK_ACCOUNT_BENEFICIARY foreign key (ACCOUNT_ID) references T_ACCOUNT(ID) on delete cascade;
\ No newline at end of file
@@ -0,0 +1,55 @@
+package config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the bounded regions of the in-memory second-level cache, on a clock the test moves by hand.
+ */
+public class InMemoryRegionFactoryTests {
+
+	private long now;
+
+	private InMemoryRegionFactory.BoundedStorageAccess region = new InMemoryRegionFactory.BoundedStorageAccess(2, 100,
+			() -> now);
+
+	@Test
+	public void testLeastRecentlyUsedEntryEvicted() {
+		region.putIntoCache("a", "A", null);
+		region.putIntoCache("b", "B", null);
+		assertEquals("A", region.getFromCache("a", null));
+
+		region.putIntoCache("c", "C", null);
+
+		assertEquals(2, region.size());
+		assertEquals("A", region.getFromCache("a", null));
+		assertNull(region.getFromCache("b", null));
+		assertEquals("C", region.getFromCache("c", null));
+	}
+
+	@Test
+	public void testEntryExpiresAfterTimeToLive() {
+		region.putIntoCache("a", "A", null);
+		now = 99;
+		assertTrue(region.contains("a"));
+		assertEquals("A", region.getFromCache("a", null));
+
+		now = 100;
+		assertFalse(region.contains("a"));
+		assertNull(region.getFromCache("a", null));
+		assertEquals(0, region.size());
+	}
+
+	@Test
+	public void testPutRestartsTimeToLive() {
+		region.putIntoCache("a", "A", null);
+		now = 50;
+		region.putIntoCache("a", "A2", null);
+		now = 120;
+		assertEquals("A2", region.getFromCache("a", null));
+	}
+}
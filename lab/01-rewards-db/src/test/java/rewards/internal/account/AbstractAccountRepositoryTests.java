@@ -6,6 +6,9 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Arrays;
+import java.util.Map;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 
@@ -54,4 +57,18 @@ public abstract class AbstractAccountRepositoryTests {
 		assertEquals(Percentage.valueOf("50%"),
 				b2.getAllocationPercentage(), "wrong allocation percentage");
 	}
+
+	@Test
+	@Transactional
+	public void findByCreditCards() {
+		Map<String, Account> accounts = accountRepository.findByCreditCards(
+				Arrays.asList("1234123412341234", "1234123412340003", "bogus"));
+
+		assertEquals(2, accounts.size(), "wrong number of accounts");
+		Account account = accounts.get("1234123412341234");
+		assertEquals("123456789", account.getNumber(), "wrong account number");
+		assertEquals(2, account.getBeneficiaries().size(), "wrong beneficiary collection size");
+		assertEquals(4, accounts.get("1234123412340003").getBeneficiaries().size(),
+				"wrong beneficiary collection size");
+	}
 }
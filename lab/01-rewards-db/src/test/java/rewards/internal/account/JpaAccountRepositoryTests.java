@@ -8,6 +8,7 @@ import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.DefaultTransactionDefinition;
 import utils.DataManagementSetup;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
@@ -40,6 +41,18 @@ public class JpaAccountRepositoryTests extends AbstractAccountRepositoryTests {
 		assertTrue(accountRepository instanceof JpaAccountRepository, "JPA expected");
 	}
 
+	@Test
+	public void findByCreditCardThroughIndex() {
+		CreditCardIndex index = new CreditCardIndex(100);
+		((JpaAccountRepository) accountRepository).enableCreditCardIndex(index);
+		assertEquals(21, index.size(), "wrong number of cards indexed");
+
+		Account account = accountRepository.findByCreditCard("1234123412341234");
+		assertEquals("123456789", account.getNumber(), "wrong account number");
+		assertEquals(2, account.getBeneficiaries().size(), "wrong beneficiary collection size");
+		assertEquals(1, index.getHitCount(), "lookup should have hit the index");
+	}
+
 	@AfterEach
 	public void tearDown() throws Exception {
 		// rollback the transaction to avoid corrupting other tests
@@ -2,12 +2,18 @@ package rewards.internal.restaurant;
 
 import config.AppConfig;
 import config.DbConfig;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import javax.persistence.EntityManagerFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
@@ -27,4 +33,26 @@ public class JpaRestaurantRepositoryIntegrationTests extends AbstractRestaurantR
                 , "JPA expected but found " + restaurantRepository.getInfo());
     }
 
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    public void testLookupsCachedAfterWarmUp() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        try {
+            // each lookup outside a transaction runs in a new entity manager
+            restaurantRepository.findByMerchantNumber("1234567890");
+            statistics.clear();
+            for (int i = 0; i < 3; i++) {
+                assertEquals("AppleBees", restaurantRepository.findByMerchantNumber("1234567890").getName());
+            }
+            assertEquals(0, statistics.getPrepareStatementCount(), "no SQL expected once warm");
+            assertEquals(3, statistics.getQueryCacheHitCount());
+            assertEquals(3, statistics.getSecondLevelCacheHitCount());
+        } finally {
+            statistics.setStatisticsEnabled(false);
+        }
+    }
+
 }
@@ -4,10 +4,16 @@ import common.money.MonetaryAmount;
 import common.money.Percentage;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
 import rewards.Dining;
 import rewards.internal.account.Account;
+import rewards.internal.reward.MonthlyRewardCounts;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 /**
  * Unit tests for exercising the behavior of the Restaurant aggregate entity. A restaurant calculates a benefit to award
@@ -49,6 +55,55 @@ public class RestaurantTests {
 		assertEquals(MonetaryAmount.valueOf("0.00"), benefit);
 	}
 
+	@Test
+	public void testWeekdaysOnlyPolicy() {
+		restaurant.setDbBenefitAvailabilityPolicy("W");
+		assertEquals("W", restaurant.getDbBenefitAvailabilityPolicy());
+		// 12/29/1977 was a Thursday
+		assertEquals(MonetaryAmount.valueOf("8.00"), restaurant.calculateBenefitFor(account,
+				Dining.createDining("100.00", "1234123412341234", "1234567890", 12, 29, 1977)));
+		assertEquals(MonetaryAmount.valueOf("0.00"), restaurant.calculateBenefitFor(account,
+				Dining.createDining("100.00", "1234123412341234", "1234567890", 12, 31, 1977)));
+	}
+
+	@Test
+	public void testMaxRewardsPerMonthPolicy() {
+		MonthlyRewardCounts counts = new MonthlyRewardCounts(new EmbeddedDatabaseBuilder().generateUniqueName(true)
+				.addScript("/rewards/testdb/schema.sql")
+				.build());
+		restaurant.setDbBenefitAvailabilityPolicy("M");
+		restaurant.setMaxRewardsPerMonth(1);
+		assertEquals("M", restaurant.getDbBenefitAvailabilityPolicy());
+		assertThrows(IllegalStateException.class, () -> restaurant.calculateBenefitFor(account, dining));
+
+		restaurant.setMonthlyRewardCounts(counts);
+		assertEquals(MonetaryAmount.valueOf("8.00"), restaurant.calculateBenefitFor(account, dining));
+		counts.add("123456789", "1234567890", dining.getDate(), 1);
+		assertEquals(MonetaryAmount.valueOf("0.00"), restaurant.calculateBenefitFor(account, dining));
+	}
+
+	@Test
+	public void testMaxRewardsPerMonthReservedWithinTransaction() {
+		MonthlyRewardCounts counts = new MonthlyRewardCounts(new EmbeddedDatabaseBuilder().generateUniqueName(true)
+				.addScript("/rewards/testdb/schema.sql")
+				.build());
+		restaurant.setDbBenefitAvailabilityPolicy("M");
+		restaurant.setMaxRewardsPerMonth(1);
+		restaurant.setMonthlyRewardCounts(counts);
+
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			assertEquals(MonetaryAmount.valueOf("8.00"), restaurant.calculateBenefitFor(account, dining));
+			// the first reward is reserved until the transaction completes
+			assertEquals(MonetaryAmount.valueOf("0.00"), restaurant.calculateBenefitFor(account, dining));
+			TransactionSynchronizationUtils.invokeAfterCompletion(TransactionSynchronizationManager
+					.getSynchronizations(), TransactionSynchronization.STATUS_ROLLED_BACK);
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+		assertEquals(0, counts.getCount("123456789", "1234567890", dining.getDate()));
+	}
+
 	/**
 	 * A simple "dummy" benefit availability policy containing a single flag used to determine if benefit is available.
 	 * Only useful for testing--a real availability policy might consider many factors such as the day of week of the
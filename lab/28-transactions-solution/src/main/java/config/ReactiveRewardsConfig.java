@@ -0,0 +1,64 @@
+package config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.ReactiveTransactionManager;
+
+import io.r2dbc.spi.ConnectionFactory;
+import rewards.ReactiveRewardNetwork;
+import rewards.internal.ReactiveRewardNetworkImpl;
+import rewards.internal.account.R2dbcAccountRepository;
+import rewards.internal.account.ReactiveAccountRepository;
+import rewards.internal.restaurant.R2dbcRestaurantRepository;
+import rewards.internal.restaurant.ReactiveRestaurantRepository;
+import rewards.internal.reward.MonthlyRewardCounts;
+import rewards.internal.reward.R2dbcRewardRepository;
+import rewards.internal.reward.ReactiveRewardRepository;
+
+
+@Configuration
+public class ReactiveRewardsConfig {
+
+	@Autowired
+	ConnectionFactory connectionFactory;
+
+	@Autowired
+	ReactiveTransactionManager transactionManager;
+
+	@Autowired
+	MonthlyRewardCounts monthlyRewardCounts;
+
+	@Bean
+	public ReactiveRewardNetwork reactiveRewardNetwork(){
+		return new ReactiveRewardNetworkImpl(
+			reactiveAccountRepository(), 
+			reactiveRestaurantRepository(), 
+			reactiveRewardRepository(),
+			transactionManager);
+	}
+	
+	@Bean
+	public ReactiveAccountRepository reactiveAccountRepository(){
+		R2dbcAccountRepository repository = new R2dbcAccountRepository();
+		repository.setConnectionFactory(connectionFactory);
+		return repository;
+	}
+	
+	@Bean
+	public ReactiveRestaurantRepository reactiveRestaurantRepository(){
+		R2dbcRestaurantRepository repository = new R2dbcRestaurantRepository();
+		repository.setConnectionFactory(connectionFactory);
+		repository.setMonthlyRewardCounts(monthlyRewardCounts);
+		return repository;
+	}
+	
+	@Bean
+	public ReactiveRewardRepository reactiveRewardRepository(){
+		R2dbcRewardRepository repository = new R2dbcRewardRepository();
+		repository.setConnectionFactory(connectionFactory);
+		repository.setMonthlyRewardCounts(monthlyRewardCounts);
+		return repository;
+	}
+	
+}
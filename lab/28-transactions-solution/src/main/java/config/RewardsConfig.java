@@ -1,19 +1,39 @@
 package config;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+
 import javax.sql.DataSource;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Primary;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 
 import rewards.RewardNetwork;
+import rewards.internal.LockingRewardNetwork;
+import rewards.internal.RetryingRewardNetwork;
 import rewards.internal.RewardNetworkImpl;
+import rewards.internal.StripedLocks;
 import rewards.internal.account.AccountRepository;
+import rewards.internal.account.CachingAccountRepository;
+import rewards.internal.account.CreditCardIndex;
 import rewards.internal.account.JdbcAccountRepository;
+import rewards.internal.account.WriteBehindAccountRepository;
 import rewards.internal.restaurant.JdbcRestaurantRepository;
+import rewards.internal.restaurant.RefreshingRestaurantRepository;
 import rewards.internal.restaurant.RestaurantRepository;
+import rewards.internal.reward.ConfirmationNumberAllocator;
+import rewards.internal.reward.DuplicateDiningFilter;
 import rewards.internal.reward.JdbcRewardRepository;
+import rewards.internal.reward.JournalingRewardRepository;
+import rewards.internal.reward.MonthlyRewardCounts;
+import rewards.internal.reward.RewardJournal;
 import rewards.internal.reward.RewardRepository;
 
 
@@ -23,34 +43,176 @@ public class RewardsConfig {
 
 	@Autowired
 	DataSource dataSource;
+
+	@Autowired
+	PlatformTransactionManager transactionManager;
+
+	// 0 to check every dining against T_REWARD, without an in-memory pre-filter
+	@Value("${rewards.duplicates.expected-dinings:0}")
+	long expectedDinings;
+
+	@Value("${rewards.duplicates.false-positive-rate:0.001}")
+	double duplicateFalsePositiveRate;
+
+	@Value("${rewards.savings.write-behind:false}")
+	boolean savingsWriteBehind;
+
+	@Value("${rewards.savings.max-staleness-millis:1000}")
+	long savingsMaxStalenessMillis;
+
+	@Value("${rewards.savings.max-pending-accounts:1000}")
+	int savingsMaxPendingAccounts;
+
+	@Value("${rewards.savings.delta-updates:false}")
+	boolean savingsDeltaUpdates;
+
+	@Value("${rewards.accounts.credit-card-index:false}")
+	boolean creditCardIndex;
+
+	@Value("${rewards.accounts.expected-credit-cards:100000}")
+	int expectedCreditCards;
+
+	// above 0 to cache accounts, checking their VERSION on each lookup
+	@Value("${rewards.accounts.cache-size:0}")
+	int accountCacheSize;
+
+	@Value("${rewards.retry.max-attempts:3}")
+	int retryMaxAttempts;
+
+	// above 0 to serialize each account's rewards in memory; for batch rewards, at least eight times their chunk size
+	// (1000 by default), as a chunk locks the stripes of all its accounts at once
+	@Value("${rewards.accounts.lock-stripes:0}")
+	int accountLockStripes;
+
+	@Value("${rewards.accounts.lock-timeout-millis:10000}")
+	long accountLockTimeoutMillis;
+
+	// above 0 to hold restaurants in memory, refreshed in the background; changes are seen after up to an interval
+	@Value("${rewards.restaurants.refresh-interval-millis:0}")
+	long restaurantRefreshIntervalMillis;
+
+	// above 0 to hand out confirmation numbers from reserved blocks; at most the increment of
+	// S_REWARD_CONFIRMATION_NUMBER, which rewards/testdb/confirmation_number_blocks.sql sets to 1000. Not on MySQL
+	@Value("${rewards.confirmation-numbers.block-size:0}")
+	int confirmationNumberBlockSize;
+
+	@Value("${rewards.reward-inserts.batch-size:100}")
+	int rewardInsertBatchSize;
+
+	// above 1 only for databases supporting multi-row VALUES, such as H2, HSQLDB and MySQL
+	@Value("${rewards.reward-inserts.rows-per-insert:1}")
+	int rewardRowsPerInsert;
+
+	// empty to insert rewards directly into T_REWARD
+	@Value("${rewards.journal.directory:}")
+	String journalDirectory;
+
+	@Value("${rewards.journal.segment-size:67108864}")
+	long journalSegmentSize;
+
+	@Value("${rewards.journal.apply-interval-millis:100}")
+	long journalApplyIntervalMillis;
 		
 	@Bean
 	public RewardNetwork rewardNetwork(){
-		return new RewardNetworkImpl(
+		RewardNetworkImpl rewardNetwork = new RewardNetworkImpl(
 			accountRepository(), 
 			restaurantRepository(), 
 			rewardRepository());
+		rewardNetwork.setTransactionManager(transactionManager);
+		if (accountLockStripes > 0) {
+			rewardNetwork.setAccountLocks(accountLocks());
+		}
+		return rewardNetwork;
+	}
+	
+	@Bean
+	@Primary
+	public RewardNetwork retryingRewardNetwork(){
+		// rewardNetwork() returns the transactional proxy, so each attempt runs in a new transaction
+		RewardNetwork transactionalRewardNetwork = rewardNetwork();
+		if (accountLockStripes > 0) {
+			// the lock is taken before the transaction begins, so waiting threads hold no connection
+			transactionalRewardNetwork = new LockingRewardNetwork(transactionalRewardNetwork, accountLocks());
+		}
+		RetryingRewardNetwork rewardNetwork = new RetryingRewardNetwork(transactionalRewardNetwork);
+		rewardNetwork.setMaxAttempts(retryMaxAttempts);
+		return rewardNetwork;
+	}
+	
+	@Bean
+	@Lazy
+	public StripedLocks accountLocks(){
+		// only created with rewards.accounts.lock-stripes above 0
+		StripedLocks accountLocks = new StripedLocks(accountLockStripes);
+		accountLocks.setTimeoutMillis(accountLockTimeoutMillis);
+		return accountLocks;
 	}
 	
 	@Bean
 	public AccountRepository accountRepository(){
 		JdbcAccountRepository repository = new JdbcAccountRepository();
 		repository.setDataSource(dataSource);
-		return repository;
+		repository.setDeltaUpdates(savingsDeltaUpdates);
+		if (creditCardIndex) {
+			repository.enableCreditCardIndex(new CreditCardIndex(expectedCreditCards));
+		}
+		AccountRepository accountRepository = repository;
+		if (accountCacheSize > 0) {
+			accountRepository = new CachingAccountRepository(repository, dataSource, accountCacheSize);
+		}
+		if (!savingsWriteBehind) {
+			return accountRepository;
+		}
+		// pending savings are flushed by the inferred shutdown() destroy method
+		WriteBehindAccountRepository writeBehind = new WriteBehindAccountRepository(
+			accountRepository, dataSource, transactionManager, savingsMaxStalenessMillis);
+		writeBehind.setMaxPendingAccounts(savingsMaxPendingAccounts);
+		return writeBehind;
 	}
 	
 	@Bean
 	public RestaurantRepository restaurantRepository(){
 		JdbcRestaurantRepository repository = new JdbcRestaurantRepository();
 		repository.setDataSource(dataSource);
-		return repository;
+		repository.setMonthlyRewardCounts(monthlyRewardCounts());
+		if (restaurantRefreshIntervalMillis <= 0) {
+			return repository;
+		}
+		// periodic refreshes are stopped by the inferred shutdown() destroy method
+		return new RefreshingRestaurantRepository(repository, restaurantRefreshIntervalMillis);
 	}
 	
 	@Bean
 	public RewardRepository rewardRepository(){
 		JdbcRewardRepository repository = new JdbcRewardRepository();
 		repository.setDataSource(dataSource);
-		return repository;
+		if (expectedDinings > 0) {
+			repository.enableDuplicateDetection(new DuplicateDiningFilter(expectedDinings, duplicateFalsePositiveRate));
+		}
+		repository.setMonthlyRewardCounts(monthlyRewardCounts());
+		if (confirmationNumberBlockSize > 0) {
+			repository.setConfirmationNumberAllocator(
+				new ConfirmationNumberAllocator(dataSource, confirmationNumberBlockSize));
+		}
+		repository.setBatchSize(rewardInsertBatchSize);
+		repository.setRowsPerInsert(rewardRowsPerInsert);
+		if (journalDirectory.isEmpty()) {
+			return repository;
+		}
+		// the journal is applied and closed by the inferred shutdown() destroy method
+		RewardJournal journal;
+		try {
+			journal = new RewardJournal(Paths.get(journalDirectory), journalSegmentSize);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not open the reward journal in " + journalDirectory, e);
+		}
+		return new JournalingRewardRepository(repository, journal, transactionManager, journalApplyIntervalMillis);
+	}
+	
+	@Bean
+	public MonthlyRewardCounts monthlyRewardCounts(){
+		return new MonthlyRewardCounts(dataSource);
 	}
 	
 }
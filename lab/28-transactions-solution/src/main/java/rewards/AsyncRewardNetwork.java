@@ -0,0 +1,29 @@
+package rewards;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Rewards member accounts for dining without blocking the caller until the reward has been committed.
+ *
+ * Intended for front-ends such as point-of-sale gateways whose request threads must not pile up when the database
+ * slows down. Implementations accept only a bounded amount of outstanding work: once that limit is reached, new
+ * dinings are rejected immediately rather than queued without limit, telling the submitter to slow down or retry
+ * later.
+ *
+ * @see RewardNetwork
+ */
+public interface AsyncRewardNetwork {
+
+	/**
+	 * Submit a dining to be rewarded asynchronously.
+	 *
+	 * The eligibility rules are the same as for {@link RewardNetwork#rewardAccountFor(Dining)}. If the dining is not
+	 * eligible, or the reward fails, the returned future completes exceptionally with the cause.
+	 *
+	 * @param dining a charge made to a credit card for dining at a restaurant
+	 * @return a future completed with the confirmation of the reward once it has been committed
+	 * @throws org.springframework.core.task.TaskRejectedException if the network is saturated and cannot accept
+	 * more work at the moment
+	 */
+	public CompletableFuture<RewardConfirmation> submit(Dining dining);
+}
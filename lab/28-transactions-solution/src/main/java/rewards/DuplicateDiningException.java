@@ -0,0 +1,32 @@
+package rewards;
+
+import org.springframework.dao.DuplicateKeyException;
+
+/**
+ * Thrown when asked to reward a dining that has already been rewarded, typically because a processor resent a
+ * settlement record.
+ *
+ * Extends {@link DuplicateKeyException} so that callers can handle it the same way as the unique key violation the
+ * database raises when two copies of a dining race past the up-front check.
+ */
+@SuppressWarnings("serial")
+public class DuplicateDiningException extends DuplicateKeyException {
+
+	private transient Dining dining;
+
+	/**
+	 * Creates a new exception.
+	 * @param dining the dining that was already rewarded
+	 */
+	public DuplicateDiningException(Dining dining) {
+		super(dining + " has already been rewarded");
+		this.dining = dining;
+	}
+
+	/**
+	 * Returns the dining that was already rewarded.
+	 */
+	public Dining getDining() {
+		return dining;
+	}
+}
@@ -0,0 +1,41 @@
+package rewards;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Rewards member accounts for dining without blocking a thread per reward in flight.
+ *
+ * Intended for reactive ingestion services that receive dinings as a stream. Every dining is rewarded in its own
+ * (reactive) transaction, and only a bounded number of dinings are rewarded at once so that the stream is consumed no
+ * faster than the database can keep up with.
+ *
+ * @see RewardNetwork
+ */
+public interface ReactiveRewardNetwork {
+
+	/**
+	 * Reward an account for dining once the returned Mono is subscribed to.
+	 *
+	 * The eligibility rules are the same as for {@link RewardNetwork#rewardAccountFor(Dining)}. If the dining is not
+	 * eligible, or the reward fails, the Mono signals the cause as an error.
+	 *
+	 * @param dining a charge made to a credit card for dining at a restaurant
+	 * @return the confirmation of the reward, emitted once it has been committed
+	 */
+	public Mono<RewardConfirmation> rewardAccountFor(Dining dining);
+
+	/**
+	 * Reward accounts for a stream of dinings.
+	 *
+	 * Dinings charged to the same credit card are rewarded one after the other, in the order they arrive; dinings
+	 * charged to different cards may be rewarded concurrently, so results are emitted in the order the rewards
+	 * complete. A dining that cannot be rewarded, such as a duplicate or one charged to an unknown card, has its
+	 * transaction rolled back and is reported as a failed result, as with
+	 * {@link RewardNetwork#rewardAccountsFor(java.util.Collection)}; the other dinings are still rewarded.
+	 *
+	 * @param dinings the charges made to credit cards for dining at restaurants
+	 * @return the result of each reward, emitted as it is committed or rolled back
+	 */
+	public Flux<RewardResult> rewardAccountsFor(Flux<Dining> dinings);
+}
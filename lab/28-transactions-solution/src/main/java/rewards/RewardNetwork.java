@@ -1,5 +1,8 @@
 package rewards;
 
+import java.util.Collection;
+import java.util.List;
+
 /**
  * Rewards a member account for dining at a restaurant.
  * 
@@ -25,4 +28,15 @@ public interface RewardNetwork {
 	 * @return confirmation of the reward
 	 */
 	public RewardConfirmation rewardAccountFor(Dining dining);
+
+	/**
+	 * Reward accounts for a batch of dinings, such as the contents of an end-of-day settlement file.
+	 *
+	 * Each dining is subject to the same eligibility rules as {@link #rewardAccountFor(Dining)}. A dining that cannot
+	 * be rewarded does not prevent the others from being rewarded; its failure is reported in its result instead.
+	 *
+	 * @param dinings the charges made to credit cards for dining at restaurants
+	 * @return the outcome of each dining, in the iteration order of the given collection
+	 */
+	public List<RewardResult> rewardAccountsFor(Collection<Dining> dinings);
 }
\ No newline at end of file
@@ -0,0 +1,74 @@
+package rewards;
+
+/**
+ * The outcome of rewarding a single dining as part of a batch. Either the dining was rewarded and a confirmation is
+ * available, or the reward failed and the cause of the failure is available.
+ *
+ * A value object. Immutable.
+ */
+public class RewardResult {
+
+	private Dining dining;
+
+	private RewardConfirmation confirmation;
+
+	private RuntimeException failure;
+
+	private RewardResult(Dining dining, RewardConfirmation confirmation, RuntimeException failure) {
+		this.dining = dining;
+		this.confirmation = confirmation;
+		this.failure = failure;
+	}
+
+	/**
+	 * Creates the result of a dining that was rewarded successfully.
+	 * @param dining the dining that was rewarded
+	 * @param confirmation confirmation of the reward
+	 * @return the successful result
+	 */
+	public static RewardResult confirmed(Dining dining, RewardConfirmation confirmation) {
+		return new RewardResult(dining, confirmation, null);
+	}
+
+	/**
+	 * Creates the result of a dining that could not be rewarded.
+	 * @param dining the dining that could not be rewarded
+	 * @param failure the reason the reward failed
+	 * @return the failed result
+	 */
+	public static RewardResult failed(Dining dining, RuntimeException failure) {
+		return new RewardResult(dining, null, failure);
+	}
+
+	/**
+	 * Returns the dining this result is for.
+	 */
+	public Dining getDining() {
+		return dining;
+	}
+
+	/**
+	 * Returns true if the dining was rewarded, false if the reward failed.
+	 */
+	public boolean isConfirmed() {
+		return confirmation != null;
+	}
+
+	/**
+	 * Returns the confirmation of the reward, or null if the reward failed.
+	 */
+	public RewardConfirmation getConfirmation() {
+		return confirmation;
+	}
+
+	/**
+	 * Returns the reason the reward failed, or null if the dining was rewarded.
+	 */
+	public RuntimeException getFailure() {
+		return failure;
+	}
+
+	public String toString() {
+		return isConfirmed() ? "Confirmed " + confirmation + " for " + dining : "Failed " + dining + ": " + failure;
+	}
+}
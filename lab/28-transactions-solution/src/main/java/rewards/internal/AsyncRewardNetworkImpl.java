@@ -0,0 +1,184 @@
+package rewards.internal;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import rewards.AsyncRewardNetwork;
+import rewards.Dining;
+import rewards.RewardConfirmation;
+import rewards.RewardNetwork;
+
+/**
+ * Rewards dinings on a bounded pool of worker threads, each calling a blocking {@link RewardNetwork}.
+ *
+ * Both the number of workers and the number of dinings waiting for a worker are fixed. When every worker is busy and
+ * the queue is full, {@link #submit(Dining)} throws a {@link TaskRejectedException} instead of blocking, so that a
+ * slow database pushes back on submitters instead of tying up their threads. Queue depth, rejections and latencies
+ * are exposed so submitters and monitoring can tell when the network is saturated.
+ */
+public class AsyncRewardNetworkImpl implements AsyncRewardNetwork {
+
+	private RewardNetwork rewardNetwork;
+
+	private ThreadPoolExecutor executor;
+
+	private int queueCapacity;
+
+	private final LongAdder rejected = new LongAdder();
+
+	private final LongAdder failed = new LongAdder();
+
+	private final LatencyStats queueWait = new LatencyStats();
+
+	private final LatencyStats latency = new LatencyStats();
+
+	/**
+	 * Creates a new asynchronous reward network.
+	 * @param rewardNetwork the (transactional) reward network the workers call
+	 * @param workers the number of worker threads, typically no more than the number of pooled database connections
+	 * @param queueCapacity the maximum number of dinings waiting for a worker before submissions are rejected
+	 */
+	public AsyncRewardNetworkImpl(RewardNetwork rewardNetwork, int workers, int queueCapacity) {
+		this(rewardNetwork, workers, queueCapacity, "reward-worker-");
+	}
+
+	/**
+	 * Creates a new asynchronous reward network.
+	 * @param rewardNetwork the (transactional) reward network the workers call
+	 * @param workers the number of worker threads, typically no more than the number of pooled database connections
+	 * @param queueCapacity the maximum number of dinings waiting for a worker before submissions are rejected
+	 * @param threadNamePrefix the prefix of the names of the worker threads
+	 */
+	public AsyncRewardNetworkImpl(RewardNetwork rewardNetwork, int workers, int queueCapacity,
+			String threadNamePrefix) {
+		if (workers < 1 || queueCapacity < 1) {
+			throw new IllegalArgumentException("Workers and queue capacity must be positive; your values were "
+					+ workers + " and " + queueCapacity);
+		}
+		this.rewardNetwork = rewardNetwork;
+		this.queueCapacity = queueCapacity;
+		this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queueCapacity), new CustomizableThreadFactory(threadNamePrefix),
+				new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	public CompletableFuture<RewardConfirmation> submit(Dining dining) {
+		CompletableFuture<RewardConfirmation> future = new CompletableFuture<RewardConfirmation>();
+		long submitted = System.nanoTime();
+		try {
+			executor.execute(() -> reward(dining, future, submitted));
+		} catch (RejectedExecutionException e) {
+			rejected.increment();
+			throw new TaskRejectedException("Reward network saturated: " + getQueueDepth() + " of " + queueCapacity
+					+ " queued dinings; rejected " + dining, e);
+		}
+		return future;
+	}
+
+	private void reward(Dining dining, CompletableFuture<RewardConfirmation> future, long submitted) {
+		queueWait.recordSince(submitted);
+		RewardConfirmation confirmation;
+		try {
+			confirmation = rewardNetwork.rewardAccountFor(dining);
+		} catch (Throwable e) {
+			failed.increment();
+			latency.recordSince(submitted);
+			future.completeExceptionally(e);
+			if (e instanceof Error) {
+				// the submitter has its failure, the pool replaces the worker
+				throw (Error) e;
+			}
+			return;
+		}
+		latency.recordSince(submitted);
+		future.complete(confirmation);
+	}
+
+	/**
+	 * Returns the number of dinings waiting for a worker.
+	 */
+	public int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * Returns the maximum number of dinings that may wait for a worker.
+	 */
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	/**
+	 * Returns true if every worker is busy and the queue is full, meaning the next submission will likely be rejected.
+	 */
+	public boolean isSaturated() {
+		return executor.getActiveCount() >= executor.getMaximumPoolSize()
+				&& executor.getQueue().remainingCapacity() == 0;
+	}
+
+	/**
+	 * Returns the number of workers currently rewarding a dining.
+	 */
+	public int getActiveCount() {
+		return executor.getActiveCount();
+	}
+
+	/**
+	 * Returns the number of submissions rejected because the network was saturated.
+	 */
+	public long getRejectedCount() {
+		return rejected.sum();
+	}
+
+	/**
+	 * Returns the number of accepted dinings whose reward failed.
+	 */
+	public long getFailedCount() {
+		return failed.sum();
+	}
+
+	/**
+	 * Returns the time accepted dinings spent waiting in the queue for a worker.
+	 */
+	public LatencyStats getQueueWaitStats() {
+		return queueWait;
+	}
+
+	/**
+	 * Returns the time from submission until the reward was committed or failed.
+	 */
+	public LatencyStats getLatencyStats() {
+		return latency;
+	}
+
+	/**
+	 * Stops accepting dinings and waits for the queued ones to be rewarded.
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public void shutdown() throws InterruptedException {
+		stopAccepting();
+		awaitTermination();
+	}
+
+	/**
+	 * Stops accepting dinings, without waiting for the queued ones.
+	 */
+	void stopAccepting() {
+		executor.shutdown();
+	}
+
+	/**
+	 * Waits for the queued dinings to be rewarded once no more are accepted.
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	void awaitTermination() throws InterruptedException {
+		executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+	}
+}
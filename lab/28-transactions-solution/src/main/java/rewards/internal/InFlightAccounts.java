@@ -0,0 +1,154 @@
+package rewards.internal;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import rewards.internal.account.Account;
+
+/**
+ * The accounts of dinings that are in a {@link PipelinedRewardNetwork} but not yet persisted.
+ *
+ * While an account has a dining in flight, later dinings of the same account share its in-memory Account instead of
+ * loading their own copy, which would not include the credits still to be persisted and would overwrite them. An
+ * account is tracked by its number, so dinings charged to different cards of one account share it too, and is
+ * forgotten once its last dining in flight has been persisted.
+ *
+ * An account loaded while another card of it had a dining being persisted may miss that dining's credits. Such a load
+ * is detected by remembering which accounts were recently forgotten, and must be repeated.
+ *
+ * Thread-safe.
+ */
+class InFlightAccounts {
+
+	private static final int RECENTLY_FORGOTTEN = 1024;
+
+	private Map<String, Entry> entriesByAccountNumber = new HashMap<String, Entry>();
+
+	private Map<String, Entry> entriesByCreditCard = new HashMap<String, Entry>();
+
+	/**
+	 * The numbers of the most recently forgotten accounts, indexed by forget sequence modulo their count.
+	 */
+	private String[] recentlyForgotten = new String[RECENTLY_FORGOTTEN];
+
+	private long forgetSequence;
+
+	/**
+	 * Returns the account in flight for the given credit card, counting one more dining in flight for it.
+	 * @return the entry of the account, or null if no dining charged to the card is in flight
+	 */
+	synchronized Entry acquire(String creditCardNumber) {
+		Entry entry = entriesByCreditCard.get(creditCardNumber);
+		if (entry != null) {
+			entry.references++;
+		}
+		return entry;
+	}
+
+	/**
+	 * Returns a stamp to take before loading an account, to pass to {@link #acquire(String, Account, long)}.
+	 */
+	synchronized long stamp() {
+		return forgetSequence;
+	}
+
+	/**
+	 * Registers an account just loaded for the given credit card, counting one more dining in flight for it. If the
+	 * account is already in flight through another card, the account in flight is kept and the loaded one discarded.
+	 * @param stamp the {@link #stamp()} taken before the account was loaded
+	 * @return the entry of the account, or null if the account was persisted and forgotten while it was being loaded,
+	 * in which case the loaded copy may be stale and must be loaded again
+	 */
+	synchronized Entry acquire(String creditCardNumber, Account loaded, long stamp) {
+		Entry entry = entriesByAccountNumber.get(loaded.getNumber());
+		if (entry == null) {
+			if (forgottenSince(loaded.getNumber(), stamp)) {
+				return null;
+			}
+			entry = new Entry(loaded);
+			entriesByAccountNumber.put(loaded.getNumber(), entry);
+		}
+		entry.creditCards.add(creditCardNumber);
+		entriesByCreditCard.put(creditCardNumber, entry);
+		entry.references++;
+		return entry;
+	}
+
+	private boolean forgottenSince(String accountNumber, long stamp) {
+		if (forgetSequence - stamp > RECENTLY_FORGOTTEN) {
+			// too many forgotten to tell: assume the worst
+			return true;
+		}
+		for (long sequence = stamp; sequence < forgetSequence; sequence++) {
+			if (accountNumber.equals(recentlyForgotten[(int) (sequence % RECENTLY_FORGOTTEN)])) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Counts one dining less in flight for the account, forgetting it after the last one.
+	 */
+	synchronized void release(Entry entry) {
+		if (--entry.references == 0) {
+			forget(entry);
+		}
+	}
+
+	/**
+	 * Forgets the account right away because its in-memory state can no longer be trusted, such as after persisting
+	 * its credits failed. Dinings still holding the entry must reload the account.
+	 */
+	synchronized void evict(Entry entry) {
+		entry.evicted = true;
+		forget(entry);
+	}
+
+	private void forget(Entry entry) {
+		if (entriesByAccountNumber.get(entry.account.getNumber()) == entry) {
+			entriesByAccountNumber.remove(entry.account.getNumber());
+			recentlyForgotten[(int) (forgetSequence++ % RECENTLY_FORGOTTEN)] = entry.account.getNumber();
+		}
+		for (String creditCardNumber : entry.creditCards) {
+			if (entriesByCreditCard.get(creditCardNumber) == entry) {
+				entriesByCreditCard.remove(creditCardNumber);
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of accounts in flight.
+	 */
+	synchronized int size() {
+		return entriesByAccountNumber.size();
+	}
+
+	/**
+	 * An account in flight.
+	 */
+	static class Entry {
+
+		private final Account account;
+
+		private final Set<String> creditCards = new HashSet<String>();
+
+		private int references;
+
+		private volatile boolean evicted;
+
+		private Entry(Account account) {
+			this.account = account;
+		}
+
+		Account getAccount() {
+			return account;
+		}
+
+		boolean isEvicted() {
+			return evicted;
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package rewards.internal;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Accumulates latency samples recorded by concurrent threads, for reporting count, mean and maximum latency.
+ *
+ * Recording a sample is lock-free and cheap enough to be done for every reward. Values read while samples are being
+ * recorded are not an atomic snapshot of each other, which is acceptable for monitoring.
+ */
+public class LatencyStats {
+
+	private final LongAdder count = new LongAdder();
+
+	private final LongAdder totalNanos = new LongAdder();
+
+	private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0L);
+
+	/**
+	 * Records a single latency sample.
+	 * @param nanos the elapsed time in nanoseconds
+	 */
+	public void record(long nanos) {
+		count.increment();
+		totalNanos.add(nanos);
+		maxNanos.accumulate(nanos);
+	}
+
+	/**
+	 * Records the time elapsed since the given start time.
+	 * @param startNanos a start time obtained from {@link System#nanoTime()}
+	 */
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Returns the number of samples recorded.
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * Returns the mean latency in the given unit, or zero if nothing has been recorded.
+	 * @param unit the time unit to report in
+	 */
+	public double getMean(TimeUnit unit) {
+		long samples = count.sum();
+		if (samples == 0) {
+			return 0;
+		}
+		return (double) totalNanos.sum() / samples / unit.toNanos(1);
+	}
+
+	/**
+	 * Returns the maximum latency recorded in the given unit.
+	 * @param unit the time unit to report in
+	 */
+	public long getMax(TimeUnit unit) {
+		return unit.convert(maxNanos.get(), TimeUnit.NANOSECONDS);
+	}
+
+	public String toString() {
+		return "count = " + getCount() + ", mean = " + String.format("%.1f", getMean(TimeUnit.MICROSECONDS))
+				+ "us, max = " + getMax(TimeUnit.MICROSECONDS) + "us";
+	}
+}
@@ -0,0 +1,79 @@
+package rewards.internal;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import rewards.Dining;
+import rewards.RewardConfirmation;
+import rewards.RewardNetwork;
+import rewards.RewardResult;
+
+/**
+ * Serializes the rewards of each account within this process in front of a transactional reward network, so that
+ * threads rewarding the same account wait in memory rather than on its rows in the database.
+ *
+ * The lock of a dining's account is taken before calling the underlying network, so before its transaction begins and
+ * borrows a connection: a thread waiting for the lock holds no connection. It must therefore be given the
+ * transactional proxy rather than the target object, and is released once the call returns, when the transaction has
+ * completed. Called within a transaction of the caller's, no lock is taken: it would have to be held until that
+ * transaction completes, by a thread already holding a connection and possibly other locks, and the rows of the
+ * account serialize the rewards in the database instead. A lock not free within the timeout of the
+ * {@link StripedLocks} fails the reward with a {@link org.springframework.dao.CannotAcquireLockException}.
+ *
+ * Batch rewards are passed through unchanged: {@link RewardNetworkImpl} takes the locks of each chunk before the
+ * chunk's transaction begins, given the same locks with {@link RewardNetworkImpl#setAccountLocks(StripedLocks)}.
+ */
+public class LockingRewardNetwork implements RewardNetwork {
+
+	private RewardNetwork rewardNetwork;
+
+	private StripedLocks accountLocks;
+
+	private Function<Dining, ?> lockKey;
+
+	/**
+	 * Creates a locking reward network, keying the locks by credit card number.
+	 * @param rewardNetwork the (transactional) reward network to call with the lock held
+	 * @param accountLocks the locks
+	 */
+	public LockingRewardNetwork(RewardNetwork rewardNetwork, StripedLocks accountLocks) {
+		this(rewardNetwork, accountLocks, Dining::getCreditCardNumber);
+	}
+
+	/**
+	 * Creates a locking reward network.
+	 * @param rewardNetwork the (transactional) reward network to call with the lock held
+	 * @param accountLocks the locks
+	 * @param lockKey computes the key of a dining's account, such as its credit card number; when an account has several
+	 * cards, the key must map all of them to the same value to serialize the whole account
+	 */
+	public LockingRewardNetwork(RewardNetwork rewardNetwork, StripedLocks accountLocks, Function<Dining, ?> lockKey) {
+		this.rewardNetwork = rewardNetwork;
+		this.accountLocks = accountLocks;
+		this.lockKey = lockKey;
+	}
+
+	public RewardConfirmation rewardAccountFor(Dining dining) {
+		if (TransactionSynchronizationManager.isActualTransactionActive()) {
+			return rewardNetwork.rewardAccountFor(dining);
+		}
+		StripedLocks.Held held = accountLocks.lock(lockKey.apply(dining));
+		try {
+			return rewardNetwork.rewardAccountFor(dining);
+		} finally {
+			// the underlying network's transaction has completed, so the next reward of the account sees its changes
+			held.close();
+		}
+	}
+
+	public List<RewardResult> rewardAccountsFor(Collection<Dining> dinings) {
+		return rewardNetwork.rewardAccountsFor(dinings);
+	}
+
+	public String toString() {
+		return "Account locks: " + accountLocks;
+	}
+}
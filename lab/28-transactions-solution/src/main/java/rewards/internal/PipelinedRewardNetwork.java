@@ -0,0 +1,534 @@
+package rewards.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import rewards.AccountContribution;
+import rewards.AsyncRewardNetwork;
+import rewards.Dining;
+import rewards.DuplicateDiningException;
+import rewards.RewardConfirmation;
+import rewards.internal.account.Account;
+import rewards.internal.account.AccountRepository;
+import rewards.internal.restaurant.MaxRewardsPerMonth;
+import rewards.internal.restaurant.Restaurant;
+import rewards.internal.restaurant.RestaurantRepository;
+import rewards.internal.reward.RewardRepository;
+
+import common.money.MonetaryAmount;
+
+/**
+ * Rewards dinings in a pipeline of stages, each on its own thread, instead of running every step of a reward serially
+ * on one thread as {@link RewardNetworkImpl} does.
+ *
+ * <ol>
+ * <li><em>lookup</em> loads the account and restaurant of a dining and checks it was not rewarded before;</li>
+ * <li><em>calculate</em> computes the benefit with {@link Restaurant#calculateBenefitFor(Account, Dining)}, except
+ * for restaurants with a {@link MaxRewardsPerMonth} policy;</li>
+ * <li><em>persist</em> computes the benefits left, reserving them against their monthly maximum, distributes the
+ * benefits with {@link Account#makeContribution(MonetaryAmount)} and writes every dining waiting for it in one
+ * transaction, using the batch operations of the repositories.</li>
+ * </ol>
+ *
+ * So while one batch is being persisted, the next dinings are already being looked up, and the busier the database
+ * the larger the batches become. Stages hand dinings over through a ring of slots allocated up front; each stage
+ * follows the one before it around the ring, and a dining is rejected when the ring is full. The occupancy and
+ * latency of every stage are exposed to show which one is the bottleneck. A stage with nothing to do spins briefly,
+ * then parks until the stage before it, or a submission, hands it a dining.
+ *
+ * Dinings of an account already in the pipeline reuse its in-memory account rather than loading one that misses the
+ * credits not yet persisted. Should persisting a batch fail, all of its dinings fail and their accounts are reloaded
+ * for the dinings that follow.
+ */
+public class PipelinedRewardNetwork implements AsyncRewardNetwork {
+
+	/**
+	 * The default number of slots in the ring.
+	 */
+	public static final int DEFAULT_RING_SIZE = 1024;
+
+	/**
+	 * The default maximum number of dinings persisted in one transaction.
+	 */
+	public static final int DEFAULT_MAX_BATCH_SIZE = 256;
+
+	private static final int SPINS_BEFORE_PARKING = 100;
+
+	private AccountRepository accountRepository;
+
+	private RestaurantRepository restaurantRepository;
+
+	private RewardRepository rewardRepository;
+
+	private TransactionTemplate transactionTemplate;
+
+	private Slot[] ring;
+
+	private int mask;
+
+	private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+
+	private final Object submitLock = new Object();
+
+	/**
+	 * The sequence of the last dining submitted. Stage cursors follow it around the ring.
+	 */
+	private final AtomicLong submitted = new AtomicLong(-1);
+
+	private volatile boolean accepting = true;
+
+	private final Stage lookup;
+
+	private final Stage calculate;
+
+	private final Stage persist;
+
+	private final List<Stage> stages;
+
+	private final InFlightAccounts inFlightAccounts = new InFlightAccounts();
+
+	private final Set<Dining> inFlightDinings = ConcurrentHashMap.newKeySet();
+
+	private final LatencyStats latency = new LatencyStats();
+
+	/**
+	 * Creates a pipeline with the default ring size and starts its stages.
+	 * @param accountRepository the repository for loading accounts to reward
+	 * @param restaurantRepository the repository for loading restaurants that determine how much to reward
+	 * @param rewardRepository the repository for recording a record of successful reward transactions
+	 * @param transactionManager the transaction manager each persisted batch runs in a transaction of
+	 */
+	public PipelinedRewardNetwork(AccountRepository accountRepository, RestaurantRepository restaurantRepository,
+			RewardRepository rewardRepository, PlatformTransactionManager transactionManager) {
+		this(accountRepository, restaurantRepository, rewardRepository, transactionManager, DEFAULT_RING_SIZE);
+	}
+
+	/**
+	 * Creates a pipeline and starts its stages.
+	 * @param accountRepository the repository for loading accounts to reward
+	 * @param restaurantRepository the repository for loading restaurants that determine how much to reward
+	 * @param rewardRepository the repository for recording a record of successful reward transactions
+	 * @param transactionManager the transaction manager each persisted batch runs in a transaction of
+	 * @param ringSize the number of dinings the pipeline holds at most, a power of two
+	 */
+	public PipelinedRewardNetwork(AccountRepository accountRepository, RestaurantRepository restaurantRepository,
+			RewardRepository rewardRepository, PlatformTransactionManager transactionManager, int ringSize) {
+		if (ringSize < 1 || Integer.bitCount(ringSize) != 1) {
+			throw new IllegalArgumentException("Ring size must be a power of two; your value was " + ringSize);
+		}
+		this.accountRepository = accountRepository;
+		this.restaurantRepository = restaurantRepository;
+		this.rewardRepository = rewardRepository;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.ring = new Slot[ringSize];
+		for (int i = 0; i < ringSize; i++) {
+			ring[i] = new Slot();
+		}
+		this.mask = ringSize - 1;
+		this.lookup = new Stage("lookup", null, 1, this::lookup);
+		this.calculate = new Stage("calculate", lookup, 1, this::calculate);
+		this.persist = new Stage("persist", calculate, Integer.MAX_VALUE, this::persist);
+		this.stages = Collections.unmodifiableList(Arrays.asList(lookup, calculate, persist));
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("reward-pipeline-");
+		threadFactory.setDaemon(true);
+		for (Stage stage : stages) {
+			stage.thread = threadFactory.createThread(stage);
+			stage.thread.setName("reward-pipeline-" + stage.name);
+			stage.thread.start();
+		}
+	}
+
+	/**
+	 * Sets the maximum number of dinings persisted in one transaction. Defaults to {@link #DEFAULT_MAX_BATCH_SIZE}.
+	 * @param maxBatchSize the batch size, must be positive
+	 */
+	public void setMaxBatchSize(int maxBatchSize) {
+		if (maxBatchSize < 1) {
+			throw new IllegalArgumentException("Max batch size must be positive; your value was " + maxBatchSize);
+		}
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	/**
+	 * Submit a dining to the first stage of the pipeline.
+	 * @throws TaskRejectedException if the ring is full or the pipeline has been shut down
+	 */
+	public CompletableFuture<RewardConfirmation> submit(Dining dining) {
+		CompletableFuture<RewardConfirmation> future = new CompletableFuture<RewardConfirmation>();
+		synchronized (submitLock) {
+			if (!accepting) {
+				throw new TaskRejectedException("Reward pipeline shut down; rejected " + dining);
+			}
+			long sequence = submitted.get() + 1;
+			if (sequence - persist.cursor.get() > ring.length) {
+				throw new TaskRejectedException("Reward pipeline full: " + ring.length + " dinings in flight; rejected "
+						+ dining);
+			}
+			Slot slot = ring[(int) sequence & mask];
+			slot.dining = dining;
+			slot.future = future;
+			slot.submittedNanos = System.nanoTime();
+			submitted.set(sequence);
+		}
+		lookup.wake();
+		return future;
+	}
+
+	/**
+	 * Returns the stages of this pipeline in processing order, for monitoring where dinings queue up.
+	 */
+	public List<Stage> getStages() {
+		return stages;
+	}
+
+	/**
+	 * Returns the time from submission until the reward was committed or failed.
+	 */
+	public LatencyStats getLatencyStats() {
+		return latency;
+	}
+
+	/**
+	 * Stops accepting dinings and waits for the dinings in flight to be rewarded.
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public void shutdown() throws InterruptedException {
+		synchronized (submitLock) {
+			accepting = false;
+		}
+		lookup.wake();
+		for (Stage stage : stages) {
+			stage.thread.join();
+		}
+	}
+
+	private void lookup(Slot slot) {
+		Dining dining = slot.dining;
+		if (!inFlightDinings.add(dining)) {
+			throw new DuplicateDiningException(dining);
+		}
+		slot.diningInFlight = true;
+		if (rewardRepository.isRewarded(dining)) {
+			throw new DuplicateDiningException(dining);
+		}
+		slot.account = acquireAccount(dining.getCreditCardNumber());
+		slot.restaurant = restaurantRepository.findByMerchantNumber(dining.getMerchantNumber());
+	}
+
+	private InFlightAccounts.Entry acquireAccount(String creditCardNumber) {
+		InFlightAccounts.Entry entry = inFlightAccounts.acquire(creditCardNumber);
+		while (entry == null) {
+			long stamp = inFlightAccounts.stamp();
+			Account loaded = accountRepository.findByCreditCard(creditCardNumber);
+			entry = inFlightAccounts.acquire(creditCardNumber, loaded, stamp);
+		}
+		return entry;
+	}
+
+	private void calculate(Slot slot) {
+		// a monthly maximum is reserved in the persist transaction, as it reserves nothing outside one
+		if (!(slot.restaurant.getBenefitAvailabilityPolicy() instanceof MaxRewardsPerMonth)) {
+			slot.benefit = slot.restaurant.calculateBenefitFor(slot.account.getAccount(), slot.dining);
+		}
+	}
+
+	private void persist(List<Slot> batch) {
+		List<Slot> rewarded = new ArrayList<Slot>(batch.size());
+		try {
+			transactionTemplate.executeWithoutResult(status -> {
+				Set<Account> changedAccounts = new LinkedHashSet<Account>();
+				List<AccountContribution> contributions = new ArrayList<AccountContribution>(batch.size());
+				List<Dining> dinings = new ArrayList<Dining>(batch.size());
+				for (Slot slot : batch) {
+					if (slot.failure != null) {
+						continue;
+					}
+					try {
+						if (slot.account.isEvicted()) {
+							InFlightAccounts.Entry stale = slot.account;
+							slot.account = acquireAccount(slot.dining.getCreditCardNumber());
+							inFlightAccounts.release(stale);
+						}
+						Account account = slot.account.getAccount();
+						if (slot.benefit == null) {
+							slot.benefit = slot.restaurant.calculateBenefitFor(account, slot.dining);
+						}
+						contributions.add(account.makeContribution(slot.benefit));
+						changedAccounts.add(account);
+						dinings.add(slot.dining);
+						rewarded.add(slot);
+					} catch (RuntimeException e) {
+						slot.failure = e;
+					}
+				}
+				accountRepository.updateBeneficiaries(changedAccounts);
+				List<RewardConfirmation> confirmations = rewardRepository.confirmRewards(contributions, dinings);
+				for (int i = 0; i < confirmations.size(); i++) {
+					rewarded.get(i).confirmation = confirmations.get(i);
+				}
+			});
+		} catch (RuntimeException e) {
+			// the in-memory accounts hold credits that were rolled back
+			for (Slot slot : rewarded) {
+				slot.failure = e;
+				inFlightAccounts.evict(slot.account);
+			}
+		}
+	}
+
+	/**
+	 * Frees the slot of a dining that left the pipeline for reuse.
+	 * @return the completion of the dining's future, to run once the slot has been handed back
+	 */
+	private Runnable release(Slot slot) {
+		if (slot.account != null) {
+			inFlightAccounts.release(slot.account);
+		}
+		if (slot.diningInFlight) {
+			inFlightDinings.remove(slot.dining);
+		}
+		CompletableFuture<RewardConfirmation> future = slot.future;
+		RuntimeException failure = slot.failure;
+		RewardConfirmation confirmation = slot.confirmation;
+		latency.recordSince(slot.submittedNanos);
+		slot.clear();
+		if (failure != null) {
+			return () -> future.completeExceptionally(failure);
+		}
+		return () -> future.complete(confirmation);
+	}
+
+	/**
+	 * A dining on its way through the pipeline. Slots are allocated once and reused as the stages go round the ring.
+	 */
+	private static class Slot {
+
+		private Dining dining;
+
+		private CompletableFuture<RewardConfirmation> future;
+
+		private long submittedNanos;
+
+		private boolean diningInFlight;
+
+		private InFlightAccounts.Entry account;
+
+		private Restaurant restaurant;
+
+		private MonetaryAmount benefit;
+
+		private RewardConfirmation confirmation;
+
+		private RuntimeException failure;
+
+		private void clear() {
+			dining = null;
+			future = null;
+			diningInFlight = false;
+			account = null;
+			restaurant = null;
+			benefit = null;
+			confirmation = null;
+			failure = null;
+		}
+	}
+
+	/**
+	 * Processes the dinings handed over by the previous stage, in batches of at most the given size.
+	 */
+	private interface BatchProcessor {
+
+		void process(List<Slot> batch);
+	}
+
+	/**
+	 * Processes a single dining.
+	 */
+	private interface SlotProcessor {
+
+		void process(Slot slot);
+	}
+
+	/**
+	 * One stage of the pipeline: a thread following the previous stage around the ring.
+	 */
+	public class Stage implements Runnable {
+
+		private final String name;
+
+		private final Stage previous;
+
+		private Stage following;
+
+		private final int batchLimit;
+
+		private final BatchProcessor processor;
+
+		/**
+		 * The sequence of the last dining this stage has finished with.
+		 */
+		private final AtomicLong cursor = new AtomicLong(-1);
+
+		private final LatencyStats stageLatency = new LatencyStats();
+
+		private Thread thread;
+
+		/**
+		 * Set once this stage has finished with every dining it will ever be handed.
+		 */
+		private volatile boolean done;
+
+		/**
+		 * Set while this stage's thread is parked or about to park, for the stage before it to unpark it.
+		 */
+		private volatile boolean parked;
+
+		private Stage(String name, Stage previous, int batchLimit, SlotProcessor processor) {
+			this(name, previous, batchLimit, (BatchProcessor) batch -> {
+				for (Slot slot : batch) {
+					if (slot.failure == null) {
+						try {
+							processor.process(slot);
+						} catch (RuntimeException e) {
+							slot.failure = e;
+						}
+					}
+				}
+			});
+		}
+
+		private Stage(String name, Stage previous, int batchLimit, BatchProcessor processor) {
+			this.name = name;
+			this.previous = previous;
+			this.batchLimit = batchLimit;
+			this.processor = processor;
+			if (previous != null) {
+				previous.following = this;
+			}
+		}
+
+		public void run() {
+			try {
+				process();
+			} finally {
+				done = true;
+				if (following != null) {
+					following.wake();
+				}
+			}
+		}
+
+		private void process() {
+			List<Slot> batch = new ArrayList<Slot>();
+			int idle = 0;
+			while (true) {
+				boolean upstreamDone = previous == null ? !accepting : previous.done;
+				long available = previous == null ? submitted.get() : previous.cursor.get();
+				long next = cursor.get() + 1;
+				if (available < next) {
+					if (upstreamDone) {
+						// upstream was done before available was read, so nothing more is coming
+						return;
+					}
+					idle(++idle, next);
+					continue;
+				}
+				idle = 0;
+				long last = Math.min(available, next + Math.min(batchLimit, maxBatchSize) - 1);
+				batch.clear();
+				for (long sequence = next; sequence <= last; sequence++) {
+					batch.add(ring[(int) sequence & mask]);
+				}
+				long started = System.nanoTime();
+				processor.process(batch);
+				stageLatency.recordSince(started);
+				if (this == persist) {
+					List<Runnable> completions = new ArrayList<Runnable>(batch.size());
+					for (Slot slot : batch) {
+						completions.add(release(slot));
+					}
+					cursor.set(last);
+					completions.forEach(Runnable::run);
+				} else {
+					cursor.set(last);
+					following.wake();
+				}
+			}
+		}
+
+		/**
+		 * Waits for the dining of the given sequence: spins at first, then parks until woken.
+		 */
+		private void idle(int idleCount, long sequence) {
+			if (idleCount < SPINS_BEFORE_PARKING) {
+				Thread.onSpinWait();
+				return;
+			}
+			parked = true;
+			// whoever hands over a dining after this check sees the flag and unparks this thread
+			long available = previous == null ? submitted.get() : previous.cursor.get();
+			boolean upstreamDone = previous == null ? !accepting : previous.done;
+			if (available < sequence && !upstreamDone) {
+				LockSupport.park(this);
+			}
+			parked = false;
+		}
+
+		/**
+		 * Unparks this stage's thread if it is waiting for dinings.
+		 */
+		private void wake() {
+			if (parked) {
+				LockSupport.unpark(thread);
+			}
+		}
+
+		/**
+		 * Returns the name of this stage.
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Returns the number of dinings handed over to this stage and waiting for or being processed by it.
+		 */
+		public long getOccupancy() {
+			long upstream = previous == null ? submitted.get() : previous.cursor.get();
+			return Math.max(0, upstream - cursor.get());
+		}
+
+		/**
+		 * Returns the number of dinings this stage has finished with.
+		 */
+		public long getProcessedCount() {
+			return cursor.get() + 1;
+		}
+
+		/**
+		 * Returns the time this stage spent on each batch of dinings. The lookup and calculate stages take one dining at
+		 * a time, so for them a batch is a dining.
+		 */
+		public LatencyStats getLatencyStats() {
+			return stageLatency;
+		}
+
+		public String toString() {
+			return "Stage " + name + ": occupancy = " + getOccupancy() + ", processed = " + getProcessedCount()
+					+ ", latency " + stageLatency;
+		}
+	}
+}
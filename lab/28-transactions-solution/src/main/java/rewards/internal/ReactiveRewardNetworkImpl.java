@@ -0,0 +1,104 @@
+package rewards.internal;
+
+import org.springframework.transaction.ReactiveTransactionManager;
+import org.springframework.transaction.reactive.TransactionalOperator;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import rewards.AccountContribution;
+import rewards.Dining;
+import rewards.DuplicateDiningException;
+import rewards.ReactiveRewardNetwork;
+import rewards.RewardConfirmation;
+import rewards.RewardResult;
+import rewards.internal.account.ReactiveAccountRepository;
+import rewards.internal.restaurant.ReactiveRestaurantRepository;
+import rewards.internal.reward.ReactiveRewardRepository;
+
+import common.money.MonetaryAmount;
+
+/**
+ * Rewards an Account for Dining at a Restaurant, without blocking.
+ *
+ * The reactive counterpart of {@link RewardNetworkImpl}: the same "reward account for dining" use case, composed from
+ * reactive repositories and run in one reactive transaction per dining.
+ *
+ * Streams of dinings are spread over a fixed number of lanes by credit card, the same way {@link ShardedRewardNetwork}
+ * does with threads. Each lane rewards its dinings one at a time, so an account is never rewarded twice concurrently
+ * and its dinings are rewarded in order, while the lanes run concurrently. The number of lanes therefore bounds the
+ * rewards (and database connections) in flight.
+ */
+public class ReactiveRewardNetworkImpl implements ReactiveRewardNetwork {
+
+	/**
+	 * The default number of dinings rewarded concurrently by {@link #rewardAccountsFor(Flux)}.
+	 */
+	public static final int DEFAULT_CONCURRENCY = 8;
+
+	private ReactiveAccountRepository accountRepository;
+
+	private ReactiveRestaurantRepository restaurantRepository;
+
+	private ReactiveRewardRepository rewardRepository;
+
+	private TransactionalOperator transactionalOperator;
+
+	private int concurrency = DEFAULT_CONCURRENCY;
+
+	/**
+	 * Creates a new reactive reward network.
+	 * @param accountRepository the repository for loading accounts to reward
+	 * @param restaurantRepository the repository for loading restaurants that determine how much to reward
+	 * @param rewardRepository the repository for recording a record of successful reward transactions
+	 * @param transactionManager the transaction manager each reward runs in a transaction of
+	 */
+	public ReactiveRewardNetworkImpl(ReactiveAccountRepository accountRepository,
+			ReactiveRestaurantRepository restaurantRepository, ReactiveRewardRepository rewardRepository,
+			ReactiveTransactionManager transactionManager) {
+		this.accountRepository = accountRepository;
+		this.restaurantRepository = restaurantRepository;
+		this.rewardRepository = rewardRepository;
+		this.transactionalOperator = TransactionalOperator.create(transactionManager);
+	}
+
+	/**
+	 * Sets the maximum number of dinings rewarded concurrently by {@link #rewardAccountsFor(Flux)}. Defaults to
+	 * {@link #DEFAULT_CONCURRENCY}; typically no more than the number of pooled database connections.
+	 * @param concurrency the number of lanes, must be positive
+	 */
+	public void setConcurrency(int concurrency) {
+		if (concurrency < 1) {
+			throw new IllegalArgumentException("Concurrency must be positive; your value was " + concurrency);
+		}
+		this.concurrency = concurrency;
+	}
+
+	public Mono<RewardConfirmation> rewardAccountFor(Dining dining) {
+		Mono<RewardConfirmation> reward = rewardRepository.isRewarded(dining)
+				.flatMap(rewarded -> rewarded ? Mono.error(new DuplicateDiningException(dining))
+						: accountRepository.findByCreditCard(dining.getCreditCardNumber()))
+				.flatMap(account -> restaurantRepository.findByMerchantNumber(dining.getMerchantNumber())
+						.flatMap(restaurant -> {
+							MonetaryAmount amount = restaurant.calculateBenefitFor(account, dining);
+							AccountContribution contribution = account.makeContribution(amount);
+							return accountRepository.updateBeneficiaries(account)
+									.then(rewardRepository.confirmReward(contribution, dining));
+						}));
+		return transactionalOperator.transactional(reward);
+	}
+
+	public Flux<RewardResult> rewardAccountsFor(Flux<Dining> dinings) {
+		// exactly 'concurrency' lanes, all subscribed at once, so groupBy never stalls waiting for a free slot
+		return dinings.groupBy(dining -> Math.floorMod(dining.getCreditCardNumber().hashCode(), concurrency))
+				.flatMap(lane -> lane.concatMap(this::rewardResultFor), concurrency);
+	}
+
+	/**
+	 * Rewards a dining, turning a failure into a failed result so that it does not end the stream.
+	 */
+	private Mono<RewardResult> rewardResultFor(Dining dining) {
+		return rewardAccountFor(dining).map(confirmation -> RewardResult.confirmed(dining, confirmation))
+				.onErrorResume(RuntimeException.class, e -> Mono.just(RewardResult.failed(dining, e)));
+	}
+}
@@ -0,0 +1,148 @@
+package rewards.internal;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.dao.ConcurrencyFailureException;
+
+import rewards.Dining;
+import rewards.RewardConfirmation;
+import rewards.RewardNetwork;
+import rewards.RewardResult;
+
+/**
+ * Rewards dinings through a transactional reward network, rewarding a dining again when its transaction fails because
+ * of concurrent access to the same data, such as an account written by another transaction since it was loaded.
+ *
+ * Each attempt runs the whole use case again in a new transaction of the underlying network, so it must be given the
+ * transactional proxy rather than the target object. Between attempts the calling thread sleeps for a random time up
+ * to an exponentially growing backoff ("full jitter"), so that the transactions that conflicted do not keep
+ * colliding. The failure of the last attempt is thrown.
+ *
+ * Batch rewards are passed through unchanged: they report failures per dining.
+ */
+public class RetryingRewardNetwork implements RewardNetwork {
+
+	/**
+	 * The default number of attempts at rewarding a dining, the first included.
+	 */
+	public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+	/**
+	 * The default longest sleep before the second attempt, in milliseconds.
+	 */
+	public static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 10;
+
+	/**
+	 * The default longest sleep before any attempt, in milliseconds.
+	 */
+	public static final long DEFAULT_MAX_BACKOFF_MILLIS = 1000;
+
+	private RewardNetwork rewardNetwork;
+
+	private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+	private long initialBackoffMillis = DEFAULT_INITIAL_BACKOFF_MILLIS;
+
+	private long maxBackoffMillis = DEFAULT_MAX_BACKOFF_MILLIS;
+
+	private final LongAdder calls = new LongAdder();
+
+	private final LongAdder conflicts = new LongAdder();
+
+	private final LongAdder exhaustedCalls = new LongAdder();
+
+	/**
+	 * Creates a retrying reward network.
+	 * @param rewardNetwork the (transactional) reward network each attempt calls
+	 */
+	public RetryingRewardNetwork(RewardNetwork rewardNetwork) {
+		this.rewardNetwork = rewardNetwork;
+	}
+
+	/**
+	 * Sets the number of attempts at rewarding a dining, the first included. Defaults to
+	 * {@link #DEFAULT_MAX_ATTEMPTS}.
+	 * @param maxAttempts the number of attempts, must be positive
+	 */
+	public void setMaxAttempts(int maxAttempts) {
+		if (maxAttempts < 1) {
+			throw new IllegalArgumentException("Max attempts must be positive; your value was " + maxAttempts);
+		}
+		this.maxAttempts = maxAttempts;
+	}
+
+	/**
+	 * Sets the backoff between attempts: the longest sleep before the second attempt, doubled before each later one up
+	 * to a maximum. Defaults to {@link #DEFAULT_INITIAL_BACKOFF_MILLIS} and {@link #DEFAULT_MAX_BACKOFF_MILLIS}.
+	 * @param initialBackoffMillis the longest sleep before the second attempt, in milliseconds
+	 * @param maxBackoffMillis the longest sleep before any attempt, in milliseconds
+	 */
+	public void setBackoff(long initialBackoffMillis, long maxBackoffMillis) {
+		if (initialBackoffMillis < 0 || maxBackoffMillis < initialBackoffMillis) {
+			throw new IllegalArgumentException("Backoff must be at least 0 and at most the max backoff; your values were "
+					+ initialBackoffMillis + " and " + maxBackoffMillis);
+		}
+		this.initialBackoffMillis = initialBackoffMillis;
+		this.maxBackoffMillis = maxBackoffMillis;
+	}
+
+	public RewardConfirmation rewardAccountFor(Dining dining) {
+		calls.increment();
+		long backoffMillis = initialBackoffMillis;
+		for (int attempt = 1;; attempt++) {
+			try {
+				return rewardNetwork.rewardAccountFor(dining);
+			} catch (ConcurrencyFailureException e) {
+				conflicts.increment();
+				if (attempt == maxAttempts) {
+					exhaustedCalls.increment();
+					throw e;
+				}
+				try {
+					TimeUnit.MILLISECONDS.sleep(ThreadLocalRandom.current().nextLong(backoffMillis + 1));
+				} catch (InterruptedException interrupted) {
+					Thread.currentThread().interrupt();
+					throw e;
+				}
+				backoffMillis = Math.min(maxBackoffMillis, backoffMillis * 2);
+			}
+		}
+	}
+
+	public List<RewardResult> rewardAccountsFor(Collection<Dining> dinings) {
+		return rewardNetwork.rewardAccountsFor(dinings);
+	}
+
+	/**
+	 * Returns the number of dinings rewarded or attempted through {@link #rewardAccountFor(Dining)}.
+	 */
+	public long getCallCount() {
+		return calls.sum();
+	}
+
+	/**
+	 * Returns the number of attempts that failed with a concurrency failure.
+	 */
+	public long getConflictCount() {
+		return conflicts.sum();
+	}
+
+	/**
+	 * Returns the number of dinings whose every attempt failed with a concurrency failure.
+	 */
+	public long getExhaustedCount() {
+		return exhaustedCalls.sum();
+	}
+
+	/**
+	 * Returns the number of conflicts per dining, or 0 if there were no dinings.
+	 */
+	public double getConflictRate() {
+		long callCount = calls.sum();
+		return callCount == 0 ? 0 : (double) conflicts.sum() / callCount;
+	}
+}
@@ -1,11 +1,29 @@
 package rewards.internal;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import rewards.AccountContribution;
 import rewards.Dining;
+import rewards.DuplicateDiningException;
 import rewards.RewardConfirmation;
 import rewards.RewardNetwork;
+import rewards.RewardResult;
 import rewards.internal.account.Account;
 import rewards.internal.account.AccountRepository;
 import rewards.internal.restaurant.Restaurant;
@@ -16,20 +34,36 @@ import common.money.MonetaryAmount;
 
 /**
  * Rewards an Account for Dining at a Restaurant.
- * 
+ *
  * The sole Reward Network implementation. This object is an application-layer service responsible for coordinating with
  * the domain-layer to carry out the process of rewarding benefits to accounts for dining.
- * 
+ *
  * Said in other words, this class implements the "reward account for dining" use case.
+ *
+ * A dining that has already been rewarded, such as a settlement record resent by a processor, is rejected with a
+ * {@link DuplicateDiningException} before any account is touched.
  */
 public class RewardNetworkImpl implements RewardNetwork {
 
+	/**
+	 * The default number of dinings rewarded per transaction by {@link #rewardAccountsFor(Collection)}.
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 1000;
+
 	private AccountRepository accountRepository;
 
 	private RestaurantRepository restaurantRepository;
 
 	private RewardRepository rewardRepository;
 
+	private TransactionTemplate transactionTemplate;
+
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+	private StripedLocks accountLocks;
+
+	private Function<Dining, ?> lockKey;
+
 	/**
 	 * Creates a new reward network.
 	 * @param accountRepository the repository for loading accounts to reward
@@ -43,8 +77,65 @@ public class RewardNetworkImpl implements RewardNetwork {
 		this.rewardRepository = rewardRepository;
 	}
 
+	/**
+	 * Sets the transaction manager used to run each chunk of a batch reward in its own transaction. If not set, chunks
+	 * run in whatever transaction (if any) the caller of {@link #rewardAccountsFor(Collection)} started.
+	 * @param transactionManager the transaction manager
+	 */
+	public void setTransactionManager(PlatformTransactionManager transactionManager) {
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+	}
+
+	/**
+	 * Sets the maximum number of dinings rewarded per transaction by {@link #rewardAccountsFor(Collection)}. Defaults
+	 * to {@link #DEFAULT_CHUNK_SIZE}.
+	 * @param chunkSize the chunk size, must be positive
+	 */
+	public void setChunkSize(int chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Chunk size must be positive; your value was " + chunkSize);
+		}
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Sets locks that serialize the batch rewards of each account within this process, keyed by credit card number, so
+	 * that threads rewarding the same account wait in memory rather than on its rows in the database.
+	 * @param accountLocks the locks
+	 * @see #setAccountLocks(StripedLocks, Function)
+	 */
+	public void setAccountLocks(StripedLocks accountLocks) {
+		setAccountLocks(accountLocks, Dining::getCreditCardNumber);
+	}
+
+	/**
+	 * Sets locks that serialize the batch rewards of each account within this process, so that threads rewarding the
+	 * same account wait in memory rather than on its rows in the database. A batch reward takes the locks of all
+	 * dinings of a chunk, in stripe order, before the chunk's transaction begins, and holds them until it has
+	 * completed. Called within a transaction of the caller's, no locks are taken, as they would be held until that
+	 * transaction completes.
+	 *
+	 * A chunk holds most of the stripes unless there are several times as many stripes as dinings in a chunk, so give
+	 * the locks at least eight times the chunk size, or set a smaller chunk size. A chunk whose locks are not free
+	 * within the timeout of the {@link StripedLocks} fails as a whole.
+	 *
+	 * Single rewards begin their transaction on entry to {@link #rewardAccountFor(Dining)}, too early to wait for a
+	 * lock without holding a connection: put a {@link LockingRewardNetwork} with the same locks in front of the
+	 * transactional proxy to serialize them.
+	 * @param accountLocks the locks
+	 * @param lockKey computes the key of a dining's account, such as its credit card number; when an account has several
+	 * cards, the key must map all of them to the same value to serialize the whole account
+	 */
+	public void setAccountLocks(StripedLocks accountLocks, Function<Dining, ?> lockKey) {
+		this.accountLocks = accountLocks;
+		this.lockKey = lockKey;
+	}
+
 	@Transactional
 	public RewardConfirmation rewardAccountFor(Dining dining) {
+		if (rewardRepository.isRewarded(dining)) {
+			throw new DuplicateDiningException(dining);
+		}
 		Account account = accountRepository.findByCreditCard(dining.getCreditCardNumber());
 		Restaurant restaurant = restaurantRepository.findByMerchantNumber(dining.getMerchantNumber());
 		MonetaryAmount amount = restaurant.calculateBenefitFor(account, dining);
@@ -52,4 +143,119 @@ public class RewardNetworkImpl implements RewardNetwork {
 		accountRepository.updateBeneficiaries(account);
 		return rewardRepository.confirmReward(contribution, dining);
 	}
-}
\ No newline at end of file
+
+	public List<RewardResult> rewardAccountsFor(Collection<Dining> dinings) {
+		List<Dining> all = new ArrayList<Dining>(dinings);
+		List<RewardResult> results = new ArrayList<RewardResult>(all.size());
+		for (int from = 0; from < all.size(); from += chunkSize) {
+			results.addAll(rewardChunk(all.subList(from, Math.min(from + chunkSize, all.size()))));
+		}
+		return results;
+	}
+
+	/**
+	 * Rewards a single chunk of dinings in one transaction. If writing the chunk fails the transaction is rolled back
+	 * and every dining in the chunk is reported as failed.
+	 */
+	private List<RewardResult> rewardChunk(List<Dining> chunk) {
+		StripedLocks.Held held = null;
+		try {
+			if (accountLocks != null && !TransactionSynchronizationManager.isActualTransactionActive()) {
+				held = accountLocks.lockAll(chunk.stream().map(lockKey).collect(Collectors.toList()));
+			}
+			if (transactionTemplate == null) {
+				return doRewardChunk(chunk);
+			}
+			return transactionTemplate.execute(status -> doRewardChunk(chunk));
+		} catch (RuntimeException e) {
+			List<RewardResult> failures = new ArrayList<RewardResult>(chunk.size());
+			for (Dining dining : chunk) {
+				failures.add(RewardResult.failed(dining, e));
+			}
+			return failures;
+		} finally {
+			// the chunk's own transaction, if any, has completed, so the next reward of an account sees its changes
+			if (held != null) {
+				held.close();
+			}
+		}
+	}
+
+	/**
+	 * Loads the accounts of the chunk in bulk and each distinct restaurant once, applies every contribution to the
+	 * in-memory accounts in dining order, then writes all beneficiary and reward changes in batches.
+	 */
+	private List<RewardResult> doRewardChunk(List<Dining> chunk) {
+		Set<String> creditCardNumbers = new HashSet<String>();
+		for (Dining dining : chunk) {
+			creditCardNumbers.add(dining.getCreditCardNumber());
+		}
+		Map<String, Account> accountsByCreditCard = new HashMap<String, Account>(
+				accountRepository.findByCreditCards(creditCardNumbers));
+		Map<String, Restaurant> restaurantsByMerchantNumber = new HashMap<String, Restaurant>();
+		Map<String, RuntimeException> accountFailures = new HashMap<String, RuntimeException>();
+		Map<String, RuntimeException> restaurantFailures = new HashMap<String, RuntimeException>();
+		Set<Dining> chunkDinings = new HashSet<Dining>();
+		Set<Account> changedAccounts = new LinkedHashSet<Account>();
+		List<AccountContribution> contributions = new ArrayList<AccountContribution>(chunk.size());
+		List<Dining> rewardedDinings = new ArrayList<Dining>(chunk.size());
+		List<Integer> rewardedPositions = new ArrayList<Integer>(chunk.size());
+		RewardResult[] results = new RewardResult[chunk.size()];
+
+		for (int i = 0; i < chunk.size(); i++) {
+			Dining dining = chunk.get(i);
+			try {
+				// a dining repeated within the chunk would violate the unique fingerprint and fail the whole batch
+				if (!chunkDinings.add(dining) || rewardRepository.isRewarded(dining)) {
+					throw new DuplicateDiningException(dining);
+				}
+				Account account = loadOnce(dining.getCreditCardNumber(), accountsByCreditCard, accountFailures,
+						this::noAccountFor);
+				Restaurant restaurant = loadOnce(dining.getMerchantNumber(), restaurantsByMerchantNumber,
+						restaurantFailures, restaurantRepository::findByMerchantNumber);
+				MonetaryAmount amount = restaurant.calculateBenefitFor(account, dining);
+				contributions.add(account.makeContribution(amount));
+				changedAccounts.add(account);
+				rewardedDinings.add(dining);
+				rewardedPositions.add(i);
+			} catch (RuntimeException e) {
+				results[i] = RewardResult.failed(dining, e);
+			}
+		}
+
+		accountRepository.updateBeneficiaries(changedAccounts);
+		List<RewardConfirmation> confirmations = rewardRepository.confirmRewards(contributions, rewardedDinings);
+		for (int i = 0; i < confirmations.size(); i++) {
+			int position = rewardedPositions.get(i);
+			results[position] = RewardResult.confirmed(chunk.get(position), confirmations.get(i));
+		}
+		return Arrays.asList(results);
+	}
+
+	private Account noAccountFor(String creditCardNumber) {
+		throw new EmptyResultDataAccessException("No account for credit card " + creditCardNumber, 1);
+	}
+
+	/**
+	 * Returns the object loaded for the key, loading it on first use. A failed load is remembered and rethrown for
+	 * later dinings with the same key so that it is only attempted once per chunk.
+	 */
+	private <T> T loadOnce(String key, Map<String, T> loaded, Map<String, RuntimeException> failures,
+			Function<String, T> loader) {
+		T result = loaded.get(key);
+		if (result == null) {
+			RuntimeException failure = failures.get(key);
+			if (failure != null) {
+				throw failure;
+			}
+			try {
+				result = loader.apply(key);
+			} catch (RuntimeException e) {
+				failures.put(key, e);
+				throw e;
+			}
+			loaded.put(key, result);
+		}
+		return result;
+	}
+}
@@ -1,12 +1,21 @@
 package rewards.internal;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import rewards.AccountContribution;
 import rewards.Dining;
+import rewards.DuplicateDiningException;
 import rewards.RewardConfirmation;
 import rewards.RewardNetwork;
+import rewards.RewardResult;
 import rewards.internal.account.Account;
 import rewards.internal.account.AccountRepository;
 import rewards.internal.restaurant.Restaurant;
@@ -22,6 +31,9 @@ import common.money.MonetaryAmount;
  * the domain-layer to carry out the process of rewarding benefits to accounts for dining.
  * 
  * Said in other words, this class implements the "reward account for dining" use case.
+ *
+ * Every dining of a batch is rewarded in a new transaction of its own, so that a dining that fails is rolled back
+ * entirely, savings included, without affecting the others.
  */
 public class RewardNetworkImplRequiresNew implements RewardNetwork {
 
@@ -31,6 +43,8 @@ public class RewardNetworkImplRequiresNew implements RewardNetwork {
 
 	private RewardRepository rewardRepository;
 
+	private TransactionTemplate requiresNewTemplate;
+
 	/**
 	 * Creates a new reward network.
 	 * @param accountRepository the repository for loading accounts to reward
@@ -44,8 +58,22 @@ public class RewardNetworkImplRequiresNew implements RewardNetwork {
 		this.rewardRepository = rewardRepository;
 	}
 
+	/**
+	 * Sets the transaction manager used to run each dining of a batch reward in a new transaction. Required by
+	 * {@link #rewardAccountsFor(Collection)}, which calls {@link #rewardAccountFor(Dining)} on this object rather than
+	 * through its transactional proxy.
+	 * @param transactionManager the transaction manager
+	 */
+	public void setTransactionManager(PlatformTransactionManager transactionManager) {
+		this.requiresNewTemplate = new TransactionTemplate(transactionManager);
+		this.requiresNewTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+	}
+
 	@Transactional(propagation=Propagation.REQUIRES_NEW)
 	public RewardConfirmation rewardAccountFor(Dining dining) {
+		if (rewardRepository.isRewarded(dining)) {
+			throw new DuplicateDiningException(dining);
+		}
 		Account account = accountRepository.findByCreditCard(dining.getCreditCardNumber());
 		Restaurant restaurant = restaurantRepository.findByMerchantNumber(dining.getMerchantNumber());
 		MonetaryAmount amount = restaurant.calculateBenefitFor(account, dining);
@@ -53,4 +81,21 @@ public class RewardNetworkImplRequiresNew implements RewardNetwork {
 		accountRepository.updateBeneficiaries(account);
 		return rewardRepository.confirmReward(contribution, dining);
 	}
+
+	public List<RewardResult> rewardAccountsFor(Collection<Dining> dinings) {
+		if (requiresNewTemplate == null) {
+			throw new IllegalStateException(
+					"A transaction manager is required to reward each dining in a new transaction");
+		}
+		List<RewardResult> results = new ArrayList<RewardResult>(dinings.size());
+		for (Dining dining : dinings) {
+			try {
+				RewardConfirmation confirmation = requiresNewTemplate.execute(status -> rewardAccountFor(dining));
+				results.add(RewardResult.confirmed(dining, confirmation));
+			} catch (RuntimeException e) {
+				results.add(RewardResult.failed(dining, e));
+			}
+		}
+		return results;
+	}
 }
\ No newline at end of file
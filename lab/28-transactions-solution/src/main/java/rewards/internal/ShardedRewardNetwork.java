@@ -0,0 +1,179 @@
+package rewards.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import org.springframework.core.task.TaskRejectedException;
+
+import rewards.AsyncRewardNetwork;
+import rewards.Dining;
+import rewards.RewardConfirmation;
+import rewards.RewardNetwork;
+
+/**
+ * Rewards dinings in parallel across accounts while never rewarding the same account on two threads at once.
+ *
+ * Each dining is hashed by its shard key (the credit card number unless configured otherwise) onto one of N lanes. A
+ * lane is a single worker thread with its own bounded FIFO queue, so every account is mutated by exactly one thread
+ * and dinings for one account are rewarded in the order they were submitted. This removes contention on the same
+ * T_ACCOUNT_BENEFICIARY rows and the lost updates that concurrent read-modify-write rewards of one account can cause,
+ * while dinings of different accounts proceed in parallel.
+ *
+ * Note that the guarantee holds per shard key. When an account has several credit cards, configure a shard key that
+ * maps every card of the account to the same value (such as the account number) to extend it to the whole account.
+ */
+public class ShardedRewardNetwork implements AsyncRewardNetwork {
+
+	private RewardNetwork rewardNetwork;
+
+	private Function<Dining, ?> shardKey;
+
+	private List<Lane> lanes;
+
+	/**
+	 * Creates a sharded reward network with one lane per available processor, sharded by credit card number.
+	 * @param rewardNetwork the (transactional) reward network the lanes call
+	 * @param laneCapacity the maximum number of dinings waiting in each lane before submissions are rejected
+	 */
+	public ShardedRewardNetwork(RewardNetwork rewardNetwork, int laneCapacity) {
+		this(rewardNetwork, Runtime.getRuntime().availableProcessors(), laneCapacity, Dining::getCreditCardNumber);
+	}
+
+	/**
+	 * Creates a sharded reward network.
+	 * @param rewardNetwork the (transactional) reward network the lanes call
+	 * @param laneCount the number of lanes (worker threads)
+	 * @param laneCapacity the maximum number of dinings waiting in each lane before submissions are rejected
+	 * @param shardKey computes the key that decides the lane of a dining; dinings with equal keys share a lane
+	 */
+	public ShardedRewardNetwork(RewardNetwork rewardNetwork, int laneCount, int laneCapacity,
+			Function<Dining, ?> shardKey) {
+		if (laneCount < 1 || laneCapacity < 1) {
+			throw new IllegalArgumentException("Lane count and capacity must be positive; your values were "
+					+ laneCount + " and " + laneCapacity);
+		}
+		this.rewardNetwork = rewardNetwork;
+		this.shardKey = shardKey;
+		List<Lane> lanes = new ArrayList<Lane>(laneCount);
+		for (int i = 0; i < laneCount; i++) {
+			lanes.add(new Lane(i, laneCapacity));
+		}
+		this.lanes = Collections.unmodifiableList(lanes);
+	}
+
+	/**
+	 * Submit a dining to the lane that owns its shard key.
+	 * @throws TaskRejectedException if that lane's queue is full
+	 */
+	public CompletableFuture<RewardConfirmation> submit(Dining dining) {
+		return laneFor(dining).submit(dining);
+	}
+
+	/**
+	 * Returns the lane that rewards dinings with the same shard key as the given dining.
+	 */
+	Lane laneFor(Dining dining) {
+		return lanes.get(Math.floorMod(shardKey.apply(dining).hashCode(), lanes.size()));
+	}
+
+	/**
+	 * Returns the lanes of this network, for monitoring throughput, latency and backlog per lane.
+	 */
+	public List<Lane> getLanes() {
+		return lanes;
+	}
+
+	/**
+	 * Stops accepting dinings and waits for every lane to drain.
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public void shutdown() throws InterruptedException {
+		for (Lane lane : lanes) {
+			lane.rewardNetwork.stopAccepting();
+		}
+		for (Lane lane : lanes) {
+			lane.rewardNetwork.awaitTermination();
+		}
+	}
+
+	/**
+	 * A single-writer lane: an asynchronous reward network with one worker thread and its bounded queue.
+	 */
+	public class Lane {
+
+		private int index;
+
+		private AsyncRewardNetworkImpl rewardNetwork;
+
+		private long startNanos = System.nanoTime();
+
+		private Lane(int index, int capacity) {
+			this.index = index;
+			this.rewardNetwork = new AsyncRewardNetworkImpl(ShardedRewardNetwork.this.rewardNetwork, 1, capacity,
+					"reward-lane-" + index + "-");
+		}
+
+		private CompletableFuture<RewardConfirmation> submit(Dining dining) {
+			return rewardNetwork.submit(dining);
+		}
+
+		/**
+		 * Returns the position of this lane, from zero.
+		 */
+		public int getIndex() {
+			return index;
+		}
+
+		/**
+		 * Returns the number of dinings waiting in this lane.
+		 */
+		public int getQueueDepth() {
+			return rewardNetwork.getQueueDepth();
+		}
+
+		/**
+		 * Returns the number of dinings this lane has finished, successfully or not.
+		 */
+		public long getProcessedCount() {
+			return rewardNetwork.getLatencyStats().getCount();
+		}
+
+		/**
+		 * Returns the number of dinings this lane failed to reward.
+		 */
+		public long getFailedCount() {
+			return rewardNetwork.getFailedCount();
+		}
+
+		/**
+		 * Returns the number of dinings rejected because this lane was full.
+		 */
+		public long getRejectedCount() {
+			return rewardNetwork.getRejectedCount();
+		}
+
+		/**
+		 * Returns the average number of dinings finished per second since this lane was started.
+		 */
+		public double getThroughputPerSecond() {
+			double elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+			return elapsedSeconds > 0 ? getProcessedCount() / elapsedSeconds : 0;
+		}
+
+		/**
+		 * Returns the time from submission until the reward was committed or failed, for dinings in this lane.
+		 */
+		public LatencyStats getLatencyStats() {
+			return rewardNetwork.getLatencyStats();
+		}
+
+		public String toString() {
+			return "Lane " + index + ": queued = " + getQueueDepth() + ", processed = " + getProcessedCount()
+					+ ", failed = " + getFailedCount() + ", rejected = " + getRejectedCount() + ", throughput = "
+					+ String.format("%.0f", getThroughputPerSecond()) + "/s, latency " + getLatencyStats();
+		}
+	}
+}
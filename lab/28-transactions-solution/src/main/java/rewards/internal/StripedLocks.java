@@ -0,0 +1,206 @@
+package rewards.internal;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.dao.CannotAcquireLockException;
+
+/**
+ * A fixed number of locks that keys are hashed onto, for serializing work on the same key within this process without
+ * keeping a lock per key. Keys that share a stripe are serialized too, so the stripe count trades memory for
+ * needless waits.
+ *
+ * {@link #lockAll(Collection)} takes the stripes of several keys in ascending stripe order, so callers that each lock
+ * a set of keys at once can never deadlock each other. A set of n keys holds about s(1 - e^(-n/s)) of s stripes, so
+ * the stripe count should be several times the number of keys locked at once: with only as many stripes as keys, a
+ * set holds nearly two thirds of them and serializes almost every other caller.
+ *
+ * Waiting for a stripe held by another thread gives up after a timeout with a {@link CannotAcquireLockException},
+ * releasing the stripes already taken, so that callers locking in any other order cannot wait on each other forever.
+ *
+ * Locks are reentrant and must be released by the thread that took them.
+ */
+public class StripedLocks {
+
+	/**
+	 * The default number of stripes.
+	 */
+	public static final int DEFAULT_STRIPE_COUNT = 64;
+
+	/**
+	 * The default time to wait for a stripe held by another thread, in milliseconds.
+	 */
+	public static final long DEFAULT_TIMEOUT_MILLIS = 10000;
+
+	private final ReentrantLock[] stripes;
+
+	private long timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+
+	private final LongAdder acquisitions = new LongAdder();
+
+	private final LongAdder contendedAcquisitions = new LongAdder();
+
+	private final LongAdder timeouts = new LongAdder();
+
+	private final LatencyStats waits = new LatencyStats();
+
+	/**
+	 * Creates striped locks.
+	 * @param stripeCount the number of stripes, must be positive
+	 */
+	public StripedLocks(int stripeCount) {
+		if (stripeCount < 1) {
+			throw new IllegalArgumentException("Stripe count must be positive; your value was " + stripeCount);
+		}
+		stripes = new ReentrantLock[stripeCount];
+		for (int i = 0; i < stripeCount; i++) {
+			stripes[i] = new ReentrantLock();
+		}
+	}
+
+	/**
+	 * Sets how long to wait for each stripe held by another thread before giving up. Defaults to
+	 * {@link #DEFAULT_TIMEOUT_MILLIS}.
+	 * @param timeoutMillis the timeout in milliseconds, must be positive
+	 */
+	public void setTimeoutMillis(long timeoutMillis) {
+		if (timeoutMillis < 1) {
+			throw new IllegalArgumentException("Timeout must be positive; your value was " + timeoutMillis);
+		}
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	/**
+	 * Takes the stripe of the given key, waiting for it if another thread holds it.
+	 * @param key the key
+	 * @return the held stripe, to release by closing it
+	 * @throws CannotAcquireLockException if the stripe was not free within the timeout
+	 */
+	public Held lock(Object key) {
+		return lockStripes(new int[] { stripeOf(key) });
+	}
+
+	/**
+	 * Takes the stripes of all the given keys, in ascending stripe order.
+	 * @param keys the keys
+	 * @return the held stripes, to release by closing them
+	 * @throws CannotAcquireLockException if a stripe was not free within the timeout; none are held then
+	 */
+	public Held lockAll(Collection<?> keys) {
+		int[] indexes = keys.stream().mapToInt(this::stripeOf).distinct().sorted().toArray();
+		return lockStripes(indexes);
+	}
+
+	/**
+	 * Returns the number of stripes.
+	 */
+	public int getStripeCount() {
+		return stripes.length;
+	}
+
+	/**
+	 * Returns the number of stripes taken.
+	 */
+	public long getAcquisitionCount() {
+		return acquisitions.sum();
+	}
+
+	/**
+	 * Returns the number of stripes that were held by another thread when taken.
+	 */
+	public long getContendedCount() {
+		return contendedAcquisitions.sum();
+	}
+
+	/**
+	 * Returns the number of waits for a stripe that timed out.
+	 */
+	public long getTimeoutCount() {
+		return timeouts.sum();
+	}
+
+	/**
+	 * Returns the times spent waiting for stripes held by another thread.
+	 */
+	public LatencyStats getWaitStats() {
+		return waits;
+	}
+
+	public String toString() {
+		return "Stripes = " + stripes.length + ", acquisitions = " + getAcquisitionCount() + ", contended = "
+				+ getContendedCount() + ", timeouts = " + getTimeoutCount() + ", waits: " + waits;
+	}
+
+	private int stripeOf(Object key) {
+		int h = key.hashCode();
+		// spread the high bits, as keys such as card numbers often differ only in a few digits
+		h ^= h >>> 16;
+		h *= 0x45d9f3b;
+		h ^= h >>> 16;
+		return Math.floorMod(h, stripes.length);
+	}
+
+	private Held lockStripes(int[] indexes) {
+		for (int i = 0; i < indexes.length; i++) {
+			ReentrantLock stripe = stripes[indexes[i]];
+			if (!stripe.tryLock()) {
+				contendedAcquisitions.increment();
+				long started = System.nanoTime();
+				boolean locked = false;
+				try {
+					locked = stripe.tryLock(timeoutMillis, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				waits.recordSince(started);
+				if (!locked) {
+					unlock(indexes, i);
+					timeouts.increment();
+					throw new CannotAcquireLockException("Could not lock stripe " + indexes[i] + " of "
+							+ stripes.length + " within " + timeoutMillis + "ms");
+				}
+			}
+			acquisitions.increment();
+		}
+		return new Held(indexes);
+	}
+
+	/**
+	 * Releases the first stripes of the given ones, in reverse order.
+	 */
+	private void unlock(int[] indexes, int count) {
+		for (int i = count - 1; i >= 0; i--) {
+			stripes[indexes[i]].unlock();
+		}
+	}
+
+	/**
+	 * Stripes held by the current thread.
+	 */
+	public class Held implements AutoCloseable {
+
+		private int[] indexes;
+
+		private Held(int[] indexes) {
+			this.indexes = indexes;
+		}
+
+		/**
+		 * Releases the stripes, in reverse order. Does nothing if already released.
+		 */
+		public void close() {
+			if (indexes == null) {
+				return;
+			}
+			unlock(indexes, indexes.length);
+			indexes = null;
+		}
+
+		public String toString() {
+			return "Stripes " + Arrays.toString(indexes);
+		}
+	}
+}
@@ -28,6 +28,8 @@ public class Account extends Entity {
 
 	private Set<Beneficiary> beneficiaries = new HashSet<Beneficiary>();
 
+	private int version;
+
 	@SuppressWarnings("unused")
 	private Account() {
 	}
@@ -56,6 +58,14 @@ public class Account extends Entity {
 		return name;
 	}
 
+	/**
+	 * Returns the version of this account's row when it was loaded or last written, which increases each time its
+	 * beneficiary savings are written.
+	 */
+	public int getVersion() {
+		return version;
+	}
+
 	/**
 	 * Add a single beneficiary with a 100% allocation percentage.
 	 * @param beneficiaryName the name of the beneficiary (should be unique)
@@ -157,6 +167,29 @@ public class Account extends Entity {
 		beneficiaries.add(beneficiary);
 	}
 
+	/**
+	 * Used to restore the version of this account's row. Should only be called by the repository responsible for
+	 * reconstituting this account.
+	 * @param version the version
+	 */
+	void restoreVersion(int version) {
+		this.version = version;
+	}
+
+	/**
+	 * Returns a copy of this account with copies of its beneficiaries, so that a repository can hand out an account it
+	 * keeps without sharing its state. The copied beneficiaries have the same savings but no credits left to write.
+	 */
+	Account copy() {
+		Account copy = new Account(number, name);
+		copy.setEntityId(getEntityId());
+		copy.version = version;
+		for (Beneficiary b : beneficiaries) {
+			copy.beneficiaries.add(new Beneficiary(b.getName(), b.getAllocationPercentage(), b.getSavings()));
+		}
+		return copy;
+	}
+
 	public String toString() {
 		return "Number = '" + number + "', name = " + name + "', beneficiaries = " + beneficiaries;
 	}
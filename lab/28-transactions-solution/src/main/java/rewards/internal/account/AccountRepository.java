@@ -1,5 +1,8 @@
 package rewards.internal.account;
 
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * Loads account aggregates. Called by the reward network to find and reconstitute Account entities from an external
  * form such as a set of RDMS rows.
@@ -15,6 +18,14 @@ public interface AccountRepository {
 	 */
 	public Account findByCreditCard(String creditCardNumber);
 
+	/**
+	 * Load the accounts of several credit cards at once, in a bounded number of queries rather than one per card.
+	 * Cards of the same account map to the same account object.
+	 * @param creditCardNumbers the credit card numbers
+	 * @return the account objects by credit card number; cards with no account are absent
+	 */
+	public Map<String, Account> findByCreditCards(Collection<String> creditCardNumbers);
+
 	/**
 	 * Updates the 'savings' of each account beneficiary. The new savings balance contains the amount distributed for a
 	 * contribution made during a reward transaction.
@@ -26,4 +37,12 @@ public interface AccountRepository {
 	 */
 	public void updateBeneficiaries(Account account);
 
+	/**
+	 * Updates the 'savings' of each beneficiary of several accounts at once. Equivalent to calling
+	 * {@link #updateBeneficiaries(Account)} for each account, but allows implementations to send the changes to the
+	 * database in as few round trips as possible.
+	 * @param accounts the accounts whose beneficiary savings have changed
+	 */
+	public void updateBeneficiaries(Collection<Account> accounts);
+
 }
\ No newline at end of file
@@ -16,6 +16,11 @@ public class Beneficiary extends Entity {
 
 	private MonetaryAmount savings = MonetaryAmount.valueOf("0.00");
 
+	/**
+	 * The total credited since this beneficiary was reconstituted or its savings were last handed to a repository.
+	 */
+	private MonetaryAmount unsavedCredits = MonetaryAmount.zero();
+
 	@SuppressWarnings("unused")
 	private Beneficiary() {
 	}
@@ -71,6 +76,40 @@ public class Beneficiary extends Entity {
 	 */
 	public void credit(MonetaryAmount amount) {
 		savings = savings.add(amount);
+		unsavedCredits = unsavedCredits.add(amount);
+	}
+
+	/**
+	 * Returns true if this beneficiary's savings balance has changed since it was reconstituted or last saved, so that
+	 * a repository can skip beneficiaries with nothing to write.
+	 */
+	boolean hasUnsavedCredits() {
+		return unsavedCredits.asBigDecimal().signum() != 0;
+	}
+
+	/**
+	 * Returns the total credited to this beneficiary since it was reconstituted or last saved. Lets a repository write
+	 * just the change to the savings balance rather than the balance itself.
+	 */
+	MonetaryAmount getUnsavedCredits() {
+		return unsavedCredits;
+	}
+
+	/**
+	 * Records that this beneficiary's savings have been saved, written or queued for writing, starting the total of
+	 * unsaved credits over. Should only be called by the repository responsible for writing them.
+	 */
+	void markSaved() {
+		unsavedCredits = MonetaryAmount.zero();
+	}
+
+	/**
+	 * Used to correct the savings balance of a reconstituted beneficiary, for example with credits not yet written to
+	 * the database. Should only be called by the repository responsible for reconstituting this beneficiary.
+	 * @param savings the total amount saved to-date for this beneficiary
+	 */
+	void restoreSavings(MonetaryAmount savings) {
+		this.savings = savings;
 	}
 
 	public String toString() {
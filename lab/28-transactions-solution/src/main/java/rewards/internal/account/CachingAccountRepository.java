@@ -0,0 +1,311 @@
+package rewards.internal.account;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import common.collections.FrequencySketch;
+
+/**
+ * An account repository that keeps copies of the accounts of recently used credit cards, so that loading the account
+ * of a busy card does not join its beneficiaries and cards and parse their decimals again each time.
+ *
+ * A cached account is only handed out after checking that the version of its T_ACCOUNT row has not changed since, a
+ * lookup by primary key; the repositories that write beneficiary savings increment that version. An account found
+ * stale is loaded again. Accounts saved through this repository are written through to the cache once their
+ * transaction has committed.
+ *
+ * The cache holds at most a maximum number of credit cards. When full, a card not cached replaces the least recently
+ * used one only if it has been looked up more often recently, so that a burst of cards used once does not flush out
+ * the busy ones.
+ *
+ * Callers get their own copy of each account, which they may change freely.
+ */
+public class CachingAccountRepository implements AccountRepository {
+
+	private AccountRepository accountRepository;
+
+	private JdbcTemplate jdbcTemplate;
+
+	private final int maximumSize;
+
+	/**
+	 * Cached accounts by credit card number, least recently used first. Guarded by this repository's lock, as are the
+	 * other collections.
+	 */
+	private final LinkedHashMap<String, CachedAccount> accountsByCreditCard = new LinkedHashMap<String, CachedAccount>(
+			16, 0.75f, true);
+
+	private final Map<Long, CachedAccount> accountsById = new HashMap<Long, CachedAccount>();
+
+	private final FrequencySketch lookups;
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	private final LongAdder staleEntries = new LongAdder();
+
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * Creates an empty cache.
+	 * @param accountRepository the repository accounts are loaded from and saved to
+	 * @param dataSource the data source account versions are checked against
+	 * @param maximumSize the most credit cards to cache accounts for
+	 */
+	public CachingAccountRepository(AccountRepository accountRepository, DataSource dataSource, int maximumSize) {
+		if (maximumSize < 1) {
+			throw new IllegalArgumentException("Maximum size must be positive; your value was " + maximumSize);
+		}
+		this.accountRepository = accountRepository;
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		this.maximumSize = maximumSize;
+		this.lookups = new FrequencySketch(maximumSize);
+	}
+
+	public Account findByCreditCard(String creditCardNumber) {
+		Account cached = lookUp(creditCardNumber);
+		if (cached != null) {
+			Integer version = jdbcTemplate.query("select VERSION from T_ACCOUNT where ID = ?",
+					(ResultSetExtractor<Integer>) rs -> rs.next() ? rs.getInt(1) : null, cached.getEntityId());
+			if (version != null && version == cached.getVersion()) {
+				hits.increment();
+				return cached.copy();
+			}
+			staleEntries.increment();
+		}
+		misses.increment();
+		Account account = accountRepository.findByCreditCard(creditCardNumber);
+		cache(creditCardNumber, account.copy());
+		return account;
+	}
+
+	/**
+	 * Checks the versions of all cached accounts with one query per {@value JdbcAccountRepository#IN_LIST_SIZE}
+	 * accounts, and loads the others from the underlying repository at once.
+	 */
+	public Map<String, Account> findByCreditCards(Collection<String> creditCardNumbers) {
+		Map<String, Account> cachedByCreditCard = new LinkedHashMap<String, Account>();
+		List<String> notCached = new ArrayList<String>();
+		for (String creditCardNumber : new LinkedHashSet<String>(creditCardNumbers)) {
+			Account cached = lookUp(creditCardNumber);
+			if (cached != null) {
+				cachedByCreditCard.put(creditCardNumber, cached);
+			} else {
+				notCached.add(creditCardNumber);
+			}
+		}
+		Map<Long, Integer> versions = findVersions(cachedByCreditCard.values());
+		Iterator<Map.Entry<String, Account>> it = cachedByCreditCard.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, Account> entry = it.next();
+			Integer version = versions.get(entry.getValue().getEntityId());
+			if (version == null || version != entry.getValue().getVersion()) {
+				staleEntries.increment();
+				notCached.add(entry.getKey());
+				it.remove();
+			}
+		}
+		Map<String, Account> accounts = new LinkedHashMap<String, Account>();
+		Map<Long, Account> accountsById = new HashMap<Long, Account>();
+		if (!notCached.isEmpty()) {
+			misses.add(notCached.size());
+			accounts.putAll(accountRepository.findByCreditCards(notCached));
+			accounts.forEach((creditCardNumber, account) -> {
+				accountsById.put(account.getEntityId(), account);
+				cache(creditCardNumber, account.copy());
+			});
+		}
+		// cards of one account map to one copy, the freshly loaded one if any
+		hits.add(cachedByCreditCard.size());
+		cachedByCreditCard.forEach((creditCardNumber, cached) -> accounts.put(creditCardNumber,
+				accountsById.computeIfAbsent(cached.getEntityId(), id -> cached.copy())));
+		return accounts;
+	}
+
+	public void updateBeneficiaries(Account account) {
+		accountRepository.updateBeneficiaries(account);
+		writeThrough(Collections.singleton(account));
+	}
+
+	public void updateBeneficiaries(Collection<Account> accounts) {
+		accountRepository.updateBeneficiaries(accounts);
+		writeThrough(accounts);
+	}
+
+	/**
+	 * Returns the number of credit cards with a cached account.
+	 */
+	public synchronized int size() {
+		return accountsByCreditCard.size();
+	}
+
+	/**
+	 * Returns the number of lookups answered from the cache.
+	 */
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 * Returns the number of lookups that had to load the account, because it was not cached or was stale.
+	 */
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	/**
+	 * Returns the number of lookups that found a cached account whose version had changed since.
+	 */
+	public long getStaleCount() {
+		return staleEntries.sum();
+	}
+
+	/**
+	 * Returns the number of credit cards removed from the cache to make room for another.
+	 */
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	/**
+	 * Returns the fraction of lookups answered from the cache, or 0 if there were none.
+	 */
+	public double getHitRate() {
+		long hitCount = hits.sum();
+		long total = hitCount + misses.sum();
+		return total == 0 ? 0 : (double) hitCount / total;
+	}
+
+	public String toString() {
+		return "Credit cards = " + size() + ", hit rate = " + String.format("%.3f", getHitRate()) + ", stale = "
+				+ getStaleCount() + ", evictions = " + getEvictionCount();
+	}
+
+	/**
+	 * Returns the cached account of the given card, or null, counting the lookup either way.
+	 */
+	private synchronized Account lookUp(String creditCardNumber) {
+		lookups.increment(creditCardNumber);
+		CachedAccount cached = accountsByCreditCard.get(creditCardNumber);
+		return cached == null ? null : cached.account;
+	}
+
+	private Map<Long, Integer> findVersions(Collection<Account> accounts) {
+		Set<Long> distinctIds = new LinkedHashSet<Long>();
+		for (Account account : accounts) {
+			distinctIds.add(account.getEntityId());
+		}
+		List<Long> ids = new ArrayList<Long>(distinctIds);
+		Map<Long, Integer> versions = new HashMap<Long, Integer>();
+		for (int from = 0; from < ids.size(); from += JdbcAccountRepository.IN_LIST_SIZE) {
+			List<Long> chunk = ids.subList(from, Math.min(from + JdbcAccountRepository.IN_LIST_SIZE, ids.size()));
+			String sql = "select ID, VERSION from T_ACCOUNT where ID in ("
+					+ String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")";
+			jdbcTemplate.query(sql, (RowCallbackHandler) rs -> versions.put(rs.getLong(1), rs.getInt(2)),
+					chunk.toArray());
+		}
+		return versions;
+	}
+
+	/**
+	 * Caches a copy of the account of a card just loaded, if the card is used often enough to make room for it.
+	 */
+	private synchronized void cache(String creditCardNumber, Account account) {
+		CachedAccount cached = accountsByCreditCard.get(creditCardNumber);
+		if (cached != null && !cached.account.getEntityId().equals(account.getEntityId())) {
+			// the card has moved to another account since it was cached
+			remove(creditCardNumber);
+			cached = null;
+		}
+		if (cached == null) {
+			if (accountsByCreditCard.size() >= maximumSize) {
+				String eldest = accountsByCreditCard.keySet().iterator().next();
+				if (lookups.frequency(creditCardNumber) <= lookups.frequency(eldest)) {
+					return;
+				}
+				remove(eldest);
+				evictions.increment();
+			}
+			cached = accountsById.computeIfAbsent(account.getEntityId(), id -> new CachedAccount(account));
+			cached.creditCards++;
+			accountsByCreditCard.put(creditCardNumber, cached);
+		}
+		cached.update(account);
+	}
+
+	private void remove(String creditCardNumber) {
+		CachedAccount cached = accountsByCreditCard.remove(creditCardNumber);
+		if (--cached.creditCards == 0) {
+			accountsById.remove(cached.account.getEntityId());
+		}
+	}
+
+	/**
+	 * Replaces the cached copies of accounts just saved, once their transaction has committed.
+	 */
+	private void writeThrough(Collection<Account> accounts) {
+		List<Account> copies = new ArrayList<Account>(accounts.size());
+		for (Account account : accounts) {
+			copies.add(account.copy());
+		}
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				public void afterCommit() {
+					update(copies);
+				}
+			});
+		} else {
+			update(copies);
+		}
+	}
+
+	private synchronized void update(List<Account> accounts) {
+		for (Account account : accounts) {
+			CachedAccount cached = accountsById.get(account.getEntityId());
+			if (cached != null) {
+				cached.update(account);
+			}
+		}
+	}
+
+	/**
+	 * The cached copy of an account, shared by all of its cached credit cards.
+	 */
+	private static class CachedAccount {
+
+		private Account account;
+
+		private int creditCards;
+
+		public CachedAccount(Account account) {
+			this.account = account;
+		}
+
+		/**
+		 * Replaces the copy unless it is of a later version, as when transactions commit out of order.
+		 */
+		public void update(Account account) {
+			if (account.getVersion() >= this.account.getVersion()) {
+				this.account = account;
+			}
+		}
+	}
+}
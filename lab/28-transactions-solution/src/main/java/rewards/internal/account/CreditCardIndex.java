@@ -0,0 +1,175 @@
+package rewards.internal.account;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+import common.collections.LongLongHashMap;
+
+/**
+ * An in-memory index from credit card numbers to the entity ids of their accounts, so that an account repository can
+ * find an account by its primary key instead of searching T_ACCOUNT_CREDIT_CARD by card number.
+ *
+ * Card numbers are kept as longs in a {@link LongLongHashMap} rather than as Strings in a HashMap, taking 16 to 32
+ * bytes per card instead of well over a hundred. Numbers that are not 16 digits are never indexed. The index is
+ * loaded when the repository starts and kept up to date incrementally: cards found in the database are added, cards
+ * no longer found are removed, and {@link #put(String, long)} and {@link #remove(String)} keep it in step when cards
+ * are issued or cancelled.
+ *
+ * Thread-safe. Lookups take no lock unless they race with an update.
+ */
+public class CreditCardIndex {
+
+	/**
+	 * Returned by {@link #findAccountId(String)} for a card that is not indexed.
+	 */
+	public static final long NOT_INDEXED = -1L;
+
+	private final LongLongHashMap accountIdsByCreditCard;
+
+	private final StampedLock lock = new StampedLock();
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * Creates an empty index.
+	 * @param expectedCreditCards the number of credit cards to size the index for
+	 */
+	public CreditCardIndex(int expectedCreditCards) {
+		this.accountIdsByCreditCard = new LongLongHashMap(expectedCreditCards);
+	}
+
+	/**
+	 * Returns the entity id of the account the given card belongs to, counting a hit or a miss.
+	 * @param creditCardNumber the credit card number
+	 * @return the account's entity id, or {@link #NOT_INDEXED}
+	 */
+	public long findAccountId(String creditCardNumber) {
+		long key = keyOf(creditCardNumber);
+		long accountId = NOT_INDEXED;
+		if (key != NOT_INDEXED) {
+			long stamp = lock.tryOptimisticRead();
+			accountId = accountIdsByCreditCard.get(key, NOT_INDEXED);
+			if (!lock.validate(stamp)) {
+				stamp = lock.readLock();
+				try {
+					accountId = accountIdsByCreditCard.get(key, NOT_INDEXED);
+				} finally {
+					lock.unlockRead(stamp);
+				}
+			}
+		}
+		if (accountId == NOT_INDEXED) {
+			misses.increment();
+		} else {
+			hits.increment();
+		}
+		return accountId;
+	}
+
+	/**
+	 * Records the account a card belongs to. Ignored for card numbers that are not 16 digits.
+	 * @param creditCardNumber the credit card number
+	 * @param accountId the entity id of the account
+	 */
+	public void put(String creditCardNumber, long accountId) {
+		long key = keyOf(creditCardNumber);
+		if (key == NOT_INDEXED) {
+			return;
+		}
+		long stamp = lock.writeLock();
+		try {
+			accountIdsByCreditCard.put(key, accountId);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Forgets a card, for example because it was cancelled.
+	 * @param creditCardNumber the credit card number
+	 */
+	public void remove(String creditCardNumber) {
+		long key = keyOf(creditCardNumber);
+		if (key == NOT_INDEXED) {
+			return;
+		}
+		long stamp = lock.writeLock();
+		try {
+			accountIdsByCreditCard.remove(key);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Returns the number of cards indexed.
+	 */
+	public int size() {
+		long stamp = lock.readLock();
+		try {
+			return accountIdsByCreditCard.size();
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Returns an estimate of the heap memory taken by the index, in bytes.
+	 */
+	public long getMemoryFootprint() {
+		long stamp = lock.readLock();
+		try {
+			return accountIdsByCreditCard.getMemoryFootprint();
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Returns the number of lookups that found the card indexed.
+	 */
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 * Returns the number of lookups that did not find the card indexed and had to go to the database.
+	 */
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	/**
+	 * Returns the fraction of lookups that found the card indexed, or 0 if there were none.
+	 */
+	public double getHitRate() {
+		long hitCount = hits.sum();
+		long total = hitCount + misses.sum();
+		return total == 0 ? 0 : (double) hitCount / total;
+	}
+
+	public String toString() {
+		return "Credit cards = " + size() + ", memory = " + getMemoryFootprint() + " bytes, hit rate = "
+				+ String.format("%.3f", getHitRate());
+	}
+
+	/**
+	 * Returns a 16-digit card number as a long, or {@link #NOT_INDEXED} if it is not one.
+	 */
+	static long keyOf(String creditCardNumber) {
+		if (creditCardNumber == null || creditCardNumber.length() != 16) {
+			return NOT_INDEXED;
+		}
+		long key = 0;
+		for (int i = 0; i < 16; i++) {
+			char digit = creditCardNumber.charAt(i);
+			if (digit < '0' || digit > '9') {
+				return NOT_INDEXED;
+			}
+			key = key * 10 + (digit - '0');
+		}
+		return key;
+	}
+}
@@ -2,14 +2,28 @@ package rewards.internal.account;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.sql.DataSource;
 
 import org.springframework.dao.DataAccessException;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowCallbackHandler;
 
+import common.jdbc.ColumnLayout;
+import common.jdbc.RowReader;
 import common.money.MonetaryAmount;
 import common.money.Percentage;
 
@@ -17,6 +31,13 @@ import common.money.Percentage;
  * Loads accounts from a data source using the JDBC API.
  */
 public class JdbcAccountRepository implements AccountRepository {
+
+	/**
+	 * The most credit card numbers {@link #findByCreditCards(Collection)} puts in the IN list of one query.
+	 */
+	public static final int IN_LIST_SIZE = 256;
+
+	private static final ColumnLayout<AccountColumn> ACCOUNT_COLUMNS = ColumnLayout.of(AccountColumn.class);
 	
 	private JdbcTemplate jdbcTemplate;
 
@@ -25,19 +46,163 @@ public class JdbcAccountRepository implements AccountRepository {
 	 */
 	private ResultSetExtractor<Account> accountExtractor = new AccountExtractor();
 
+	/**
+	 * Extracts Account objects by credit card number from rows returned from a join of T_ACCOUNT,
+	 * T_ACCOUNT_BENEFICIARY and T_ACCOUNT_CREDIT_CARD.
+	 */
+	private ResultSetExtractor<Map<String, Account>> accountsExtractor = new AccountsExtractor();
+
+	private boolean deltaUpdates;
+
+	private CreditCardIndex creditCardIndex;
+
 	public void setDataSource(DataSource dataSource) {
 		this.jdbcTemplate = new JdbcTemplate(dataSource);
 	}
+
+	/**
+	 * Sets whether beneficiary savings are written as increments ({@code SAVINGS = SAVINGS + ?}) of the amounts
+	 * credited since the account was loaded, rather than as the balance computed in memory. The database then adds up
+	 * the credits itself, so concurrent rewards of one account cannot overwrite each other's credits and the rows stay
+	 * locked only for the update rather than from reading the balance on. Defaults to false.
+	 * @param deltaUpdates true to write increments, false to write balances
+	 */
+	public void setDeltaUpdates(boolean deltaUpdates) {
+		this.deltaUpdates = deltaUpdates;
+	}
+	
+	/**
+	 * Loads every credit card into the given index and from now on looks accounts up through it, falling back to
+	 * searching by card number for cards not indexed.
+	 * @param creditCardIndex an index to load and keep up to date
+	 */
+	public void enableCreditCardIndex(CreditCardIndex creditCardIndex) {
+		jdbcTemplate.query("select NUMBER, ACCOUNT_ID from T_ACCOUNT_CREDIT_CARD",
+				(RowCallbackHandler) rs -> creditCardIndex.put(rs.getString(1), rs.getLong(2)));
+		this.creditCardIndex = creditCardIndex;
+	}
 	
 	public Account findByCreditCard(String creditCardNumber) {
-		String sql = "select a.ID as ID, a.NUMBER as ACCOUNT_NUMBER, a.NAME as ACCOUNT_NAME, c.NUMBER as CREDIT_CARD_NUMBER, b.NAME as BENEFICIARY_NAME, b.ALLOCATION_PERCENTAGE as BENEFICIARY_ALLOCATION_PERCENTAGE, b.SAVINGS as BENEFICIARY_SAVINGS from T_ACCOUNT a, T_ACCOUNT_BENEFICIARY b, T_ACCOUNT_CREDIT_CARD c where ID = b.ACCOUNT_ID and ID = c.ACCOUNT_ID and c.NUMBER = ?";
-		return jdbcTemplate.query(sql, accountExtractor, creditCardNumber);
+		if (creditCardIndex != null) {
+			long accountId = creditCardIndex.findAccountId(creditCardNumber);
+			if (accountId != CreditCardIndex.NOT_INDEXED) {
+				// still checks the card, through the unique (ACCOUNT_ID, NUMBER) index
+				String sql = "select a.ID as ID, a.NUMBER as ACCOUNT_NUMBER, a.NAME as ACCOUNT_NAME, a.VERSION as ACCOUNT_VERSION, c.NUMBER as CREDIT_CARD_NUMBER, b.NAME as BENEFICIARY_NAME, b.ALLOCATION_PERCENTAGE as BENEFICIARY_ALLOCATION_PERCENTAGE, b.SAVINGS as BENEFICIARY_SAVINGS from T_ACCOUNT a, T_ACCOUNT_BENEFICIARY b, T_ACCOUNT_CREDIT_CARD c where ID = b.ACCOUNT_ID and ID = c.ACCOUNT_ID and c.ACCOUNT_ID = ? and c.NUMBER = ?";
+				Map<String, Account> accounts = jdbcTemplate.query(sql, accountsExtractor, accountId, creditCardNumber);
+				if (!accounts.isEmpty()) {
+					return accounts.values().iterator().next();
+				}
+				// the card has moved or gone since it was indexed
+				creditCardIndex.remove(creditCardNumber);
+			}
+		}
+		String sql = "select a.ID as ID, a.NUMBER as ACCOUNT_NUMBER, a.NAME as ACCOUNT_NAME, a.VERSION as ACCOUNT_VERSION, c.NUMBER as CREDIT_CARD_NUMBER, b.NAME as BENEFICIARY_NAME, b.ALLOCATION_PERCENTAGE as BENEFICIARY_ALLOCATION_PERCENTAGE, b.SAVINGS as BENEFICIARY_SAVINGS from T_ACCOUNT a, T_ACCOUNT_BENEFICIARY b, T_ACCOUNT_CREDIT_CARD c where ID = b.ACCOUNT_ID and ID = c.ACCOUNT_ID and c.NUMBER = ?";
+		Account account = jdbcTemplate.query(sql, accountExtractor, creditCardNumber);
+		if (creditCardIndex != null) {
+			creditCardIndex.put(creditCardNumber, account.getEntityId());
+		}
+		return account;
+	}
+
+	/**
+	 * Loads the accounts of up to {@value #IN_LIST_SIZE} credit cards per query, with the same join as
+	 * {@link #findByCreditCard(String)}.
+	 */
+	public Map<String, Account> findByCreditCards(Collection<String> creditCardNumbers) {
+		List<String> numbers = new ArrayList<String>(new LinkedHashSet<String>(creditCardNumbers));
+		Map<String, Account> accountsByCreditCard = new LinkedHashMap<String, Account>();
+		Map<Long, Account> accountsById = new HashMap<Long, Account>();
+		for (int from = 0; from < numbers.size(); from += IN_LIST_SIZE) {
+			List<String> chunk = numbers.subList(from, Math.min(from + IN_LIST_SIZE, numbers.size()));
+			// pad the list to a power of two so that few distinct statements need preparing
+			int size = Math.min(IN_LIST_SIZE, Integer.highestOneBit(chunk.size() * 2 - 1));
+			Object[] args = new Object[size];
+			for (int i = 0; i < size; i++) {
+				args[i] = chunk.get(Math.min(i, chunk.size() - 1));
+			}
+			String sql = "select a.ID as ID, a.NUMBER as ACCOUNT_NUMBER, a.NAME as ACCOUNT_NAME, a.VERSION as ACCOUNT_VERSION, c.NUMBER as CREDIT_CARD_NUMBER, b.NAME as BENEFICIARY_NAME, b.ALLOCATION_PERCENTAGE as BENEFICIARY_ALLOCATION_PERCENTAGE, b.SAVINGS as BENEFICIARY_SAVINGS from T_ACCOUNT a, T_ACCOUNT_BENEFICIARY b, T_ACCOUNT_CREDIT_CARD c where ID = b.ACCOUNT_ID and ID = c.ACCOUNT_ID and c.NUMBER in ("
+					+ String.join(", ", Collections.nCopies(size, "?")) + ")";
+			Map<String, Account> accounts = jdbcTemplate.query(sql, accountsExtractor, args);
+			// an account with cards in several chunks is loaded once per chunk: map all of its cards to one object
+			accounts.forEach((creditCardNumber, account) -> accountsByCreditCard.put(creditCardNumber,
+					accountsById.computeIfAbsent(account.getEntityId(), id -> account)));
+		}
+		if (creditCardIndex != null) {
+			accountsByCreditCard.forEach((creditCardNumber, account) -> creditCardIndex.put(creditCardNumber,
+					account.getEntityId()));
+		}
+		return accountsByCreditCard;
 	}
 
 	public void updateBeneficiaries(Account account) {
-		String sql = "update T_ACCOUNT_BENEFICIARY SET SAVINGS = ? where ACCOUNT_ID = ? and NAME = ?";
-		for (Beneficiary b : account.getBeneficiaries()) {
-			jdbcTemplate.update(sql, b.getSavings().asBigDecimal(), account.getEntityId(), b.getName());
+		updateBeneficiaries(Collections.singleton(account));
+	}
+
+	/**
+	 * Writes the savings of the beneficiaries credited since they were loaded or last written, in one JDBC batch, and
+	 * increments the version of their accounts in another. Issues no statement at all if none was.
+	 *
+	 * Unless delta updates are on, an account's version is only incremented if it is still the version the account was
+	 * loaded at, before any savings are written. Should be called in a transaction, which the conflict rolls back.
+	 * @throws OptimisticLockingFailureException if another transaction has written an account since it was loaded
+	 */
+	public void updateBeneficiaries(Collection<Account> accounts) {
+		String sql = deltaUpdates
+				? "update T_ACCOUNT_BENEFICIARY SET SAVINGS = SAVINGS + ? where ACCOUNT_ID = ? and NAME = ?"
+				: "update T_ACCOUNT_BENEFICIARY SET SAVINGS = ? where ACCOUNT_ID = ? and NAME = ?";
+		List<Beneficiary> dirtyBeneficiaries = new ArrayList<Beneficiary>();
+		List<Account> dirtyAccounts = new ArrayList<Account>();
+		List<Object[]> batchArgs = new ArrayList<Object[]>();
+		for (Account account : accounts) {
+			boolean dirty = false;
+			for (Beneficiary b : account.getBeneficiaries()) {
+				if (b.hasUnsavedCredits()) {
+					dirtyBeneficiaries.add(b);
+					dirty = true;
+					MonetaryAmount savings = deltaUpdates ? b.getUnsavedCredits() : b.getSavings();
+					batchArgs.add(new Object[] { savings.asBigDecimal(), account.getEntityId(), b.getName() });
+				}
+			}
+			if (dirty) {
+				dirtyAccounts.add(account);
+			}
+		}
+		if (batchArgs.isEmpty()) {
+			return;
+		}
+		if (deltaUpdates) {
+			// increments cannot overwrite each other, so the version only lets caches tell that the account changed
+			jdbcTemplate.batchUpdate(sql, batchArgs);
+			List<Object[]> versionArgs = new ArrayList<Object[]>();
+			for (Account account : dirtyAccounts) {
+				versionArgs.add(new Object[] { account.getEntityId() });
+			}
+			jdbcTemplate.batchUpdate("update T_ACCOUNT set VERSION = VERSION + 1 where ID = ?", versionArgs);
+		} else {
+			checkAndIncrementVersions(dirtyAccounts);
+			jdbcTemplate.batchUpdate(sql, batchArgs);
+		}
+		for (Beneficiary b : dirtyBeneficiaries) {
+			b.markSaved();
+		}
+		for (Account account : dirtyAccounts) {
+			account.restoreVersion(account.getVersion() + 1);
+		}
+	}
+
+	private void checkAndIncrementVersions(List<Account> accounts) {
+		List<Object[]> versionArgs = new ArrayList<Object[]>();
+		for (Account account : accounts) {
+			versionArgs.add(new Object[] { account.getEntityId(), account.getVersion() });
+		}
+		int[] counts = jdbcTemplate.batchUpdate("update T_ACCOUNT set VERSION = VERSION + 1 where ID = ? and VERSION = ?",
+				versionArgs);
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] == 0) {
+				Account account = accounts.get(i);
+				throw new OptimisticLockingFailureException("Account " + account.getNumber()
+						+ " was written by another transaction since it was loaded at version " + account.getVersion());
+			}
 		}
 	}
 
@@ -50,38 +215,72 @@ public class JdbcAccountRepository implements AccountRepository {
 	 * @throws SQLException an exception occurred extracting data from the result set
 	 */
 	private Account mapAccount(ResultSet rs) throws SQLException {
-		Account account = null;
-		while (rs.next()) {
+		Map<String, Account> accounts = mapAccounts(rs);
+		if (accounts.isEmpty()) {
+			// no rows returned - throw an empty result exception
+			throw new EmptyResultDataAccessException(1);
+		}
+		return accounts.values().iterator().next();
+	}
+
+	/**
+	 * Map the rows returned from the join of T_ACCOUNT, T_ACCOUNT_BENEFICIARY and T_ACCOUNT_CREDIT_CARD to
+	 * fully-reconstituted Account aggregates, by credit card number. The rows of an account may come in any order and
+	 * repeat its beneficiaries once per credit card; every card of an account maps to the same Account object.
+	 * 
+	 * @param rs the set of rows returned from the query
+	 * @return the mapped Account aggregates
+	 * @throws SQLException an exception occurred extracting data from the result set
+	 */
+	private Map<String, Account> mapAccounts(ResultSet rs) throws SQLException {
+		Map<Long, Account> accountsById = new HashMap<Long, Account>();
+		Map<Long, Set<String>> beneficiaryNamesById = new HashMap<Long, Set<String>>();
+		Map<String, Account> accountsByCreditCard = new LinkedHashMap<String, Account>();
+		RowReader<AccountColumn> row = ACCOUNT_COLUMNS.bind(rs);
+		while (row.next()) {
+			Long id = row.getLong(AccountColumn.ID);
+			Account account = accountsById.get(id);
 			if (account == null) {
-				String number = rs.getString("ACCOUNT_NUMBER");
-				String name = rs.getString("ACCOUNT_NAME");
+				String number = row.getString(AccountColumn.ACCOUNT_NUMBER);
+				String name = row.getString(AccountColumn.ACCOUNT_NAME);
 				account = new Account(number, name);
 				// set internal entity identifier (primary key)
-				account.setEntityId(rs.getLong("ID"));
+				account.setEntityId(id);
+				account.restoreVersion(row.getInt(AccountColumn.ACCOUNT_VERSION));
+				accountsById.put(id, account);
+				beneficiaryNamesById.put(id, new HashSet<String>());
+			}
+			accountsByCreditCard.put(row.getString(AccountColumn.CREDIT_CARD_NUMBER), account);
+			if (beneficiaryNamesById.get(id).add(row.getString(AccountColumn.BENEFICIARY_NAME))) {
+				account.restoreBeneficiary(mapBeneficiary(row));
 			}
-			account.restoreBeneficiary(mapBeneficiary(rs));
-		}
-		if (account == null) {
-			// no rows returned - throw an empty result exception
-			throw new EmptyResultDataAccessException(1);
 		}
-		return account;
+		return accountsByCreditCard;
 	}
 
 	/**
 	 * Maps the beneficiary columns in a single row to an AllocatedBeneficiary object.
 	 * 
-	 * @param rs the result set with its cursor positioned at the current row
+	 * @param row the reader of the result set with its cursor positioned at the current row
 	 * @return an allocated beneficiary
 	 * @throws SQLException an exception occurred extracting data from the result set
 	 */
-	private Beneficiary mapBeneficiary(ResultSet rs) throws SQLException {
-		String name = rs.getString("BENEFICIARY_NAME");
-		MonetaryAmount savings = MonetaryAmount.valueOf(rs.getString("BENEFICIARY_SAVINGS"));
-		Percentage allocationPercentage = Percentage.valueOf(rs.getString("BENEFICIARY_ALLOCATION_PERCENTAGE"));
+	private Beneficiary mapBeneficiary(RowReader<AccountColumn> row) throws SQLException {
+		String name = row.getString(AccountColumn.BENEFICIARY_NAME);
+		MonetaryAmount savings = row.getMonetaryAmount(AccountColumn.BENEFICIARY_SAVINGS);
+		Percentage allocationPercentage = row.getPercentage(AccountColumn.BENEFICIARY_ALLOCATION_PERCENTAGE);
 		return new Beneficiary(name, allocationPercentage, savings);
 	}
 
+	/**
+	 * The columns of the rows returned from the join of T_ACCOUNT, T_ACCOUNT_BENEFICIARY and T_ACCOUNT_CREDIT_CARD, by
+	 * label.
+	 */
+	private enum AccountColumn {
+		ID, ACCOUNT_NUMBER, ACCOUNT_NAME, ACCOUNT_VERSION, CREDIT_CARD_NUMBER, BENEFICIARY_NAME,
+		BENEFICIARY_ALLOCATION_PERCENTAGE, BENEFICIARY_SAVINGS
+	}
+
 	private class AccountExtractor implements ResultSetExtractor<Account> {
 
 		public Account extractData(ResultSet rs) throws SQLException, DataAccessException {
@@ -89,4 +288,12 @@ public class JdbcAccountRepository implements AccountRepository {
 		}
 
 	}
+
+	private class AccountsExtractor implements ResultSetExtractor<Map<String, Account>> {
+
+		public Map<String, Account> extractData(ResultSet rs) throws SQLException, DataAccessException {
+			return mapAccounts(rs);
+		}
+
+	}
 }
\ No newline at end of file
@@ -0,0 +1,106 @@
+package rewards.internal.account;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+import io.r2dbc.spi.ConnectionFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import common.money.MonetaryAmount;
+import common.money.Percentage;
+
+/**
+ * Loads accounts from a connection factory using the R2DBC API.
+ */
+public class R2dbcAccountRepository implements ReactiveAccountRepository {
+
+	private DatabaseClient databaseClient;
+
+	public void setConnectionFactory(ConnectionFactory connectionFactory) {
+		this.databaseClient = DatabaseClient.create(connectionFactory);
+	}
+
+	public Mono<Account> findByCreditCard(String creditCardNumber) {
+		String sql = "select a.ID as ID, a.NUMBER as ACCOUNT_NUMBER, a.NAME as ACCOUNT_NAME, a.VERSION as ACCOUNT_VERSION, c.NUMBER as CREDIT_CARD_NUMBER, b.NAME as BENEFICIARY_NAME, b.ALLOCATION_PERCENTAGE as BENEFICIARY_ALLOCATION_PERCENTAGE, b.SAVINGS as BENEFICIARY_SAVINGS from T_ACCOUNT a, T_ACCOUNT_BENEFICIARY b, T_ACCOUNT_CREDIT_CARD c where a.ID = b.ACCOUNT_ID and a.ID = c.ACCOUNT_ID and c.NUMBER = :creditCardNumber";
+		return databaseClient.sql(sql).bind("creditCardNumber", creditCardNumber).fetch().all().collectList()
+				.map(this::mapAccount);
+	}
+
+	/**
+	 * Writes the savings of the beneficiaries credited since the account was loaded or last written, once its version
+	 * has been incremented, only if it is still the version the account was loaded at. Issues no statement at all if no
+	 * beneficiary was credited. Should be run in a transaction, which the conflict rolls back.
+	 * @return completes once every beneficiary has been updated, or an OptimisticLockingFailureException error if
+	 * another transaction has written the account since it was loaded
+	 */
+	public Mono<Void> updateBeneficiaries(Account account) {
+		String sql = "update T_ACCOUNT_BENEFICIARY SET SAVINGS = :savings where ACCOUNT_ID = :accountId and NAME = :name";
+		List<Beneficiary> dirtyBeneficiaries = new ArrayList<Beneficiary>();
+		for (Beneficiary b : account.getBeneficiaries()) {
+			if (b.hasUnsavedCredits()) {
+				dirtyBeneficiaries.add(b);
+			}
+		}
+		if (dirtyBeneficiaries.isEmpty()) {
+			return Mono.empty();
+		}
+		return databaseClient.sql("update T_ACCOUNT set VERSION = VERSION + 1 where ID = :accountId and VERSION = :version")
+				.bind("accountId", account.getEntityId()).bind("version", account.getVersion())
+				.fetch().rowsUpdated()
+				.flatMap(count -> count == 0 ? Mono.error(new OptimisticLockingFailureException("Account "
+						+ account.getNumber() + " was written by another transaction since it was loaded at version "
+						+ account.getVersion())) : Mono.just(count))
+				.thenMany(Flux.fromIterable(dirtyBeneficiaries))
+				.concatMap(b -> databaseClient.sql(sql).bind("savings", b.getSavings().asBigDecimal())
+						.bind("accountId", account.getEntityId()).bind("name", b.getName()).fetch().rowsUpdated())
+				.then(Mono.fromRunnable(() -> {
+					for (Beneficiary b : dirtyBeneficiaries) {
+						b.markSaved();
+					}
+					account.restoreVersion(account.getVersion() + 1);
+				}));
+	}
+
+	/**
+	 * Map the rows returned from the join of T_ACCOUNT and T_ACCOUNT_BENEFICIARY to an fully-reconstituted Account
+	 * aggregate.
+	 * 
+	 * @param rows the rows returned from the query, as column values keyed by column label
+	 * @return the mapped Account aggregate
+	 * @throws EmptyResultDataAccessException if no rows were returned
+	 */
+	private Account mapAccount(List<Map<String, Object>> rows) {
+		if (rows.isEmpty()) {
+			throw new EmptyResultDataAccessException(1);
+		}
+		Map<String, Object> first = rows.get(0);
+		Account account = new Account((String) first.get("ACCOUNT_NUMBER"), (String) first.get("ACCOUNT_NAME"));
+		// set internal entity identifier (primary key)
+		account.setEntityId(((Number) first.get("ID")).longValue());
+		account.restoreVersion(((Number) first.get("ACCOUNT_VERSION")).intValue());
+		for (Map<String, Object> row : rows) {
+			account.restoreBeneficiary(mapBeneficiary(row));
+		}
+		return account;
+	}
+
+	/**
+	 * Maps the beneficiary columns in a single row to an AllocatedBeneficiary object.
+	 * 
+	 * @param row the column values of the row, keyed by column label
+	 * @return an allocated beneficiary
+	 */
+	private Beneficiary mapBeneficiary(Map<String, Object> row) {
+		String name = (String) row.get("BENEFICIARY_NAME");
+		MonetaryAmount savings = new MonetaryAmount((BigDecimal) row.get("BENEFICIARY_SAVINGS"));
+		Percentage allocationPercentage = new Percentage((BigDecimal) row.get("BENEFICIARY_ALLOCATION_PERCENTAGE"));
+		return new Beneficiary(name, allocationPercentage, savings);
+	}
+}
@@ -0,0 +1,29 @@
+package rewards.internal.account;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Loads account aggregates without blocking. The reactive counterpart of {@link AccountRepository}, used by the
+ * reactive reward network.
+ * 
+ * Objects emitted by this repository are guaranteed to be fully-initialized and ready to use.
+ */
+public interface ReactiveAccountRepository {
+
+	/**
+	 * Load an account by its credit card.
+	 * @param creditCardNumber the credit card number
+	 * @return the account object, or an EmptyResultDataAccessException error if no account has the card
+	 */
+	public Mono<Account> findByCreditCard(String creditCardNumber);
+
+	/**
+	 * Updates the 'savings' of each account beneficiary. The new savings balance contains the amount distributed for a
+	 * contribution made during a reward transaction.
+	 * @param account the account whose beneficiary savings have changed
+	 * @return completes once every beneficiary has been updated, or an OptimisticLockingFailureException error if
+	 * another transaction has written the account since it was loaded
+	 */
+	public Mono<Void> updateBeneficiaries(Account account);
+
+}
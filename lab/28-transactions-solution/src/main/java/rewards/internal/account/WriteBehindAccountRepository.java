@@ -0,0 +1,301 @@
+package rewards.internal.account;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import common.money.MonetaryAmount;
+
+/**
+ * An account repository that writes beneficiary savings behind: instead of rewriting every beneficiary's savings on
+ * each reward, it accumulates the credits made to each account in memory and periodically applies their sums with one
+ * relative update per beneficiary.
+ *
+ * Meant for accounts such as corporate cards that are rewarded thousands of times an hour, where most of the savings
+ * updates would otherwise overwrite one another. Credits are only accumulated once the transaction that made them has
+ * committed, so the reward records written in that transaction stay durable and rolled back rewards are never
+ * applied. Pending credits are flushed in a transaction of their own when more than a configured number of accounts
+ * have some, at least every <em>max staleness</em> interval, and on {@link #shutdown()}.
+ *
+ * Accounts loaded through this repository include their pending credits in their savings. Savings in the database lag
+ * behind by at most the max staleness interval, and credits still pending when the process dies without shutting down
+ * are lost.
+ *
+ * The credits being flushed stay visible until the next flush, with the version each account's row is written at, so
+ * that an account loaded before the flush committed includes them and one loaded after does not count them twice.
+ */
+public class WriteBehindAccountRepository implements AccountRepository {
+
+	/**
+	 * The default number of accounts with pending credits that triggers a flush.
+	 */
+	public static final int DEFAULT_MAX_PENDING_ACCOUNTS = 1000;
+
+	private static final Logger logger = LoggerFactory.getLogger(WriteBehindAccountRepository.class);
+
+	private static final String CREDIT_SQL = "update T_ACCOUNT_BENEFICIARY set SAVINGS = SAVINGS + ? where ACCOUNT_ID = ? and NAME = ?";
+
+	private static final String VERSION_SQL = "update T_ACCOUNT set VERSION = VERSION + 1 where ID = ?";
+
+	private static final int VERSION_QUERY_SIZE = 100;
+
+	private AccountRepository accountRepository;
+
+	private JdbcTemplate jdbcTemplate;
+
+	private TransactionTemplate flushTransactionTemplate;
+
+	private ScheduledExecutorService scheduler;
+
+	private int maxPendingAccounts = DEFAULT_MAX_PENDING_ACCOUNTS;
+
+	/**
+	 * Credits not yet written, by account entity id and beneficiary name. Guarded by this repository's lock.
+	 */
+	private Map<Long, Map<String, MonetaryAmount>> pendingCredits = new HashMap<Long, Map<String, MonetaryAmount>>();
+
+	/**
+	 * Credits taken by the last flush, by account entity id and beneficiary name. Guarded by this repository's lock.
+	 */
+	private Map<Long, Map<String, MonetaryAmount>> inFlightCredits = Collections.emptyMap();
+
+	/**
+	 * The versions of the accounts' rows that include the in-flight credits, by account entity id, once written by the
+	 * flush transaction. Guarded by this repository's lock.
+	 */
+	private Map<Long, Integer> inFlightVersions = Collections.emptyMap();
+
+	private final Object flushLock = new Object();
+
+	private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+	private final LongAdder flushes = new LongAdder();
+
+	/**
+	 * Creates a write-behind repository and starts flushing periodically.
+	 * @param accountRepository the repository accounts are loaded from
+	 * @param dataSource the data source credits are written to
+	 * @param transactionManager the transaction manager flushes run in a new transaction of
+	 * @param maxStalenessMillis the longest time credits may stay pending, in milliseconds
+	 */
+	public WriteBehindAccountRepository(AccountRepository accountRepository, DataSource dataSource,
+			PlatformTransactionManager transactionManager, long maxStalenessMillis) {
+		if (maxStalenessMillis < 1) {
+			throw new IllegalArgumentException("Max staleness must be positive; your value was " + maxStalenessMillis);
+		}
+		this.accountRepository = accountRepository;
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		this.flushTransactionTemplate = new TransactionTemplate(transactionManager);
+		this.flushTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("savings-write-behind-");
+		threadFactory.setDaemon(true);
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+		this.scheduler.scheduleWithFixedDelay(this::flushQuietly, maxStalenessMillis, maxStalenessMillis,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Sets the number of accounts with pending credits that triggers a flush. Defaults to
+	 * {@link #DEFAULT_MAX_PENDING_ACCOUNTS}.
+	 * @param maxPendingAccounts the number of accounts, must be positive
+	 */
+	public void setMaxPendingAccounts(int maxPendingAccounts) {
+		if (maxPendingAccounts < 1) {
+			throw new IllegalArgumentException("Max pending accounts must be positive; your value was "
+					+ maxPendingAccounts);
+		}
+		this.maxPendingAccounts = maxPendingAccounts;
+	}
+
+	public Account findByCreditCard(String creditCardNumber) {
+		Account account = accountRepository.findByCreditCard(creditCardNumber);
+		addPendingCreditsTo(Collections.singleton(account));
+		return account;
+	}
+
+	public Map<String, Account> findByCreditCards(Collection<String> creditCardNumbers) {
+		Map<String, Account> accounts = accountRepository.findByCreditCards(creditCardNumbers);
+		addPendingCreditsTo(new HashSet<Account>(accounts.values()));
+		return accounts;
+	}
+
+	private synchronized void addPendingCreditsTo(Collection<Account> accounts) {
+		for (Account account : accounts) {
+			addCreditsTo(account, pendingCredits.get(account.getEntityId()));
+			Integer written = inFlightVersions.get(account.getEntityId());
+			if (written == null || account.getVersion() < written) {
+				// loaded before the flush committed
+				addCreditsTo(account, inFlightCredits.get(account.getEntityId()));
+			}
+		}
+	}
+
+	private void addCreditsTo(Account account, Map<String, MonetaryAmount> credits) {
+		if (credits == null) {
+			return;
+		}
+		for (Beneficiary b : account.getBeneficiaries()) {
+			MonetaryAmount credit = credits.get(b.getName());
+			if (credit != null) {
+				b.restoreSavings(b.getSavings().add(credit));
+			}
+		}
+	}
+
+	public void updateBeneficiaries(Account account) {
+		Map<String, MonetaryAmount> credits = new LinkedHashMap<String, MonetaryAmount>();
+		for (Beneficiary b : account.getBeneficiaries()) {
+			if (b.hasUnsavedCredits()) {
+				credits.put(b.getName(), b.getUnsavedCredits());
+				b.markSaved();
+			}
+		}
+		if (credits.isEmpty()) {
+			return;
+		}
+		Long accountId = account.getEntityId();
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				public void afterCommit() {
+					addPendingCredits(accountId, credits);
+				}
+			});
+		} else {
+			addPendingCredits(accountId, credits);
+		}
+	}
+
+	public void updateBeneficiaries(Collection<Account> accounts) {
+		for (Account account : accounts) {
+			updateBeneficiaries(account);
+		}
+	}
+
+	private void addPendingCredits(Long accountId, Map<String, MonetaryAmount> credits) {
+		boolean full;
+		synchronized (this) {
+			Map<String, MonetaryAmount> pending = pendingCredits.computeIfAbsent(accountId,
+					id -> new HashMap<String, MonetaryAmount>());
+			credits.forEach((name, credit) -> pending.merge(name, credit, MonetaryAmount::add));
+			full = pendingCredits.size() >= maxPendingAccounts;
+		}
+		if (full && flushRequested.compareAndSet(false, true)) {
+			scheduler.execute(this::flushQuietly);
+		}
+	}
+
+	/**
+	 * Writes all pending credits to the database now, in a new transaction. If writing fails the credits stay pending
+	 * and are retried by the next flush. Until the next flush, the credits written stay in flight.
+	 */
+	public void flush() {
+		synchronized (flushLock) {
+			flushRequested.set(false);
+			Map<Long, Map<String, MonetaryAmount>> credits;
+			synchronized (this) {
+				if (pendingCredits.isEmpty()) {
+					return;
+				}
+				credits = pendingCredits;
+				pendingCredits = new HashMap<Long, Map<String, MonetaryAmount>>();
+				inFlightCredits = credits;
+				inFlightVersions = Collections.emptyMap();
+			}
+			List<Object[]> batchArgs = new ArrayList<Object[]>();
+			List<Object[]> versionArgs = new ArrayList<Object[]>();
+			credits.forEach((accountId, byName) -> byName.forEach((name, credit) -> batchArgs.add(new Object[] {
+					credit.asBigDecimal(), accountId, name })));
+			credits.keySet().forEach(accountId -> versionArgs.add(new Object[] { accountId }));
+			try {
+				flushTransactionTemplate.executeWithoutResult(status -> {
+					jdbcTemplate.batchUpdate(CREDIT_SQL, batchArgs);
+					jdbcTemplate.batchUpdate(VERSION_SQL, versionArgs);
+					Map<Long, Integer> versions = findVersions(new ArrayList<Long>(credits.keySet()));
+					synchronized (this) {
+						inFlightVersions = versions;
+					}
+				});
+			} catch (RuntimeException e) {
+				synchronized (this) {
+					inFlightCredits = Collections.emptyMap();
+					inFlightVersions = Collections.emptyMap();
+					credits.forEach((accountId, byName) -> byName.forEach((name, credit) -> pendingCredits
+							.computeIfAbsent(accountId, id -> new HashMap<String, MonetaryAmount>())
+							.merge(name, credit, MonetaryAmount::add)));
+				}
+				throw e;
+			}
+			flushes.increment();
+		}
+	}
+
+	/**
+	 * Returns the versions of the rows of the given accounts, by account entity id, as seen by the current transaction.
+	 */
+	private Map<Long, Integer> findVersions(List<Long> accountIds) {
+		Map<Long, Integer> versions = new HashMap<Long, Integer>();
+		for (int from = 0; from < accountIds.size(); from += VERSION_QUERY_SIZE) {
+			List<Long> slice = accountIds.subList(from, Math.min(from + VERSION_QUERY_SIZE, accountIds.size()));
+			String sql = "select ID, VERSION from T_ACCOUNT where ID in ("
+					+ String.join(", ", Collections.nCopies(slice.size(), "?")) + ")";
+			jdbcTemplate.query(sql, (RowCallbackHandler) rs -> versions.put(rs.getLong(1), rs.getInt(2)),
+					slice.toArray());
+		}
+		return versions;
+	}
+
+	private void flushQuietly() {
+		try {
+			flush();
+		} catch (RuntimeException e) {
+			logger.warn("Could not write pending savings credits; will retry", e);
+		}
+	}
+
+	/**
+	 * Returns the number of accounts with credits not yet written to the database.
+	 */
+	public synchronized int getPendingAccountCount() {
+		return pendingCredits.size();
+	}
+
+	/**
+	 * Returns the number of flushes that wrote credits to the database.
+	 */
+	public long getFlushCount() {
+		return flushes.sum();
+	}
+
+	/**
+	 * Stops flushing periodically and writes the credits still pending. Called when the application context closes.
+	 * @throws InterruptedException if interrupted while waiting for a running flush
+	 */
+	public void shutdown() throws InterruptedException {
+		scheduler.shutdown();
+		scheduler.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		flush();
+	}
+}
@@ -1,7 +1,9 @@
 package rewards.internal.restaurant;
 
-import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Calendar;
+import java.util.List;
 
 import javax.sql.DataSource;
 
@@ -10,7 +12,10 @@ import org.springframework.jdbc.core.RowMapper;
 
 import rewards.Dining;
 import rewards.internal.account.Account;
+import rewards.internal.reward.MonthlyRewardCounts;
 
+import common.jdbc.OrdinalRowMapper;
+import common.jdbc.RowReader;
 import common.money.Percentage;
 
 /**
@@ -25,29 +30,63 @@ public class JdbcRestaurantRepository implements RestaurantRepository {
 	 */
 	private RowMapper<Restaurant> rowMapper = new RestaurantRowMapper();
 
+	private MonthlyRewardCounts monthlyRewardCounts;
+
 	public void setDataSource(DataSource dataSource) {
 		this.jdbcTemplate = new JdbcTemplate(dataSource);
 	}
+
+	/**
+	 * Sets the monthly reward counts that 'M' (max rewards per month) policies check dinings against. Required to map
+	 * restaurants with such a policy.
+	 * @param monthlyRewardCounts the counts
+	 */
+	public void setMonthlyRewardCounts(MonthlyRewardCounts monthlyRewardCounts) {
+		this.monthlyRewardCounts = monthlyRewardCounts;
+	}
 	
 	public Restaurant findByMerchantNumber(String merchantNumber) {
-		String sql = "select MERCHANT_NUMBER, NAME, BENEFIT_PERCENTAGE, BENEFIT_AVAILABILITY_POLICY from T_RESTAURANT where MERCHANT_NUMBER = ?";
+		String sql = "select MERCHANT_NUMBER, NAME, BENEFIT_PERCENTAGE, BENEFIT_AVAILABILITY_POLICY, MAX_REWARDS_PER_MONTH from T_RESTAURANT where MERCHANT_NUMBER = ?";
 		return jdbcTemplate.queryForObject(sql, rowMapper, merchantNumber);
 	}
 
+	/**
+	 * Finds the restaurants inserted or last updated at or after the given time, by their 'LAST_MODIFIED' column.
+	 * The schemas of every supported database set that column to the current timestamp on any update that does not
+	 * set it explicitly.
+	 * 
+	 * @param since the earliest modification time, or null for all restaurants
+	 * @return the restaurants modified since then
+	 */
+	public List<Restaurant> findModifiedSince(Timestamp since) {
+		String sql = "select MERCHANT_NUMBER, NAME, BENEFIT_PERCENTAGE, BENEFIT_AVAILABILITY_POLICY, MAX_REWARDS_PER_MONTH from T_RESTAURANT";
+		if (since == null) {
+			return jdbcTemplate.query(sql, rowMapper);
+		}
+		return jdbcTemplate.query(sql + " where LAST_MODIFIED >= ?", rowMapper, since);
+	}
+
+	/**
+	 * Returns the latest modification time of any restaurant, or null if there are none.
+	 */
+	public Timestamp findLastModified() {
+		return jdbcTemplate.queryForObject("select max(LAST_MODIFIED) from T_RESTAURANT", Timestamp.class);
+	}
+
 	/**
 	 * Maps a row returned from a query of T_RESTAURANT to a Restaurant object.
 	 * 
-	 * @param rs the result set with its cursor positioned at the current row
+	 * @param row the reader of the result set with its cursor positioned at the current row
 	 */
-	private Restaurant mapRestaurant(ResultSet rs) throws SQLException {
+	private Restaurant mapRestaurant(RowReader<RestaurantColumn> row) throws SQLException {
 		// get the row column data
-		String name = rs.getString("NAME");
-		String number = rs.getString("MERCHANT_NUMBER");
-		Percentage benefitPercentage = Percentage.valueOf(rs.getString("BENEFIT_PERCENTAGE"));
+		String name = row.getString(RestaurantColumn.NAME);
+		String number = row.getString(RestaurantColumn.MERCHANT_NUMBER);
+		Percentage benefitPercentage = row.getPercentage(RestaurantColumn.BENEFIT_PERCENTAGE);
 		// map to the object
 		Restaurant restaurant = new Restaurant(number, name);
 		restaurant.setBenefitPercentage(benefitPercentage);
-		restaurant.setBenefitAvailabilityPolicy(mapBenefitAvailabilityPolicy(rs));
+		restaurant.setBenefitAvailabilityPolicy(mapBenefitAvailabilityPolicy(row));
 		return restaurant;
 	}
 
@@ -55,23 +94,46 @@ public class JdbcRestaurantRepository implements RestaurantRepository {
 	 * Helper method that maps benefit availability policy data in the ResultSet to a fully-configured
 	 * {@link BenefitAvailabilityPolicy} object. The key column is 'BENEFIT_AVAILABILITY_POLICY', which is a
 	 * discriminator column containing a string code that identifies the type of policy. Currently supported types are:
-	 * 'A' for 'always available' and 'N' for 'never available'.
+	 * 'A' for 'always available', 'N' for 'never available', 'W' for 'weekdays only' and 'M' for 'max rewards per
+	 * month', which takes the maximum from the 'MAX_REWARDS_PER_MONTH' column.
 	 * 
-	 * <p>
-	 * More types could be added easily by enhancing this method. For example, 'W' for 'Weekdays only' or 'M' for 'Max
-	 * Rewards per Month'. Some of these types might require additional database column values to be configured, for
-	 * example a 'MAX_REWARDS_PER_MONTH' data column.
-	 * 
-	 * @param rs the result set used to map the policy object from database column values
+	 * @param row the reader of the result set used to map the policy object from database column values
 	 * @return the matching benefit availability policy
 	 * @throws IllegalArgumentException if the mapping could not be performed
 	 */
-	private BenefitAvailabilityPolicy mapBenefitAvailabilityPolicy(ResultSet rs) throws SQLException {
-		String policyCode = rs.getString("BENEFIT_AVAILABILITY_POLICY");
+	private BenefitAvailabilityPolicy mapBenefitAvailabilityPolicy(RowReader<RestaurantColumn> row)
+			throws SQLException {
+		return benefitAvailabilityPolicyFor(row.getString(RestaurantColumn.BENEFIT_AVAILABILITY_POLICY),
+				row.getInteger(RestaurantColumn.MAX_REWARDS_PER_MONTH), monthlyRewardCounts);
+	}
+
+	/**
+	 * Returns the benefit availability policy identified by the code stored in the 'BENEFIT_AVAILABILITY_POLICY'
+	 * column. Shared with the other repositories that map T_RESTAURANT rows.
+	 * 
+	 * @param policyCode the policy code
+	 * @param maxRewardsPerMonth the value of the 'MAX_REWARDS_PER_MONTH' column, or null
+	 * @param monthlyRewardCounts the counts 'M' policies check dinings against, or null if not configured
+	 * @return the matching benefit availability policy
+	 * @throws IllegalArgumentException if the code is not supported, or is 'M' without a maximum
+	 * @throws IllegalStateException if the code is 'M' and no monthly reward counts are configured
+	 */
+	static BenefitAvailabilityPolicy benefitAvailabilityPolicyFor(String policyCode, Integer maxRewardsPerMonth,
+			MonthlyRewardCounts monthlyRewardCounts) {
 		if ("A".equals(policyCode)) {
 			return AlwaysAvailable.INSTANCE;
 		} else if ("N".equals(policyCode)) {
 			return NeverAvailable.INSTANCE;
+		} else if ("W".equals(policyCode)) {
+			return WeekdaysOnly.INSTANCE;
+		} else if ("M".equals(policyCode)) {
+			if (maxRewardsPerMonth == null) {
+				throw new IllegalArgumentException("Policy code M requires a MAX_REWARDS_PER_MONTH value");
+			}
+			if (monthlyRewardCounts == null) {
+				throw new IllegalStateException("Monthly reward counts must be set to map policy code M");
+			}
+			return new MaxRewardsPerMonth(maxRewardsPerMonth, monthlyRewardCounts);
 		} else {
 			throw new IllegalArgumentException("Not a supported policy code " + policyCode);
 		}
@@ -107,10 +169,37 @@ public class JdbcRestaurantRepository implements RestaurantRepository {
 		}
 	}
 
-	private class RestaurantRowMapper implements RowMapper<Restaurant> {
+	/**
+	 * Returns true only for dinings from Monday to Friday.
+	 */
+	static class WeekdaysOnly implements BenefitAvailabilityPolicy {
+		static final BenefitAvailabilityPolicy INSTANCE = new WeekdaysOnly();
+
+		public boolean isBenefitAvailableFor(Account account, Dining dining) {
+			int dayOfWeek = dining.getDate().getDayOfWeek();
+			return dayOfWeek != Calendar.SATURDAY && dayOfWeek != Calendar.SUNDAY;
+		}
+
+		public String toString() {
+			return "weekdaysOnly";
+		}
+	}
+
+	/**
+	 * The columns of the rows returned from a query of T_RESTAURANT, by label.
+	 */
+	private enum RestaurantColumn {
+		MERCHANT_NUMBER, NAME, BENEFIT_PERCENTAGE, BENEFIT_AVAILABILITY_POLICY, MAX_REWARDS_PER_MONTH
+	}
+
+	private class RestaurantRowMapper extends OrdinalRowMapper<RestaurantColumn, Restaurant> {
+
+		public RestaurantRowMapper() {
+			super(RestaurantColumn.class);
+		}
 
-		public Restaurant mapRow(ResultSet rs, int rowNum) throws SQLException {
-			return mapRestaurant(rs);
+		protected Restaurant mapRow(RowReader<RestaurantColumn> row, int rowNum) throws SQLException {
+			return mapRestaurant(row);
 		}
 
 	}
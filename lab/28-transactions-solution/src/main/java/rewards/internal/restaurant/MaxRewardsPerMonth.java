@@ -0,0 +1,47 @@
+package rewards.internal.restaurant;
+
+import rewards.Dining;
+import rewards.internal.account.Account;
+import rewards.internal.reward.MonthlyRewardCounts;
+
+/**
+ * Returns true while the account has been rewarded for dining at the restaurant fewer than a maximum number of times
+ * in the month of the dining, as counted in memory by {@link MonthlyRewardCounts}.
+ *
+ * Within a transaction the reward is reserved as it is checked, so concurrent transactions and later dinings of the
+ * same batch chunk see it. Outside a thread-bound transaction the count is only checked and the reward counted once
+ * recorded, so callers that calculate benefits outside one must calculate them again in the transaction that records
+ * the rewards.
+ */
+public class MaxRewardsPerMonth implements BenefitAvailabilityPolicy {
+
+	private final int maxRewardsPerMonth;
+
+	private final MonthlyRewardCounts monthlyRewardCounts;
+
+	/**
+	 * Creates a policy for a restaurant.
+	 * @param maxRewardsPerMonth the most rewards of an account for dining at the restaurant in a month
+	 * @param monthlyRewardCounts the counts the rewards are checked against and reserved in
+	 */
+	public MaxRewardsPerMonth(int maxRewardsPerMonth, MonthlyRewardCounts monthlyRewardCounts) {
+		this.maxRewardsPerMonth = maxRewardsPerMonth;
+		this.monthlyRewardCounts = monthlyRewardCounts;
+	}
+
+	/**
+	 * Returns the most rewards of an account for dining at the restaurant in a month.
+	 */
+	public int getMaxRewardsPerMonth() {
+		return maxRewardsPerMonth;
+	}
+
+	public boolean isBenefitAvailableFor(Account account, Dining dining) {
+		return monthlyRewardCounts.tryReserve(account.getNumber(), dining.getMerchantNumber(), dining.getDate(),
+				maxRewardsPerMonth);
+	}
+
+	public String toString() {
+		return "maxRewardsPerMonth(" + maxRewardsPerMonth + ")";
+	}
+}
@@ -0,0 +1,253 @@
+package rewards.internal.restaurant;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Restaurants by merchant number, for holding every restaurant in memory.
+ *
+ * Merchant numbers are 10 digits, so each is parsed into a long, without allocating, and looked up in a hash table of
+ * long keys with open addressing and linear probing. Keys and restaurants are held in two parallel arrays, taking 12
+ * bytes per slot and no object per entry, or 16 to 32 bytes per restaurant as the table is kept at most three quarters
+ * full. A {@code HashMap<String, Restaurant>} takes some 40 bytes per restaurant, and hashes and compares the String on
+ * each lookup. The few merchant numbers that are not 10 digits are kept in a HashMap on the side.
+ *
+ * Not thread-safe. A directory that is no longer modified once safely published, as in
+ * {@link RefreshingRestaurantRepository}, may be read by any number of threads.
+ */
+public class MerchantDirectory {
+
+	/**
+	 * Returned by {@link #keyOf(String)} for a merchant number that is not 10 digits. Also marks a free slot.
+	 */
+	static final long NOT_A_KEY = -1L;
+
+	private static final int DIGITS = 10;
+
+	private static final int MIN_CAPACITY = 16;
+
+	private long[] keys;
+
+	private Restaurant[] restaurants;
+
+	private int size;
+
+	private Map<String, Restaurant> otherRestaurants;
+
+	/**
+	 * Creates an empty directory.
+	 * @param expectedRestaurants the number of restaurants to size the directory for
+	 */
+	public MerchantDirectory(int expectedRestaurants) {
+		if (expectedRestaurants < 0) {
+			throw new IllegalArgumentException("Expected restaurants must not be negative; your value was "
+					+ expectedRestaurants);
+		}
+		allocate(capacityFor(expectedRestaurants));
+	}
+
+	/**
+	 * Creates a directory holding the restaurants of the given one.
+	 * @param directory the directory to copy
+	 * @param additionalRestaurants the number of restaurants expected to be added to the copy
+	 */
+	public MerchantDirectory(MerchantDirectory directory, int additionalRestaurants) {
+		this(directory.size() + additionalRestaurants);
+		for (int slot = 0; slot < directory.keys.length; slot++) {
+			if (directory.keys[slot] != NOT_A_KEY) {
+				put(directory.restaurants[slot]);
+			}
+		}
+		if (directory.otherRestaurants != null) {
+			otherRestaurants = new HashMap<String, Restaurant>(directory.otherRestaurants);
+		}
+	}
+
+	/**
+	 * Returns the restaurant with the given merchant number.
+	 * @param merchantNumber the merchant number
+	 * @return the restaurant, or null if not in this directory
+	 */
+	public Restaurant find(String merchantNumber) {
+		long key = keyOf(merchantNumber);
+		if (key == NOT_A_KEY) {
+			return otherRestaurants == null ? null : otherRestaurants.get(merchantNumber);
+		}
+		long[] keys = this.keys;
+		int mask = keys.length - 1;
+		for (int slot = slotOf(key, mask);; slot = (slot + 1) & mask) {
+			long existing = keys[slot];
+			if (existing == key) {
+				return restaurants[slot];
+			}
+			if (existing == NOT_A_KEY) {
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Adds a restaurant, replacing any restaurant with the same merchant number.
+	 * @param restaurant the restaurant
+	 */
+	public void put(Restaurant restaurant) {
+		long key = keyOf(restaurant.getNumber());
+		if (key == NOT_A_KEY) {
+			if (otherRestaurants == null) {
+				otherRestaurants = new HashMap<String, Restaurant>();
+			}
+			otherRestaurants.put(restaurant.getNumber(), restaurant);
+			return;
+		}
+		int mask = keys.length - 1;
+		int slot = slotOf(key, mask);
+		while (true) {
+			long existing = keys[slot];
+			if (existing == key) {
+				restaurants[slot] = restaurant;
+				return;
+			}
+			if (existing == NOT_A_KEY) {
+				break;
+			}
+			slot = (slot + 1) & mask;
+		}
+		if ((size + 1) * 4L > keys.length * 3L) {
+			grow();
+			put(restaurant);
+			return;
+		}
+		keys[slot] = key;
+		restaurants[slot] = restaurant;
+		size++;
+	}
+
+	/**
+	 * Removes the restaurant with the given merchant number.
+	 * @param merchantNumber the merchant number
+	 * @return true if the restaurant was in this directory
+	 */
+	public boolean remove(String merchantNumber) {
+		long key = keyOf(merchantNumber);
+		if (key == NOT_A_KEY) {
+			return otherRestaurants != null && otherRestaurants.remove(merchantNumber) != null;
+		}
+		int mask = keys.length - 1;
+		int slot = slotOf(key, mask);
+		while (true) {
+			long existing = keys[slot];
+			if (existing == NOT_A_KEY) {
+				return false;
+			}
+			if (existing == key) {
+				break;
+			}
+			slot = (slot + 1) & mask;
+		}
+		// shift later entries of the probe sequence back so that no lookup stops early at the freed slot
+		int free = slot;
+		for (int next = (free + 1) & mask;; next = (next + 1) & mask) {
+			long moving = keys[next];
+			if (moving == NOT_A_KEY) {
+				break;
+			}
+			int home = slotOf(moving, mask);
+			// move unless the entry's home lies cyclically within (free, next]
+			boolean stays = free <= next ? free < home && home <= next : free < home || home <= next;
+			if (!stays) {
+				keys[free] = moving;
+				restaurants[free] = restaurants[next];
+				free = next;
+			}
+		}
+		keys[free] = NOT_A_KEY;
+		restaurants[free] = null;
+		size--;
+		return true;
+	}
+
+	/**
+	 * Returns the number of restaurants in this directory.
+	 */
+	public int size() {
+		return size + (otherRestaurants == null ? 0 : otherRestaurants.size());
+	}
+
+	/**
+	 * Returns the number of slots in the table, which doubles as restaurants are added.
+	 */
+	public int capacity() {
+		return keys.length;
+	}
+
+	/**
+	 * Returns an estimate of the heap memory taken by this directory, in bytes, not counting the restaurants themselves
+	 * nor the merchant numbers that are not 10 digits.
+	 */
+	public long getMemoryFootprint() {
+		// object header and fields, then two array headers, the keys and the compressed references
+		return 32 + 2 * 16 + 12L * keys.length;
+	}
+
+	public String toString() {
+		return "Restaurants = " + size() + ", memory = " + getMemoryFootprint() + " bytes";
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		Arrays.fill(keys, NOT_A_KEY);
+		restaurants = new Restaurant[capacity];
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		Restaurant[] oldRestaurants = restaurants;
+		allocate(oldKeys.length * 2);
+		size = 0;
+		for (int slot = 0; slot < oldKeys.length; slot++) {
+			if (oldKeys[slot] != NOT_A_KEY) {
+				put(oldRestaurants[slot]);
+			}
+		}
+	}
+
+	/**
+	 * Returns a 10-digit merchant number as a long, or {@link #NOT_A_KEY} if it is not one.
+	 */
+	static long keyOf(String merchantNumber) {
+		if (merchantNumber == null || merchantNumber.length() != DIGITS) {
+			return NOT_A_KEY;
+		}
+		long key = 0;
+		for (int i = 0; i < DIGITS; i++) {
+			char digit = merchantNumber.charAt(i);
+			if (digit < '0' || digit > '9') {
+				return NOT_A_KEY;
+			}
+			key = key * 10 + (digit - '0');
+		}
+		return key;
+	}
+
+	private static int slotOf(long key, int mask) {
+		// the finalizer of MurmurHash3, as merchant numbers are often allocated in sequence
+		long h = key;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return (int) h & mask;
+	}
+
+	private static int capacityFor(int expectedRestaurants) {
+		// the smallest power of two at least four thirds of the expected size
+		long needed = Math.max(MIN_CAPACITY, ((long) expectedRestaurants * 4 + 2) / 3);
+		long capacity = Long.highestOneBit(needed - 1) << 1;
+		if (capacity > 1 << 29) {
+			throw new IllegalArgumentException("Expected restaurants too large: " + expectedRestaurants);
+		}
+		return (int) capacity;
+	}
+}
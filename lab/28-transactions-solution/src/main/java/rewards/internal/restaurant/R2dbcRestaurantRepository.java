@@ -0,0 +1,57 @@
+package rewards.internal.restaurant;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+import io.r2dbc.spi.ConnectionFactory;
+import reactor.core.publisher.Mono;
+
+import rewards.internal.reward.MonthlyRewardCounts;
+
+import common.money.Percentage;
+
+/**
+ * Loads restaurants from a connection factory using the R2DBC API.
+ */
+public class R2dbcRestaurantRepository implements ReactiveRestaurantRepository {
+
+	private DatabaseClient databaseClient;
+
+	private MonthlyRewardCounts monthlyRewardCounts;
+
+	public void setConnectionFactory(ConnectionFactory connectionFactory) {
+		this.databaseClient = DatabaseClient.create(connectionFactory);
+	}
+
+	/**
+	 * Sets the monthly reward counts that 'M' (max rewards per month) policies check dinings against. Required to map
+	 * restaurants with that policy; the {@link R2dbcRewardRepository} must add its rewards to the same counts.
+	 * @param monthlyRewardCounts the monthly reward counts
+	 */
+	public void setMonthlyRewardCounts(MonthlyRewardCounts monthlyRewardCounts) {
+		this.monthlyRewardCounts = monthlyRewardCounts;
+	}
+
+	public Mono<Restaurant> findByMerchantNumber(String merchantNumber) {
+		String sql = "select MERCHANT_NUMBER, NAME, BENEFIT_PERCENTAGE, BENEFIT_AVAILABILITY_POLICY, MAX_REWARDS_PER_MONTH from T_RESTAURANT where MERCHANT_NUMBER = :merchantNumber";
+		return databaseClient.sql(sql).bind("merchantNumber", merchantNumber).fetch().one()
+				.switchIfEmpty(Mono.error(() -> new EmptyResultDataAccessException(1))).map(this::mapRestaurant);
+	}
+
+	/**
+	 * Maps a row returned from a query of T_RESTAURANT to a Restaurant object.
+	 * 
+	 * @param row the column values of the row, keyed by column label
+	 */
+	private Restaurant mapRestaurant(Map<String, Object> row) {
+		Restaurant restaurant = new Restaurant((String) row.get("MERCHANT_NUMBER"), (String) row.get("NAME"));
+		restaurant.setBenefitPercentage(new Percentage((BigDecimal) row.get("BENEFIT_PERCENTAGE")));
+		restaurant.setBenefitAvailabilityPolicy(JdbcRestaurantRepository
+				.benefitAvailabilityPolicyFor((String) row.get("BENEFIT_AVAILABILITY_POLICY"),
+						(Integer) row.get("MAX_REWARDS_PER_MONTH"), monthlyRewardCounts));
+		return restaurant;
+	}
+}
@@ -0,0 +1,19 @@
+package rewards.internal.restaurant;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Loads restaurant aggregates without blocking. The reactive counterpart of {@link RestaurantRepository}, used by the
+ * reactive reward network.
+ * 
+ * Objects emitted by this repository are guaranteed to be fully-initialized and ready to use.
+ */
+public interface ReactiveRestaurantRepository {
+
+	/**
+	 * Load a Restaurant entity by its merchant number.
+	 * @param merchantNumber the merchant number
+	 * @return the restaurant, or an EmptyResultDataAccessException error if no restaurant has the merchant number
+	 */
+	public Mono<Restaurant> findByMerchantNumber(String merchantNumber);
+}
@@ -0,0 +1,222 @@
+package rewards.internal.restaurant;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import rewards.internal.LatencyStats;
+
+/**
+ * A restaurant repository that answers from an in-memory snapshot of all restaurants, refreshed periodically in the
+ * background so that new merchants and benefit changes are picked up without a restart.
+ *
+ * Each refresh only loads the restaurants whose 'LAST_MODIFIED' time is at or after that of the previous snapshot,
+ * less an overlap for transactions that committed late, and builds a new snapshot from a copy of the previous one. The
+ * snapshot, a {@link MerchantDirectory}, is then swapped in with a single volatile write, so readers never block and
+ * always see a whole snapshot. Restaurants deleted from the database stay cached until the next {@link #reload()}.
+ *
+ * A merchant number not in the snapshot is looked up in the underlying repository, so that a merchant added since the
+ * last refresh can be rewarded at once.
+ */
+public class RefreshingRestaurantRepository implements RestaurantRepository {
+
+	/**
+	 * The default time subtracted from the last modification time of a snapshot to select the restaurants to load
+	 * again, in milliseconds.
+	 */
+	public static final long DEFAULT_OVERLAP_MILLIS = 60000;
+
+	private static final Logger logger = LoggerFactory.getLogger(RefreshingRestaurantRepository.class);
+
+	private JdbcRestaurantRepository restaurantRepository;
+
+	private ScheduledExecutorService scheduler;
+
+	private long overlapMillis = DEFAULT_OVERLAP_MILLIS;
+
+	private volatile Snapshot snapshot;
+
+	private final Object refreshLock = new Object();
+
+	private final LatencyStats refreshes = new LatencyStats();
+
+	private final LongAdder refreshFailures = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * Creates a refreshing repository, loading all restaurants now and refreshing them periodically.
+	 * @param restaurantRepository the repository restaurants are loaded from
+	 * @param refreshIntervalMillis the time between the end of a refresh and the start of the next, in milliseconds
+	 */
+	public RefreshingRestaurantRepository(JdbcRestaurantRepository restaurantRepository, long refreshIntervalMillis) {
+		if (refreshIntervalMillis < 1) {
+			throw new IllegalArgumentException("Refresh interval must be positive; your value was "
+					+ refreshIntervalMillis);
+		}
+		this.restaurantRepository = restaurantRepository;
+		reload();
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("restaurant-refresh-");
+		threadFactory.setDaemon(true);
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+		this.scheduler.scheduleWithFixedDelay(this::refreshQuietly, refreshIntervalMillis, refreshIntervalMillis,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Sets the time subtracted from the last modification time of a snapshot to select the restaurants to load again,
+	 * covering transactions that committed after the snapshot was loaded but stamped their changes before. Defaults to
+	 * {@link #DEFAULT_OVERLAP_MILLIS}.
+	 * @param overlapMillis the overlap, in milliseconds
+	 */
+	public void setOverlap(long overlapMillis) {
+		if (overlapMillis < 0) {
+			throw new IllegalArgumentException("Overlap must be at least 0; your value was " + overlapMillis);
+		}
+		this.overlapMillis = overlapMillis;
+	}
+
+	public Restaurant findByMerchantNumber(String merchantNumber) {
+		Restaurant restaurant = snapshot.restaurants.find(merchantNumber);
+		if (restaurant != null) {
+			return restaurant;
+		}
+		misses.increment();
+		return restaurantRepository.findByMerchantNumber(merchantNumber);
+	}
+
+	/**
+	 * Loads the restaurants modified since the current snapshot and swaps in a new snapshot including them.
+	 */
+	public void refresh() {
+		synchronized (refreshLock) {
+			Snapshot current = snapshot;
+			if (current.lastModified == null) {
+				reload();
+				return;
+			}
+			long started = System.nanoTime();
+			Timestamp lastModified = restaurantRepository.findLastModified();
+			Timestamp since = new Timestamp(current.lastModified.getTime() - overlapMillis);
+			List<Restaurant> modified = restaurantRepository.findModifiedSince(since);
+			MerchantDirectory restaurants = new MerchantDirectory(current.restaurants, modified.size());
+			for (Restaurant restaurant : modified) {
+				restaurants.put(restaurant);
+			}
+			swap(restaurants, lastModified, started);
+		}
+	}
+
+	/**
+	 * Loads all restaurants and swaps in a new snapshot of them, dropping the restaurants deleted since.
+	 */
+	public void reload() {
+		synchronized (refreshLock) {
+			long started = System.nanoTime();
+			Timestamp lastModified = restaurantRepository.findLastModified();
+			List<Restaurant> all = restaurantRepository.findModifiedSince(null);
+			MerchantDirectory restaurants = new MerchantDirectory(all.size());
+			for (Restaurant restaurant : all) {
+				restaurants.put(restaurant);
+			}
+			swap(restaurants, lastModified, started);
+		}
+	}
+
+	private void swap(MerchantDirectory restaurants, Timestamp lastModified, long started) {
+		// the last modification time is read before the rows, so that rows modified in between are loaded again
+		snapshot = new Snapshot(restaurants, lastModified, System.nanoTime());
+		refreshes.recordSince(started);
+	}
+
+	private void refreshQuietly() {
+		try {
+			refresh();
+		} catch (RuntimeException e) {
+			refreshFailures.increment();
+			logger.warn("Could not refresh restaurants; serving a snapshot " + getSnapshotAgeMillis() + " ms old", e);
+		}
+	}
+
+	/**
+	 * Returns the number of restaurants in the current snapshot.
+	 */
+	public int size() {
+		return snapshot.restaurants.size();
+	}
+
+	/**
+	 * Returns an estimate of the heap memory taken by the current snapshot's directory, in bytes, not counting the
+	 * restaurants themselves.
+	 */
+	public long getMemoryFootprint() {
+		return snapshot.restaurants.getMemoryFootprint();
+	}
+
+	/**
+	 * Returns the time since the current snapshot was swapped in, in milliseconds.
+	 */
+	public long getSnapshotAgeMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - snapshot.loadedNanos);
+	}
+
+	/**
+	 * Returns the durations of the refreshes and reloads that swapped in a snapshot.
+	 */
+	public LatencyStats getRefreshStats() {
+		return refreshes;
+	}
+
+	/**
+	 * Returns the number of periodic refreshes that failed, leaving the previous snapshot in place.
+	 */
+	public long getRefreshFailureCount() {
+		return refreshFailures.sum();
+	}
+
+	/**
+	 * Returns the number of lookups of merchant numbers not in the snapshot.
+	 */
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	public String toString() {
+		return "Restaurants = " + size() + ", snapshot age = " + getSnapshotAgeMillis() + " ms, refresh failures = "
+				+ getRefreshFailureCount() + ", refreshes: " + refreshes;
+	}
+
+	/**
+	 * Stops refreshing periodically. Called when the application context closes.
+	 * @throws InterruptedException if interrupted while waiting for a running refresh
+	 */
+	public void shutdown() throws InterruptedException {
+		scheduler.shutdown();
+		scheduler.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * A snapshot of all restaurants, by merchant number. Its directory is not modified once swapped in.
+	 */
+	private static class Snapshot {
+
+		private final MerchantDirectory restaurants;
+
+		private final Timestamp lastModified;
+
+		private final long loadedNanos;
+
+		public Snapshot(MerchantDirectory restaurants, Timestamp lastModified, long loadedNanos) {
+			this.restaurants = restaurants;
+			this.lastModified = lastModified;
+			this.loadedNanos = loadedNanos;
+		}
+	}
+}
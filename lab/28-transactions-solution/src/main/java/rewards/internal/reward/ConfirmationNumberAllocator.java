@@ -0,0 +1,147 @@
+package rewards.internal.reward;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Hands out reward confirmation numbers from blocks reserved in the database, so that rewarding a dining does not take
+ * a round trip to S_REWARD_CONFIRMATION_NUMBER each time.
+ *
+ * The sequence is incremented by the block size, and each value read from it
+ * reserves the block of numbers starting at that value, the "pooled-lo" scheme. As the database never returns a value
+ * twice, blocks are unique across restarts and across processes sharing the database; the numbers left in a block
+ * when the process stops are skipped. Code that reads the sequence once per number, as other repositories do, still
+ * gets unique numbers, at the cost of a whole block each.
+ *
+ * The block size must not be larger than the increment of the sequence, or blocks would overlap, so the increment is
+ * read from INFORMATION_SCHEMA.SEQUENCES when the allocator is created. The shared schema increments the sequence by 1;
+ * run 'rewards/testdb/confirmation_number_blocks.sql' to increment it by {@link #DEFAULT_BLOCK_SIZE}. Databases
+ * without sequences, such as MySQL, are not supported.
+ *
+ * Thread-safe. Numbers are handed out with a single atomic increment; only the thread that finds the block used up
+ * reads the next one, while the others wait for it.
+ */
+public class ConfirmationNumberAllocator {
+
+	/**
+	 * The default number of confirmation numbers per block, which is the increment of the sequence once
+	 * 'rewards/testdb/confirmation_number_blocks.sql' has been run.
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 1000;
+
+	private static final String NEXT_BLOCK_SQL = "select next value for S_REWARD_CONFIRMATION_NUMBER from DUAL_REWARD_CONFIRMATION_NUMBER";
+
+	private static final String INCREMENT_SQL = "select INCREMENT from INFORMATION_SCHEMA.SEQUENCES where SEQUENCE_NAME = 'S_REWARD_CONFIRMATION_NUMBER'";
+
+	private JdbcTemplate jdbcTemplate;
+
+	private final int blockSize;
+
+	private volatile Block block = new Block(0, 0);
+
+	private final Object fetchLock = new Object();
+
+	private final LongAdder allocations = new LongAdder();
+
+	private final LongAdder blockFetches = new LongAdder();
+
+	/**
+	 * Creates an allocator. No block is reserved until the first number is asked for.
+	 * @param dataSource the data source holding the sequence
+	 * @param blockSize the number of confirmation numbers per block, at most the increment of the sequence
+	 * @throws IllegalArgumentException if the block size is not positive or larger than the increment of the sequence
+	 * @throws IllegalStateException if the sequence is not found, or the database has no INFORMATION_SCHEMA.SEQUENCES
+	 */
+	public ConfirmationNumberAllocator(DataSource dataSource, int blockSize) {
+		if (blockSize < 1) {
+			throw new IllegalArgumentException("Block size must be positive; your value was " + blockSize);
+		}
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		List<Long> increments;
+		try {
+			increments = jdbcTemplate.queryForList(INCREMENT_SQL, Long.class);
+		} catch (DataAccessException e) {
+			throw new IllegalStateException("Confirmation numbers can only be allocated in blocks from a database "
+					+ "listing its sequences in INFORMATION_SCHEMA.SEQUENCES, such as HSQLDB or H2, not MySQL", e);
+		}
+		if (increments.isEmpty()) {
+			throw new IllegalStateException("No sequence S_REWARD_CONFIRMATION_NUMBER in INFORMATION_SCHEMA.SEQUENCES");
+		}
+		if (blockSize > increments.get(0)) {
+			throw new IllegalArgumentException("Block size must be at most the increment of S_REWARD_CONFIRMATION_NUMBER, "
+					+ increments.get(0) + ", or blocks would overlap; your value was " + blockSize);
+		}
+		this.blockSize = blockSize;
+	}
+
+	/**
+	 * Returns a confirmation number no other call, process or earlier run has been given.
+	 * @return the confirmation number
+	 */
+	public String next() {
+		while (true) {
+			Block current = block;
+			long number = current.next.getAndIncrement();
+			if (number < current.end) {
+				allocations.increment();
+				return String.valueOf(number);
+			}
+			synchronized (fetchLock) {
+				// another thread may have reserved a new block while this one waited
+				if (block == current) {
+					long first = jdbcTemplate.queryForObject(NEXT_BLOCK_SQL, Long.class);
+					block = new Block(first, first + blockSize);
+					blockFetches.increment();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of confirmation numbers per block.
+	 */
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	/**
+	 * Returns the number of confirmation numbers handed out.
+	 */
+	public long getAllocationCount() {
+		return allocations.sum();
+	}
+
+	/**
+	 * Returns the number of blocks reserved, each one a round trip to the database.
+	 */
+	public long getBlockFetchCount() {
+		return blockFetches.sum();
+	}
+
+	public String toString() {
+		return "Block size = " + blockSize + ", allocations = " + getAllocationCount() + ", block fetches = "
+				+ getBlockFetchCount();
+	}
+
+	/**
+	 * A reserved block of numbers. Its counter keeps counting past the end once the block is used up, which is
+	 * harmless.
+	 */
+	private static class Block {
+
+		private final AtomicLong next;
+
+		private final long end;
+
+		public Block(long first, long end) {
+			this.next = new AtomicLong(first);
+			this.end = end;
+		}
+	}
+}
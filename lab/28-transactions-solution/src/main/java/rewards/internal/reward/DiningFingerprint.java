@@ -0,0 +1,56 @@
+package rewards.internal.reward;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+import rewards.Dining;
+
+/**
+ * Computes the idempotency key of a dining: a fixed-length hex digest of its credit card, merchant, amount and date.
+ *
+ * Two dinings have the same fingerprint exactly when they are equal, so a settlement record sent twice by a processor
+ * maps to the same value of the unique DINING_FINGERPRINT column of T_REWARD.
+ */
+public final class DiningFingerprint {
+
+	/**
+	 * The number of hex characters in a fingerprint: the first 128 bits of a SHA-256 digest.
+	 */
+	public static final int LENGTH = 32;
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private DiningFingerprint() {
+	}
+
+	/**
+	 * Returns the fingerprint of the given dining.
+	 * @param dining the dining
+	 * @return the fingerprint, {@link #LENGTH} lower case hex characters
+	 */
+	public static String of(Dining dining) {
+		String date = dining.getDate().asDate().toInstant().atZone(ZoneId.systemDefault()).toLocalDate()
+				.format(DateTimeFormatter.BASIC_ISO_DATE);
+		String key = dining.getCreditCardNumber() + '|' + dining.getMerchantNumber() + '|'
+				+ dining.getAmount().asBigDecimal().toPlainString() + '|' + date;
+		byte[] digest = sha256().digest(key.getBytes(StandardCharsets.UTF_8));
+		char[] hex = new char[LENGTH];
+		for (int i = 0; i < LENGTH / 2; i++) {
+			hex[2 * i] = HEX[(digest[i] >> 4) & 0xf];
+			hex[2 * i + 1] = HEX[digest[i] & 0xf];
+		}
+		return new String(hex);
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package rewards.internal.reward;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * An in-memory Bloom filter over {@link DiningFingerprint dining fingerprints}, used to tell in nanoseconds that a
+ * dining has certainly not been rewarded yet.
+ *
+ * {@link #mightContain(String)} never answers false for a fingerprint that was {@link #put(String) put}, but may
+ * answer true for one that was not. A hit therefore only means the dining is a likely duplicate and has to be confirmed
+ * against T_REWARD; a miss needs no database access at all. The filter is sized up front for an expected number of
+ * rewards and a target false positive rate, and its memory use stays fixed however many fingerprints it holds.
+ *
+ * Thread-safe.
+ */
+public class DuplicateDiningFilter {
+
+	private final AtomicLongArray words;
+
+	private final long bitCount;
+
+	private final int hashCount;
+
+	/**
+	 * Creates an empty filter.
+	 * @param expectedDinings the number of rewarded dinings the filter should hold, such as the rewards kept in T_REWARD
+	 * @param falsePositiveRate the acceptable rate of hits for dinings that were never rewarded, between 0 and 1
+	 * exclusive; each such hit costs one database query
+	 */
+	public DuplicateDiningFilter(long expectedDinings, double falsePositiveRate) {
+		if (expectedDinings < 1 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+			throw new IllegalArgumentException("Expected dinings must be positive and the false positive rate between "
+					+ "0 and 1; your values were " + expectedDinings + " and " + falsePositiveRate);
+		}
+		double ln2 = Math.log(2);
+		long bits = (long) Math.ceil(-expectedDinings * Math.log(falsePositiveRate) / (ln2 * ln2));
+		int wordCount = (int) Math.min(Integer.MAX_VALUE, (bits + 63) / 64);
+		this.words = new AtomicLongArray(wordCount);
+		this.bitCount = wordCount * 64L;
+		this.hashCount = (int) Math.max(1, Math.round((double) bitCount / expectedDinings * ln2));
+	}
+
+	/**
+	 * Records that the dining with the given fingerprint has been rewarded.
+	 * @param fingerprint the dining fingerprint
+	 */
+	public void put(String fingerprint) {
+		long hash1 = hash1(fingerprint);
+		long hash2 = hash2(fingerprint);
+		for (int i = 0; i < hashCount; i++) {
+			long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+			int word = (int) (bit >>> 6);
+			long mask = 1L << bit;
+			long current = words.get(word);
+			while ((current & mask) == 0 && !words.compareAndSet(word, current, current | mask)) {
+				current = words.get(word);
+			}
+		}
+	}
+
+	/**
+	 * Returns false if the dining with the given fingerprint has certainly not been {@link #put(String) put}, true if
+	 * it probably has.
+	 * @param fingerprint the dining fingerprint
+	 */
+	public boolean mightContain(String fingerprint) {
+		long hash1 = hash1(fingerprint);
+		long hash2 = hash2(fingerprint);
+		for (int i = 0; i < hashCount; i++) {
+			long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+			if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the number of bits in the filter.
+	 */
+	public long getBitCount() {
+		return bitCount;
+	}
+
+	/**
+	 * Returns the number of bits set per fingerprint.
+	 */
+	public int getHashCount() {
+		return hashCount;
+	}
+
+	// a fingerprint is already a uniformly distributed digest: its two halves serve as the hashes for double hashing
+
+	private long hash1(String fingerprint) {
+		return Long.parseUnsignedLong(fingerprint.substring(0, DiningFingerprint.LENGTH / 2), 16);
+	}
+
+	private long hash2(String fingerprint) {
+		// odd, so that successive probes never collapse onto the same bit
+		return Long.parseUnsignedLong(fingerprint.substring(DiningFingerprint.LENGTH / 2), 16) | 1;
+	}
+
+	public String toString() {
+		return "Duplicate dining filter of " + bitCount + " bits with " + hashCount + " hashes";
+	}
+}
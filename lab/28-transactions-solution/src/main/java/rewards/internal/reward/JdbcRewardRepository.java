@@ -1,38 +1,401 @@
 package rewards.internal.reward;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 import javax.sql.DataSource;
 
+import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowCallbackHandler;
 
 import rewards.AccountContribution;
 import rewards.Dining;
 import rewards.RewardConfirmation;
 
+import common.datetime.DateInterval;
 import common.datetime.SimpleDate;
+import common.jdbc.ColumnLayout;
+import common.jdbc.RowReader;
 
 /**
  * JDBC implementation of a reward repository that records the result of a reward transaction by inserting a reward
  * confirmation record.
+ *
+ * Each record carries the {@link DiningFingerprint fingerprint} of its dining, which the database keeps unique. With
+ * duplicate detection enabled, {@link #isRewarded(Dining)} only queries the database for dinings an in-memory
+ * {@link DuplicateDiningFilter} reports as likely duplicates.
+ *
+ * {@link #confirmRewards(List, List)} inserts its rewards in batches of a configurable size, optionally with several
+ * rows per insert statement.
+ *
+ * Confirmation numbers are read from a sequence, or with a {@link ConfirmationNumberAllocator} handed out from blocks
+ * of the sequence reserved ahead.
+ *
+ * The history of an account or a restaurant is read along the indexes on (ACCOUNT_NUMBER, DINING_DATE, ID) and
+ * (DINING_MERCHANT_NUMBER, DINING_DATE, ID), in their order, so that a page reads no more rows than it returns. The
+ * cursor of a page holds the dining date and ID of its last row, and the next page starts right after them in the
+ * index rather than skipping an OFFSET of rows.
  */
 public class JdbcRewardRepository implements RewardRepository {
 
+	/**
+	 * The default number of statements sent to the database at once by {@link #confirmRewards(List, List)}.
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 100;
+
+	private static final String INSERT_REWARD = "insert into T_REWARD (CONFIRMATION_NUMBER, REWARD_AMOUNT, REWARD_DATE, ACCOUNT_NUMBER, DINING_MERCHANT_NUMBER, DINING_DATE, DINING_AMOUNT, DINING_FINGERPRINT) values ";
+
+	private static final String REWARD_ROW = "(?, ?, ?, ?, ?, ?, ?, ?)";
+
+	private static final int REWARD_COLUMNS = 8;
+
+	private static final String INSERT_REWARD_SQL = INSERT_REWARD + REWARD_ROW;
+
+	private static final String SELECT_REWARD = "select ID, CONFIRMATION_NUMBER, REWARD_AMOUNT, REWARD_DATE, ACCOUNT_NUMBER, DINING_MERCHANT_NUMBER, DINING_DATE, DINING_AMOUNT from T_REWARD where ";
+
+	private static final ColumnLayout<RewardColumn> REWARD_RECORD_COLUMNS = ColumnLayout.of(RewardColumn.class);
+
 	private JdbcTemplate jdbcTemplate;
-	
+
+	private DuplicateDiningFilter duplicateDiningFilter;
+
+	private MonthlyRewardCounts monthlyRewardCounts;
+
+	private ConfirmationNumberAllocator confirmationNumbers;
+
+	private int batchSize = DEFAULT_BATCH_SIZE;
+
+	private int rowsPerInsert = 1;
+
+	private String multiRowInsertSql;
+
 	public void setDataSource(DataSource dataSource) {
 		this.jdbcTemplate = new JdbcTemplate(dataSource);
 	}
 
+	/**
+	 * Sets the allocator handing out confirmation numbers from blocks reserved in the database. Without one, each
+	 * reward reads the next value of the confirmation number sequence.
+	 * @param confirmationNumbers the allocator, using this repository's data source
+	 */
+	public void setConfirmationNumberAllocator(ConfirmationNumberAllocator confirmationNumbers) {
+		this.confirmationNumbers = confirmationNumbers;
+	}
+
+	/**
+	 * Turns on the in-memory pre-check of {@link #isRewarded(Dining)}. The fingerprint of every reward already recorded
+	 * is added to the filter, so the data source must be set first.
+	 * @param filter an empty filter sized for the number of rewards expected in T_REWARD
+	 */
+	public void enableDuplicateDetection(DuplicateDiningFilter filter) {
+		String sql = "select DINING_FINGERPRINT from T_REWARD where DINING_FINGERPRINT is not null";
+		jdbcTemplate.query(sql, (RowCallbackHandler) rs -> filter.put(rs.getString(1)));
+		this.duplicateDiningFilter = filter;
+	}
+
+	/**
+	 * Sets the monthly reward counts to add every recorded reward to. A reward is counted as soon as it is recorded,
+	 * so that concurrent transactions see it, unless a {@code MaxRewardsPerMonth} policy of the restaurant already
+	 * reserved it, and taken away again if its transaction rolls back.
+	 * @param monthlyRewardCounts the counts, seeded from this repository's data source
+	 */
+	public void setMonthlyRewardCounts(MonthlyRewardCounts monthlyRewardCounts) {
+		this.monthlyRewardCounts = monthlyRewardCounts;
+	}
+
+	/**
+	 * Sets the number of insert statements {@link #confirmRewards(List, List)} sends to the database in one batch.
+	 * Defaults to {@link #DEFAULT_BATCH_SIZE}.
+	 * @param batchSize the batch size, must be positive
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be positive; your value was " + batchSize);
+		}
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Sets the number of rewards {@link #confirmRewards(List, List)} inserts with each statement, as a multi-row
+	 * 'VALUES' list, which the database parses and executes once for all its rows. Only for databases supporting it,
+	 * such as H2, HSQLDB and MySQL; defaults to 1, a row per statement. The rewards left over are inserted a row per
+	 * statement.
+	 * @param rowsPerInsert the number of rows per statement, must be positive
+	 */
+	public void setRowsPerInsert(int rowsPerInsert) {
+		if (rowsPerInsert < 1) {
+			throw new IllegalArgumentException("Rows per insert must be positive; your value was " + rowsPerInsert);
+		}
+		this.rowsPerInsert = rowsPerInsert;
+		this.multiRowInsertSql = INSERT_REWARD + String.join(", ", Collections.nCopies(rowsPerInsert, REWARD_ROW));
+	}
+
 	public RewardConfirmation confirmReward(AccountContribution contribution, Dining dining) {
-		String sql = "insert into T_REWARD (CONFIRMATION_NUMBER, REWARD_AMOUNT, REWARD_DATE, ACCOUNT_NUMBER, DINING_MERCHANT_NUMBER, DINING_DATE, DINING_AMOUNT) values (?, ?, ?, ?, ?, ?, ?)";
 		String confirmationNumber = nextConfirmationNumber();
-		jdbcTemplate.update(sql, confirmationNumber, contribution.getAmount().asBigDecimal(),
-				SimpleDate.today().asDate(), contribution.getAccountNumber(), dining.getMerchantNumber(),
-				dining.getDate().asDate(), dining.getAmount().asBigDecimal());
+		String fingerprint = DiningFingerprint.of(dining);
+		jdbcTemplate.update(INSERT_REWARD_SQL, rewardValues(confirmationNumber, contribution, dining, fingerprint,
+				SimpleDate.today().asDate()));
+		remember(fingerprint);
+		count(Collections.singletonList(contribution), Collections.singletonList(dining));
 		return new RewardConfirmation(confirmationNumber, contribution);
 	}
 
+	public List<RewardConfirmation> confirmRewards(List<AccountContribution> contributions, List<Dining> dinings) {
+		if (contributions.size() != dinings.size()) {
+			throw new IllegalArgumentException("Expected one dining per contribution but got " + contributions.size()
+					+ " contributions and " + dinings.size() + " dinings");
+		}
+		Date rewardDate = SimpleDate.today().asDate();
+		List<Object[]> batchArgs = new ArrayList<Object[]>(contributions.size());
+		List<RewardConfirmation> confirmations = new ArrayList<RewardConfirmation>(contributions.size());
+		List<String> fingerprints = new ArrayList<String>(contributions.size());
+		for (int i = 0; i < contributions.size(); i++) {
+			String confirmationNumber = nextConfirmationNumber();
+			String fingerprint = DiningFingerprint.of(dinings.get(i));
+			batchArgs.add(rewardValues(confirmationNumber, contributions.get(i), dinings.get(i), fingerprint,
+					rewardDate));
+			fingerprints.add(fingerprint);
+			confirmations.add(new RewardConfirmation(confirmationNumber, contributions.get(i)));
+		}
+		insert(batchArgs);
+		for (String fingerprint : fingerprints) {
+			remember(fingerprint);
+		}
+		count(contributions, dinings);
+		return confirmations;
+	}
+
+	public boolean isRewarded(Dining dining) {
+		String fingerprint = DiningFingerprint.of(dining);
+		if (duplicateDiningFilter != null && !duplicateDiningFilter.mightContain(fingerprint)) {
+			return false;
+		}
+		String sql = "select count(*) from T_REWARD where DINING_FINGERPRINT = ?";
+		return jdbcTemplate.queryForObject(sql, Integer.class, fingerprint) > 0;
+	}
+
+	public RewardPage findByAccount(String accountNumber, DateInterval diningDates, String cursor, int limit) {
+		return findPage("ACCOUNT_NUMBER", accountNumber, diningDates, cursor, limit);
+	}
+
+	public RewardPage findByMerchant(String merchantNumber, DateInterval diningDates, String cursor, int limit) {
+		return findPage("DINING_MERCHANT_NUMBER", merchantNumber, diningDates, cursor, limit);
+	}
+
+	public RewardRecord findByConfirmationNumber(String confirmationNumber) {
+		String sql = SELECT_REWARD + "CONFIRMATION_NUMBER = ?";
+		RewardPage page = jdbcTemplate.query(sql, (ResultSetExtractor<RewardPage>) rs -> mapRewards(rs, 1),
+				confirmationNumber);
+		List<RewardRecord> rewards = page.getRewards();
+		if (rewards.isEmpty()) {
+			throw new EmptyResultDataAccessException(1);
+		}
+		return rewards.get(0);
+	}
+
+	/**
+	 * Returns a page of the rewards whose given column has the given value, for dinings within the given dates, the
+	 * latest first.
+	 */
+	private RewardPage findPage(String column, String value, DateInterval diningDates, String cursor, int limit) {
+		if (limit < 1 || limit > MAX_PAGE_SIZE) {
+			throw new IllegalArgumentException("Limit must be between 1 and " + MAX_PAGE_SIZE + "; your value was "
+					+ limit);
+		}
+		List<Object> args = new ArrayList<Object>(7);
+		args.add(value);
+		args.add(sqlDate(diningDates.getStart()));
+		args.add(sqlDate(diningDates.getEnd()));
+		StringBuilder sql = new StringBuilder(SELECT_REWARD).append(column)
+				.append(" = ? and DINING_DATE between ? and ?");
+		if (cursor != null) {
+			// the rows after the last one of the previous page, in the order of the index
+			Cursor after = Cursor.valueOf(cursor);
+			sql.append(" and (DINING_DATE < ? or (DINING_DATE = ? and ID < ?))");
+			args.add(after.diningDate);
+			args.add(after.diningDate);
+			args.add(after.id);
+		}
+		// one more row than the page holds tells whether there is a next page
+		sql.append(" order by DINING_DATE desc, ID desc limit ?");
+		args.add(limit + 1);
+		return jdbcTemplate.query(sql.toString(), (ResultSetExtractor<RewardPage>) rs -> mapRewards(rs, limit),
+				args.toArray());
+	}
+
+	/**
+	 * Maps up to the given number of rows returned from a query of T_REWARD to a page of rewards, with a next cursor
+	 * if there are more rows.
+	 * 
+	 * @param rs the set of rows returned from the query
+	 * @param limit the most rewards on the page
+	 * @return the page
+	 * @throws SQLException an exception occurred extracting data from the result set
+	 */
+	private RewardPage mapRewards(ResultSet rs, int limit) throws SQLException {
+		List<RewardRecord> rewards = new ArrayList<RewardRecord>();
+		RowReader<RewardColumn> row = REWARD_RECORD_COLUMNS.bind(rs);
+		Cursor last = null;
+		while (row.next()) {
+			if (rewards.size() == limit) {
+				return new RewardPage(rewards, last.toString());
+			}
+			java.sql.Date diningDate = row.getDate(RewardColumn.DINING_DATE);
+			rewards.add(new RewardRecord(row.getString(RewardColumn.CONFIRMATION_NUMBER),
+					row.getMonetaryAmount(RewardColumn.REWARD_AMOUNT),
+					SimpleDate.valueOf(row.getDate(RewardColumn.REWARD_DATE)),
+					row.getString(RewardColumn.ACCOUNT_NUMBER), row.getString(RewardColumn.DINING_MERCHANT_NUMBER),
+					SimpleDate.valueOf(diningDate), row.getMonetaryAmount(RewardColumn.DINING_AMOUNT)));
+			last = new Cursor(diningDate, row.getLong(RewardColumn.ID));
+		}
+		return new RewardPage(rewards, null);
+	}
+
+	private static java.sql.Date sqlDate(SimpleDate date) {
+		return new java.sql.Date(date.inMilliseconds());
+	}
+
+	/**
+	 * Returns the values of a new reward record, with a new confirmation number, in the column order of the inserts.
+	 * For recording the reward later with {@link #insertRows(List)}.
+	 */
+	Object[] newRewardRow(AccountContribution contribution, Dining dining, Date rewardDate) {
+		return rewardValues(nextConfirmationNumber(), contribution, dining, DiningFingerprint.of(dining), rewardDate);
+	}
+
+	/**
+	 * Inserts reward records made by {@link #newRewardRow(AccountContribution, Dining, Date)}, as
+	 * {@link #confirmRewards(List, List)} does. They are not counted: the caller counts them when made.
+	 */
+	void insertRows(List<Object[]> rows) {
+		insert(rows);
+		for (Object[] row : rows) {
+			remember((String) row[7]);
+		}
+	}
+
+	/**
+	 * Returns those of the given confirmation numbers that are recorded.
+	 */
+	Set<String> findRecorded(List<String> confirmationNumbers) {
+		Set<String> recorded = new HashSet<String>();
+		for (int from = 0; from < confirmationNumbers.size(); from += batchSize) {
+			List<String> slice = confirmationNumbers.subList(from,
+					Math.min(from + batchSize, confirmationNumbers.size()));
+			String sql = "select CONFIRMATION_NUMBER from T_REWARD where CONFIRMATION_NUMBER in ("
+					+ String.join(", ", Collections.nCopies(slice.size(), "?")) + ")";
+			recorded.addAll(jdbcTemplate.queryForList(sql, String.class, slice.toArray()));
+		}
+		return recorded;
+	}
+
+	/**
+	 * Inserts the given rows of rewards, as many as possible with multi-row statements, in batches.
+	 */
+	private void insert(List<Object[]> rows) {
+		int grouped = rowsPerInsert > 1 ? rows.size() - rows.size() % rowsPerInsert : 0;
+		if (grouped > 0) {
+			List<Object[]> groups = new ArrayList<Object[]>(grouped / rowsPerInsert);
+			for (int i = 0; i < grouped; i += rowsPerInsert) {
+				Object[] group = new Object[rowsPerInsert * REWARD_COLUMNS];
+				for (int j = 0; j < rowsPerInsert; j++) {
+					System.arraycopy(rows.get(i + j), 0, group, j * REWARD_COLUMNS, REWARD_COLUMNS);
+				}
+				groups.add(group);
+			}
+			batchUpdate(multiRowInsertSql, groups);
+		}
+		batchUpdate(INSERT_REWARD_SQL, rows.subList(grouped, rows.size()));
+	}
+
+	private void batchUpdate(String sql, List<Object[]> batchArgs) {
+		for (int from = 0; from < batchArgs.size(); from += batchSize) {
+			jdbcTemplate.batchUpdate(sql, batchArgs.subList(from, Math.min(from + batchSize, batchArgs.size())));
+		}
+	}
+
+	/**
+	 * Adds a recorded reward to the duplicate filter, if enabled. Should the surrounding transaction roll back, the
+	 * entry merely turns into a false positive that {@link #isRewarded(Dining)} rules out against the database.
+	 */
+	private void remember(String fingerprint) {
+		if (duplicateDiningFilter != null) {
+			duplicateDiningFilter.put(fingerprint);
+		}
+	}
+
+	/**
+	 * Adds recorded rewards to the monthly reward counts, if set, which take them away again should the surrounding
+	 * transaction roll back.
+	 */
+	void count(List<AccountContribution> contributions, List<Dining> dinings) {
+		if (monthlyRewardCounts == null) {
+			return;
+		}
+		for (int i = 0; i < contributions.size(); i++) {
+			monthlyRewardCounts.record(contributions.get(i).getAccountNumber(), dinings.get(i).getMerchantNumber(),
+					dinings.get(i).getDate());
+		}
+	}
+
+	private Object[] rewardValues(String confirmationNumber, AccountContribution contribution, Dining dining,
+			String fingerprint, Date rewardDate) {
+		return new Object[] { confirmationNumber, contribution.getAmount().asBigDecimal(), rewardDate,
+				contribution.getAccountNumber(), dining.getMerchantNumber(), dining.getDate().asDate(),
+				dining.getAmount().asBigDecimal(), fingerprint };
+	}
+
 	private String nextConfirmationNumber() {
+		if (confirmationNumbers != null) {
+			return confirmationNumbers.next();
+		}
 		String sql = "select next value for S_REWARD_CONFIRMATION_NUMBER from DUAL_REWARD_CONFIRMATION_NUMBER";
 		return jdbcTemplate.queryForObject(sql, String.class);
 	}
-}
\ No newline at end of file
+
+	/**
+	 * The columns of the rows returned from a query of T_REWARD, by label.
+	 */
+	private enum RewardColumn {
+		ID, CONFIRMATION_NUMBER, REWARD_AMOUNT, REWARD_DATE, ACCOUNT_NUMBER, DINING_MERCHANT_NUMBER, DINING_DATE,
+		DINING_AMOUNT
+	}
+
+	/**
+	 * The position of a reward in the order of history pages: its dining date, then its ID. Written as
+	 * 'yyyy-mm-dd/id'.
+	 */
+	private static class Cursor {
+
+		private final java.sql.Date diningDate;
+
+		private final long id;
+
+		public Cursor(java.sql.Date diningDate, long id) {
+			this.diningDate = diningDate;
+			this.id = id;
+		}
+
+		public static Cursor valueOf(String cursor) {
+			int separator = cursor.indexOf('/');
+			try {
+				return new Cursor(java.sql.Date.valueOf(cursor.substring(0, separator)),
+						Long.parseLong(cursor.substring(separator + 1)));
+			} catch (RuntimeException e) {
+				throw new IllegalArgumentException("Not a reward history cursor: " + cursor);
+			}
+		}
+
+		public String toString() {
+			return diningDate + "/" + id;
+		}
+	}
+}
@@ -0,0 +1,408 @@
+package rewards.internal.reward;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import rewards.AccountContribution;
+import rewards.Dining;
+import rewards.DuplicateDiningException;
+import rewards.RewardConfirmation;
+
+import common.datetime.DateInterval;
+import common.datetime.SimpleDate;
+
+/**
+ * A reward repository that confirms rewards once their records are durable in a local {@link RewardJournal}, instead
+ * of waiting for them to be inserted into T_REWARD. A background applier drains the journal into the database in
+ * batches, in transactions of its own.
+ *
+ * A reward confirmed within a transaction, such as one of a reward network crediting the accounts, is journaled once
+ * that transaction has committed, before the commit returns to the reward network's caller. So the transaction holds
+ * only the account credits, and a reward is never journaled for credits that were rolled back. Should the journal
+ * fail after the commit, the caller gets the failure and the reward is logged, to be recorded by hand. Outside a
+ * transaction, the accounts have been credited by the time the reward is confirmed, and it is journaled right away.
+ *
+ * On creation, the entries left unapplied by the previous run are applied before anything else, skipping the rewards
+ * that were inserted but not yet checkpointed.
+ *
+ * Each reward claims the fingerprint of its dining in memory until it has been applied, or its transaction has
+ * completed, and a second reward for the same dining fails with a {@link DuplicateDiningException} meanwhile. This way
+ * two concurrent rewards for one dining that both passed {@link #isRewarded(Dining)} do not both record it. Should an
+ * entry still violate a constraint of T_REWARD when applied, it is rejected and logged rather than retried, so that it
+ * cannot hold up the entries after it.
+ *
+ * Rewards journaled but not yet applied are held in memory for {@link #isRewarded(Dining)}, and T_REWARD lags behind
+ * by up to the apply interval. The history queries read T_REWARD, so a reward only shows in them once applied.
+ */
+public class JournalingRewardRepository implements RewardRepository {
+
+	/**
+	 * The default most journal entries applied in one transaction.
+	 */
+	public static final int DEFAULT_MAX_BATCH = 10000;
+
+	private static final Logger logger = LoggerFactory.getLogger(JournalingRewardRepository.class);
+
+	private JdbcRewardRepository rewardRepository;
+
+	private RewardJournal journal;
+
+	private TransactionTemplate applyTransactionTemplate;
+
+	private ScheduledExecutorService scheduler;
+
+	private int maxBatch = DEFAULT_MAX_BATCH;
+
+	/**
+	 * The fingerprints claimed by rewards confirmed but not yet applied, or whose transaction has not yet completed.
+	 */
+	private final Set<String> pendingFingerprints = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Entries taken from the journal whose applying failed, to apply first next time. Guarded by the apply lock.
+	 */
+	private List<RewardJournal.Entry> failedBatch = Collections.emptyList();
+
+	private final Object applyLock = new Object();
+
+	private final LongAdder appliedEntries = new LongAdder();
+
+	private final LongAdder applyFailures = new LongAdder();
+
+	private final LongAdder rejectedEntries = new LongAdder();
+
+	/**
+	 * Creates a journaling repository, applies the entries left in the journal and starts applying periodically.
+	 * @param rewardRepository the repository records are written to T_REWARD with
+	 * @param journal the journal records are made durable in
+	 * @param transactionManager the transaction manager entries are applied in a new transaction of
+	 * @param applyIntervalMillis the time between the end of one applying round and the start of the next
+	 */
+	public JournalingRewardRepository(JdbcRewardRepository rewardRepository, RewardJournal journal,
+			PlatformTransactionManager transactionManager, long applyIntervalMillis) {
+		if (applyIntervalMillis < 1) {
+			throw new IllegalArgumentException("Apply interval must be positive; your value was "
+					+ applyIntervalMillis);
+		}
+		this.rewardRepository = rewardRepository;
+		this.journal = journal;
+		this.applyTransactionTemplate = new TransactionTemplate(transactionManager);
+		this.applyTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		replay();
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("reward-journal-applier-");
+		threadFactory.setDaemon(true);
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+		this.scheduler.scheduleWithFixedDelay(this::applyQuietly, applyIntervalMillis, applyIntervalMillis,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Sets the most journal entries applied in one transaction. Defaults to {@link #DEFAULT_MAX_BATCH}.
+	 * @param maxBatch the number of entries, must be positive
+	 */
+	public void setMaxBatch(int maxBatch) {
+		if (maxBatch < 1) {
+			throw new IllegalArgumentException("Max batch must be positive; your value was " + maxBatch);
+		}
+		this.maxBatch = maxBatch;
+	}
+
+	public RewardConfirmation confirmReward(AccountContribution contribution, Dining dining) {
+		return confirmRewards(Collections.singletonList(contribution), Collections.singletonList(dining)).get(0);
+	}
+
+	public List<RewardConfirmation> confirmRewards(List<AccountContribution> contributions, List<Dining> dinings) {
+		if (contributions.size() != dinings.size()) {
+			throw new IllegalArgumentException("Expected one dining per contribution but got " + contributions.size()
+					+ " contributions and " + dinings.size() + " dinings");
+		}
+		List<String> fingerprints = claim(dinings);
+		for (int i = 0; i < dinings.size(); i++) {
+			// recorded since the caller checked, and applied before the claim was released
+			if (rewardRepository.isRewarded(dinings.get(i))) {
+				pendingFingerprints.removeAll(fingerprints);
+				throw new DuplicateDiningException(dinings.get(i));
+			}
+		}
+		Date rewardDate = SimpleDate.today().asDate();
+		List<Object[]> rows = new ArrayList<Object[]>(contributions.size());
+		List<RewardConfirmation> confirmations = new ArrayList<RewardConfirmation>(contributions.size());
+		for (int i = 0; i < contributions.size(); i++) {
+			Object[] row = rewardRepository.newRewardRow(contributions.get(i), dinings.get(i), rewardDate);
+			rows.add(row);
+			confirmations.add(new RewardConfirmation((String) row[0], contributions.get(i)));
+		}
+		if (rows.isEmpty()) {
+			return confirmations;
+		}
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			// counted with the credits, and taken away with them should they roll back
+			rewardRepository.count(contributions, dinings);
+			TransactionSynchronizationManager.registerSynchronization(new JournalAfterCommit(rows));
+			return confirmations;
+		}
+		append(rows);
+		rewardRepository.count(contributions, dinings);
+		return confirmations;
+	}
+
+	public boolean isRewarded(Dining dining) {
+		return pendingFingerprints.contains(DiningFingerprint.of(dining)) || rewardRepository.isRewarded(dining);
+	}
+
+	public RewardPage findByAccount(String accountNumber, DateInterval diningDates, String cursor, int limit) {
+		return rewardRepository.findByAccount(accountNumber, diningDates, cursor, limit);
+	}
+
+	public RewardPage findByMerchant(String merchantNumber, DateInterval diningDates, String cursor, int limit) {
+		return rewardRepository.findByMerchant(merchantNumber, diningDates, cursor, limit);
+	}
+
+	public RewardRecord findByConfirmationNumber(String confirmationNumber) {
+		return rewardRepository.findByConfirmationNumber(confirmationNumber);
+	}
+
+	/**
+	 * Claims the fingerprints of the given dinings, or none if any is claimed already.
+	 * @return the fingerprints
+	 * @throws DuplicateDiningException if a dining is claimed by another reward
+	 */
+	private List<String> claim(List<Dining> dinings) {
+		List<String> fingerprints = new ArrayList<String>(dinings.size());
+		for (Dining dining : dinings) {
+			String fingerprint = DiningFingerprint.of(dining);
+			if (!pendingFingerprints.add(fingerprint)) {
+				pendingFingerprints.removeAll(fingerprints);
+				throw new DuplicateDiningException(dining);
+			}
+			fingerprints.add(fingerprint);
+		}
+		return fingerprints;
+	}
+
+	private void append(List<Object[]> rows) {
+		try {
+			journal.appendRewards(rows);
+		} catch (IOException e) {
+			forget(rows);
+			throw new DataAccessResourceFailureException("Could not journal rewards", e);
+		}
+	}
+
+	private void forget(List<Object[]> rows) {
+		for (Object[] row : rows) {
+			pendingFingerprints.remove((String) row[7]);
+		}
+	}
+
+	/**
+	 * Journals the rewards of a transaction once it has committed, or releases their claims if it did not.
+	 */
+	private class JournalAfterCommit implements TransactionSynchronization {
+
+		private final List<Object[]> rows;
+
+		private JournalAfterCommit(List<Object[]> rows) {
+			this.rows = rows;
+		}
+
+		public void afterCommit() {
+			try {
+				append(rows);
+			} catch (RuntimeException e) {
+				for (Object[] row : rows) {
+					logger.error("Reward " + Arrays.toString(row) + " not journaled; its credits are committed");
+				}
+				throw e;
+			}
+		}
+
+		public void afterCompletion(int status) {
+			if (status != STATUS_COMMITTED) {
+				forget(rows);
+			}
+		}
+	}
+
+	/**
+	 * Applies the journal entries durable so far to the database, in transactions of up to the max batch entries. If
+	 * applying fails the entries are retried by the next call, except those rejected for violating a constraint.
+	 */
+	public void apply() {
+		synchronized (applyLock) {
+			while (true) {
+				boolean retrying = !failedBatch.isEmpty();
+				List<RewardJournal.Entry> batch = retrying ? failedBatch : journal.poll(maxBatch);
+				if (batch.isEmpty()) {
+					return;
+				}
+				failedBatch = batch;
+				// a failure may have been reported for a transaction that did commit
+				applyBatch(batch, retrying);
+				failedBatch = Collections.emptyList();
+			}
+		}
+	}
+
+	/**
+	 * Applies the entries left unapplied by the previous run, some of which may have been inserted already.
+	 */
+	private void replay() {
+		int replayed = 0;
+		for (List<RewardJournal.Entry> batch = journal.poll(maxBatch); !batch.isEmpty(); batch = journal
+				.poll(maxBatch)) {
+			applyBatch(batch, true);
+			replayed += batch.size();
+		}
+		if (replayed > 0) {
+			logger.info("Applied " + replayed + " reward journal entries left by the previous run");
+		}
+	}
+
+	private void applyBatch(List<RewardJournal.Entry> batch, boolean mayBeRecorded) {
+		int applied = batch.size();
+		try {
+			applyTransactionTemplate.executeWithoutResult(status -> applyEntries(batch, mayBeRecorded));
+		} catch (DataIntegrityViolationException e) {
+			logger.warn("Could not apply " + batch.size() + " reward journal entries together; applying them one by one",
+					e);
+			applied = 0;
+			for (RewardJournal.Entry entry : batch) {
+				if (applyAlone(entry, mayBeRecorded)) {
+					applied++;
+				}
+			}
+		}
+		appliedEntries.add(applied);
+		List<Object[]> rows = new ArrayList<Object[]>(batch.size());
+		for (RewardJournal.Entry entry : batch) {
+			rows.add(entry.getRow());
+		}
+		forget(rows);
+		try {
+			journal.markApplied(batch.get(batch.size() - 1).getEndOffset());
+		} catch (IOException e) {
+			// the next checkpoint covers these entries too; until then a restart replays them, skipping the inserted
+			logger.warn("Could not checkpoint the reward journal", e);
+		}
+	}
+
+	/**
+	 * Applies an entry in a transaction of its own, rejecting it if it violates a constraint of T_REWARD, such as a
+	 * dining rewarded already or an amount out of range.
+	 * @return true if applied, false if rejected
+	 */
+	private boolean applyAlone(RewardJournal.Entry entry, boolean mayBeRecorded) {
+		try {
+			applyTransactionTemplate.executeWithoutResult(status -> applyEntries(Collections.singletonList(entry),
+					mayBeRecorded));
+			return true;
+		} catch (DataIntegrityViolationException e) {
+			rejectedEntries.increment();
+			logger.error("Rejected reward journal entry " + entry + "; it violates a constraint of T_REWARD", e);
+			return false;
+		}
+	}
+
+	/**
+	 * Inserts the rewards of the given entries, in the current transaction.
+	 */
+	private void applyEntries(List<RewardJournal.Entry> entries, boolean mayBeRecorded) {
+		List<Object[]> rows = new ArrayList<Object[]>(entries.size());
+		for (RewardJournal.Entry entry : entries) {
+			rows.add(entry.getRow());
+		}
+		rewardRepository.insertRows(mayBeRecorded ? unrecorded(rows) : rows);
+	}
+
+	private List<Object[]> unrecorded(List<Object[]> rows) {
+		List<String> confirmationNumbers = new ArrayList<String>(rows.size());
+		for (Object[] row : rows) {
+			confirmationNumbers.add((String) row[0]);
+		}
+		Set<String> recorded = rewardRepository.findRecorded(confirmationNumbers);
+		List<Object[]> unrecorded = new ArrayList<Object[]>(rows.size());
+		for (Object[] row : rows) {
+			if (!recorded.contains(row[0])) {
+				unrecorded.add(row);
+			}
+		}
+		return unrecorded;
+	}
+
+	private void applyQuietly() {
+		try {
+			apply();
+		} catch (RuntimeException e) {
+			applyFailures.increment();
+			logger.warn("Could not apply the reward journal; " + journal.getDurableCount() + " entries waiting", e);
+		}
+	}
+
+	/**
+	 * Returns the number of rewards confirmed but not yet applied.
+	 */
+	public int getPendingCount() {
+		return pendingFingerprints.size();
+	}
+
+	/**
+	 * Returns the number of journal entries applied to the database.
+	 */
+	public long getAppliedCount() {
+		return appliedEntries.sum();
+	}
+
+	/**
+	 * Returns the number of journal entries rejected, as they violate a constraint of T_REWARD.
+	 */
+	public long getRejectedCount() {
+		return rejectedEntries.sum();
+	}
+
+	/**
+	 * Returns the number of periodic applying rounds that failed.
+	 */
+	public long getApplyFailureCount() {
+		return applyFailures.sum();
+	}
+
+	public String toString() {
+		return "Pending = " + getPendingCount() + ", applied = " + getAppliedCount() + ", rejected = "
+				+ getRejectedCount() + ", apply failures = " + getApplyFailureCount() + ", journal: " + journal;
+	}
+
+	/**
+	 * Stops applying periodically, applies the entries still durable and closes the journal. Called when the
+	 * application context closes.
+	 * @throws InterruptedException if interrupted while waiting for a running apply
+	 * @throws IOException if the journal could not be closed
+	 */
+	public void shutdown() throws InterruptedException, IOException {
+		scheduler.shutdown();
+		scheduler.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		journal.close();
+		apply();
+	}
+}
@@ -0,0 +1,104 @@
+package rewards.internal.reward;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.NoTransactionException;
+import org.springframework.transaction.reactive.TransactionSynchronization;
+import org.springframework.transaction.reactive.TransactionSynchronizationManager;
+
+import io.r2dbc.spi.ConnectionFactory;
+import reactor.core.publisher.Mono;
+
+import rewards.AccountContribution;
+import rewards.Dining;
+import rewards.RewardConfirmation;
+
+import common.datetime.SimpleDate;
+
+/**
+ * R2DBC implementation of a reward repository that records the result of a reward transaction by inserting a reward
+ * confirmation record, fingerprinted like the records of {@link JdbcRewardRepository}.
+ */
+public class R2dbcRewardRepository implements ReactiveRewardRepository {
+
+	private static final String INSERT_REWARD_SQL = "insert into T_REWARD (CONFIRMATION_NUMBER, REWARD_AMOUNT, REWARD_DATE, ACCOUNT_NUMBER, DINING_MERCHANT_NUMBER, DINING_DATE, DINING_AMOUNT, DINING_FINGERPRINT) values (:confirmationNumber, :rewardAmount, :rewardDate, :accountNumber, :merchantNumber, :diningDate, :diningAmount, :fingerprint)";
+
+	private DatabaseClient databaseClient;
+
+	private MonthlyRewardCounts monthlyRewardCounts;
+
+	public void setConnectionFactory(ConnectionFactory connectionFactory) {
+		this.databaseClient = DatabaseClient.create(connectionFactory);
+	}
+
+	/**
+	 * Sets the monthly reward counts to add every recorded reward to. A reward is counted as soon as it is recorded,
+	 * and taken away again unless its reactive transaction commits.
+	 *
+	 * A {@code MaxRewardsPerMonth} policy only checks the count outside a thread-bound transaction, so the maximum
+	 * holds only while the rewards of an account are recorded one at a time, as the lanes of
+	 * {@code ReactiveRewardNetworkImpl.rewardAccountsFor} do.
+	 * @param monthlyRewardCounts the counts, seeded from a data source on the same database
+	 */
+	public void setMonthlyRewardCounts(MonthlyRewardCounts monthlyRewardCounts) {
+		this.monthlyRewardCounts = monthlyRewardCounts;
+	}
+
+	public Mono<RewardConfirmation> confirmReward(AccountContribution contribution, Dining dining) {
+		return nextConfirmationNumber().flatMap(confirmationNumber -> databaseClient.sql(INSERT_REWARD_SQL)
+				.bind("confirmationNumber", confirmationNumber)
+				.bind("rewardAmount", contribution.getAmount().asBigDecimal())
+				.bind("rewardDate", toLocalDate(SimpleDate.today()))
+				.bind("accountNumber", contribution.getAccountNumber())
+				.bind("merchantNumber", dining.getMerchantNumber())
+				.bind("diningDate", toLocalDate(dining.getDate()))
+				.bind("diningAmount", dining.getAmount().asBigDecimal())
+				.bind("fingerprint", DiningFingerprint.of(dining))
+				.fetch().rowsUpdated()
+				.then(count(contribution, dining))
+				.thenReturn(new RewardConfirmation(confirmationNumber, contribution)));
+	}
+
+	/**
+	 * Adds a recorded reward to the monthly reward counts, if set, registering to take it away again should the
+	 * current reactive transaction not commit.
+	 */
+	private Mono<Void> count(AccountContribution contribution, Dining dining) {
+		if (monthlyRewardCounts == null) {
+			return Mono.empty();
+		}
+		String accountNumber = contribution.getAccountNumber();
+		String merchantNumber = dining.getMerchantNumber();
+		SimpleDate diningDate = dining.getDate();
+		return TransactionSynchronizationManager.forCurrentTransaction()
+				.filter(TransactionSynchronizationManager::isSynchronizationActive)
+				.doOnNext(synchronizations -> synchronizations.registerSynchronization(new TransactionSynchronization() {
+					public Mono<Void> afterCompletion(int status) {
+						return Mono.fromRunnable(() -> {
+							if (status != STATUS_COMMITTED) {
+								monthlyRewardCounts.add(accountNumber, merchantNumber, diningDate, -1);
+							}
+						});
+					}
+				}))
+				.onErrorResume(NoTransactionException.class, e -> Mono.empty())
+				.then(Mono.fromRunnable(() -> monthlyRewardCounts.add(accountNumber, merchantNumber, diningDate, 1)));
+	}
+
+	public Mono<Boolean> isRewarded(Dining dining) {
+		String sql = "select count(*) from T_REWARD where DINING_FINGERPRINT = :fingerprint";
+		return databaseClient.sql(sql).bind("fingerprint", DiningFingerprint.of(dining))
+				.map((row, metadata) -> row.get(0, Long.class) > 0).one();
+	}
+
+	private Mono<String> nextConfirmationNumber() {
+		String sql = "select next value for S_REWARD_CONFIRMATION_NUMBER from DUAL_REWARD_CONFIRMATION_NUMBER";
+		return databaseClient.sql(sql).map((row, metadata) -> String.valueOf(row.get(0, Long.class))).one();
+	}
+
+	private LocalDate toLocalDate(SimpleDate date) {
+		return date.asDate().toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+	}
+}
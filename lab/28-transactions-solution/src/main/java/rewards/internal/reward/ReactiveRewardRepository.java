@@ -0,0 +1,30 @@
+package rewards.internal.reward;
+
+import reactor.core.publisher.Mono;
+
+import rewards.AccountContribution;
+import rewards.Dining;
+import rewards.RewardConfirmation;
+
+/**
+ * Creates records of reward transactions without blocking. The reactive counterpart of {@link RewardRepository}, used
+ * by the reactive reward network.
+ */
+public interface ReactiveRewardRepository {
+
+	/**
+	 * Create a record of a reward that will track a contribution made to an account for dining.
+	 * @param contribution the account contribution that was made
+	 * @param dining the dining event that resulted in the account contribution
+	 * @return a reward confirmation object that can be used for reporting and to lookup the reward details at a later
+	 * date
+	 */
+	public Mono<RewardConfirmation> confirmReward(AccountContribution contribution, Dining dining);
+
+	/**
+	 * Checks whether a reward has already been recorded for the given dining.
+	 * @param dining the dining
+	 * @return true if the dining has already been rewarded
+	 */
+	public Mono<Boolean> isRewarded(Dining dining);
+}
@@ -0,0 +1,512 @@
+package rewards.internal.reward;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rewards.internal.LatencyStats;
+
+/**
+ * An append-only log of reward records in a local directory, made durable before the rewards are written to T_REWARD.
+ *
+ * The log is split into segment files named after the offset of their first byte, offsets counting bytes from the
+ * start of the log. Each entry is framed by its length and a CRC-32 checksum, so that an entry torn by a crash is
+ * detected and cut off on the next start. Entries are appended by a single writer thread: callers queue their entries
+ * and wait, while the writer writes everything queued since its previous round and forces it to disk with one
+ * {@link FileChannel#force(boolean)} ("group commit"), so concurrent appends share the cost of a disk flush.
+ *
+ * Entries that are durable are handed out in log order by {@link #poll(int)}, for applying to the database. Once
+ * applied, {@link #markApplied(long)} records the offset reached in a checkpoint file and deletes the segments wholly
+ * before it. When the journal is opened again, the entries after the checkpoint are read back and handed out first.
+ */
+public class RewardJournal {
+
+	/**
+	 * The default size past which a new segment is started, in bytes. A segment may exceed it by one group commit.
+	 */
+	public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+	private static final Logger logger = LoggerFactory.getLogger(RewardJournal.class);
+
+	private static final String SEGMENT_SUFFIX = ".journal";
+
+	private static final String CHECKPOINT_FILE = "applied.offset";
+
+	private static final byte INSERT = 1;
+
+	/**
+	 * The length and checksum in front of each entry.
+	 */
+	private static final int HEADER_SIZE = 8;
+
+	private static final int MAX_ENTRY_SIZE = 64 * 1024;
+
+	private Path directory;
+
+	private long segmentSize;
+
+	/**
+	 * The segments, by the offset of their first byte. The last one is appended to.
+	 */
+	private final Map<Long, Path> segments = new ConcurrentSkipListMap<Long, Path>();
+
+	private FileChannel channel;
+
+	private long segmentBase;
+
+	private long endOffset;
+
+	private volatile long appliedOffset;
+
+	private final BlockingQueue<Append> appends = new LinkedBlockingQueue<Append>();
+
+	/**
+	 * Queued by {@link #close()} to stop the writer.
+	 */
+	private final Append closing = new Append(new ArrayList<Entry>());
+
+	private final Queue<Entry> durable = new ConcurrentLinkedQueue<Entry>();
+
+	private final Thread writer;
+
+	private volatile boolean closed;
+
+	private final LongAdder entryCount = new LongAdder();
+
+	private final LatencyStats forces = new LatencyStats();
+
+	/**
+	 * Opens the journal in the given directory, creating it if needed. Entries not applied when the journal was last
+	 * used are read back, to be handed out by {@link #poll(int)} before any new entry.
+	 * @param directory the directory holding the segments and the checkpoint
+	 * @param segmentSize the size past which a new segment is started, in bytes
+	 * @throws IOException if the journal could not be read
+	 */
+	public RewardJournal(Path directory, long segmentSize) throws IOException {
+		if (segmentSize < 1) {
+			throw new IllegalArgumentException("Segment size must be positive; your value was " + segmentSize);
+		}
+		this.directory = Files.createDirectories(directory);
+		this.segmentSize = segmentSize;
+		recover();
+		this.writer = new Thread(this::write, "reward-journal-writer");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * Appends records of new rewards and waits until they are durable.
+	 * @param rows the values of each reward, in the column order of {@link JdbcRewardRepository}'s inserts
+	 * @throws IOException if the records could not be written or forced to disk
+	 */
+	public void appendRewards(List<Object[]> rows) throws IOException {
+		List<Entry> entries = new ArrayList<Entry>(rows.size());
+		for (Object[] row : rows) {
+			entries.add(new Entry(row));
+		}
+		append(entries);
+	}
+
+	private void append(List<Entry> entries) throws IOException {
+		if (closed) {
+			throw new IOException("Journal closed");
+		}
+		Append append = new Append(entries);
+		appends.add(append);
+		try {
+			append.done.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for the journal");
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof IOException ? (IOException) e.getCause()
+					: new IOException("Could not append to the journal", e.getCause());
+		}
+	}
+
+	/**
+	 * Removes and returns durable entries not yet handed out, in log order.
+	 * @param maxEntries the most entries to return
+	 * @return the entries, none if there are none
+	 */
+	public List<Entry> poll(int maxEntries) {
+		List<Entry> entries = new ArrayList<Entry>();
+		Entry entry;
+		while (entries.size() < maxEntries && (entry = durable.poll()) != null) {
+			entries.add(entry);
+		}
+		return entries;
+	}
+
+	/**
+	 * Records that every entry up to the given offset has been applied, so that they are not read back when the
+	 * journal is opened again, and deletes the segments holding only such entries.
+	 * @param offset the end offset of the last entry applied
+	 * @throws IOException if the checkpoint could not be written
+	 */
+	public synchronized void markApplied(long offset) throws IOException {
+		if (offset <= appliedOffset) {
+			return;
+		}
+		Path temporary = directory.resolve(CHECKPOINT_FILE + ".tmp");
+		try (FileChannel checkpoint = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			checkpoint.write(ByteBuffer.wrap(Long.toString(offset).getBytes(StandardCharsets.US_ASCII)));
+			checkpoint.force(true);
+		}
+		Files.move(temporary, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.ATOMIC_MOVE,
+				StandardCopyOption.REPLACE_EXISTING);
+		appliedOffset = offset;
+		Long previous = null;
+		for (Long base : new ArrayList<Long>(segments.keySet())) {
+			// a segment ends where the next one starts; the last one is never deleted
+			if (previous != null && base <= offset) {
+				Files.deleteIfExists(segments.remove(previous));
+			}
+			previous = base;
+		}
+	}
+
+	/**
+	 * Returns the number of entries appended since the journal was opened.
+	 */
+	public long getEntryCount() {
+		return entryCount.sum();
+	}
+
+	/**
+	 * Returns the durations of the disk flushes, each making a group of appends durable.
+	 */
+	public LatencyStats getForceStats() {
+		return forces;
+	}
+
+	/**
+	 * Returns the number of durable entries not yet handed out.
+	 */
+	public int getDurableCount() {
+		return durable.size();
+	}
+
+	/**
+	 * Returns the number of segment files.
+	 */
+	public int getSegmentCount() {
+		return segments.size();
+	}
+
+	/**
+	 * Returns the offset up to which entries have been applied.
+	 */
+	public long getAppliedOffset() {
+		return appliedOffset;
+	}
+
+	public String toString() {
+		return "Segments = " + getSegmentCount() + ", entries = " + getEntryCount() + ", applied offset = "
+				+ appliedOffset + ", forces: " + forces;
+	}
+
+	/**
+	 * Stops the writer once the appends already queued are durable, and closes the current segment.
+	 * @throws InterruptedException if interrupted while waiting for the writer
+	 * @throws IOException if the segment could not be closed
+	 */
+	public void close() throws InterruptedException, IOException {
+		closed = true;
+		// not interrupted, as that would close the channel under a write
+		appends.add(closing);
+		writer.join();
+		channel.close();
+		// appends that raced with closing
+		List<Append> late = new ArrayList<Append>();
+		appends.drainTo(late);
+		for (Append append : late) {
+			append.done.completeExceptionally(new IOException("Journal closed"));
+		}
+	}
+
+	private void write() {
+		List<Append> group = new ArrayList<Append>();
+		while (true) {
+			try {
+				group.add(appends.take());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			appends.drainTo(group);
+			boolean stop = group.remove(closing);
+			if (!group.isEmpty()) {
+				writeGroup(group);
+			}
+			if (stop) {
+				return;
+			}
+			group.clear();
+		}
+	}
+
+	private void writeGroup(List<Append> group) {
+		long groupStart = endOffset;
+		try {
+			// segments are only started between groups, so that a failed group lies in a single segment
+			if (channel.position() >= segmentSize) {
+				startSegment(endOffset);
+			}
+			List<Entry> written = new ArrayList<Entry>();
+			for (Append append : group) {
+				for (Entry entry : append.entries) {
+					ByteBuffer frame = entry.encode();
+					while (frame.hasRemaining()) {
+						channel.write(frame);
+					}
+					endOffset = segmentBase + channel.position();
+					entry.endOffset = endOffset;
+					written.add(entry);
+				}
+			}
+			long started = System.nanoTime();
+			channel.force(false);
+			forces.recordSince(started);
+			entryCount.add(written.size());
+			durable.addAll(written);
+			for (Append append : group) {
+				append.done.complete(null);
+			}
+		} catch (IOException | RuntimeException e) {
+			logger.error("Could not append to the reward journal; rewards not confirmed", e);
+			try {
+				// cut off what may have been written, so that no unconfirmed entry is read back
+				endOffset = groupStart;
+				channel.truncate(groupStart - segmentBase);
+				channel.position(groupStart - segmentBase);
+			} catch (IOException truncateFailure) {
+				e.addSuppressed(truncateFailure);
+			}
+			for (Append append : group) {
+				append.done.completeExceptionally(e);
+			}
+		}
+	}
+
+	/**
+	 * Forces and closes the current segment, if any, and starts a new one at the given offset.
+	 */
+	private void startSegment(long base) throws IOException {
+		if (channel != null) {
+			channel.force(false);
+			channel.close();
+		}
+		Path segment = directory.resolve(String.format("%020d", base) + SEGMENT_SUFFIX);
+		channel = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		segments.put(base, segment);
+		segmentBase = base;
+		forceDirectory();
+	}
+
+	/**
+	 * Makes the creation of a segment file durable. Not supported on all platforms, where it is skipped.
+	 */
+	private void forceDirectory() {
+		try (FileChannel directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			directoryChannel.force(true);
+		} catch (IOException e) {
+			logger.debug("Could not force the journal directory", e);
+		}
+	}
+
+	/**
+	 * Reads the checkpoint and the segments, queues the entries after the checkpoint, cuts off a torn last entry and
+	 * reopens the last segment for appending.
+	 */
+	private void recover() throws IOException {
+		Path checkpoint = directory.resolve(CHECKPOINT_FILE);
+		if (Files.exists(checkpoint)) {
+			appliedOffset = Long.parseLong(new String(Files.readAllBytes(checkpoint), StandardCharsets.US_ASCII).trim());
+		}
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				segments.put(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())), file);
+			}
+		}
+		if (segments.isEmpty()) {
+			endOffset = appliedOffset;
+			startSegment(appliedOffset);
+			return;
+		}
+		List<Long> bases = new ArrayList<Long>(segments.keySet());
+		for (int i = 0; i < bases.size(); i++) {
+			long base = bases.get(i);
+			boolean last = i == bases.size() - 1;
+			long validEnd = readSegment(base, segments.get(base), last);
+			if (last) {
+				channel = FileChannel.open(segments.get(base), StandardOpenOption.WRITE);
+				channel.truncate(validEnd - base);
+				channel.position(validEnd - base);
+				segmentBase = base;
+				endOffset = validEnd;
+			}
+		}
+	}
+
+	/**
+	 * Queues the entries of a segment past the applied offset.
+	 * @return the end offset of the last whole entry
+	 */
+	private long readSegment(long base, Path segment, boolean last) throws IOException {
+		byte[] bytes = Files.readAllBytes(segment);
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		int position = (int) Math.max(0, Math.min(bytes.length, appliedOffset - base));
+		buffer.position(position);
+		while (buffer.remaining() > 0) {
+			Entry entry = Entry.decode(buffer);
+			if (entry == null) {
+				if (!last) {
+					throw new IOException("Journal segment " + segment + " is corrupt at position " + position);
+				}
+				logger.warn("Cutting off a torn entry at position " + position + " of journal segment " + segment);
+				break;
+			}
+			position = buffer.position();
+			entry.endOffset = base + position;
+			durable.add(entry);
+		}
+		return base + position;
+	}
+
+	/**
+	 * A reward in the journal.
+	 */
+	public static class Entry {
+
+		private final Object[] row;
+
+		private long endOffset;
+
+		private Entry(Object[] row) {
+			this.row = row;
+		}
+
+		/**
+		 * Returns the values of the reward, in the column order of {@link JdbcRewardRepository}'s inserts.
+		 */
+		public Object[] getRow() {
+			return row;
+		}
+
+		/**
+		 * Returns the offset just past this entry in the journal.
+		 */
+		public long getEndOffset() {
+			return endOffset;
+		}
+
+		public String toString() {
+			return "Reward " + row[0] + " of dining " + row[7] + " ending at offset " + endOffset;
+		}
+
+		private ByteBuffer encode() throws IOException {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(0);
+			out.writeInt(0);
+			out.writeByte(INSERT);
+			out.writeUTF((String) row[0]);
+			out.writeUTF(((BigDecimal) row[1]).toPlainString());
+			out.writeLong(((Date) row[2]).getTime());
+			out.writeUTF((String) row[3]);
+			out.writeUTF((String) row[4]);
+			out.writeLong(((Date) row[5]).getTime());
+			out.writeUTF(((BigDecimal) row[6]).toPlainString());
+			out.writeUTF((String) row[7]);
+			ByteBuffer frame = ByteBuffer.wrap(bytes.toByteArray());
+			CRC32 crc = new CRC32();
+			crc.update(frame.array(), HEADER_SIZE, frame.limit() - HEADER_SIZE);
+			frame.putInt(0, frame.limit() - HEADER_SIZE);
+			frame.putInt(4, (int) crc.getValue());
+			return frame;
+		}
+
+		/**
+		 * Decodes the entry at the buffer's position, leaving the position past it.
+		 * @return the entry, or null if the bytes left do not hold a whole, valid entry
+		 */
+		private static Entry decode(ByteBuffer buffer) {
+			if (buffer.remaining() < HEADER_SIZE) {
+				return null;
+			}
+			int start = buffer.position();
+			int length = buffer.getInt(start);
+			int checksum = buffer.getInt(start + 4);
+			if (length < 1 || length > MAX_ENTRY_SIZE || buffer.remaining() < HEADER_SIZE + length) {
+				return null;
+			}
+			CRC32 crc = new CRC32();
+			crc.update(buffer.array(), start + HEADER_SIZE, length);
+			if ((int) crc.getValue() != checksum) {
+				return null;
+			}
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(buffer.array(),
+					start + HEADER_SIZE, length));
+			try {
+				if (in.readByte() != INSERT) {
+					return null;
+				}
+				Entry entry = new Entry(new Object[] { in.readUTF(), new BigDecimal(in.readUTF()),
+						new Date(in.readLong()), in.readUTF(), in.readUTF(), new Date(in.readLong()),
+						new BigDecimal(in.readUTF()), in.readUTF() });
+				buffer.position(start + HEADER_SIZE + length);
+				return entry;
+			} catch (EOFException e) {
+				return null;
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	/**
+	 * Entries queued for the writer by one caller.
+	 */
+	private static class Append {
+
+		private final List<Entry> entries;
+
+		private final CompletableFuture<Void> done = new CompletableFuture<Void>();
+
+		public Append(List<Entry> entries) {
+			this.entries = entries;
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package rewards.internal.reward;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A page of recorded rewards, with the cursor to the next page.
+ */
+public class RewardPage {
+
+	private List<RewardRecord> rewards;
+
+	private String nextCursor;
+
+	/**
+	 * Creates a page.
+	 * @param rewards the rewards on the page
+	 * @param nextCursor the cursor to pass to get the next page, or null if this is the last page
+	 */
+	public RewardPage(List<RewardRecord> rewards, String nextCursor) {
+		this.rewards = Collections.unmodifiableList(rewards);
+		this.nextCursor = nextCursor;
+	}
+
+	/**
+	 * Returns the rewards on this page, in the order of the query.
+	 */
+	public List<RewardRecord> getRewards() {
+		return rewards;
+	}
+
+	/**
+	 * Returns the cursor to pass back to the query to get the next page, or null if this is the last page. The cursor
+	 * is opaque: it holds the position of the last reward on this page, so rewards recorded or removed while paging do
+	 * not shift the pages that follow.
+	 */
+	public String getNextCursor() {
+		return nextCursor;
+	}
+
+	/**
+	 * Returns true if there is a page after this one.
+	 */
+	public boolean hasNext() {
+		return nextCursor != null;
+	}
+
+	public String toString() {
+		return "Rewards = " + rewards.size() + ", next cursor = " + nextCursor;
+	}
+}
@@ -0,0 +1,100 @@
+package rewards.internal.reward;
+
+import common.datetime.SimpleDate;
+import common.money.MonetaryAmount;
+
+/**
+ * A recorded reward, as read back from the reward repository: the contribution made to an account and the dining that
+ * earned it.
+ */
+public class RewardRecord {
+
+	private String confirmationNumber;
+
+	private MonetaryAmount rewardAmount;
+
+	private SimpleDate rewardDate;
+
+	private String accountNumber;
+
+	private String merchantNumber;
+
+	private SimpleDate diningDate;
+
+	private MonetaryAmount diningAmount;
+
+	/**
+	 * Creates a reward record.
+	 * @param confirmationNumber the confirmation number the reward was confirmed with
+	 * @param rewardAmount the amount contributed to the account
+	 * @param rewardDate the date the reward was recorded
+	 * @param accountNumber the number of the account rewarded
+	 * @param merchantNumber the merchant number of the restaurant dined at
+	 * @param diningDate the date of the dining
+	 * @param diningAmount the amount of the dining
+	 */
+	public RewardRecord(String confirmationNumber, MonetaryAmount rewardAmount, SimpleDate rewardDate,
+			String accountNumber, String merchantNumber, SimpleDate diningDate, MonetaryAmount diningAmount) {
+		this.confirmationNumber = confirmationNumber;
+		this.rewardAmount = rewardAmount;
+		this.rewardDate = rewardDate;
+		this.accountNumber = accountNumber;
+		this.merchantNumber = merchantNumber;
+		this.diningDate = diningDate;
+		this.diningAmount = diningAmount;
+	}
+
+	/**
+	 * Returns the confirmation number the reward was confirmed with.
+	 */
+	public String getConfirmationNumber() {
+		return confirmationNumber;
+	}
+
+	/**
+	 * Returns the amount contributed to the account.
+	 */
+	public MonetaryAmount getRewardAmount() {
+		return rewardAmount;
+	}
+
+	/**
+	 * Returns the date the reward was recorded.
+	 */
+	public SimpleDate getRewardDate() {
+		return rewardDate;
+	}
+
+	/**
+	 * Returns the number of the account rewarded.
+	 */
+	public String getAccountNumber() {
+		return accountNumber;
+	}
+
+	/**
+	 * Returns the merchant number of the restaurant dined at.
+	 */
+	public String getMerchantNumber() {
+		return merchantNumber;
+	}
+
+	/**
+	 * Returns the date of the dining.
+	 */
+	public SimpleDate getDiningDate() {
+		return diningDate;
+	}
+
+	/**
+	 * Returns the amount of the dining.
+	 */
+	public MonetaryAmount getDiningAmount() {
+		return diningAmount;
+	}
+
+	public String toString() {
+		return "Reward " + confirmationNumber + " of " + rewardAmount + " to account " + accountNumber + " for dining of "
+				+ diningAmount + " at " + merchantNumber + " on " + diningDate;
+	}
+}
@@ -1,14 +1,28 @@
 package rewards.internal.reward;
 
+import java.util.List;
+
 import rewards.AccountContribution;
 import rewards.Dining;
 import rewards.RewardConfirmation;
 
+import common.datetime.DateInterval;
+
 /**
- * Handles creating records of reward transactions to track contributions made to accounts for dining at restaurants.
+ * Handles creating records of reward transactions to track contributions made to accounts for dining at restaurants,
+ * and reading them back.
+ *
+ * The history of an account or a restaurant is read a page at a time. Each page carries a cursor holding the position
+ * of its last reward, from which the next page continues, so every page costs the same however deep into the history
+ * it is.
  */
 public interface RewardRepository {
 
+	/**
+	 * The most rewards on one page of history.
+	 */
+	public static final int MAX_PAGE_SIZE = 1000;
+
 	/**
 	 * Create a record of a reward that will track a contribution made to an account for dining.
 	 * @param contribution the account contribution that was made
@@ -17,4 +31,52 @@ public interface RewardRepository {
 	 * date
 	 */
 	public RewardConfirmation confirmReward(AccountContribution contribution, Dining dining);
-}
\ No newline at end of file
+
+	/**
+	 * Create records of several rewards at once. Equivalent to calling {@link #confirmReward(AccountContribution,
+	 * Dining)} for each contribution and its dining, but allows implementations to insert the records in as few round
+	 * trips as possible.
+	 * @param contributions the account contributions that were made
+	 * @param dinings the dining events that resulted in the contributions, in the same order as the contributions
+	 * @return the reward confirmations, in the same order as the contributions
+	 */
+	public List<RewardConfirmation> confirmRewards(List<AccountContribution> contributions, List<Dining> dinings);
+
+	/**
+	 * Returns true if a reward has already been recorded for the given dining, meaning that rewarding it again would
+	 * pay the account twice.
+	 * @param dining the dining
+	 * @return true if the dining has already been rewarded
+	 */
+	public boolean isRewarded(Dining dining);
+
+	/**
+	 * Returns a page of the rewards recorded for an account, for dinings within a range of dates, the latest dinings
+	 * first.
+	 * @param accountNumber the number of the account
+	 * @param diningDates the first and last dining dates, both included
+	 * @param cursor the next cursor of the previous page, or null for the first page
+	 * @param limit the most rewards on the page, between 1 and {@link #MAX_PAGE_SIZE}
+	 * @return the page, with no next cursor if it is the last one
+	 */
+	public RewardPage findByAccount(String accountNumber, DateInterval diningDates, String cursor, int limit);
+
+	/**
+	 * Returns a page of the rewards recorded for dinings at a restaurant within a range of dates, the latest dinings
+	 * first.
+	 * @param merchantNumber the merchant number of the restaurant
+	 * @param diningDates the first and last dining dates, both included
+	 * @param cursor the next cursor of the previous page, or null for the first page
+	 * @param limit the most rewards on the page, between 1 and {@link #MAX_PAGE_SIZE}
+	 * @return the page, with no next cursor if it is the last one
+	 */
+	public RewardPage findByMerchant(String merchantNumber, DateInterval diningDates, String cursor, int limit);
+
+	/**
+	 * Returns the reward recorded with a confirmation number.
+	 * @param confirmationNumber the confirmation number the reward was confirmed with
+	 * @return the reward
+	 * @throws org.springframework.dao.EmptyResultDataAccessException if no reward has that confirmation number
+	 */
+	public RewardRecord findByConfirmationNumber(String confirmationNumber);
+}
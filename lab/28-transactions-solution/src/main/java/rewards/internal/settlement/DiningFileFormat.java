@@ -0,0 +1,35 @@
+package rewards.internal.settlement;
+
+/**
+ * The record layouts supported for dining settlement files. Every record is a single line terminated by '\n' (a
+ * preceding '\r' is ignored). All fields are ASCII.
+ *
+ * Amounts are a decimal number of dollars with at most two fraction digits and an optional leading '$', for example
+ * "100.00", "$8.5" or "42". Dates are month, day and year, like {@link common.datetime.SimpleDate}.
+ */
+public enum DiningFileFormat {
+
+	/**
+	 * Comma separated: <code>amount,creditCardNumber,merchantNumber,MM/dd/yyyy</code>, for example
+	 * <code>100.00,1234123412341234,1234567890,12/29/2010</code>.
+	 */
+	CSV,
+
+	/**
+	 * Fixed width columns with no separators: amount right-aligned and space-padded in 12 characters, credit card
+	 * number in 16, merchant number in 10 and the date as <code>MMddyyyy</code> in 8, for 46 characters per record.
+	 * For example <code>"      100.001234123412341234123456789012292010"</code>.
+	 */
+	FIXED_WIDTH;
+
+	static final int FIXED_AMOUNT_WIDTH = 12;
+
+	static final int FIXED_CREDIT_CARD_WIDTH = 16;
+
+	static final int FIXED_MERCHANT_WIDTH = 10;
+
+	static final int FIXED_DATE_WIDTH = 8;
+
+	static final int FIXED_RECORD_WIDTH = FIXED_AMOUNT_WIDTH + FIXED_CREDIT_CARD_WIDTH + FIXED_MERCHANT_WIDTH
+			+ FIXED_DATE_WIDTH;
+}
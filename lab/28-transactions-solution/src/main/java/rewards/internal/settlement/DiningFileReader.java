@@ -0,0 +1,377 @@
+package rewards.internal.settlement;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.EmptyResultDataAccessException;
+
+import rewards.Dining;
+import rewards.DuplicateDiningException;
+import rewards.RewardNetwork;
+import rewards.RewardResult;
+
+import common.datetime.SimpleDate;
+import common.money.MonetaryAmount;
+
+/**
+ * Streams the dinings in a settlement file into a reward network, chunk by chunk.
+ *
+ * Built for nightly files of several gigabytes: the file is memory-mapped one window at a time rather than read
+ * through a stream, and records are parsed straight from the mapped bytes. Amounts and dates are decoded to numbers
+ * digit by digit instead of going through intermediate Strings and {@link MonetaryAmount#valueOf(String)}; the only
+ * Strings created are the credit card and merchant numbers the dining itself holds.
+ *
+ * Records that cannot be parsed are counted, logged and skipped. After each chunk has been rewarded the offset just
+ * past it is remembered, so an interrupted ingestion can be restarted from {@link DiningFileReport#getResumeOffset()}.
+ * A chunk is only passed once every dining in it was rewarded or failed for good, because it was rewarded before or
+ * names no known account or restaurant. Any other failure, such as the database being down, stops ingestion at the
+ * start of the chunk, so that a restart hands the chunk over again.
+ *
+ * Not thread-safe: use one reader per file being ingested.
+ */
+public class DiningFileReader {
+
+	/**
+	 * The default number of dinings handed to the reward network at a time.
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+	private static final Logger logger = LoggerFactory.getLogger(DiningFileReader.class);
+
+	private static final long DEFAULT_WINDOW_SIZE = 64L * 1024 * 1024;
+
+	private Path file;
+
+	private DiningFileFormat format;
+
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+	private long windowSize = DEFAULT_WINDOW_SIZE;
+
+	/**
+	 * Scratch space for copying number fields out of the mapped file.
+	 */
+	private byte[] digits = new byte[DiningFileFormat.FIXED_CREDIT_CARD_WIDTH];
+
+	/**
+	 * Creates a reader for a settlement file.
+	 * @param file the file to read
+	 * @param format the layout of the records in the file
+	 */
+	public DiningFileReader(Path file, DiningFileFormat format) {
+		this.file = file;
+		this.format = format;
+	}
+
+	/**
+	 * Sets the number of dinings handed to the reward network at a time. Defaults to {@link #DEFAULT_CHUNK_SIZE}.
+	 * @param chunkSize the chunk size, must be positive
+	 */
+	public void setChunkSize(int chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Chunk size must be positive; your value was " + chunkSize);
+		}
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Sets the size of the region of the file mapped at a time. Only records shorter than this can be read.
+	 */
+	void setWindowSize(long windowSize) {
+		this.windowSize = windowSize;
+	}
+
+	/**
+	 * Rewards every dining in the file.
+	 * @param rewardNetwork the reward network to feed the dinings into
+	 * @return a summary of the ingestion
+	 * @throws IOException if the file could not be read
+	 */
+	public DiningFileReport ingest(RewardNetwork rewardNetwork) throws IOException {
+		return ingest(rewardNetwork, 0);
+	}
+
+	/**
+	 * Rewards every dining in the file from the given offset on, typically to resume an interrupted ingestion.
+	 * @param rewardNetwork the reward network to feed the dinings into
+	 * @param startOffset the offset of the first record to read, such as the resume offset of an earlier report
+	 * @return a summary of the ingestion
+	 * @throws IOException if the file could not be read
+	 */
+	public DiningFileReport ingest(RewardNetwork rewardNetwork, long startOffset) throws IOException {
+		long started = System.nanoTime();
+		long records = 0;
+		long badRecords = 0;
+		long confirmed = 0;
+		long failed = 0;
+		long resumeOffset = startOffset;
+		List<Dining> chunk = new ArrayList<Dining>(chunkSize);
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			long position = startOffset;
+			while (position < size) {
+				int length = (int) Math.min(windowSize, size - position);
+				boolean lastWindow = position + length == size;
+				MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+				int recordStart = 0;
+				while (recordStart < length) {
+					int recordEnd = indexOfNewline(window, recordStart, length);
+					if (recordEnd < 0) {
+						if (!lastWindow) {
+							// the record continues past this window: map the next window from its start
+							break;
+						}
+						recordEnd = length;
+					}
+					int contentEnd = recordEnd > recordStart && window.get(recordEnd - 1) == '\r' ? recordEnd - 1
+							: recordEnd;
+					if (contentEnd > recordStart) {
+						records++;
+						Dining dining = parse(window, recordStart, contentEnd);
+						if (dining == null) {
+							badRecords++;
+							logger.warn("Skipping bad dining record at offset {} of {}", position + recordStart, file);
+						} else {
+							chunk.add(dining);
+						}
+					}
+					recordStart = recordEnd + 1;
+					if (chunk.size() == chunkSize) {
+						List<RewardResult> results = rewardNetwork.rewardAccountsFor(chunk);
+						long chunkConfirmed = countConfirmed(results);
+						confirmed += chunkConfirmed;
+						failed += chunk.size() - chunkConfirmed;
+						chunk.clear();
+						if (!isPassed(results, resumeOffset)) {
+							return new DiningFileReport(records, badRecords, confirmed, failed, resumeOffset,
+									System.nanoTime() - started);
+						}
+						resumeOffset = Math.min(position + recordStart, size);
+					}
+				}
+				if (recordStart == 0) {
+					throw new IOException("Record at offset " + position + " of " + file + " is longer than "
+							+ windowSize + " bytes");
+				}
+				position += Math.min(recordStart, length);
+			}
+			boolean passed = true;
+			if (!chunk.isEmpty()) {
+				List<RewardResult> results = rewardNetwork.rewardAccountsFor(chunk);
+				long chunkConfirmed = countConfirmed(results);
+				confirmed += chunkConfirmed;
+				failed += chunk.size() - chunkConfirmed;
+				passed = isPassed(results, resumeOffset);
+			}
+			if (passed) {
+				resumeOffset = Math.max(resumeOffset, size);
+			}
+		}
+		return new DiningFileReport(records, badRecords, confirmed, failed, resumeOffset, System.nanoTime() - started);
+	}
+
+	private int indexOfNewline(MappedByteBuffer window, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (window.get(i) == '\n') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns whether ingestion may go past a chunk: true if every dining in it was rewarded or failed for good, so
+	 * that handing it over again could not change the outcome.
+	 * @param results the results of the chunk
+	 * @param chunkOffset the offset the chunk starts at, for logging
+	 */
+	private boolean isPassed(List<RewardResult> results, long chunkOffset) {
+		for (RewardResult result : results) {
+			RuntimeException failure = result.getFailure();
+			if (failure != null && !(failure instanceof DuplicateDiningException)
+					&& !(failure instanceof EmptyResultDataAccessException)) {
+				logger.warn("Stopping at the chunk starting at offset {} of {}: {} could not be rewarded", chunkOffset,
+						file, result.getDining(), failure);
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private long countConfirmed(List<RewardResult> results) {
+		long confirmed = 0;
+		for (RewardResult result : results) {
+			if (result.isConfirmed()) {
+				confirmed++;
+			}
+		}
+		return confirmed;
+	}
+
+	/**
+	 * Parses the record between the given offsets of the window.
+	 * @return the dining, or null if the record is malformed
+	 */
+	private Dining parse(MappedByteBuffer window, int start, int end) {
+		if (format == DiningFileFormat.CSV) {
+			return parseCsv(window, start, end);
+		} else {
+			return parseFixedWidth(window, start, end);
+		}
+	}
+
+	private Dining parseCsv(MappedByteBuffer window, int start, int end) {
+		int amountEnd = indexOf(window, ',', start, end);
+		int cardEnd = indexOf(window, ',', amountEnd + 1, end);
+		int merchantEnd = indexOf(window, ',', cardEnd + 1, end);
+		if (amountEnd < 0 || cardEnd < 0 || merchantEnd < 0) {
+			return null;
+		}
+		long cents = parseCents(window, start, amountEnd);
+		String creditCardNumber = parseDigits(window, amountEnd + 1, cardEnd,
+				DiningFileFormat.FIXED_CREDIT_CARD_WIDTH);
+		String merchantNumber = parseDigits(window, cardEnd + 1, merchantEnd, DiningFileFormat.FIXED_MERCHANT_WIDTH);
+		int monthEnd = indexOf(window, '/', merchantEnd + 1, end);
+		int dayEnd = indexOf(window, '/', monthEnd + 1, end);
+		if (cents < 0 || creditCardNumber == null || merchantNumber == null || monthEnd < 0 || dayEnd < 0) {
+			return null;
+		}
+		SimpleDate date = toDate(parseInt(window, merchantEnd + 1, monthEnd), parseInt(window, monthEnd + 1, dayEnd),
+				parseInt(window, dayEnd + 1, end));
+		return date == null ? null : newDining(cents, creditCardNumber, merchantNumber, date);
+	}
+
+	private Dining parseFixedWidth(MappedByteBuffer window, int start, int end) {
+		if (end - start != DiningFileFormat.FIXED_RECORD_WIDTH) {
+			return null;
+		}
+		int cardStart = start + DiningFileFormat.FIXED_AMOUNT_WIDTH;
+		int merchantStart = cardStart + DiningFileFormat.FIXED_CREDIT_CARD_WIDTH;
+		int dateStart = merchantStart + DiningFileFormat.FIXED_MERCHANT_WIDTH;
+		int amountStart = start;
+		while (amountStart < cardStart && window.get(amountStart) == ' ') {
+			amountStart++;
+		}
+		long cents = parseCents(window, amountStart, cardStart);
+		String creditCardNumber = parseDigits(window, cardStart, merchantStart,
+				DiningFileFormat.FIXED_CREDIT_CARD_WIDTH);
+		String merchantNumber = parseDigits(window, merchantStart, dateStart, DiningFileFormat.FIXED_MERCHANT_WIDTH);
+		if (cents < 0 || creditCardNumber == null || merchantNumber == null) {
+			return null;
+		}
+		SimpleDate date = toDate(parseInt(window, dateStart, dateStart + 2), parseInt(window, dateStart + 2,
+				dateStart + 4), parseInt(window, dateStart + 4, end));
+		return date == null ? null : newDining(cents, creditCardNumber, merchantNumber, date);
+	}
+
+	private Dining newDining(long cents, String creditCardNumber, String merchantNumber, SimpleDate date) {
+		return new Dining(new MonetaryAmount(BigDecimal.valueOf(cents, 2)), creditCardNumber, merchantNumber, date);
+	}
+
+	private int indexOf(MappedByteBuffer window, char c, int from, int to) {
+		if (from < 0) {
+			return -1;
+		}
+		for (int i = from; i < to; i++) {
+			if (window.get(i) == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Parses an amount such as "$100.5" into a number of cents.
+	 * @return the cents, or -1 if the amount is malformed
+	 */
+	private long parseCents(MappedByteBuffer window, int start, int end) {
+		if (start < end && window.get(start) == '$') {
+			start++;
+		}
+		long cents = 0;
+		int digits = 0;
+		int fractionDigits = -1;
+		for (int i = start; i < end; i++) {
+			byte b = window.get(i);
+			if (b == '.' && fractionDigits < 0) {
+				fractionDigits = 0;
+			} else if (b >= '0' && b <= '9' && fractionDigits < 2 && digits < 17) {
+				cents = cents * 10 + (b - '0');
+				digits++;
+				if (fractionDigits >= 0) {
+					fractionDigits++;
+				}
+			} else {
+				return -1;
+			}
+		}
+		if (digits == 0) {
+			return -1;
+		}
+		for (int i = Math.max(fractionDigits, 0); i < 2; i++) {
+			cents *= 10;
+		}
+		return cents;
+	}
+
+	/**
+	 * Reads a number field made only of digits, such as a credit card number.
+	 * @return the field, or null if it is empty, too long or contains anything but digits
+	 */
+	private String parseDigits(MappedByteBuffer window, int start, int end, int maxLength) {
+		int length = end - start;
+		if (length < 1 || length > maxLength) {
+			return null;
+		}
+		for (int i = 0; i < length; i++) {
+			byte b = window.get(start + i);
+			if (b < '0' || b > '9') {
+				return null;
+			}
+			digits[i] = b;
+		}
+		return new String(digits, 0, length, StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Parses a small unsigned integer such as a month.
+	 * @return the number, or -1 if the field is empty or not numeric
+	 */
+	private int parseInt(MappedByteBuffer window, int start, int end) {
+		if (start >= end || end - start > 4) {
+			return -1;
+		}
+		int value = 0;
+		for (int i = start; i < end; i++) {
+			byte b = window.get(i);
+			if (b < '0' || b > '9') {
+				return -1;
+			}
+			value = value * 10 + (b - '0');
+		}
+		return value;
+	}
+
+	/**
+	 * Returns the given date, or null if there is no such date, rather than rolling a day such as 02/31 over into the
+	 * next month as SimpleDate would.
+	 */
+	private SimpleDate toDate(int month, int day, int year) {
+		if (month < 1 || month > 12 || day < 1 || year < 1000 || year > 9999
+				|| day > YearMonth.of(year, month).lengthOfMonth()) {
+			return null;
+		}
+		return new SimpleDate(month, day, year);
+	}
+}
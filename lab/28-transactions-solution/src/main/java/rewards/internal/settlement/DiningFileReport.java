@@ -0,0 +1,91 @@
+package rewards.internal.settlement;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A summary of ingesting a dining settlement file: how many records were read, how many could not be parsed, how
+ * the parsed dinings fared in the reward network, and where to resume if ingestion has to be restarted.
+ */
+public class DiningFileReport {
+
+	private long records;
+
+	private long badRecords;
+
+	private long confirmedRewards;
+
+	private long failedRewards;
+
+	private long resumeOffset;
+
+	private long elapsedNanos;
+
+	DiningFileReport(long records, long badRecords, long confirmedRewards, long failedRewards, long resumeOffset,
+			long elapsedNanos) {
+		this.records = records;
+		this.badRecords = badRecords;
+		this.confirmedRewards = confirmedRewards;
+		this.failedRewards = failedRewards;
+		this.resumeOffset = resumeOffset;
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	/**
+	 * Returns the number of non-blank records read, including bad ones.
+	 */
+	public long getRecords() {
+		return records;
+	}
+
+	/**
+	 * Returns the number of records that could not be parsed into a dining and were skipped.
+	 */
+	public long getBadRecords() {
+		return badRecords;
+	}
+
+	/**
+	 * Returns the number of dinings the reward network confirmed.
+	 */
+	public long getConfirmedRewards() {
+		return confirmedRewards;
+	}
+
+	/**
+	 * Returns the number of dinings the reward network could not reward.
+	 */
+	public long getFailedRewards() {
+		return failedRewards;
+	}
+
+	/**
+	 * Returns the byte offset just past the last chunk whose dinings were all rewarded or failed for good. Ingestion
+	 * restarted from this offset neither skips a dining nor rewards one twice: the dinings of a chunk that stopped
+	 * ingestion are handed over again, and those already rewarded fail as duplicates. Equals the file size when the
+	 * whole file was ingested.
+	 */
+	public long getResumeOffset() {
+		return resumeOffset;
+	}
+
+	/**
+	 * Returns how long ingestion took in the given unit.
+	 * @param unit the time unit to report in
+	 */
+	public long getElapsed(TimeUnit unit) {
+		return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Returns the number of records read per second.
+	 */
+	public double getRecordsPerSecond() {
+		return elapsedNanos > 0 ? records * 1e9 / elapsedNanos : 0;
+	}
+
+	public String toString() {
+		return records + " records (" + badRecords + " bad) in " + getElapsed(TimeUnit.MILLISECONDS) + "ms ("
+				+ String.format("%.0f", getRecordsPerSecond()) + "/s): " + confirmedRewards + " rewarded, "
+				+ failedRewards + " failed, resume at offset " + resumeOffset;
+	}
+}
@@ -0,0 +1,293 @@
+package rewards.internal.simulation;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import org.springframework.dao.EmptyResultDataAccessException;
+
+import rewards.Dining;
+import rewards.internal.account.Account;
+import rewards.internal.account.AccountRepository;
+import rewards.internal.restaurant.BenefitAvailabilityPolicy;
+import rewards.internal.restaurant.Restaurant;
+import rewards.internal.restaurant.RestaurantRepository;
+
+import common.money.MonetaryAmount;
+
+/**
+ * Simulates rewarding dinings without persisting anything, to answer what-if questions such as "what would last
+ * month's dinings have cost if this restaurant awarded 12%?".
+ *
+ * Replaying a dining applies the same rules as {@link rewards.internal.RewardNetworkImpl}: the restaurant's
+ * {@link BenefitAvailabilityPolicy} decides whether a benefit is available, the benefit is the dining amount times
+ * the restaurant's benefit percentage rounded half-even to the cent, as {@link Restaurant#calculateBenefitFor} does,
+ * and an account with invalid beneficiary allocations cannot be rewarded, as with
+ * {@link Account#makeContribution(MonetaryAmount)}. Unlike the reward network, amounts are calculated in whole cents
+ * rather than with {@link MonetaryAmount}, no account is ever credited, and dinings are replayed on all available
+ * processors, each summing its share of the dinings into arrays of its own that are added up at the end.
+ *
+ * The accounts and restaurants are loaded from their repositories once, into a {@link SimulationSnapshot} that can be
+ * replayed against any number of times.
+ *
+ * A maximum number of rewards per month is enforced with counters of the simulation's own, counting only the dinings
+ * replayed, as though none of their months had been rewarded before. They are counted in one pass over the dinings
+ * before the parallel replay, so that it is always the earliest dinings of a month in the list that are rewarded.
+ */
+public class RewardSimulator {
+
+	private AccountRepository accountRepository;
+
+	private RestaurantRepository restaurantRepository;
+
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Creates a new reward simulator.
+	 * @param accountRepository the repository accounts are loaded from
+	 * @param restaurantRepository the repository restaurants are loaded from
+	 */
+	public RewardSimulator(AccountRepository accountRepository, RestaurantRepository restaurantRepository) {
+		this.accountRepository = accountRepository;
+		this.restaurantRepository = restaurantRepository;
+	}
+
+	/**
+	 * Sets the number of parts dinings are split into to be replayed in parallel. Defaults to the number of available
+	 * processors.
+	 * @param parallelism the number of parts, must be positive
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be positive; your value was " + parallelism);
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Loads the accounts the given dinings were made with in bulk, and their restaurants each once. Credit cards and
+	 * merchants not found are left out of the snapshot, and their dinings fail when replayed.
+	 * @param dinings the dinings to be replayed
+	 * @return a snapshot to replay the dinings against
+	 */
+	public SimulationSnapshot loadSnapshot(Collection<Dining> dinings) {
+		Set<String> creditCardNumbers = new LinkedHashSet<String>();
+		Set<String> merchantNumbers = new LinkedHashSet<String>();
+		for (Dining dining : dinings) {
+			creditCardNumbers.add(dining.getCreditCardNumber());
+			merchantNumbers.add(dining.getMerchantNumber());
+		}
+
+		Map<String, Integer> accountIndexByCreditCard = new HashMap<String, Integer>();
+		Map<String, Integer> accountIndexByNumber = new HashMap<String, Integer>();
+		List<Account> accounts = new ArrayList<Account>();
+		for (Map.Entry<String, Account> entry : accountRepository.findByCreditCards(creditCardNumbers).entrySet()) {
+			String creditCardNumber = entry.getKey();
+			Account account = entry.getValue();
+			Integer index = accountIndexByNumber.get(account.getNumber());
+			if (index == null) {
+				index = accounts.size();
+				accounts.add(account);
+				accountIndexByNumber.put(account.getNumber(), index);
+			}
+			accountIndexByCreditCard.put(creditCardNumber, index);
+		}
+
+		Map<String, Integer> restaurantIndexByMerchantNumber = new HashMap<String, Integer>();
+		List<Restaurant> restaurants = new ArrayList<Restaurant>();
+		for (String merchantNumber : merchantNumbers) {
+			try {
+				restaurants.add(restaurantRepository.findByMerchantNumber(merchantNumber));
+			} catch (EmptyResultDataAccessException e) {
+				continue;
+			}
+			restaurantIndexByMerchantNumber.put(merchantNumber, restaurants.size() - 1);
+		}
+		String[] restaurantNumbers = new String[restaurants.size()];
+		int[] benefitHundredths = new int[restaurants.size()];
+		BenefitAvailabilityPolicy[] policies = new BenefitAvailabilityPolicy[restaurants.size()];
+		for (int i = 0; i < restaurants.size(); i++) {
+			Restaurant restaurant = restaurants.get(i);
+			restaurantNumbers[i] = restaurant.getNumber();
+			benefitHundredths[i] = SimulationSnapshot.hundredths(restaurant.getBenefitPercentage());
+			policies[i] = restaurant.getBenefitAvailabilityPolicy();
+		}
+
+		return new SimulationSnapshot(accountIndexByCreditCard, accounts.toArray(new Account[0]),
+				restaurantIndexByMerchantNumber, restaurantNumbers, benefitHundredths, policies);
+	}
+
+	/**
+	 * Loads a snapshot for the given dinings and replays them against it.
+	 * @param dinings the dinings to replay
+	 * @return the rewards the dinings would have earned
+	 */
+	public SimulationResult simulate(List<Dining> dinings) {
+		return simulate(loadSnapshot(dinings), dinings);
+	}
+
+	/**
+	 * Replays dinings against a snapshot in parallel.
+	 * @param snapshot the accounts and restaurants to replay against
+	 * @param dinings the dinings to replay, preferably a random access list
+	 * @return the rewards the dinings would have earned
+	 */
+	public SimulationResult simulate(SimulationSnapshot snapshot, List<Dining> dinings) {
+		long started = System.nanoTime();
+		boolean[] overMonthlyMax = overMonthlyMax(snapshot, dinings);
+		int parts = Math.max(1, Math.min(parallelism, dinings.size()));
+		Totals totals = IntStream.range(0, parts).parallel()
+				.mapToObj(part -> replay(snapshot, dinings, overMonthlyMax,
+						(int) ((long) dinings.size() * part / parts),
+						(int) ((long) dinings.size() * (part + 1) / parts)))
+				.reduce(Totals::add)
+				.get();
+		return totals.toResult(snapshot, System.nanoTime() - started);
+	}
+
+	/**
+	 * Counts the dinings rewarded at restaurants with a maximum number of rewards per month, in list order.
+	 * @return for each dining, whether its account already had the maximum number of rewards at the restaurant that
+	 * month, or null if no restaurant of the snapshot has a maximum
+	 */
+	private boolean[] overMonthlyMax(SimulationSnapshot snapshot, List<Dining> dinings) {
+		boolean limited = false;
+		for (int i = 0; i < snapshot.getRestaurantCount() && !limited; i++) {
+			limited = snapshot.getMaxRewardsPerMonth(i) > 0;
+		}
+		if (!limited) {
+			return null;
+		}
+		boolean[] over = new boolean[dinings.size()];
+		Map<Long, Integer> counts = new HashMap<Long, Integer>();
+		for (int i = 0; i < dinings.size(); i++) {
+			Dining dining = dinings.get(i);
+			int account = snapshot.accountIndexOf(dining.getCreditCardNumber());
+			int restaurant = snapshot.restaurantIndexOf(dining.getMerchantNumber());
+			if (account < 0 || restaurant < 0 || !snapshot.isValidAccount(account)
+					|| snapshot.getMaxRewardsPerMonth(restaurant) == 0) {
+				continue;
+			}
+			int month = dining.getDate().getYear() * 12 + dining.getDate().getMonth() - 1;
+			long key = ((long) account * snapshot.getRestaurantCount() + restaurant) << 20 | month;
+			int count = counts.merge(key, 1, Integer::sum);
+			over[i] = count > snapshot.getMaxRewardsPerMonth(restaurant);
+		}
+		return over;
+	}
+
+	private Totals replay(SimulationSnapshot snapshot, List<Dining> dinings, boolean[] overMonthlyMax, int from,
+			int to) {
+		Totals totals = new Totals(snapshot);
+		for (int i = from; i < to; i++) {
+			Dining dining = dinings.get(i);
+			int account = snapshot.accountIndexOf(dining.getCreditCardNumber());
+			int restaurant = snapshot.restaurantIndexOf(dining.getMerchantNumber());
+			if (account < 0 || restaurant < 0 || !snapshot.isValidAccount(account)) {
+				totals.failedDinings++;
+				continue;
+			}
+			long benefitCents = 0;
+			boolean available = snapshot.getMaxRewardsPerMonth(restaurant) > 0 ? !overMonthlyMax[i]
+					: snapshot.getBenefitAvailabilityPolicy(restaurant)
+						.isBenefitAvailableFor(snapshot.getAccount(account), dining);
+			if (available) {
+				benefitCents = percentOf(cents(dining.getAmount()), snapshot.getBenefitHundredths(restaurant));
+			}
+			totals.accountCents[account] += benefitCents;
+			totals.accountDinings[account]++;
+			totals.restaurantCents[restaurant] += benefitCents;
+			totals.restaurantDinings[restaurant]++;
+		}
+		totals.dinings = to - from;
+		return totals;
+	}
+
+	private static long cents(MonetaryAmount amount) {
+		return amount.asBigDecimal().movePointRight(2).longValueExact();
+	}
+
+	/**
+	 * Returns the given percentage of an amount of cents, rounded half-even to the cent like a monetary amount is.
+	 * @param cents the amount in cents
+	 * @param hundredths the percentage in hundredths, so 8 for 8%
+	 */
+	static long percentOf(long cents, int hundredths) {
+		long product = cents * hundredths;
+		long quotient = Math.floorDiv(product, 100);
+		long remainder = Math.floorMod(product, 100);
+		if (remainder > 50 || (remainder == 50 && (quotient & 1) == 1)) {
+			quotient++;
+		}
+		return quotient;
+	}
+
+	private static MonetaryAmount amountOf(long cents) {
+		return new MonetaryAmount(BigDecimal.valueOf(cents, 2));
+	}
+
+	/**
+	 * The sums of one part of the dinings, indexed like the accounts and restaurants of the snapshot.
+	 */
+	private static class Totals {
+
+		private long dinings;
+
+		private long failedDinings;
+
+		private long[] accountCents;
+
+		private int[] accountDinings;
+
+		private long[] restaurantCents;
+
+		private int[] restaurantDinings;
+
+		private Totals(SimulationSnapshot snapshot) {
+			accountCents = new long[snapshot.getAccountCount()];
+			accountDinings = new int[snapshot.getAccountCount()];
+			restaurantCents = new long[snapshot.getRestaurantCount()];
+			restaurantDinings = new int[snapshot.getRestaurantCount()];
+		}
+
+		private Totals add(Totals other) {
+			dinings += other.dinings;
+			failedDinings += other.failedDinings;
+			for (int i = 0; i < accountCents.length; i++) {
+				accountCents[i] += other.accountCents[i];
+				accountDinings[i] += other.accountDinings[i];
+			}
+			for (int i = 0; i < restaurantCents.length; i++) {
+				restaurantCents[i] += other.restaurantCents[i];
+				restaurantDinings[i] += other.restaurantDinings[i];
+			}
+			return this;
+		}
+
+		private SimulationResult toResult(SimulationSnapshot snapshot, long elapsedNanos) {
+			long totalCents = 0;
+			Map<String, MonetaryAmount> rewardByRestaurant = new LinkedHashMap<String, MonetaryAmount>();
+			for (int i = 0; i < restaurantCents.length; i++) {
+				if (restaurantDinings[i] > 0) {
+					rewardByRestaurant.put(snapshot.getMerchantNumber(i), amountOf(restaurantCents[i]));
+					totalCents += restaurantCents[i];
+				}
+			}
+			Map<String, MonetaryAmount> rewardByAccount = new LinkedHashMap<String, MonetaryAmount>();
+			for (int i = 0; i < accountCents.length; i++) {
+				if (accountDinings[i] > 0) {
+					rewardByAccount.put(snapshot.getAccount(i).getNumber(), amountOf(accountCents[i]));
+				}
+			}
+			return new SimulationResult(dinings, failedDinings, amountOf(totalCents), rewardByRestaurant,
+					rewardByAccount, elapsedNanos);
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package rewards.internal.simulation;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import common.money.MonetaryAmount;
+
+/**
+ * The outcome of replaying dinings in a reward simulation: the rewards that would have been awarded, in total, per
+ * restaurant and per account. Nothing was persisted.
+ */
+public class SimulationResult {
+
+	private long dinings;
+
+	private long failedDinings;
+
+	private MonetaryAmount totalReward;
+
+	private Map<String, MonetaryAmount> rewardByRestaurant;
+
+	private Map<String, MonetaryAmount> rewardByAccount;
+
+	private long elapsedNanos;
+
+	SimulationResult(long dinings, long failedDinings, MonetaryAmount totalReward,
+			Map<String, MonetaryAmount> rewardByRestaurant, Map<String, MonetaryAmount> rewardByAccount,
+			long elapsedNanos) {
+		this.dinings = dinings;
+		this.failedDinings = failedDinings;
+		this.totalReward = totalReward;
+		this.rewardByRestaurant = Collections.unmodifiableMap(rewardByRestaurant);
+		this.rewardByAccount = Collections.unmodifiableMap(rewardByAccount);
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	/**
+	 * Returns the number of dinings replayed, including failed ones.
+	 */
+	public long getDinings() {
+		return dinings;
+	}
+
+	/**
+	 * Returns the number of dinings that could not have been rewarded: their credit card or merchant was not in the
+	 * snapshot, or their account's beneficiary allocations were invalid.
+	 */
+	public long getFailedDinings() {
+		return failedDinings;
+	}
+
+	/**
+	 * Returns the sum of all rewards.
+	 */
+	public MonetaryAmount getTotalReward() {
+		return totalReward;
+	}
+
+	/**
+	 * Returns the rewards awarded for dining at each restaurant, by merchant number. Restaurants of the snapshot no
+	 * dining was replayed for are absent.
+	 */
+	public Map<String, MonetaryAmount> getRewardByRestaurant() {
+		return rewardByRestaurant;
+	}
+
+	/**
+	 * Returns the rewards contributed to each account, by account number. Accounts of the snapshot no dining was
+	 * replayed for are absent.
+	 */
+	public Map<String, MonetaryAmount> getRewardByAccount() {
+		return rewardByAccount;
+	}
+
+	/**
+	 * Returns how long the replay took in the given unit, not counting loading the snapshot.
+	 * @param unit the time unit to report in
+	 */
+	public long getElapsed(TimeUnit unit) {
+		return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+	}
+
+	public String toString() {
+		return "Dinings = " + dinings + ", failed = " + failedDinings + ", total reward = " + totalReward
+				+ ", restaurants = " + rewardByRestaurant.size() + ", accounts = " + rewardByAccount.size();
+	}
+}
@@ -0,0 +1,158 @@
+package rewards.internal.simulation;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Map;
+
+import rewards.internal.account.Account;
+import rewards.internal.restaurant.BenefitAvailabilityPolicy;
+import rewards.internal.restaurant.MaxRewardsPerMonth;
+
+import common.money.Percentage;
+
+/**
+ * The accounts and restaurants a reward simulation replays dinings against, loaded once by
+ * {@link RewardSimulator#loadSnapshot(java.util.Collection)}.
+ *
+ * Accounts and restaurants are numbered densely so that a simulation can keep its totals in plain arrays, and their
+ * percentages are kept as whole hundredths so that benefits are calculated in integer arithmetic. A snapshot never
+ * changes: {@link #withBenefitPercentage(String, Percentage)} returns a new one, so one snapshot can serve any number
+ * of what-if scenarios, even concurrently.
+ *
+ * The accounts held are only passed to the restaurants' {@link BenefitAvailabilityPolicy}; they are never credited.
+ * A {@link MaxRewardsPerMonth} policy is not called at all, as it would read and reserve the live reward counts.
+ */
+public class SimulationSnapshot {
+
+	private final Map<String, Integer> accountIndexByCreditCard;
+
+	private final Account[] accounts;
+
+	private final boolean[] validAccounts;
+
+	private final Map<String, Integer> restaurantIndexByMerchantNumber;
+
+	private final String[] merchantNumbers;
+
+	private final int[] benefitHundredths;
+
+	private final BenefitAvailabilityPolicy[] benefitAvailabilityPolicies;
+
+	private final int[] maxRewardsPerMonth;
+
+	SimulationSnapshot(Map<String, Integer> accountIndexByCreditCard, Account[] accounts,
+			Map<String, Integer> restaurantIndexByMerchantNumber, String[] merchantNumbers, int[] benefitHundredths,
+			BenefitAvailabilityPolicy[] benefitAvailabilityPolicies) {
+		this.accountIndexByCreditCard = Collections.unmodifiableMap(accountIndexByCreditCard);
+		this.accounts = accounts;
+		this.validAccounts = new boolean[accounts.length];
+		for (int i = 0; i < accounts.length; i++) {
+			validAccounts[i] = accounts[i].isValid();
+		}
+		this.restaurantIndexByMerchantNumber = Collections.unmodifiableMap(restaurantIndexByMerchantNumber);
+		this.merchantNumbers = merchantNumbers;
+		this.benefitHundredths = benefitHundredths;
+		this.benefitAvailabilityPolicies = benefitAvailabilityPolicies;
+		this.maxRewardsPerMonth = new int[benefitAvailabilityPolicies.length];
+		for (int i = 0; i < benefitAvailabilityPolicies.length; i++) {
+			if (benefitAvailabilityPolicies[i] instanceof MaxRewardsPerMonth) {
+				maxRewardsPerMonth[i] = ((MaxRewardsPerMonth) benefitAvailabilityPolicies[i]).getMaxRewardsPerMonth();
+			}
+		}
+	}
+
+	private SimulationSnapshot(SimulationSnapshot snapshot, int[] benefitHundredths) {
+		this.accountIndexByCreditCard = snapshot.accountIndexByCreditCard;
+		this.accounts = snapshot.accounts;
+		this.validAccounts = snapshot.validAccounts;
+		this.restaurantIndexByMerchantNumber = snapshot.restaurantIndexByMerchantNumber;
+		this.merchantNumbers = snapshot.merchantNumbers;
+		this.benefitHundredths = benefitHundredths;
+		this.benefitAvailabilityPolicies = snapshot.benefitAvailabilityPolicies;
+		this.maxRewardsPerMonth = snapshot.maxRewardsPerMonth;
+	}
+
+	/**
+	 * Returns a copy of this snapshot in which the given restaurant awards a different benefit percentage.
+	 * @param merchantNumber the merchant number of the restaurant
+	 * @param benefitPercentage the benefit percentage to simulate
+	 * @throws IllegalArgumentException if the restaurant is not in this snapshot, or the percentage is not a whole
+	 * number of percent
+	 */
+	public SimulationSnapshot withBenefitPercentage(String merchantNumber, Percentage benefitPercentage) {
+		Integer index = restaurantIndexByMerchantNumber.get(merchantNumber);
+		if (index == null) {
+			throw new IllegalArgumentException("No restaurant with merchant number '" + merchantNumber
+					+ "' in this snapshot");
+		}
+		int[] changed = benefitHundredths.clone();
+		changed[index] = hundredths(benefitPercentage);
+		return new SimulationSnapshot(this, changed);
+	}
+
+	/**
+	 * Returns the number of accounts in this snapshot.
+	 */
+	public int getAccountCount() {
+		return accounts.length;
+	}
+
+	/**
+	 * Returns the number of restaurants in this snapshot.
+	 */
+	public int getRestaurantCount() {
+		return merchantNumbers.length;
+	}
+
+	int accountIndexOf(String creditCardNumber) {
+		Integer index = accountIndexByCreditCard.get(creditCardNumber);
+		return index == null ? -1 : index;
+	}
+
+	int restaurantIndexOf(String merchantNumber) {
+		Integer index = restaurantIndexByMerchantNumber.get(merchantNumber);
+		return index == null ? -1 : index;
+	}
+
+	Account getAccount(int index) {
+		return accounts[index];
+	}
+
+	boolean isValidAccount(int index) {
+		return validAccounts[index];
+	}
+
+	String getMerchantNumber(int index) {
+		return merchantNumbers[index];
+	}
+
+	int getBenefitHundredths(int index) {
+		return benefitHundredths[index];
+	}
+
+	BenefitAvailabilityPolicy getBenefitAvailabilityPolicy(int index) {
+		return benefitAvailabilityPolicies[index];
+	}
+
+	/**
+	 * Returns the most rewards per account and month of a restaurant with a {@link MaxRewardsPerMonth} policy, which
+	 * the simulation counts itself instead of calling the policy, or zero for a restaurant with any other policy.
+	 */
+	int getMaxRewardsPerMonth(int index) {
+		return maxRewardsPerMonth[index];
+	}
+
+	/**
+	 * Returns a percentage in whole hundredths, so 8 for 8%.
+	 * @throws IllegalArgumentException if the percentage is finer than a hundredth, which a Percentage only is when
+	 * it was not made by one of its constructors
+	 */
+	static int hundredths(Percentage percentage) {
+		BigDecimal hundredths = percentage.asBigDecimal().movePointRight(2);
+		if (hundredths.stripTrailingZeros().scale() > 0) {
+			throw new IllegalArgumentException("Benefit percentage must be a whole number of percent; your value was "
+					+ hundredths.toPlainString() + "%");
+		}
+		return hundredths.intValue();
+	}
+}
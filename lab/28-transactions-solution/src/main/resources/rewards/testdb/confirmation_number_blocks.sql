@@ -0,0 +1 @@
+alter sequence S_REWARD_CONFIRMATION_NUMBER increment by 1000;
@@ -0,0 +1,152 @@
+package rewards;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import io.r2dbc.spi.ConnectionFactory;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import rewards.internal.account.Account;
+import rewards.internal.account.ReactiveAccountRepository;
+
+import common.money.MonetaryAmount;
+
+/**
+ * A system test that verifies the reactive reward network rewards dinings against an R2DBC database, one transaction
+ * per dining.
+ */
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(classes = { ReactiveSystemTestConfig.class })
+public class ReactiveRewardNetworkTests {
+
+	private static final String SAVINGS_SQL = "select SAVINGS from T_ACCOUNT_BENEFICIARY where NAME = :name";
+
+	@Autowired
+	ReactiveRewardNetwork rewardNetwork;
+
+	@Autowired
+	ConnectionFactory connectionFactory;
+
+	@Autowired
+	ReactiveAccountRepository accountRepository;
+
+	@Test
+	public void testRewardForDining() {
+		BigDecimal initialSavings = savingsOf("Annabelle");
+
+		StepVerifier.create(rewardNetwork.rewardAccountFor(
+				Dining.createDining("100.00", "1234123412341234", "1234567890", 11, 1, 2010)))
+				.assertNext(confirmation -> {
+					assertEquals("123456789", confirmation.getAccountContribution().getAccountNumber());
+					assertEquals(MonetaryAmount.valueOf("8.00"), confirmation.getAccountContribution().getAmount());
+				})
+				.verifyComplete();
+
+		assertEquals(initialSavings.add(new BigDecimal("4.00")), savingsOf("Annabelle"));
+	}
+
+	@Test
+	public void testRewardForDinings() {
+		BigDecimal initialSavings = savingsOf("Annabelle");
+		Flux<Dining> dinings = Flux.range(1, 20).map(day -> Dining.createDining("100.00",
+				day % 2 == 0 ? "1234123412341234" : "1234123412340003", "1234567890", 11, day, 2010));
+
+		StepVerifier.create(rewardNetwork.rewardAccountsFor(dinings)).expectNextCount(20).verifyComplete();
+
+		// ten dinings of 100.00 on Annabelle's account, 4.00 each for her: no contribution was lost
+		assertEquals(initialSavings.add(new BigDecimal("40.00")), savingsOf("Annabelle"));
+	}
+
+	@Test
+	public void testFailedDiningsReportedWithoutEndingStream() {
+		BigDecimal initialSavings = savingsOf("Annabelle");
+		Dining rewarded = Dining.createDining("100.00", "1234123412341234", "1234567890", 12, 1, 2010);
+		Dining duplicate = Dining.createDining("100.00", "1234123412341234", "1234567890", 12, 1, 2010);
+		Dining unknownCard = Dining.createDining("100.00", "9999999999999999", "1234567890", 12, 2, 2010);
+		Dining later = Dining.createDining("100.00", "1234123412341234", "1234567890", 12, 3, 2010);
+
+		List<RewardResult> results = rewardNetwork.rewardAccountsFor(Flux.just(rewarded, duplicate, unknownCard, later))
+				.collectList().block();
+
+		assertEquals(4, results.size());
+		Map<Dining, RewardResult> byDining = new IdentityHashMap<Dining, RewardResult>();
+		for (RewardResult result : results) {
+			byDining.put(result.getDining(), result);
+		}
+		assertTrue(byDining.get(rewarded).isConfirmed());
+		assertTrue(byDining.get(duplicate).getFailure() instanceof DuplicateDiningException);
+		assertTrue(byDining.get(unknownCard).getFailure() instanceof EmptyResultDataAccessException);
+		assertTrue(byDining.get(later).isConfirmed());
+		assertEquals(initialSavings.add(new BigDecimal("8.00")), savingsOf("Annabelle"));
+	}
+
+	@Test
+	public void testMaxRewardsPerMonth() {
+		DatabaseClient.create(connectionFactory).sql("insert into T_RESTAURANT (MERCHANT_NUMBER, NAME, "
+				+ "BENEFIT_PERCENTAGE, BENEFIT_AVAILABILITY_POLICY, MAX_REWARDS_PER_MONTH) "
+				+ "values ('1234567891', 'Once A Month', 0.10, 'M', 1)").fetch().rowsUpdated().block();
+		// dinings of today, as the rewards of months before the previous are counted in the database
+		Flux<Dining> dinings = Flux.just(Dining.createDining("100.00", "1234123412341234", "1234567891"),
+				Dining.createDining("50.00", "1234123412341234", "1234567891"));
+
+		List<RewardResult> results = rewardNetwork.rewardAccountsFor(dinings).collectList().block();
+
+		assertEquals(MonetaryAmount.valueOf("10.00"),
+				results.get(0).getConfirmation().getAccountContribution().getAmount());
+		assertEquals(MonetaryAmount.zero(), results.get(1).getConfirmation().getAccountContribution().getAmount());
+	}
+
+	@Test
+	public void testRewardRolledBackOnFailure() {
+		BigDecimal initialSavings = savingsOf("Annabelle");
+
+		StepVerifier.create(rewardNetwork.rewardAccountFor(
+				Dining.createDining("100.00", "1234123412341234", "bogus", 11, 1, 2010)))
+				.verifyError(EmptyResultDataAccessException.class);
+
+		assertEquals(initialSavings, savingsOf("Annabelle"));
+	}
+
+	@Test
+	public void testRewardForDuplicateDining() {
+		Dining dining = Dining.createDining("100.00", "1234123412341234", "1234567890", 11, 30, 2010);
+
+		StepVerifier.create(rewardNetwork.rewardAccountFor(dining)).expectNextCount(1).verifyComplete();
+		StepVerifier.create(rewardNetwork.rewardAccountFor(dining)).verifyError(DuplicateDiningException.class);
+	}
+
+	@Test
+	public void testStaleAccountNotWritten() {
+		BigDecimal initialSavings = savingsOf("Annabelle");
+		Account account = accountRepository.findByCreditCard("1234123412341234").block();
+		// another transaction writes the account after it was loaded
+		DatabaseClient.create(connectionFactory).sql("update T_ACCOUNT set VERSION = VERSION + 1 where NUMBER = :number")
+				.bind("number", account.getNumber()).fetch().rowsUpdated().block();
+		account.makeContribution(MonetaryAmount.valueOf("8.00"));
+
+		StepVerifier.create(accountRepository.updateBeneficiaries(account))
+				.verifyError(OptimisticLockingFailureException.class);
+
+		assertEquals(initialSavings, savingsOf("Annabelle"));
+	}
+
+	private BigDecimal savingsOf(String beneficiary) {
+		return DatabaseClient.create(connectionFactory).sql(SAVINGS_SQL).bind("name", beneficiary)
+				.map((row, metadata) -> row.get(0, BigDecimal.class)).one().block();
+	}
+}
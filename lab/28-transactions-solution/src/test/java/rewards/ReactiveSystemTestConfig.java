@@ -0,0 +1,56 @@
+package rewards;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.connection.init.ResourceDatabasePopulator;
+import org.springframework.transaction.ReactiveTransactionManager;
+
+import config.ReactiveRewardsConfig;
+import io.r2dbc.h2.H2ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactory;
+import rewards.internal.reward.MonthlyRewardCounts;
+
+
+@Configuration
+@Import(ReactiveRewardsConfig.class)
+public class ReactiveSystemTestConfig {
+
+	
+	/**
+	 * Creates an in-memory H2 "rewards" database populated 
+	 * with test data, accessed through R2DBC
+	 */
+	@Bean
+	public ConnectionFactory connectionFactory(){
+		ConnectionFactory connectionFactory = H2ConnectionFactory.inMemory("reactive-rewards");
+		new ResourceDatabasePopulator(
+			new ClassPathResource("rewards/testdb/h2_schema.sql"),
+			new ClassPathResource("rewards/testdb/data.sql"))
+			.populate(connectionFactory)
+			.block();
+		return connectionFactory;
+	}	
+	
+	
+	/**
+	 * Creates the monthly reward counts, seeded through a JDBC connection
+	 * to the same in-memory database
+	 */
+	@Bean
+	public MonthlyRewardCounts monthlyRewardCounts(){
+		// populates the database before it is counted
+		connectionFactory();
+		return new MonthlyRewardCounts(
+			new DriverManagerDataSource("jdbc:h2:mem:reactive-rewards", "sa", ""));
+	}
+
+	@Bean
+	public ReactiveTransactionManager transactionManager(){
+		return new R2dbcTransactionManager(connectionFactory());
+	}
+	
+}
@@ -4,15 +4,21 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.DefaultTransactionDefinition;
 
+import java.util.Arrays;
+import java.util.List;
+
 import javax.sql.DataSource;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * A system test that demonstrates how propagation settings affect transactional execution.
@@ -47,7 +53,7 @@ public class RewardNetworkPropagationTests {
 	public void testPropagation() {
 		// Open a transaction for testing
 		TransactionStatus status = transactionManager.getTransaction(new DefaultTransactionDefinition());
-		Dining dining = Dining.createDining("100.00", "1234123412341234", "1234567890");
+		Dining dining = Dining.createDining("100.00", "1234123412341234", "1234567890", 12, 5, 2010);
 		rewardNetwork.rewardAccountFor(dining);
 
 		// Rollback the transaction test transaction
@@ -57,4 +63,24 @@ public class RewardNetworkPropagationTests {
 		assertEquals(Double.valueOf(4.00), template.queryForObject(sql, Double.class, "Annabelle"));
 		assertEquals(Double.valueOf(4.00), template.queryForObject(sql, Double.class, "Corgan"));
 	}
+
+	@Test
+	@DirtiesContext
+	public void testBatchRollsBackEachFailedDining() {
+		Dining dining = Dining.createDining("100.00", "1234123412341234", "1234567890", 12, 7, 2010);
+		// credits the beneficiaries, then fails to record a reward too large for T_REWARD
+		Dining tooLarge = Dining.createDining("12500000.00", "1234123412341234", "1234567890", 12, 8, 2010);
+		String sql = "select SAVINGS from T_ACCOUNT_BENEFICIARY where NAME = ?";
+		Double savings = template.queryForObject(sql, Double.class, "Annabelle");
+		Integer rewards = template.queryForObject("select count(*) from T_REWARD", Integer.class);
+
+		List<RewardResult> results = rewardNetwork.rewardAccountsFor(Arrays.asList(dining, tooLarge));
+
+		assertTrue(results.get(0).isConfirmed());
+		assertFalse(results.get(1).isConfirmed());
+		// only the confirmed dining is credited and recorded
+		assertEquals(Double.valueOf(savings + 4.00), template.queryForObject(sql, Double.class, "Annabelle"));
+		assertEquals(Integer.valueOf(rewards + 1), template.queryForObject("select count(*) from T_REWARD",
+				Integer.class));
+	}
 }
\ No newline at end of file
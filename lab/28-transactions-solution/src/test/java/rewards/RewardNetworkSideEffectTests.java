@@ -70,7 +70,7 @@ public class RewardNetworkSideEffectTests {
 	}
 
 	private void runTest() {
-		Dining dining = Dining.createDining("100.00", "1234123412341234", "1234567890");
+		Dining dining = Dining.createDining("100.00", "1234123412341234", "1234567890", 12, 4, 2010);
 		rewardNetwork.rewardAccountFor(dining);
 		assertEquals(Double.valueOf(annabelleInitialSavings + 4.00d),
 				jdbcTemplate.queryForObject(SAVINGS_SQL, Double.class, "Annabelle"));
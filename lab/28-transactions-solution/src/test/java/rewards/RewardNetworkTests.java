@@ -14,8 +14,14 @@ import org.springframework.test.context.junit.jupiter.SpringExtension;
 
 import javax.sql.DataSource;
 
+import java.util.Arrays;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * A system test that verifies the components of the RewardNetwork application
@@ -52,7 +58,8 @@ public class RewardNetworkTests {
 	public void testRewardForDining() {
 		// create a new dining of 100.00 charged to credit card
 		// '1234123412341234' by merchant '123457890' as test input
-		Dining dining = Dining.createDining("100.00", "1234123412341234", "1234567890");
+		// (dated so that it is not a duplicate of the dinings other tests reward)
+		Dining dining = Dining.createDining("100.00", "1234123412341234", "1234567890", 12, 1, 2010);
 
 		// call the 'rewardNetwork' to test its rewardAccountFor(Dining) method
 		RewardConfirmation confirmation = rewardNetwork.rewardAccountFor(dining);
@@ -86,4 +93,35 @@ public class RewardNetworkTests {
 		assertEquals(MonetaryAmount.valueOf("4.00"), contribution.getDistribution("Annabelle").getAmount());
 		assertEquals(MonetaryAmount.valueOf("4.00"), contribution.getDistribution("Corgan").getAmount());
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testRewardForDinings() {
+		String savingsSql = "select SAVINGS from T_ACCOUNT_BENEFICIARY where NAME = ?";
+		Double initialSavings = jdbcTemplate.queryForObject(savingsSql, Double.class, "Annabelle");
+		int initialRewards = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM T_REWARD", Integer.class);
+
+		List<RewardResult> results = rewardNetwork.rewardAccountsFor(Arrays.asList(
+				Dining.createDining("100.00", "1234123412341234", "1234567890", 12, 2, 2010),
+				Dining.createDining("100.00", "1234123412341234", "bogus", 12, 2, 2010),
+				Dining.createDining("50.00", "1234123412341234", "1234567890", 12, 2, 2010)));
+
+		assertTrue(results.get(0).isConfirmed());
+		assertFalse(results.get(1).isConfirmed());
+		assertTrue(results.get(2).isConfirmed());
+
+		// one reward row per confirmed dining, and both contributions applied to the account
+		assertEquals(initialRewards + 2, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM T_REWARD", Integer.class));
+		assertEquals(Double.valueOf(initialSavings + 6.00d),
+				jdbcTemplate.queryForObject(savingsSql, Double.class, "Annabelle"));
+	}
+
+	@Test
+	public void testRewardForDuplicateDining() {
+		Dining dining = Dining.createDining("100.00", "1234123412341234", "1234567890", 12, 3, 2010);
+		rewardNetwork.rewardAccountFor(dining);
+		int rewards = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM T_REWARD", Integer.class);
+
+		assertThrows(DuplicateDiningException.class, () -> rewardNetwork.rewardAccountFor(dining));
+		assertEquals(rewards, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM T_REWARD", Integer.class));
+	}
+}
@@ -3,6 +3,7 @@ package rewards;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import rewards.internal.RewardNetworkImplRequiresNew;
 import rewards.internal.account.AccountRepository;
@@ -18,11 +19,14 @@ public class SystemTestRequiresNewConfig {
 	public RewardNetwork rewardNetwork(
 		AccountRepository accountRepository,
 		RestaurantRepository restaurantRepository,
-		RewardRepository rewardRepository ) {
-		return new RewardNetworkImplRequiresNew(
+		RewardRepository rewardRepository,
+		PlatformTransactionManager transactionManager ) {
+		RewardNetworkImplRequiresNew rewardNetwork = new RewardNetworkImplRequiresNew(
 			accountRepository, 
 			restaurantRepository, 
 			rewardRepository);
+		rewardNetwork.setTransactionManager(transactionManager);
+		return rewardNetwork;
 	}
 	
 }
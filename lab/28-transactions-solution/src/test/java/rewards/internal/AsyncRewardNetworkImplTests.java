@@ -0,0 +1,109 @@
+package rewards.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.EmptyResultDataAccessException;
+
+import rewards.Dining;
+import rewards.RewardConfirmation;
+import rewards.RewardNetwork;
+import rewards.RewardResult;
+
+import common.money.MonetaryAmount;
+
+/**
+ * Unit tests for the asynchronous reward network facade, using stub repositories behind a plain reward network.
+ */
+public class AsyncRewardNetworkImplTests {
+
+	private AsyncRewardNetworkImpl asyncRewardNetwork;
+
+	@AfterEach
+	public void tearDown() throws Exception {
+		asyncRewardNetwork.shutdown();
+	}
+
+	@Test
+	public void testSubmitDining() throws Exception {
+		asyncRewardNetwork = new AsyncRewardNetworkImpl(new RewardNetworkImpl(new StubAccountRepository(),
+				new StubRestaurantRepository(), new StubRewardRepository()), 2, 10);
+
+		Dining dining = Dining.createDining("100.00", "1234123412341234", "1234567890");
+		RewardConfirmation confirmation = asyncRewardNetwork.submit(dining).get(5, TimeUnit.SECONDS);
+
+		assertEquals(MonetaryAmount.valueOf("8.00"), confirmation.getAccountContribution().getAmount());
+		assertEquals(1, asyncRewardNetwork.getLatencyStats().getCount());
+	}
+
+	@Test
+	public void testFailedRewardCompletesExceptionally() throws Exception {
+		asyncRewardNetwork = new AsyncRewardNetworkImpl(new RewardNetworkImpl(new StubAccountRepository(),
+				new StubRestaurantRepository(), new StubRewardRepository()), 1, 10);
+
+		CompletableFuture<RewardConfirmation> future = asyncRewardNetwork.submit(Dining.createDining("100.00",
+				"bogus", "1234567890"));
+
+		ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+		assertTrue(e.getCause() instanceof EmptyResultDataAccessException);
+		assertEquals(1, asyncRewardNetwork.getFailedCount());
+	}
+
+	@Test
+	public void testSubmitRejectedWhenSaturated() throws Exception {
+		BlockingRewardNetwork blocking = new BlockingRewardNetwork();
+		asyncRewardNetwork = new AsyncRewardNetworkImpl(blocking, 1, 1);
+		Dining dining = Dining.createDining("100.00", "1234123412341234", "1234567890");
+
+		// the first dining occupies the only worker, the second fills the queue
+		CompletableFuture<RewardConfirmation> first = asyncRewardNetwork.submit(dining);
+		blocking.started.await(5, TimeUnit.SECONDS);
+		CompletableFuture<RewardConfirmation> second = asyncRewardNetwork.submit(dining);
+		assertEquals(1, asyncRewardNetwork.getQueueDepth());
+		assertTrue(asyncRewardNetwork.isSaturated());
+
+		assertThrows(TaskRejectedException.class, () -> asyncRewardNetwork.submit(dining));
+		assertEquals(1, asyncRewardNetwork.getRejectedCount());
+
+		// once the database catches up, accepted dinings complete normally
+		blocking.release.countDown();
+		first.get(5, TimeUnit.SECONDS);
+		second.get(5, TimeUnit.SECONDS);
+		assertEquals(2, asyncRewardNetwork.getLatencyStats().getCount());
+	}
+
+	/**
+	 * A reward network that blocks every reward until released, simulating a slow database.
+	 */
+	private static class BlockingRewardNetwork implements RewardNetwork {
+
+		private CountDownLatch started = new CountDownLatch(1);
+
+		private CountDownLatch release = new CountDownLatch(1);
+
+		public RewardConfirmation rewardAccountFor(Dining dining) {
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return new RewardConfirmation("1", null);
+		}
+
+		public List<RewardResult> rewardAccountsFor(Collection<Dining> dinings) {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package rewards.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import rewards.Dining;
+import rewards.RewardConfirmation;
+import rewards.RewardNetwork;
+import rewards.RewardResult;
+
+/**
+ * Unit tests for the locking reward network, in front of a reward network that records its calls.
+ */
+public class LockingRewardNetworkTests {
+
+	private RecordingRewardNetwork recordingRewardNetwork = new RecordingRewardNetwork();
+
+	private StripedLocks accountLocks = new StripedLocks(4);
+
+	private LockingRewardNetwork rewardNetwork = new LockingRewardNetwork(recordingRewardNetwork, accountLocks);
+
+	private Dining dining = Dining.createDining("100.00", "1234123412341234", "1234567890");
+
+	private ExecutorService executor = Executors.newSingleThreadExecutor();
+
+	@AfterEach
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testLockTakenBeforeCallingNetwork() throws Exception {
+		Future<RewardConfirmation> reward;
+		StripedLocks.Held held = accountLocks.lock("1234123412341234");
+		try {
+			reward = executor.submit(() -> rewardNetwork.rewardAccountFor(dining));
+			Thread.sleep(50);
+			// waiting for the lock, before any transaction of the underlying network has begun
+			assertEquals(0, recordingRewardNetwork.calls);
+		} finally {
+			held.close();
+		}
+		assertSame(recordingRewardNetwork.confirmation, reward.get(5, TimeUnit.SECONDS));
+		assertEquals(1, recordingRewardNetwork.calls);
+		assertEquals(1, accountLocks.getContendedCount());
+	}
+
+	@Test
+	public void testLockReleasedAfterFailure() throws Exception {
+		recordingRewardNetwork.failure = new EmptyResultDataAccessException(1);
+
+		assertThrows(EmptyResultDataAccessException.class, () -> rewardNetwork.rewardAccountFor(dining));
+
+		executor.submit(() -> accountLocks.lock("1234123412341234").close()).get(5, TimeUnit.SECONDS);
+		assertEquals(0, accountLocks.getContendedCount());
+	}
+
+	@Test
+	public void testNoLockWithinCallerTransaction() throws Exception {
+		StripedLocks.Held held = accountLocks.lock("1234123412341234");
+		try {
+			// would otherwise wait for the lock, and hold it until the caller's transaction completes
+			Future<RewardConfirmation> reward = executor.submit(() -> {
+				TransactionSynchronizationManager.setActualTransactionActive(true);
+				try {
+					return rewardNetwork.rewardAccountFor(dining);
+				} finally {
+					TransactionSynchronizationManager.setActualTransactionActive(false);
+				}
+			});
+			assertSame(recordingRewardNetwork.confirmation, reward.get(5, TimeUnit.SECONDS));
+		} finally {
+			held.close();
+		}
+		assertEquals(0, accountLocks.getContendedCount());
+	}
+
+	@Test
+	public void testLockTimesOut() throws Exception {
+		accountLocks.setTimeoutMillis(50);
+		StripedLocks.Held held = accountLocks.lock("1234123412341234");
+		try {
+			Future<RewardConfirmation> reward = executor.submit(() -> rewardNetwork.rewardAccountFor(dining));
+			ExecutionException e = assertThrows(ExecutionException.class, () -> reward.get(5, TimeUnit.SECONDS));
+			assertInstanceOf(CannotAcquireLockException.class, e.getCause());
+		} finally {
+			held.close();
+		}
+		assertEquals(0, recordingRewardNetwork.calls);
+		assertEquals(1, accountLocks.getTimeoutCount());
+	}
+
+	private static class RecordingRewardNetwork implements RewardNetwork {
+
+		private RuntimeException failure;
+
+		private volatile int calls;
+
+		private RewardConfirmation confirmation = new RewardConfirmation("1", null);
+
+		public RewardConfirmation rewardAccountFor(Dining dining) {
+			calls++;
+			if (failure != null) {
+				throw failure;
+			}
+			return confirmation;
+		}
+
+		public List<RewardResult> rewardAccountsFor(Collection<Dining> dinings) {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,196 @@
+package rewards.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+
+import rewards.Dining;
+import rewards.DuplicateDiningException;
+import rewards.RewardConfirmation;
+import rewards.internal.account.JdbcAccountRepository;
+import rewards.internal.restaurant.JdbcRestaurantRepository;
+import rewards.internal.reward.JdbcRewardRepository;
+import rewards.internal.reward.MonthlyRewardCounts;
+
+import common.money.MonetaryAmount;
+
+/**
+ * Tests the pipelined reward network against a test data source: dinings of one account must all be credited even
+ * though they are in flight together, a failing dining must fail on its own, and idle stages must park.
+ */
+public class PipelinedRewardNetworkTests {
+
+	private static final String SAVINGS_SQL = "select SAVINGS from T_ACCOUNT_BENEFICIARY where NAME = ? and ACCOUNT_ID = 0";
+
+	private PipelinedRewardNetwork rewardNetwork;
+
+	private JdbcTemplate jdbcTemplate;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		DataSource dataSource = createTestDataSource();
+		JdbcAccountRepository accountRepository = new JdbcAccountRepository();
+		accountRepository.setDataSource(dataSource);
+		JdbcRestaurantRepository restaurantRepository = new JdbcRestaurantRepository();
+		restaurantRepository.setDataSource(dataSource);
+		JdbcRewardRepository rewardRepository = new JdbcRewardRepository();
+		rewardRepository.setDataSource(dataSource);
+		MonthlyRewardCounts monthlyRewardCounts = new MonthlyRewardCounts(dataSource);
+		restaurantRepository.setMonthlyRewardCounts(monthlyRewardCounts);
+		rewardRepository.setMonthlyRewardCounts(monthlyRewardCounts);
+		rewardNetwork = new PipelinedRewardNetwork(accountRepository, restaurantRepository, rewardRepository,
+				new DataSourceTransactionManager(dataSource), 256);
+		rewardNetwork.setMaxBatchSize(16);
+		jdbcTemplate = new JdbcTemplate(dataSource);
+	}
+
+	@AfterEach
+	public void tearDown() throws Exception {
+		rewardNetwork.shutdown();
+	}
+
+	@Test
+	public void testDiningsOfOneAccountAllCredited() throws Exception {
+		List<CompletableFuture<RewardConfirmation>> futures = new ArrayList<CompletableFuture<RewardConfirmation>>();
+		for (int day = 1; day <= 28; day++) {
+			futures.add(rewardNetwork.submit(Dining.createDining("100.00", "1234123412341234", "1234567890", 2, day,
+					2011)));
+			futures.add(rewardNetwork.submit(Dining.createDining("100.00", "1234123412341234", "1234567890", 3, day,
+					2011)));
+		}
+		CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+
+		// 56 dinings of 100.00, 4.00 each for Annabelle: no credit overwritten by a stale copy of the account
+		assertEquals(MonetaryAmount.valueOf("224.00"), savingsOf("Annabelle"));
+		assertEquals(MonetaryAmount.valueOf("224.00"), savingsOf("Corgan"));
+		assertEquals(56, jdbcTemplate.queryForObject("select count(*) from T_REWARD", Integer.class));
+	}
+
+	@Test
+	public void testMaxRewardsPerMonthHeldAcrossDiningsInFlight() throws Exception {
+		jdbcTemplate.update("update T_RESTAURANT set BENEFIT_AVAILABILITY_POLICY = 'M', MAX_REWARDS_PER_MONTH = 2 "
+				+ "where MERCHANT_NUMBER = '1234567890'");
+		List<CompletableFuture<RewardConfirmation>> futures = new ArrayList<CompletableFuture<RewardConfirmation>>();
+		// dinings of today, as the rewards of months before the previous are counted in the database
+		for (int i = 0; i < 20; i++) {
+			futures.add(rewardNetwork.submit(Dining.createDining(100 + i + ".00", "1234123412341234", "1234567890")));
+		}
+		CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+
+		// only 2 of the 20 dinings of the month earn 4% for Annabelle, whichever 2 they are
+		assertEquals(2, jdbcTemplate.queryForObject("select count(*) from T_REWARD where REWARD_AMOUNT > 0",
+				Integer.class));
+		assertEquals(20, jdbcTemplate.queryForObject("select count(*) from T_REWARD", Integer.class));
+	}
+
+	@Test
+	public void testFailedDiningDoesNotFailOthers() throws Exception {
+		CompletableFuture<RewardConfirmation> bogus = rewardNetwork.submit(
+				Dining.createDining("100.00", "1234123412341234", "bogus", 2, 1, 2011));
+		CompletableFuture<RewardConfirmation> rewarded = rewardNetwork.submit(
+				Dining.createDining("100.00", "1234123412341234", "1234567890", 2, 1, 2011));
+
+		ExecutionException e = assertThrows(ExecutionException.class, () -> bogus.get(30, TimeUnit.SECONDS));
+		assertInstanceOf(EmptyResultDataAccessException.class, e.getCause());
+		assertEquals(MonetaryAmount.valueOf("8.00"), rewarded.get(30, TimeUnit.SECONDS).getAccountContribution()
+				.getAmount());
+		assertEquals(MonetaryAmount.valueOf("4.00"), savingsOf("Annabelle"));
+	}
+
+	@Test
+	public void testDuplicateDiningInFlightRejected() throws Exception {
+		Dining dining = Dining.createDining("100.00", "1234123412341234", "1234567890", 2, 1, 2011);
+		CompletableFuture<RewardConfirmation> first = rewardNetwork.submit(dining);
+		CompletableFuture<RewardConfirmation> second = rewardNetwork.submit(dining);
+
+		first.get(30, TimeUnit.SECONDS);
+		ExecutionException e = assertThrows(ExecutionException.class, () -> second.get(30, TimeUnit.SECONDS));
+		assertInstanceOf(DuplicateDiningException.class, e.getCause());
+		assertEquals(MonetaryAmount.valueOf("4.00"), savingsOf("Annabelle"));
+	}
+
+	@Test
+	public void testStageMetrics() throws Exception {
+		List<CompletableFuture<RewardConfirmation>> futures = new ArrayList<CompletableFuture<RewardConfirmation>>();
+		for (int day = 1; day <= 10; day++) {
+			futures.add(rewardNetwork.submit(Dining.createDining("100.00", "1234123412340003", "1234567890", 2, day,
+					2011)));
+		}
+		CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+
+		List<PipelinedRewardNetwork.Stage> stages = rewardNetwork.getStages();
+		assertEquals("lookup", stages.get(0).getName());
+		assertEquals("calculate", stages.get(1).getName());
+		assertEquals("persist", stages.get(2).getName());
+		for (PipelinedRewardNetwork.Stage stage : stages) {
+			assertEquals(10, stage.getProcessedCount(), stage.getName());
+			assertEquals(0, stage.getOccupancy(), stage.getName());
+		}
+		assertEquals(10, stages.get(0).getLatencyStats().getCount());
+		assertEquals(10, stages.get(1).getLatencyStats().getCount());
+		// one sample per batch persisted
+		long batches = stages.get(2).getLatencyStats().getCount();
+		assertTrue(batches >= 1 && batches <= 10, "batches = " + batches);
+		assertEquals(10, rewardNetwork.getLatencyStats().getCount());
+	}
+
+	@Test
+	public void testIdleStagesParkUntilHandedDining() throws Exception {
+		awaitStagesParked();
+
+		CompletableFuture<RewardConfirmation> rewarded = rewardNetwork.submit(
+				Dining.createDining("100.00", "1234123412341234", "1234567890", 2, 1, 2011));
+
+		assertEquals(MonetaryAmount.valueOf("8.00"), rewarded.get(30, TimeUnit.SECONDS).getAccountContribution()
+				.getAmount());
+		awaitStagesParked();
+	}
+
+	/**
+	 * Waits for the thread of every stage to park without a timeout.
+	 */
+	private void awaitStagesParked() throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		List<Thread.State> states;
+		do {
+			Thread.sleep(10);
+			states = new ArrayList<Thread.State>();
+			for (Thread thread : Thread.getAllStackTraces().keySet()) {
+				if (thread.getName().startsWith("reward-pipeline-")) {
+					states.add(thread.getState());
+				}
+			}
+		} while (!states.equals(Collections.nCopies(3, Thread.State.WAITING)) && System.nanoTime() < deadline);
+		assertEquals(Collections.nCopies(3, Thread.State.WAITING), states);
+	}
+
+	private MonetaryAmount savingsOf(String beneficiary) {
+		return MonetaryAmount.valueOf(jdbcTemplate.queryForObject(SAVINGS_SQL, String.class, beneficiary));
+	}
+
+	private DataSource createTestDataSource() {
+		return new EmbeddedDatabaseBuilder()
+			.setName("rewards")
+			.addScript("/rewards/testdb/schema.sql")
+			.addScript("/rewards/testdb/data.sql")
+			.build();
+	}
+}
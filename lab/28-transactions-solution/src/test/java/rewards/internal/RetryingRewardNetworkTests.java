@@ -0,0 +1,90 @@
+package rewards.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import rewards.Dining;
+import rewards.RewardConfirmation;
+import rewards.RewardNetwork;
+import rewards.RewardResult;
+
+/**
+ * Unit tests for the retrying reward network, in front of a reward network that fails a given number of times.
+ */
+public class RetryingRewardNetworkTests {
+
+	private FailingRewardNetwork failingRewardNetwork;
+
+	private RetryingRewardNetwork rewardNetwork;
+
+	private Dining dining = Dining.createDining("100.00", "1234123412341234", "1234567890");
+
+	@BeforeEach
+	public void setUp() {
+		failingRewardNetwork = new FailingRewardNetwork();
+		rewardNetwork = new RetryingRewardNetwork(failingRewardNetwork);
+		rewardNetwork.setBackoff(1, 2);
+	}
+
+	@Test
+	public void testConflictRetried() {
+		failingRewardNetwork.failures = 2;
+
+		assertSame(failingRewardNetwork.confirmation, rewardNetwork.rewardAccountFor(dining));
+		assertEquals(3, failingRewardNetwork.attempts);
+		assertEquals(1, rewardNetwork.getCallCount());
+		assertEquals(2, rewardNetwork.getConflictCount());
+		assertEquals(2.0, rewardNetwork.getConflictRate());
+		assertEquals(0, rewardNetwork.getExhaustedCount());
+	}
+
+	@Test
+	public void testAttemptsBounded() {
+		failingRewardNetwork.failures = 5;
+
+		assertThrows(OptimisticLockingFailureException.class, () -> rewardNetwork.rewardAccountFor(dining));
+		assertEquals(RetryingRewardNetwork.DEFAULT_MAX_ATTEMPTS, failingRewardNetwork.attempts);
+		assertEquals(1, rewardNetwork.getExhaustedCount());
+	}
+
+	@Test
+	public void testOtherFailuresNotRetried() {
+		failingRewardNetwork.failure = new EmptyResultDataAccessException(1);
+		failingRewardNetwork.failures = 1;
+
+		assertThrows(EmptyResultDataAccessException.class, () -> rewardNetwork.rewardAccountFor(dining));
+		assertEquals(1, failingRewardNetwork.attempts);
+		assertEquals(0, rewardNetwork.getConflictCount());
+	}
+
+	private static class FailingRewardNetwork implements RewardNetwork {
+
+		private RuntimeException failure = new OptimisticLockingFailureException("Conflict");
+
+		private int failures;
+
+		private int attempts;
+
+		private RewardConfirmation confirmation = new RewardConfirmation("1", null);
+
+		public RewardConfirmation rewardAccountFor(Dining dining) {
+			if (attempts++ < failures) {
+				throw failure;
+			}
+			return confirmation;
+		}
+
+		public List<RewardResult> rewardAccountsFor(Collection<Dining> dinings) {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
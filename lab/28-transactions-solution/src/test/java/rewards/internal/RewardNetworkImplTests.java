@@ -1,14 +1,26 @@
 package rewards.internal;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.dao.EmptyResultDataAccessException;
 
 import rewards.AccountContribution;
 import rewards.Dining;
+import rewards.DuplicateDiningException;
 import rewards.RewardConfirmation;
+import rewards.RewardResult;
 import rewards.internal.account.AccountRepository;
 import rewards.internal.restaurant.RestaurantRepository;
 import rewards.internal.reward.RewardRepository;
@@ -69,4 +81,71 @@ public class RewardNetworkImplTests {
 		assertEquals(MonetaryAmount.valueOf("4.00"), contribution.getDistribution("Annabelle").getAmount());
 		assertEquals(MonetaryAmount.valueOf("4.00"), contribution.getDistribution("Corgan").getAmount());
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testRewardForDinings() {
+		rewardNetwork.setChunkSize(2);
+		Dining first = Dining.createDining("100.00", "1234123412341234", "1234567890");
+		Dining unknownCard = Dining.createDining("100.00", "bogus", "1234567890");
+		Dining second = Dining.createDining("50.00", "1234123412341234", "1234567890");
+
+		List<RewardResult> results = rewardNetwork.rewardAccountsFor(Arrays.asList(first, unknownCard, second));
+
+		// one result per dining, in the order the dinings were given
+		assertEquals(3, results.size());
+		assertEquals(first, results.get(0).getDining());
+		assertEquals(unknownCard, results.get(1).getDining());
+		assertEquals(second, results.get(2).getDining());
+
+		// the unknown card fails without preventing the other dinings from being rewarded
+		assertTrue(results.get(0).isConfirmed());
+		assertFalse(results.get(1).isConfirmed());
+		assertTrue(results.get(1).getFailure() instanceof EmptyResultDataAccessException);
+		assertTrue(results.get(2).isConfirmed());
+
+		// contributions to the same account accumulate across chunks
+		AccountContribution contribution = results.get(2).getConfirmation().getAccountContribution();
+		assertEquals(MonetaryAmount.valueOf("4.00"), contribution.getAmount());
+		assertEquals(MonetaryAmount.valueOf("6.00"), contribution.getDistribution("Annabelle").getTotalSavings());
+		assertEquals(MonetaryAmount.valueOf("6.00"), contribution.getDistribution("Corgan").getTotalSavings());
+	}
+
+	@Test
+	public void testRewardForDuplicateDining() {
+		Dining dining = Dining.createDining("100.00", "1234123412341234", "1234567890");
+		rewardNetwork.rewardAccountFor(dining);
+
+		// the same dining resent is rejected
+		DuplicateDiningException e = assertThrows(DuplicateDiningException.class,
+				() -> rewardNetwork.rewardAccountFor(Dining.createDining("100.00", "1234123412341234", "1234567890")));
+		assertEquals(dining, e.getDining());
+
+		// already rewarded, and repeated within the batch: only the new dining is rewarded
+		Dining other = Dining.createDining("50.00", "1234123412341234", "1234567890");
+		List<RewardResult> results = rewardNetwork.rewardAccountsFor(Arrays.asList(dining, other, other));
+		assertTrue(results.get(0).getFailure() instanceof DuplicateDiningException);
+		assertTrue(results.get(1).isConfirmed());
+		assertTrue(results.get(2).getFailure() instanceof DuplicateDiningException);
+		assertEquals(MonetaryAmount.valueOf("6.00"), results.get(1).getConfirmation().getAccountContribution()
+				.getDistribution("Annabelle").getTotalSavings());
+	}
+
+	@Test
+	public void testAccountLocksReleasedAfterBatchReward() throws Exception {
+		StripedLocks accountLocks = new StripedLocks(4);
+		rewardNetwork.setAccountLocks(accountLocks);
+		rewardNetwork.setChunkSize(2);
+		rewardNetwork.rewardAccountsFor(Arrays.asList(Dining.createDining("50.00", "1234123412341234", "1234567890"),
+				Dining.createDining("50.00", "bogus", "1234567890")));
+
+		// without a transaction, the locks are released on return, even of a failed dining
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			executor.submit(() -> accountLocks.lockAll(Arrays.asList("1234123412341234", "bogus")).close())
+				.get(5, TimeUnit.SECONDS);
+		} finally {
+			executor.shutdownNow();
+		}
+		assertEquals(0, accountLocks.getContendedCount());
+	}
+}
@@ -0,0 +1,141 @@
+package rewards.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import rewards.Dining;
+import rewards.RewardConfirmation;
+import rewards.RewardNetwork;
+import rewards.RewardResult;
+
+import common.money.MonetaryAmount;
+
+/**
+ * Unit tests for the sharded reward network, verifying the single-writer and ordering guarantees per credit card, and
+ * that every dining's future is completed.
+ */
+public class ShardedRewardNetworkTests {
+
+	private static final int CARDS = 16;
+
+	private static final int DININGS_PER_CARD = 200;
+
+	private RecordingRewardNetwork recorder;
+
+	private ShardedRewardNetwork rewardNetwork;
+
+	@BeforeEach
+	public void setUp() {
+		recorder = new RecordingRewardNetwork();
+		rewardNetwork = new ShardedRewardNetwork(recorder, 4, CARDS * DININGS_PER_CARD,
+				Dining::getCreditCardNumber);
+	}
+
+	@AfterEach
+	public void tearDown() throws Exception {
+		rewardNetwork.shutdown();
+	}
+
+	@Test
+	public void testSameCardAlwaysUsesSameLane() {
+		Dining first = Dining.createDining("10.00", "1234123412340001", "1234567890");
+		Dining second = Dining.createDining("20.00", "1234123412340001", "0123456789");
+		assertSame(rewardNetwork.laneFor(first), rewardNetwork.laneFor(second));
+	}
+
+	@Test
+	public void testDiningsPerCardRewardedOneAtATimeInSubmissionOrder() throws Exception {
+		List<CompletableFuture<RewardConfirmation>> futures = new ArrayList<CompletableFuture<RewardConfirmation>>();
+		for (int i = 1; i <= DININGS_PER_CARD; i++) {
+			for (int card = 0; card < CARDS; card++) {
+				futures.add(rewardNetwork.submit(Dining.createDining(String.valueOf(i), cardNumber(card),
+						"1234567890")));
+			}
+		}
+		CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+
+		assertFalse(recorder.concurrentAccess.get(), "a card was rewarded on two threads at once");
+		for (int card = 0; card < CARDS; card++) {
+			List<MonetaryAmount> amounts = recorder.amountsByCard.get(cardNumber(card));
+			assertEquals(DININGS_PER_CARD, amounts.size());
+			for (int i = 0; i < DININGS_PER_CARD; i++) {
+				assertEquals(new MonetaryAmount(i + 1), amounts.get(i), "dinings rewarded out of order");
+			}
+		}
+
+		long processed = 0;
+		for (ShardedRewardNetwork.Lane lane : rewardNetwork.getLanes()) {
+			processed += lane.getProcessedCount();
+		}
+		assertEquals(CARDS * DININGS_PER_CARD, processed);
+	}
+
+	@Test
+	public void testErrorCompletesFutureExceptionally() throws Exception {
+		recorder.error = new AssertionError("reward failed");
+		Dining dining = Dining.createDining("10.00", "1234123412340001", "1234567890");
+
+		CompletableFuture<RewardConfirmation> failed = rewardNetwork.submit(dining);
+
+		ExecutionException e = assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+		assertSame(recorder.error, e.getCause());
+		assertEquals(1, rewardNetwork.laneFor(dining).getFailedCount());
+
+		// the lane carries on with a new worker
+		recorder.error = null;
+		rewardNetwork.submit(dining).get(5, TimeUnit.SECONDS);
+	}
+
+	private String cardNumber(int card) {
+		return String.format("12341234123400%02d", card);
+	}
+
+	/**
+	 * Records the order dinings are rewarded in per card, and whether any card was ever rewarded concurrently.
+	 */
+	private static class RecordingRewardNetwork implements RewardNetwork {
+
+		private Map<String, List<MonetaryAmount>> amountsByCard = new ConcurrentHashMap<String, List<MonetaryAmount>>();
+
+		private Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<String, AtomicInteger>();
+
+		private AtomicBoolean concurrentAccess = new AtomicBoolean();
+
+		private volatile Error error;
+
+		public RewardConfirmation rewardAccountFor(Dining dining) {
+			if (error != null) {
+				throw error;
+			}
+			AtomicInteger count = inFlight.computeIfAbsent(dining.getCreditCardNumber(), k -> new AtomicInteger());
+			if (count.incrementAndGet() > 1) {
+				concurrentAccess.set(true);
+			}
+			amountsByCard.computeIfAbsent(dining.getCreditCardNumber(), k -> new ArrayList<MonetaryAmount>())
+					.add(dining.getAmount());
+			count.decrementAndGet();
+			return new RewardConfirmation("1", null);
+		}
+
+		public List<RewardResult> rewardAccountsFor(Collection<Dining> dinings) {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
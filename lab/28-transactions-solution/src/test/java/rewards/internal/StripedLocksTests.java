@@ -0,0 +1,112 @@
+package rewards.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+
+/**
+ * Unit tests for striped locks: keys must be serialized across threads, and threads locking overlapping sets of keys in
+ * different orders must not deadlock.
+ */
+public class StripedLocksTests {
+
+	private StripedLocks locks = new StripedLocks(16);
+
+	@Test
+	public void testSameKeyContended() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			CountDownLatch waiting = new CountDownLatch(1);
+			Future<?> other;
+			StripedLocks.Held held = locks.lock("1234123412341234");
+			try {
+				other = executor.submit(() -> {
+					waiting.countDown();
+					locks.lock("1234123412341234").close();
+				});
+				waiting.await();
+				Thread.sleep(50);
+				assertFalse(other.isDone());
+			} finally {
+				held.close();
+			}
+			other.get(5, TimeUnit.SECONDS);
+			assertEquals(2, locks.getAcquisitionCount());
+			assertEquals(1, locks.getContendedCount());
+			assertEquals(1, locks.getWaitStats().getCount());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testOverlappingKeysInOppositeOrdersDoNotDeadlock() throws Exception {
+		List<String> keys = Arrays.asList("1234123412341234", "1234123412340003", "1234123412340008");
+		List<String> reversed = Arrays.asList("1234123412340008", "1234123412340003", "1234123412341234");
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<?> first = executor.submit(() -> lockRepeatedly(keys));
+			Future<?> second = executor.submit(() -> lockRepeatedly(reversed));
+			first.get(10, TimeUnit.SECONDS);
+			second.get(10, TimeUnit.SECONDS);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testTimeoutReleasesStripesTaken() throws Exception {
+		List<String> keys = new ArrayList<String>();
+		for (int i = 0; i < 16; i++) {
+			keys.add("123412341234" + (1000 + i));
+		}
+		locks.setTimeoutMillis(50);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			// another thread holds a stripe from the middle of the set
+			StripedLocks.Held held = executor.submit(() -> locks.lock(keys.get(8))).get(5, TimeUnit.SECONDS);
+			assertThrows(CannotAcquireLockException.class, () -> locks.lockAll(keys));
+			assertEquals(1, locks.getTimeoutCount());
+			executor.submit(held::close).get(5, TimeUnit.SECONDS);
+			// none of the stripes taken before giving up are still held
+			executor.submit(() -> locks.lockAll(keys).close()).get(5, TimeUnit.SECONDS);
+			assertEquals(1, locks.getContendedCount());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testCloseReleasesOnce() {
+		StripedLocks.Held held = locks.lockAll(Arrays.asList("1234123412341234", "1234123412341234"));
+		assertEquals(1, locks.getAcquisitionCount());
+		held.close();
+		held.close();
+		assertTrue(locks.toString().startsWith("Stripes = 16"));
+	}
+
+	@Test
+	public void testStripeCountMustBePositive() {
+		assertThrows(IllegalArgumentException.class, () -> new StripedLocks(0));
+		assertThrows(IllegalArgumentException.class, () -> locks.setTimeoutMillis(0));
+	}
+
+	private void lockRepeatedly(List<String> keys) {
+		for (int i = 0; i < 10000; i++) {
+			locks.lockAll(keys).close();
+		}
+	}
+}
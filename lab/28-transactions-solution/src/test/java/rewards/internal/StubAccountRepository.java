@@ -1,5 +1,6 @@
 package rewards.internal;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -37,7 +38,22 @@ public class StubAccountRepository implements AccountRepository {
 		return account;
 	}
 
+	public Map<String, Account> findByCreditCards(Collection<String> creditCardNumbers) {
+		Map<String, Account> accounts = new HashMap<String, Account>();
+		for (String creditCardNumber : creditCardNumbers) {
+			Account account = accountsByCreditCard.get(creditCardNumber);
+			if (account != null) {
+				accounts.put(creditCardNumber, account);
+			}
+		}
+		return accounts;
+	}
+
 	public void updateBeneficiaries(Account account) {
 		// nothing to do, everything is in memory
 	}
+
+	public void updateBeneficiaries(Collection<Account> accounts) {
+		// nothing to do, everything is in memory
+	}
 }
\ No newline at end of file
@@ -1,21 +1,59 @@
 package rewards.internal;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Random;
+import java.util.Set;
+
+import org.springframework.dao.EmptyResultDataAccessException;
 
 import rewards.AccountContribution;
 import rewards.Dining;
 import rewards.RewardConfirmation;
+import rewards.internal.reward.RewardPage;
+import rewards.internal.reward.RewardRecord;
 import rewards.internal.reward.RewardRepository;
 
+import common.datetime.DateInterval;
+
 /**
  * A dummy reward repository implementation.
  */
 public class StubRewardRepository implements RewardRepository {
 
+	private Set<Dining> rewardedDinings = new HashSet<Dining>();
+
 	public RewardConfirmation confirmReward(AccountContribution contribution, Dining dining) {
+		rewardedDinings.add(dining);
 		return new RewardConfirmation(confirmationNumber(), contribution);
 	}
 
+	public List<RewardConfirmation> confirmRewards(List<AccountContribution> contributions, List<Dining> dinings) {
+		List<RewardConfirmation> confirmations = new ArrayList<RewardConfirmation>(contributions.size());
+		for (int i = 0; i < contributions.size(); i++) {
+			confirmations.add(confirmReward(contributions.get(i), dinings.get(i)));
+		}
+		return confirmations;
+	}
+
+	public boolean isRewarded(Dining dining) {
+		return rewardedDinings.contains(dining);
+	}
+
+	public RewardPage findByAccount(String accountNumber, DateInterval diningDates, String cursor, int limit) {
+		return new RewardPage(Collections.<RewardRecord> emptyList(), null);
+	}
+
+	public RewardPage findByMerchant(String merchantNumber, DateInterval diningDates, String cursor, int limit) {
+		return new RewardPage(Collections.<RewardRecord> emptyList(), null);
+	}
+
+	public RewardRecord findByConfirmationNumber(String confirmationNumber) {
+		throw new EmptyResultDataAccessException(1);
+	}
+
 	private String confirmationNumber() {
 		return new Random().toString();
 	}
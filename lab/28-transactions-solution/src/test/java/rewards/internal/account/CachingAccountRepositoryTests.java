@@ -0,0 +1,127 @@
+package rewards.internal.account;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import common.money.MonetaryAmount;
+
+/**
+ * Tests the caching account repository against a test data source: cached accounts must be handed out as copies, be
+ * written through on save and be detected stale when saved elsewhere.
+ */
+public class CachingAccountRepositoryTests {
+
+	private CachingAccountRepository repository;
+
+	private JdbcAccountRepository accountRepository;
+
+	private DataSource dataSource;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		dataSource = createTestDataSource();
+		accountRepository = new JdbcAccountRepository();
+		accountRepository.setDataSource(dataSource);
+		repository = new CachingAccountRepository(accountRepository, dataSource, 2);
+	}
+
+	@Test
+	public void testCachedAccountsAreCopies() {
+		Account first = repository.findByCreditCard("1234123412341234");
+		first.makeContribution(MonetaryAmount.valueOf("8.00"));
+		Account second = repository.findByCreditCard("1234123412341234");
+
+		assertNotSame(first, second);
+		assertEquals(MonetaryAmount.valueOf("0.00"), second.getBeneficiary("Annabelle").getSavings());
+		assertEquals(1, repository.getMissCount());
+		assertEquals(1, repository.getHitCount());
+	}
+
+	@Test
+	public void testSavedAccountsWrittenThroughAfterCommit() {
+		TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+		transactionTemplate.executeWithoutResult(status -> {
+			Account account = repository.findByCreditCard("1234123412341234");
+			account.makeContribution(MonetaryAmount.valueOf("8.00"));
+			repository.updateBeneficiaries(account);
+		});
+
+		Account account = repository.findByCreditCard("1234123412341234");
+		assertEquals(MonetaryAmount.valueOf("4.00"), account.getBeneficiary("Annabelle").getSavings());
+		assertEquals(1, account.getVersion());
+		assertEquals(1, repository.getHitCount());
+		assertEquals(0, repository.getStaleCount());
+	}
+
+	@Test
+	public void testAccountSavedElsewhereDetectedStale() {
+		repository.findByCreditCard("1234123412341234");
+		Account account = accountRepository.findByCreditCard("1234123412341234");
+		account.makeContribution(MonetaryAmount.valueOf("8.00"));
+		accountRepository.updateBeneficiaries(account);
+
+		account = repository.findByCreditCard("1234123412341234");
+		assertEquals(MonetaryAmount.valueOf("4.00"), account.getBeneficiary("Annabelle").getSavings());
+		assertEquals(1, repository.getStaleCount());
+		assertEquals(2, repository.getMissCount());
+
+		Map<String, Account> accounts = repository.findByCreditCards(Arrays.asList("1234123412341234",
+				"1234123412340003"));
+		assertEquals(MonetaryAmount.valueOf("4.00"), accounts.get("1234123412341234").getBeneficiary("Annabelle")
+				.getSavings());
+		assertEquals(1, repository.getHitCount());
+	}
+
+	@Test
+	public void testCardsOfOneAccountShareOneCopy() {
+		new JdbcTemplate(dataSource).update(
+				"insert into T_ACCOUNT_CREDIT_CARD (ACCOUNT_ID, NUMBER) values (0, '4321432143214321')");
+		repository.findByCreditCard("1234123412341234");
+
+		Map<String, Account> accounts = repository.findByCreditCards(Arrays.asList("1234123412341234",
+				"4321432143214321"));
+		assertSame(accounts.get("1234123412341234"), accounts.get("4321432143214321"));
+	}
+
+	@Test
+	public void testRarelyUsedCardsDoNotEvictBusyOnes() {
+		for (int i = 0; i < 3; i++) {
+			repository.findByCreditCard("1234123412341234");
+			repository.findByCreditCard("1234123412340003");
+		}
+		// looked up once, less often than either cached card
+		repository.findByCreditCard("1234123412340008");
+		assertEquals(2, repository.size());
+		assertEquals(0, repository.getEvictionCount());
+
+		for (int i = 0; i < 4; i++) {
+			repository.findByCreditCard("1234123412340008");
+		}
+		assertEquals(2, repository.size());
+		assertEquals(1, repository.getEvictionCount());
+		long hits = repository.getHitCount();
+		repository.findByCreditCard("1234123412340008");
+		assertEquals(hits + 1, repository.getHitCount());
+	}
+
+	private DataSource createTestDataSource() {
+		return new EmbeddedDatabaseBuilder()
+			.setName("rewards")
+			.addScript("/rewards/testdb/schema.sql")
+			.addScript("/rewards/testdb/data.sql")
+			.build();
+	}
+}
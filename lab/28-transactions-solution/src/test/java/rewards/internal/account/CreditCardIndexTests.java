@@ -0,0 +1,52 @@
+package rewards.internal.account;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the credit card index, verifying card numbers are keyed as longs and lookups are counted.
+ */
+public class CreditCardIndexTests {
+
+	@Test
+	public void testFindAccountId() {
+		CreditCardIndex index = new CreditCardIndex(100);
+		index.put("1234123412341234", 0L);
+		index.put("1234123412340003", 3L);
+
+		assertEquals(0L, index.findAccountId("1234123412341234"));
+		assertEquals(3L, index.findAccountId("1234123412340003"));
+		assertEquals(CreditCardIndex.NOT_INDEXED, index.findAccountId("1234123412340001"));
+		assertEquals(2, index.getHitCount());
+		assertEquals(1, index.getMissCount());
+		assertEquals(2.0 / 3, index.getHitRate(), 1e-9);
+
+		index.remove("1234123412340003");
+		assertEquals(CreditCardIndex.NOT_INDEXED, index.findAccountId("1234123412340003"));
+		assertEquals(1, index.size());
+	}
+
+	@Test
+	public void testOnlySixteenDigitNumbersIndexed() {
+		CreditCardIndex index = new CreditCardIndex(100);
+		index.put("bogus", 1L);
+		index.put("123412341234123", 1L);
+
+		assertEquals(0, index.size());
+		assertEquals(CreditCardIndex.NOT_INDEXED, index.findAccountId("bogus"));
+		assertEquals(1234123412341234L, CreditCardIndex.keyOf("1234123412341234"));
+		assertEquals(CreditCardIndex.NOT_INDEXED, CreditCardIndex.keyOf("123412341234123x"));
+	}
+
+	@Test
+	public void testMemoryFootprint() {
+		CreditCardIndex index = new CreditCardIndex(100000);
+		for (int i = 0; i < 100000; i++) {
+			index.put(String.format("1234%012d", i), i);
+		}
+		// 262144 slots of two longs, about 42 bytes per card
+		assertEquals(100000, index.size());
+		assertEquals(4L * 1024 * 1024 + 48, index.getMemoryFootprint());
+	}
+}
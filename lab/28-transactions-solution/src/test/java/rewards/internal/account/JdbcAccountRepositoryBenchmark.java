@@ -0,0 +1,65 @@
+package rewards.internal.account;
+
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+
+import common.money.MonetaryAmount;
+
+/**
+ * Compares the database round trips made to save beneficiaries after a reward: one update per beneficiary, as the
+ * JDBC account repository used to do, against one batch of the beneficiaries actually credited. Every fourth reward
+ * has no benefit, as when a restaurant's benefit is not available.
+ *
+ * Not a test: run its main method by hand.
+ */
+public class JdbcAccountRepositoryBenchmark {
+
+	private static final int REWARDS = 20000;
+
+	private static final String UPDATE_SQL = "update T_ACCOUNT_BENEFICIARY SET SAVINGS = ? where ACCOUNT_ID = ? and NAME = ?";
+
+	public static void main(String[] args) {
+		EmbeddedDatabase database = new EmbeddedDatabaseBuilder()
+			.setName("benchmark")
+			.addScript("/rewards/testdb/schema.sql")
+			.addScript("/rewards/testdb/data.sql")
+			.build();
+		try {
+			RoundTripCountingDataSource dataSource = new RoundTripCountingDataSource(database);
+			run("per beneficiary", dataSource, true);
+			run("dirty-only batch", dataSource, false);
+		} finally {
+			database.shutdown();
+		}
+	}
+
+	private static void run(String name, RoundTripCountingDataSource dataSource, boolean perBeneficiary) {
+		JdbcAccountRepository repository = new JdbcAccountRepository();
+		repository.setDataSource(dataSource);
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+		// account 3 has four beneficiaries
+		Account account = repository.findByCreditCard("1234123412340003");
+		dataSource.reset();
+		long started = System.nanoTime();
+		for (int i = 0; i < REWARDS; i++) {
+			account.makeContribution(i % 4 == 3 ? MonetaryAmount.zero() : MonetaryAmount.valueOf("8.00"));
+			if (perBeneficiary) {
+				updateEachBeneficiary(jdbcTemplate, account);
+			} else {
+				repository.updateBeneficiaries(account);
+			}
+		}
+		long elapsed = System.nanoTime() - started;
+		System.out.printf("%-16s %.2f round trips per reward, %d us per reward%n", name,
+				(double) dataSource.getRoundTrips() / REWARDS, TimeUnit.NANOSECONDS.toMicros(elapsed / REWARDS));
+	}
+
+	private static void updateEachBeneficiary(JdbcTemplate jdbcTemplate, Account account) {
+		for (Beneficiary b : account.getBeneficiaries()) {
+			jdbcTemplate.update(UPDATE_SQL, b.getSavings().asBigDecimal(), account.getEntityId(), b.getName());
+		}
+	}
+}
@@ -5,12 +5,23 @@ import common.money.Percentage;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.sql.DataSource;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -24,11 +35,14 @@ public class JdbcAccountRepositoryTests {
 
 	private DataSource dataSource;
 
+	private RoundTripCountingDataSource countingDataSource;
+
 	@BeforeEach
 	public void setUp() throws Exception {
 		dataSource = createTestDataSource();
+		countingDataSource = new RoundTripCountingDataSource(dataSource);
 		repository = new JdbcAccountRepository();
-		repository.setDataSource(dataSource);
+		repository.setDataSource(countingDataSource);
 	}
 
 	@Test
@@ -59,6 +73,41 @@ public class JdbcAccountRepositoryTests {
 		});
 	}
 
+	@Test
+	public void testFindAccountsByCreditCards() {
+		List<String> creditCardNumbers = new ArrayList<String>();
+		creditCardNumbers.add("1234123412341234");
+		creditCardNumbers.add("1234123412340003");
+		for (int i = 0; i < 600; i++) {
+			creditCardNumbers.add(String.format("bogus%04d", i));
+		}
+		countingDataSource.reset();
+
+		Map<String, Account> accounts = repository.findByCreditCards(creditCardNumbers);
+
+		assertEquals(3, countingDataSource.getRoundTrips(), "602 cards should take three IN lists of up to 256");
+		assertEquals(2, accounts.size());
+		Account account = accounts.get("1234123412341234");
+		assertEquals("123456789", account.getNumber());
+		assertEquals(2, account.getBeneficiaries().size());
+		assertEquals(Percentage.valueOf("50%"), account.getBeneficiary("Annabelle").getAllocationPercentage());
+		assertEquals(4, accounts.get("1234123412340003").getBeneficiaries().size());
+	}
+
+	@Test
+	public void testFindAccountByCreditCardThroughIndex() {
+		CreditCardIndex index = new CreditCardIndex(100);
+		repository.enableCreditCardIndex(index);
+		assertEquals(21, index.size());
+
+		Account account = repository.findByCreditCard("1234123412341234");
+		assertEquals("123456789", account.getNumber(), "wrong account number");
+		assertEquals(2, account.getBeneficiaries().size(), "wrong beneficiary collection size");
+		assertThrows(EmptyResultDataAccessException.class, () -> repository.findByCreditCard("bogus"));
+		assertEquals(1, index.getHitCount());
+		assertEquals(1, index.getMissCount());
+	}
+
 	@Test
 	public void testUpdateBeneficiaries() throws SQLException {
 		Account account = repository.findByCreditCard("1234123412341234");
@@ -67,6 +116,79 @@ public class JdbcAccountRepositoryTests {
 		verifyBeneficiaryTableUpdated();
 	}
 
+	@Test
+	public void testUpdateBeneficiariesInOneBatch() {
+		Account account = repository.findByCreditCard("1234123412340003");
+		account.makeContribution(MonetaryAmount.valueOf("8.00"));
+		countingDataSource.reset();
+
+		repository.updateBeneficiaries(account);
+		assertEquals(2, countingDataSource.getRoundTrips(),
+				"four beneficiaries should be written in one batch, the account version in another");
+		assertEquals(1, account.getVersion());
+
+		// written beneficiaries are clean until credited again
+		repository.updateBeneficiaries(account);
+		assertEquals(2, countingDataSource.getRoundTrips());
+		assertEquals(1, repository.findByCreditCard("1234123412340003").getVersion());
+	}
+
+	@Test
+	public void testUpdateBeneficiariesOfStaleAccountFails() {
+		Account first = repository.findByCreditCard("1234123412341234");
+		Account second = repository.findByCreditCard("1234123412341234");
+		first.makeContribution(MonetaryAmount.valueOf("8.00"));
+		repository.updateBeneficiaries(first);
+
+		second.makeContribution(MonetaryAmount.valueOf("100.00"));
+		assertThrows(OptimisticLockingFailureException.class, () -> repository.updateBeneficiaries(second));
+		// the savings written by the first reward were not overwritten
+		Account account = repository.findByCreditCard("1234123412341234");
+		assertEquals(MonetaryAmount.valueOf("4.00"), account.getBeneficiary("Annabelle").getSavings());
+		assertEquals(1, account.getVersion());
+	}
+
+	@Test
+	public void testUpdateBeneficiariesSkippedWhenNothingChanged() {
+		Account account = repository.findByCreditCard("1234123412341234");
+		account.makeContribution(MonetaryAmount.zero());
+		countingDataSource.reset();
+
+		repository.updateBeneficiaries(account);
+		assertEquals(0, countingDataSource.getRoundTrips());
+	}
+
+	@Test
+	public void testConcurrentDeltaUpdatesLoseNoCredit() throws Exception {
+		repository.setDeltaUpdates(true);
+		TransactionTemplate transactionTemplate = new TransactionTemplate(
+				new DataSourceTransactionManager(countingDataSource));
+		int threads = 8;
+		int rewardsPerThread = 100;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int i = 0; i < threads; i++) {
+			futures.add(executor.submit(() -> {
+				for (int j = 0; j < rewardsPerThread; j++) {
+					transactionTemplate.executeWithoutResult(status -> {
+						Account account = repository.findByCreditCard("1234123412341234");
+						account.makeContribution(MonetaryAmount.valueOf("8.00"));
+						repository.updateBeneficiaries(account);
+					});
+				}
+			}));
+		}
+		for (Future<?> future : futures) {
+			future.get(60, TimeUnit.SECONDS);
+		}
+		executor.shutdown();
+
+		// 800 rewards of 8.00, half of each to Annabelle
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+		assertEquals(MonetaryAmount.valueOf("3200.00"), MonetaryAmount.valueOf(jdbcTemplate.queryForObject(
+				"select SAVINGS from T_ACCOUNT_BENEFICIARY where NAME = 'Annabelle' and ACCOUNT_ID = 0", String.class)));
+	}
+
 	private void verifyBeneficiaryTableUpdated() throws SQLException {
 		String sql = "select SAVINGS from T_ACCOUNT_BENEFICIARY where NAME = ? and ACCOUNT_ID = ?";
 		PreparedStatement stmt = dataSource.getConnection().prepareStatement(sql);
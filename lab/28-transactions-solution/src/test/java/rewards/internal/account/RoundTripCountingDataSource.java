@@ -0,0 +1,70 @@
+package rewards.internal.account;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+/**
+ * A data source that counts the statements executed through its connections, each {@code execute*} call being one
+ * round trip to the database whether it runs a single statement or a whole batch.
+ */
+public class RoundTripCountingDataSource extends DelegatingDataSource {
+
+	private final LongAdder roundTrips = new LongAdder();
+
+	public RoundTripCountingDataSource(DataSource targetDataSource) {
+		super(targetDataSource);
+	}
+
+	public Connection getConnection() throws SQLException {
+		return proxy(Connection.class, super.getConnection());
+	}
+
+	public Connection getConnection(String username, String password) throws SQLException {
+		return proxy(Connection.class, super.getConnection(username, password));
+	}
+
+	/**
+	 * Returns the number of round trips made since this data source was created or last reset.
+	 */
+	public long getRoundTrips() {
+		return roundTrips.sum();
+	}
+
+	public void reset() {
+		roundTrips.reset();
+	}
+
+	private <T> T proxy(Class<T> type, T target) {
+		InvocationHandler handler = (proxy, method, args) -> invoke(target, method, args);
+		return type.cast(Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { type }, handler));
+	}
+
+	private Object invoke(Object target, Method method, Object[] args) throws Throwable {
+		if (target instanceof Statement && method.getName().startsWith("execute")) {
+			roundTrips.increment();
+		}
+		Object result;
+		try {
+			result = method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getTargetException();
+		}
+		if (result instanceof Statement) {
+			// returned by createStatement, prepareStatement or prepareCall
+			@SuppressWarnings("unchecked")
+			Class<Statement> type = (Class<Statement>) method.getReturnType();
+			return proxy(type, (Statement) result);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,176 @@
+package rewards.internal.account;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import common.money.MonetaryAmount;
+
+/**
+ * Tests the write-behind account repository against a test data source: credits must reach the database summed,
+ * after commit only, and no later than the flush triggers allow.
+ */
+public class WriteBehindAccountRepositoryTests {
+
+	private static final String SAVINGS_SQL = "select SAVINGS from T_ACCOUNT_BENEFICIARY where NAME = ? and ACCOUNT_ID = 0";
+
+	private WriteBehindAccountRepository repository;
+
+	private JdbcTemplate jdbcTemplate;
+
+	private TransactionTemplate transactionTemplate;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		DataSource dataSource = createTestDataSource();
+		JdbcAccountRepository accountRepository = new JdbcAccountRepository();
+		accountRepository.setDataSource(dataSource);
+		DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+		repository = new WriteBehindAccountRepository(accountRepository, dataSource, transactionManager, 60000);
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		transactionTemplate = new TransactionTemplate(transactionManager);
+	}
+
+	@AfterEach
+	public void tearDown() throws Exception {
+		repository.shutdown();
+	}
+
+	@Test
+	public void testCreditsCoalescedUntilFlush() {
+		reward("8.00");
+		reward("4.00");
+
+		// nothing written yet, but the pending credits show in loaded accounts
+		assertEquals(MonetaryAmount.valueOf("0.00"), savingsOf("Annabelle"));
+		assertEquals(1, repository.getPendingAccountCount());
+		Account account = repository.findByCreditCard("1234123412341234");
+		assertEquals(MonetaryAmount.valueOf("6.00"), account.getBeneficiary("Annabelle").getSavings());
+
+		repository.flush();
+		assertEquals(0, repository.getPendingAccountCount());
+		assertEquals(1, repository.getFlushCount());
+		assertEquals(MonetaryAmount.valueOf("6.00"), savingsOf("Annabelle"));
+		assertEquals(MonetaryAmount.valueOf("6.00"), savingsOf("Corgan"));
+	}
+
+	@Test
+	public void testRolledBackCreditsDiscarded() {
+		transactionTemplate.executeWithoutResult(status -> {
+			Account account = repository.findByCreditCard("1234123412341234");
+			account.makeContribution(MonetaryAmount.valueOf("8.00"));
+			repository.updateBeneficiaries(account);
+			status.setRollbackOnly();
+		});
+
+		assertEquals(0, repository.getPendingAccountCount());
+	}
+
+	@Test
+	public void testFlushOnSizeThreshold() throws Exception {
+		repository.setMaxPendingAccounts(1);
+		reward("8.00");
+
+		waitForFlush();
+		assertEquals(MonetaryAmount.valueOf("4.00"), savingsOf("Annabelle"));
+	}
+
+	@Test
+	public void testFlushOnShutdown() throws Exception {
+		reward("8.00");
+
+		repository.shutdown();
+		assertEquals(MonetaryAmount.valueOf("4.00"), savingsOf("Annabelle"));
+	}
+
+	@Test
+	public void testCreditsVisibleWhileFlushCommits() throws Exception {
+		CountDownLatch committing = new CountDownLatch(1);
+		CountDownLatch commit = new CountDownLatch(1);
+		AtomicBoolean pauseCommit = new AtomicBoolean();
+		DataSource dataSource = new EmbeddedDatabaseBuilder()
+			.generateUniqueName(true)
+			.addScript("/rewards/testdb/schema.sql")
+			.addScript("/rewards/testdb/data.sql")
+			.build();
+		// so that readers are not blocked by the flush transaction's writes
+		new JdbcTemplate(dataSource).execute("set database transaction control mvcc");
+		JdbcAccountRepository accountRepository = new JdbcAccountRepository();
+		accountRepository.setDataSource(dataSource);
+		DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource) {
+			protected void doCommit(DefaultTransactionStatus status) {
+				if (pauseCommit.get()) {
+					committing.countDown();
+					try {
+						commit.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				super.doCommit(status);
+			}
+		};
+		repository.shutdown();
+		repository = new WriteBehindAccountRepository(accountRepository, dataSource, transactionManager, 60000);
+		transactionTemplate = new TransactionTemplate(transactionManager);
+		reward("8.00");
+
+		pauseCommit.set(true);
+		Thread flush = new Thread(repository::flush);
+		flush.setDaemon(true);
+		flush.start();
+		try {
+			assertTrue(committing.await(5, TimeUnit.SECONDS));
+			// written but not yet committed
+			Account account = repository.findByCreditCard("1234123412341234");
+			assertEquals(MonetaryAmount.valueOf("4.00"), account.getBeneficiary("Annabelle").getSavings());
+		} finally {
+			commit.countDown();
+			flush.join(5000);
+		}
+		Account account = repository.findByCreditCard("1234123412341234");
+		assertEquals(MonetaryAmount.valueOf("4.00"), account.getBeneficiary("Annabelle").getSavings());
+		assertEquals(1, repository.getFlushCount());
+	}
+
+	private void reward(String amount) {
+		transactionTemplate.executeWithoutResult(status -> {
+			Account account = repository.findByCreditCard("1234123412341234");
+			account.makeContribution(MonetaryAmount.valueOf(amount));
+			repository.updateBeneficiaries(account);
+		});
+	}
+
+	private void waitForFlush() throws InterruptedException {
+		for (int i = 0; i < 100 && repository.getFlushCount() == 0; i++) {
+			Thread.sleep(20);
+		}
+		assertTrue(repository.getFlushCount() > 0, "credits were not flushed");
+	}
+
+	private MonetaryAmount savingsOf(String beneficiary) {
+		return MonetaryAmount.valueOf(jdbcTemplate.queryForObject(SAVINGS_SQL, String.class, beneficiary));
+	}
+
+	private DataSource createTestDataSource() {
+		return new EmbeddedDatabaseBuilder()
+			.setName("rewards")
+			.addScript("/rewards/testdb/schema.sql")
+			.addScript("/rewards/testdb/data.sql")
+			.build();
+	}
+}
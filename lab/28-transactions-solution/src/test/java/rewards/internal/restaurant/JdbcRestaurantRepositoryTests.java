@@ -1,10 +1,15 @@
 package rewards.internal.restaurant;
 
+import common.money.MonetaryAmount;
 import common.money.Percentage;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import rewards.Dining;
+import rewards.internal.account.Account;
+import rewards.internal.reward.MonthlyRewardCounts;
 
 import javax.sql.DataSource;
 
@@ -18,10 +23,13 @@ public class JdbcRestaurantRepositoryTests {
 
 	private JdbcRestaurantRepository repository;
 
+	private DataSource dataSource;
+
 	@BeforeEach
 	public void setUp() throws Exception {
+		dataSource = createTestDataSource();
 		repository = new JdbcRestaurantRepository();
-		repository.setDataSource(createTestDataSource());
+		repository.setDataSource(dataSource);
 	}
 
 	@Test
@@ -42,6 +50,39 @@ public class JdbcRestaurantRepositoryTests {
 		});
 	}
 
+	@Test
+	public void testFindRestaurantWithWeekdaysOnlyPolicy() {
+		new JdbcTemplate(dataSource).update("update T_RESTAURANT set BENEFIT_AVAILABILITY_POLICY = 'W'");
+		Restaurant restaurant = repository.findByMerchantNumber("1234567890");
+		Account account = new Account("123456789", "Keith and Keri Donald");
+		account.addBeneficiary("Annabelle");
+
+		// 12/29/1977 was a Thursday
+		assertEquals(MonetaryAmount.valueOf("8.00"), restaurant.calculateBenefitFor(account,
+				Dining.createDining("100.00", "1234123412341234", "1234567890", 12, 29, 1977)));
+		assertEquals(MonetaryAmount.zero(), restaurant.calculateBenefitFor(account,
+				Dining.createDining("100.00", "1234123412341234", "1234567890", 12, 31, 1977)));
+	}
+
+	@Test
+	public void testFindRestaurantWithMaxRewardsPerMonthPolicy() {
+		new JdbcTemplate(dataSource).update(
+				"update T_RESTAURANT set BENEFIT_AVAILABILITY_POLICY = 'M', MAX_REWARDS_PER_MONTH = 1");
+		assertThrows(IllegalStateException.class, () -> repository.findByMerchantNumber("1234567890"));
+
+		MonthlyRewardCounts counts = new MonthlyRewardCounts(dataSource);
+		repository.setMonthlyRewardCounts(counts);
+		Restaurant restaurant = repository.findByMerchantNumber("1234567890");
+		assertEquals("maxRewardsPerMonth(1)", restaurant.getBenefitAvailabilityPolicy().toString());
+		Account account = new Account("123456789", "Keith and Keri Donald");
+		account.addBeneficiary("Annabelle");
+		Dining dining = Dining.createDining("100.00", "1234123412341234", "1234567890");
+
+		assertEquals(MonetaryAmount.valueOf("8.00"), restaurant.calculateBenefitFor(account, dining));
+		counts.add("123456789", "1234567890", dining.getDate(), 1);
+		assertEquals(MonetaryAmount.zero(), restaurant.calculateBenefitFor(account, dining));
+	}
+
 	private DataSource createTestDataSource() {
 		return new EmbeddedDatabaseBuilder()
 			.setName("rewards")
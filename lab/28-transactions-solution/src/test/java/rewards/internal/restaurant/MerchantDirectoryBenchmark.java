@@ -0,0 +1,87 @@
+package rewards.internal.restaurant;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Compares a {@code HashMap<String, Restaurant>} with a {@link MerchantDirectory} holding a few hundred thousand
+ * restaurants: the heap each takes, measured as the heap used after a full collection, and the nanoseconds per lookup
+ * of merchant numbers freshly read as Strings, as they arrive in dinings. Each way is run a few times first to warm
+ * the JIT up.
+ *
+ * Not a test: run its main method by hand, preferably with a fixed heap such as -Xms1g -Xmx1g.
+ */
+public class MerchantDirectoryBenchmark {
+
+	private static final int RESTAURANTS = 300000;
+
+	private static final int LOOKUPS = 2000000;
+
+	private static final int WARMUP_RUNS = 5;
+
+	private static final int RUNS = 10;
+
+	public static void main(String[] args) {
+		Restaurant[] restaurants = new Restaurant[RESTAURANTS];
+		for (int i = 0; i < RESTAURANTS; i++) {
+			String merchantNumber = String.format("%010d", 1000000000L + i * 7919L);
+			restaurants[i] = new Restaurant(merchantNumber, "Restaurant " + i);
+		}
+		String[] merchantNumbers = new String[LOOKUPS];
+		for (int i = 0; i < LOOKUPS; i++) {
+			// Strings other than the keys, as in dinings; their hash codes are cached after the first pass, which
+			// favors the HashMap
+			merchantNumbers[i] = new String(restaurants[(int) (i * 104729L % RESTAURANTS)].getNumber().toCharArray());
+		}
+
+		long before = usedHeap();
+		Map<String, Restaurant> map = new HashMap<String, Restaurant>();
+		for (Restaurant restaurant : restaurants) {
+			map.put(restaurant.getNumber(), restaurant);
+		}
+		long mapHeap = usedHeap() - before;
+
+		before = usedHeap();
+		MerchantDirectory directory = new MerchantDirectory(RESTAURANTS);
+		for (Restaurant restaurant : restaurants) {
+			directory.put(restaurant);
+		}
+		long directoryHeap = usedHeap() - before;
+
+		System.out.printf("%-10s %,d bytes, %.1f per restaurant%n", "HashMap", mapHeap, (double) mapHeap / RESTAURANTS);
+		System.out.printf("%-10s %,d bytes, %.1f per restaurant%n", "directory", directoryHeap,
+				(double) directoryHeap / RESTAURANTS);
+		run("HashMap", merchantNumbers, map::get);
+		run("directory", merchantNumbers, directory::find);
+	}
+
+	private static void run(String name, String[] merchantNumbers, Function<String, Restaurant> lookup) {
+		for (int i = 0; i < WARMUP_RUNS; i++) {
+			lookUpAll(merchantNumbers, lookup);
+		}
+		long started = System.nanoTime();
+		for (int i = 0; i < RUNS; i++) {
+			lookUpAll(merchantNumbers, lookup);
+		}
+		long elapsed = System.nanoTime() - started;
+		System.out.printf("%-10s %.1f ns per lookup%n", name, (double) elapsed / RUNS / merchantNumbers.length);
+	}
+
+	private static volatile Object sink;
+
+	private static void lookUpAll(String[] merchantNumbers, Function<String, Restaurant> lookup) {
+		for (String merchantNumber : merchantNumbers) {
+			// keeps the JIT from dropping the lookup as dead code
+			sink = lookup.apply(merchantNumber);
+		}
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,91 @@
+package rewards.internal.restaurant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the merchant directory, verifying merchant numbers are keyed as longs and the table stays consistent
+ * as restaurants are added and removed.
+ */
+public class MerchantDirectoryTests {
+
+	@Test
+	public void testFind() {
+		MerchantDirectory directory = new MerchantDirectory(10);
+		Restaurant appleBees = new Restaurant("1234567890", "AppleBees");
+		directory.put(appleBees);
+		directory.put(new Restaurant("0000000000", "Zero"));
+
+		assertSame(appleBees, directory.find("1234567890"));
+		assertEquals("Zero", directory.find("0000000000").getName());
+		assertNull(directory.find("1234567891"));
+		assertEquals(2, directory.size());
+
+		Restaurant renamed = new Restaurant("1234567890", "Applebee's");
+		directory.put(renamed);
+		assertSame(renamed, directory.find("1234567890"));
+		assertEquals(2, directory.size());
+	}
+
+	@Test
+	public void testOtherMerchantNumbersKeptAside() {
+		MerchantDirectory directory = new MerchantDirectory(10);
+		directory.put(new Restaurant("12345", "Short"));
+		directory.put(new Restaurant("12345678x0", "Not digits"));
+
+		assertEquals("Short", directory.find("12345").getName());
+		assertEquals("Not digits", directory.find("12345678x0").getName());
+		assertEquals(2, directory.size());
+		assertTrue(directory.remove("12345"));
+		assertNull(directory.find("12345"));
+		assertEquals(1234567890L, MerchantDirectory.keyOf("1234567890"));
+		assertEquals(MerchantDirectory.NOT_A_KEY, MerchantDirectory.keyOf("123456789"));
+	}
+
+	@Test
+	public void testRandomPutsAndRemovesMatchHashMap() {
+		MerchantDirectory directory = new MerchantDirectory(0);
+		Map<String, Restaurant> expected = new HashMap<String, Restaurant>();
+		Random random = new Random(42);
+		for (int i = 0; i < 100000; i++) {
+			String number = String.format("%010d", random.nextInt(5000));
+			if (random.nextInt(3) == 0) {
+				assertEquals(expected.remove(number) != null, directory.remove(number));
+			} else {
+				Restaurant restaurant = new Restaurant(number, "Restaurant " + i);
+				expected.put(number, restaurant);
+				directory.put(restaurant);
+			}
+		}
+		assertEquals(expected.size(), directory.size());
+		for (int i = 0; i < 5000; i++) {
+			String number = String.format("%010d", i);
+			assertSame(expected.get(number), directory.find(number));
+		}
+		MerchantDirectory copy = new MerchantDirectory(directory, 0);
+		for (String number : expected.keySet()) {
+			assertSame(expected.get(number), copy.find(number));
+		}
+		assertFalse(copy.remove("9999999999"));
+	}
+
+	@Test
+	public void testMemoryFootprint() {
+		MerchantDirectory directory = new MerchantDirectory(300000);
+		for (int i = 0; i < 300000; i++) {
+			directory.put(new Restaurant(String.format("1%09d", i), "Restaurant " + i));
+		}
+		// 524288 slots of a long and a reference, about 21 bytes per restaurant
+		assertEquals(524288, directory.capacity());
+		assertEquals(12L * 524288 + 64, directory.getMemoryFootprint());
+	}
+}
@@ -0,0 +1,100 @@
+package rewards.internal.restaurant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+
+/**
+ * Tests the refreshing restaurant repository against a test data source: snapshots must only change on refresh, and a
+ * refresh must only load the restaurants modified since the previous snapshot.
+ */
+public class RefreshingRestaurantRepositoryTests {
+
+	private RefreshingRestaurantRepository repository;
+
+	private JdbcTemplate jdbcTemplate;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		DataSource dataSource = createTestDataSource();
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate.update("update T_RESTAURANT set LAST_MODIFIED = timestamp '2020-01-01 00:00:00'");
+		JdbcRestaurantRepository restaurantRepository = new JdbcRestaurantRepository();
+		restaurantRepository.setDataSource(dataSource);
+		// refreshed by hand only
+		repository = new RefreshingRestaurantRepository(restaurantRepository, 3600000);
+		repository.setOverlap(0);
+	}
+
+	@AfterEach
+	public void tearDown() throws Exception {
+		repository.shutdown();
+	}
+
+	@Test
+	public void testChangesSeenAfterRefresh() {
+		Restaurant restaurant = repository.findByMerchantNumber("1234567890");
+		// the database stamps LAST_MODIFIED itself
+		jdbcTemplate.update("update T_RESTAURANT set NAME = 'Applebee''s' where MERCHANT_NUMBER = '1234567890'");
+		assertSame(restaurant, repository.findByMerchantNumber("1234567890"));
+
+		repository.refresh();
+		assertEquals("Applebee's", repository.findByMerchantNumber("1234567890").getName());
+		assertEquals("AppleBees", restaurant.getName());
+		assertEquals(2, repository.getRefreshStats().getCount());
+	}
+
+	@Test
+	public void testOnlyModifiedRestaurantsLoaded() {
+		insertRestaurant("1234567891", "Chilis");
+
+		// a new merchant is found before the next refresh
+		assertEquals("Chilis", repository.findByMerchantNumber("1234567891").getName());
+		assertEquals(1, repository.getMissCount());
+
+		repository.refresh();
+		assertEquals(2, repository.size());
+		Restaurant restaurant = repository.findByMerchantNumber("1234567890");
+		repository.findByMerchantNumber("1234567891");
+		assertEquals(1, repository.getMissCount());
+
+		// modified before the last snapshot: kept as is
+		insertRestaurant("1234567892", "Outback");
+		repository.refresh();
+		assertEquals(3, repository.size());
+		assertSame(restaurant, repository.findByMerchantNumber("1234567890"));
+	}
+
+	@Test
+	public void testDeletedRestaurantsDroppedOnReload() {
+		jdbcTemplate.update("delete from T_RESTAURANT");
+		repository.refresh();
+		assertEquals(1, repository.size());
+
+		repository.reload();
+		assertEquals(0, repository.size());
+		assertThrows(EmptyResultDataAccessException.class, () -> repository.findByMerchantNumber("1234567890"));
+	}
+
+	private void insertRestaurant(String merchantNumber, String name) {
+		jdbcTemplate.update("insert into T_RESTAURANT (MERCHANT_NUMBER, NAME, BENEFIT_PERCENTAGE, "
+				+ "BENEFIT_AVAILABILITY_POLICY) values (?, ?, .05, 'A')", merchantNumber, name);
+	}
+
+	private DataSource createTestDataSource() {
+		return new EmbeddedDatabaseBuilder()
+			.setName("rewards")
+			.addScript("/rewards/testdb/schema.sql")
+			.addScript("/rewards/testdb/data.sql")
+			.build();
+	}
+}
@@ -0,0 +1,109 @@
+package rewards.internal.reward;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+
+/**
+ * Tests the confirmation number allocator against a test data source: numbers must be unique across threads and
+ * across allocators sharing the sequence, with one database read per block.
+ */
+public class ConfirmationNumberAllocatorTests {
+
+	private DataSource dataSource;
+
+	@BeforeEach
+	public void setUp() {
+		dataSource = new EmbeddedDatabaseBuilder()
+			.generateUniqueName(true)
+			.addScript("/rewards/testdb/schema.sql")
+			.addScript("/rewards/testdb/confirmation_number_blocks.sql")
+			.build();
+	}
+
+	@Test
+	public void testOneDatabaseReadPerBlock() {
+		ConfirmationNumberAllocator allocator = new ConfirmationNumberAllocator(dataSource, 1000);
+		assertEquals("1", allocator.next());
+		for (int i = 2; i <= 1000; i++) {
+			assertEquals(String.valueOf(i), allocator.next());
+		}
+		assertEquals(1, allocator.getBlockFetchCount());
+		assertEquals("1001", allocator.next());
+		assertEquals(2, allocator.getBlockFetchCount());
+		assertEquals(1001, allocator.getAllocationCount());
+	}
+
+	@Test
+	public void testAllocatorsSharingSequenceNeverCollide() {
+		// as two processes, or one process before and after a restart
+		ConfirmationNumberAllocator first = new ConfirmationNumberAllocator(dataSource, 1000);
+		ConfirmationNumberAllocator second = new ConfirmationNumberAllocator(dataSource, 1000);
+		Set<String> numbers = ConcurrentHashMap.newKeySet();
+		for (int i = 0; i < 2500; i++) {
+			assertTrue(numbers.add(first.next()));
+			assertTrue(numbers.add(second.next()));
+		}
+		assertEquals(3, first.getBlockFetchCount());
+		assertEquals(3, second.getBlockFetchCount());
+	}
+
+	@Test
+	public void testConcurrentAllocationsUnique() throws Exception {
+		ConfirmationNumberAllocator allocator = new ConfirmationNumberAllocator(dataSource, 100);
+		Set<String> numbers = ConcurrentHashMap.newKeySet();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for (int t = 0; t < 8; t++) {
+				futures.add(executor.submit(() -> {
+					for (int i = 0; i < 5000; i++) {
+						assertTrue(numbers.add(allocator.next()));
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(40000, numbers.size());
+		assertEquals(400, allocator.getBlockFetchCount());
+	}
+
+	@Test
+	public void testBlockSizeMustBePositive() {
+		assertThrows(IllegalArgumentException.class, () -> new ConfirmationNumberAllocator(dataSource, 0));
+	}
+
+	@Test
+	public void testBlockSizeAtMostSequenceIncrement() {
+		// blocks of 2000 from a sequence incremented by 1000 would overlap
+		assertThrows(IllegalArgumentException.class, () -> new ConfirmationNumberAllocator(dataSource, 2000));
+	}
+
+	@Test
+	public void testSharedSchemaIncrementsByOne() {
+		DataSource sharedSchema = new EmbeddedDatabaseBuilder()
+			.generateUniqueName(true)
+			.addScript("/rewards/testdb/schema.sql")
+			.build();
+		assertThrows(IllegalArgumentException.class, () -> new ConfirmationNumberAllocator(sharedSchema, 1000));
+		assertEquals(1, new ConfirmationNumberAllocator(sharedSchema, 1).getBlockSize());
+	}
+}
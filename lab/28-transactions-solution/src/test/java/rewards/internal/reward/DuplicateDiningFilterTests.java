@@ -0,0 +1,57 @@
+package rewards.internal.reward;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import rewards.Dining;
+
+/**
+ * Unit tests for the duplicate dining Bloom filter and the fingerprints it holds.
+ */
+public class DuplicateDiningFilterTests {
+
+	@Test
+	public void testFingerprint() {
+		Dining dining = Dining.createDining("100.00", "1234123412341234", "1234567890", 12, 29, 2010);
+
+		assertEquals(DiningFingerprint.LENGTH, DiningFingerprint.of(dining).length());
+		assertEquals(DiningFingerprint.of(dining),
+				DiningFingerprint.of(Dining.createDining("100", "1234123412341234", "1234567890", 12, 29, 2010)));
+		assertNotEquals(DiningFingerprint.of(dining),
+				DiningFingerprint.of(Dining.createDining("100.00", "1234123412341234", "1234567890", 12, 30, 2010)));
+	}
+
+	@Test
+	public void testNoFalseNegatives() {
+		DuplicateDiningFilter filter = new DuplicateDiningFilter(10000, 0.01);
+		for (int i = 0; i < 10000; i++) {
+			filter.put(DiningFingerprint.of(dining(i)));
+		}
+		for (int i = 0; i < 10000; i++) {
+			assertTrue(filter.mightContain(DiningFingerprint.of(dining(i))), "rewarded dining " + i + " missed");
+		}
+	}
+
+	@Test
+	public void testFalsePositiveRate() {
+		DuplicateDiningFilter filter = new DuplicateDiningFilter(10000, 0.01);
+		for (int i = 0; i < 10000; i++) {
+			filter.put(DiningFingerprint.of(dining(i)));
+		}
+		int falsePositives = 0;
+		for (int i = 10000; i < 20000; i++) {
+			if (filter.mightContain(DiningFingerprint.of(dining(i)))) {
+				falsePositives++;
+			}
+		}
+		// 1% of 10000 expected; allow for chance
+		assertTrue(falsePositives < 200, falsePositives + " false positives");
+	}
+
+	private Dining dining(int i) {
+		return Dining.createDining(i + ".00", "1234123412341234", "1234567890", 12, 29, 2010);
+	}
+}
@@ -0,0 +1,92 @@
+package rewards.internal.reward;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import rewards.AccountContribution;
+import rewards.Dining;
+import rewards.internal.account.Account;
+
+import common.money.MonetaryAmount;
+import common.money.Percentage;
+
+/**
+ * Compares the rewards per second recorded into T_REWARD of an embedded database, a thousand rewards per transaction
+ * as the batch reward network does: an insert per reward through {@link JdbcRewardRepository#confirmReward}, against
+ * {@link JdbcRewardRepository#confirmRewards} with several batch sizes, with and without multi-row inserts.
+ * Confirmation numbers are handed out from blocks, so that reading them does not weigh on the comparison.
+ *
+ * Not a test: run its main method by hand, preferably with a fixed heap such as -Xms2g -Xmx2g.
+ */
+public class JdbcRewardRepositoryBenchmark {
+
+	private static final int REWARDS = 1000000;
+
+	private static final int REWARDS_PER_TRANSACTION = 1000;
+
+	public static void main(String[] args) {
+		EmbeddedDatabase database = new EmbeddedDatabaseBuilder()
+			.setName("benchmark")
+			.addScript("/rewards/testdb/schema.sql")
+			.addScript("/rewards/testdb/confirmation_number_blocks.sql")
+			.build();
+		try {
+			List<Dining> dinings = new ArrayList<Dining>(REWARDS);
+			for (int i = 0; i < REWARDS; i++) {
+				dinings.add(Dining.createDining((i % 1000 + 10) + ".00", String.format("%016d", i / 1000),
+						"1234567890"));
+			}
+			run("per reward", database, dinings, 1, 1, false);
+			run("batch 100", database, dinings, 100, 1, true);
+			run("batch 1000", database, dinings, 1000, 1, true);
+			run("10 rows x batch 100", database, dinings, 100, 10, true);
+			run("50 rows x batch 20", database, dinings, 20, 50, true);
+		} finally {
+			database.shutdown();
+		}
+	}
+
+	private static void run(String name, EmbeddedDatabase database, List<Dining> dinings, int batchSize,
+			int rowsPerInsert, boolean batched) {
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(database);
+		jdbcTemplate.execute("delete from T_REWARD");
+		JdbcRewardRepository repository = new JdbcRewardRepository();
+		repository.setDataSource(database);
+		repository.setConfirmationNumberAllocator(new ConfirmationNumberAllocator(database, 1000));
+		repository.setBatchSize(batchSize);
+		repository.setRowsPerInsert(rowsPerInsert);
+		TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(database));
+		List<AccountContribution> contributions = Collections.nCopies(REWARDS_PER_TRANSACTION, newContribution());
+
+		long started = System.nanoTime();
+		for (int from = 0; from < dinings.size(); from += REWARDS_PER_TRANSACTION) {
+			List<Dining> slice = dinings.subList(from, from + REWARDS_PER_TRANSACTION);
+			transactionTemplate.executeWithoutResult(status -> {
+				if (batched) {
+					repository.confirmRewards(contributions, slice);
+				} else {
+					for (int i = 0; i < slice.size(); i++) {
+						repository.confirmReward(contributions.get(i), slice.get(i));
+					}
+				}
+			});
+		}
+		long elapsed = System.nanoTime() - started;
+		long rows = jdbcTemplate.queryForObject("select count(*) from T_REWARD", Long.class);
+		System.out.printf("%-20s %,d rewards per second (%,d rows)%n", name, rows * 1000000000L / elapsed, rows);
+	}
+
+	private static AccountContribution newContribution() {
+		Account account = new Account("1", "Keith and Keri Donald");
+		account.setEntityId(0L);
+		account.addBeneficiary("Annabelle", Percentage.valueOf("100%"));
+		return account.makeContribution(MonetaryAmount.valueOf("8.00"));
+	}
+}
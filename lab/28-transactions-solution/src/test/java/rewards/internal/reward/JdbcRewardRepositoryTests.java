@@ -1,24 +1,37 @@
 package rewards.internal.reward;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.math.BigDecimal;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 import javax.sql.DataSource;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import rewards.AccountContribution;
 import rewards.Dining;
 import rewards.RewardConfirmation;
 import rewards.internal.account.Account;
 
+import common.datetime.DateInterval;
 import common.datetime.SimpleDate;
 import common.money.MonetaryAmount;
 import common.money.Percentage;
@@ -60,6 +73,219 @@ public class JdbcRewardRepositoryTests {
 		verifyRewardInserted(confirmation, dining);
 	}
 
+	@Test
+	public void testCreateRewards() throws SQLException {
+		Dining dining1 = Dining.createDining("100.00", "1234123412341234", "0123456789");
+		Dining dining2 = Dining.createDining("50.00", "1234123412341234", "0123456789");
+
+		Account account = new Account("1", "Keith and Keri Donald");
+		account.setEntityId(0L);
+		account.addBeneficiary("Annabelle", Percentage.valueOf("50%"));
+		account.addBeneficiary("Corgan", Percentage.valueOf("50%"));
+
+		AccountContribution contribution1 = account.makeContribution(MonetaryAmount.valueOf("8.00"));
+		AccountContribution contribution2 = account.makeContribution(MonetaryAmount.valueOf("4.00"));
+		List<RewardConfirmation> confirmations = repository.confirmRewards(Arrays.asList(contribution1,
+				contribution2), Arrays.asList(dining1, dining2));
+		assertEquals(2, confirmations.size(), "one confirmation per contribution expected");
+		assertEquals(contribution1, confirmations.get(0).getAccountContribution(), "wrong contribution object");
+		assertEquals(contribution2, confirmations.get(1).getAccountContribution(), "wrong contribution object");
+
+		assertEquals(2, getRewardCount());
+		String sql = "select * from T_REWARD where CONFIRMATION_NUMBER = ?";
+		verifyInsertedValues(confirmations.get(0), dining1,
+				jdbcTemplate.queryForMap(sql, confirmations.get(0).getConfirmationNumber()));
+		verifyInsertedValues(confirmations.get(1), dining2,
+				jdbcTemplate.queryForMap(sql, confirmations.get(1).getConfirmationNumber()));
+	}
+
+	@Test
+	public void testCreateRewardsWithMultiRowInserts() throws SQLException {
+		repository.setRowsPerInsert(2);
+		repository.setBatchSize(2);
+		List<AccountContribution> contributions = new ArrayList<AccountContribution>();
+		List<Dining> dinings = new ArrayList<Dining>();
+		for (int i = 0; i < 5; i++) {
+			contributions.add(newContribution());
+			dinings.add(Dining.createDining((100 + i) + ".00", "1234123412341234", "0123456789"));
+		}
+
+		// two statements of two rows in one batch, then the last reward on its own
+		List<RewardConfirmation> confirmations = repository.confirmRewards(contributions, dinings);
+
+		assertEquals(5, getRewardCount());
+		String sql = "select * from T_REWARD where CONFIRMATION_NUMBER = ?";
+		for (int i = 0; i < 5; i++) {
+			verifyInsertedValues(confirmations.get(i), dinings.get(i),
+					jdbcTemplate.queryForMap(sql, confirmations.get(i).getConfirmationNumber()));
+		}
+	}
+
+	@Test
+	public void testCreateRewardsWithAllocatedConfirmationNumbers() throws SQLException {
+		new ResourceDatabasePopulator(new ClassPathResource("rewards/testdb/confirmation_number_blocks.sql"))
+				.execute(dataSource);
+		ConfirmationNumberAllocator allocator = new ConfirmationNumberAllocator(dataSource, 1000);
+		repository.setConfirmationNumberAllocator(allocator);
+		Dining dining1 = Dining.createDining("100.00", "1234123412341234", "0123456789");
+		Dining dining2 = Dining.createDining("50.00", "1234123412341234", "0123456789");
+
+		RewardConfirmation confirmation = repository.confirmReward(newContribution(), dining1);
+		List<RewardConfirmation> confirmations = repository.confirmRewards(Arrays.asList(newContribution()),
+				Arrays.asList(dining2));
+
+		// from the same block, reserved with a single read of the sequence
+		assertEquals(Long.parseLong(confirmation.getConfirmationNumber()) + 1,
+				Long.parseLong(confirmations.get(0).getConfirmationNumber()));
+		assertEquals(1, allocator.getBlockFetchCount());
+		assertEquals(2, getRewardCount());
+		String sql = "select * from T_REWARD where CONFIRMATION_NUMBER = ?";
+		verifyInsertedValues(confirmation, dining1,
+				jdbcTemplate.queryForMap(sql, confirmation.getConfirmationNumber()));
+		verifyInsertedValues(confirmations.get(0), dining2,
+				jdbcTemplate.queryForMap(sql, confirmations.get(0).getConfirmationNumber()));
+	}
+
+	@Test
+	public void testIsRewarded() throws SQLException {
+		Dining dining = Dining.createDining("100.00", "1234123412341234", "0123456789");
+		Dining other = Dining.createDining("100.00", "1234123412341234", "0123456789", 12, 29, 2010);
+		DuplicateDiningFilter filter = new DuplicateDiningFilter(1000, 0.01);
+
+		// seeded from the rewards already recorded
+		repository.confirmReward(newContribution(), dining);
+		repository.enableDuplicateDetection(filter);
+		assertTrue(filter.mightContain(DiningFingerprint.of(dining)));
+		assertTrue(repository.isRewarded(dining));
+		assertFalse(repository.isRewarded(other));
+
+		// kept up to date as rewards are recorded
+		repository.confirmRewards(Arrays.asList(newContribution()), Arrays.asList(other));
+		assertTrue(repository.isRewarded(other));
+
+		// the database rejects a duplicate even if nobody checked first
+		assertThrows(DuplicateKeyException.class, () -> repository.confirmReward(newContribution(), dining));
+		assertEquals(2, getRewardCount());
+	}
+
+	@Test
+	public void testRewardsCountedUnlessRolledBack() {
+		MonthlyRewardCounts counts = new MonthlyRewardCounts(dataSource);
+		repository.setMonthlyRewardCounts(counts);
+		Dining dining = Dining.createDining("100.00", "1234123412341234", "0123456789");
+		Dining other = Dining.createDining("50.00", "1234123412341234", "0123456789");
+		TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+		transactionTemplate.executeWithoutResult(status -> {
+			repository.confirmReward(newContribution(), dining);
+			// seen by concurrent transactions before commit
+			assertEquals(1, counts.getCount("1", "0123456789", dining.getDate()));
+			status.setRollbackOnly();
+		});
+		assertEquals(0, counts.getCount("1", "0123456789", dining.getDate()));
+
+		transactionTemplate.executeWithoutResult(status -> repository.confirmRewards(
+				Arrays.asList(newContribution(), newContribution()), Arrays.asList(dining, other)));
+		assertEquals(2, counts.getCount("1", "0123456789", dining.getDate()));
+	}
+
+	@Test
+	public void testFindByAccount() {
+		List<RewardConfirmation> confirmations = repository.confirmRewards(
+				Arrays.asList(newContribution(), newContribution(), newContribution(), newContribution(),
+						newContribution(), newContribution("2")),
+				Arrays.asList(Dining.createDining("10.00", "1234123412341234", "0123456789", 12, 1, 2010),
+						Dining.createDining("20.00", "1234123412341234", "0123456789", 12, 3, 2010),
+						Dining.createDining("30.00", "1234123412341234", "0123456789", 12, 3, 2010),
+						Dining.createDining("40.00", "1234123412341234", "1234567890", 12, 5, 2010),
+						Dining.createDining("50.00", "1234123412341234", "0123456789", 12, 6, 2010),
+						Dining.createDining("60.00", "1234123412341234", "0123456789", 12, 4, 2010)));
+		DateInterval december1To5 = new DateInterval(new SimpleDate(12, 1, 2010), new SimpleDate(12, 5, 2010));
+
+		// the latest dinings first, the later recorded first on the same day
+		RewardPage page = repository.findByAccount("1", december1To5, null, 2);
+		assertConfirmationNumbers(page, confirmations.get(3), confirmations.get(2));
+		assertTrue(page.hasNext());
+		RewardRecord reward = page.getRewards().get(0);
+		assertEquals(MonetaryAmount.valueOf("8.00"), reward.getRewardAmount());
+		assertEquals(SimpleDate.today(), reward.getRewardDate());
+		assertEquals("1", reward.getAccountNumber());
+		assertEquals("1234567890", reward.getMerchantNumber());
+		assertEquals(new SimpleDate(12, 5, 2010), reward.getDiningDate());
+		assertEquals(MonetaryAmount.valueOf("40.00"), reward.getDiningAmount());
+
+		// a reward recorded meanwhile ahead of the cursor does not shift the next page
+		repository.confirmReward(newContribution(),
+				Dining.createDining("70.00", "1234123412341234", "0123456789", 12, 5, 2010));
+		page = repository.findByAccount("1", december1To5, page.getNextCursor(), 2);
+		assertConfirmationNumbers(page, confirmations.get(1), confirmations.get(0));
+		assertFalse(page.hasNext());
+
+		assertConfirmationNumbers(repository.findByAccount("2", december1To5, null, 10), confirmations.get(5));
+		assertConfirmationNumbers(repository.findByAccount("3", december1To5, null, 10));
+		assertThrows(IllegalArgumentException.class, () -> repository.findByAccount("1", december1To5, null, 0));
+		assertThrows(IllegalArgumentException.class,
+				() -> repository.findByAccount("1", december1To5, null, RewardRepository.MAX_PAGE_SIZE + 1));
+		assertThrows(IllegalArgumentException.class,
+				() -> repository.findByAccount("1", december1To5, "not a cursor", 2));
+	}
+
+	@Test
+	public void testFindByMerchant() {
+		List<RewardConfirmation> confirmations = repository.confirmRewards(
+				Arrays.asList(newContribution(), newContribution("2"), newContribution(), newContribution()),
+				Arrays.asList(Dining.createDining("10.00", "1234123412341234", "0123456789", 12, 1, 2010),
+						Dining.createDining("20.00", "1234123412341234", "0123456789", 12, 2, 2010),
+						Dining.createDining("30.00", "1234123412341234", "1234567890", 12, 2, 2010),
+						Dining.createDining("40.00", "1234123412341234", "0123456789", 11, 30, 2010)));
+		DateInterval december = new DateInterval(new SimpleDate(12, 1, 2010), new SimpleDate(12, 31, 2010));
+
+		RewardPage page = repository.findByMerchant("0123456789", december, null, 1);
+		assertConfirmationNumbers(page, confirmations.get(1));
+		assertTrue(page.hasNext());
+		page = repository.findByMerchant("0123456789", december, page.getNextCursor(), 1);
+		assertConfirmationNumbers(page, confirmations.get(0));
+		assertFalse(page.hasNext());
+	}
+
+	@Test
+	public void testFindByConfirmationNumber() {
+		Dining dining = Dining.createDining("100.00", "1234123412341234", "0123456789", 12, 29, 2010);
+		RewardConfirmation confirmation = repository.confirmReward(newContribution(), dining);
+
+		RewardRecord reward = repository.findByConfirmationNumber(confirmation.getConfirmationNumber());
+		assertEquals(confirmation.getConfirmationNumber(), reward.getConfirmationNumber());
+		assertEquals("1", reward.getAccountNumber());
+		assertEquals(MonetaryAmount.valueOf("8.00"), reward.getRewardAmount());
+		assertEquals("0123456789", reward.getMerchantNumber());
+		assertEquals(new SimpleDate(12, 29, 2010), reward.getDiningDate());
+		assertEquals(MonetaryAmount.valueOf("100.00"), reward.getDiningAmount());
+		assertThrows(EmptyResultDataAccessException.class, () -> repository.findByConfirmationNumber("unknown"));
+	}
+
+	private void assertConfirmationNumbers(RewardPage page, RewardConfirmation... expected) {
+		List<String> confirmationNumbers = new ArrayList<String>();
+		for (RewardRecord reward : page.getRewards()) {
+			confirmationNumbers.add(reward.getConfirmationNumber());
+		}
+		List<String> expectedNumbers = new ArrayList<String>();
+		for (RewardConfirmation confirmation : expected) {
+			expectedNumbers.add(confirmation.getConfirmationNumber());
+		}
+		assertEquals(expectedNumbers, confirmationNumbers);
+	}
+
+	private AccountContribution newContribution() {
+		return newContribution("1");
+	}
+
+	private AccountContribution newContribution(String accountNumber) {
+		Account account = new Account(accountNumber, "Keith and Keri Donald");
+		account.setEntityId(0L);
+		account.addBeneficiary("Annabelle", Percentage.valueOf("100%"));
+		return account.makeContribution(MonetaryAmount.valueOf("8.00"));
+	}
+
 	private void verifyRewardInserted(RewardConfirmation confirmation, Dining dining) throws SQLException {
 		assertEquals(1, getRewardCount());
 		String sql = "select * from T_REWARD where CONFIRMATION_NUMBER = ?";
@@ -75,6 +301,7 @@ public class JdbcRewardRepositoryTests {
 		assertEquals(dining.getAmount(), new MonetaryAmount((BigDecimal) values.get("DINING_AMOUNT")));
 		assertEquals(dining.getMerchantNumber(), values.get("DINING_MERCHANT_NUMBER"));
 		assertEquals(SimpleDate.today().asDate(), values.get("DINING_DATE"));
+		assertEquals(DiningFingerprint.of(dining), values.get("DINING_FINGERPRINT"));
 	}
 
 	private int getRewardCount() throws SQLException {
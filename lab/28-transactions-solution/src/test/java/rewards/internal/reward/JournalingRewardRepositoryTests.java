@@ -0,0 +1,232 @@
+package rewards.internal.reward;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import rewards.AccountContribution;
+import rewards.Dining;
+import rewards.DuplicateDiningException;
+import rewards.RewardConfirmation;
+import rewards.internal.account.Account;
+
+import common.money.MonetaryAmount;
+import common.money.Percentage;
+
+/**
+ * Tests the journaling reward repository against a test data source and a journal in a temporary directory: rewards
+ * must be confirmed before they are applied, journaled only once the transaction they were confirmed in commits, and
+ * applied exactly once across restarts.
+ */
+public class JournalingRewardRepositoryTests {
+
+	@TempDir
+	Path directory;
+
+	private JdbcRewardRepository rewardRepository;
+
+	private DataSourceTransactionManager transactionManager;
+
+	private JdbcTemplate jdbcTemplate;
+
+	@BeforeEach
+	public void setUp() {
+		DataSource dataSource = new EmbeddedDatabaseBuilder()
+			.generateUniqueName(true)
+			.addScript("/rewards/testdb/schema.sql")
+			.addScript("/rewards/testdb/data.sql")
+			.build();
+		rewardRepository = new JdbcRewardRepository();
+		rewardRepository.setDataSource(dataSource);
+		transactionManager = new DataSourceTransactionManager(dataSource);
+		jdbcTemplate = new JdbcTemplate(dataSource);
+	}
+
+	@Test
+	public void testConfirmedBeforeApplied() throws Exception {
+		JournalingRewardRepository repository = newRepository();
+		Dining dining = Dining.createDining("100.00", "1234123412341234", "1234567890");
+
+		RewardConfirmation confirmation = repository.confirmReward(newContribution(), dining);
+		assertEquals(0, getRewardCount(confirmation));
+		assertTrue(repository.isRewarded(dining));
+		assertEquals(1, repository.getPendingCount());
+
+		repository.apply();
+		assertEquals(1, getRewardCount(confirmation));
+		assertTrue(repository.isRewarded(dining));
+		assertEquals(0, repository.getPendingCount());
+		repository.shutdown();
+	}
+
+	@Test
+	public void testJournaledOnceTransactionCommits() throws Exception {
+		RewardJournal journal = new RewardJournal(directory, RewardJournal.DEFAULT_SEGMENT_SIZE);
+		JournalingRewardRepository repository = new JournalingRewardRepository(rewardRepository, journal,
+				transactionManager, 3600000);
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+		Dining dining = Dining.createDining("100.00", "1234123412341234", "1234567890");
+
+		RewardConfirmation confirmation = transactionTemplate.execute(status -> {
+			RewardConfirmation rolledBack = repository.confirmReward(newContribution(), dining);
+			status.setRollbackOnly();
+			return rolledBack;
+		});
+		assertEquals(0, journal.getEntryCount());
+		assertFalse(repository.isRewarded(dining));
+
+		confirmation = transactionTemplate.execute(status -> {
+			RewardConfirmation committed = repository.confirmReward(newContribution(), dining);
+			assertEquals(0, journal.getEntryCount());
+			return committed;
+		});
+		// journaled by the commit, and applied later
+		assertEquals(1, journal.getEntryCount());
+		assertEquals(0, getRewardCount(confirmation));
+		assertTrue(repository.isRewarded(dining));
+		repository.apply();
+		assertEquals(1, getRewardCount(confirmation));
+		assertEquals(0, repository.getPendingCount());
+		repository.shutdown();
+	}
+
+	@Test
+	public void testConcurrentRewardsForSameDiningRecordedOnce() throws Exception {
+		JournalingRewardRepository repository = newRepository();
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+		Dining dining = Dining.createDining("100.00", "1234123412341234", "1234567890");
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			RewardConfirmation confirmation = transactionTemplate.execute(status -> {
+				RewardConfirmation first = repository.confirmReward(newContribution(), dining);
+				// another transaction rewarding the dining before this one commits
+				Future<RewardConfirmation> second = executor.submit(() -> transactionTemplate
+						.execute(otherStatus -> repository.confirmReward(newContribution(), dining)));
+				ExecutionException e = assertThrows(ExecutionException.class, () -> second.get(5, TimeUnit.SECONDS));
+				assertTrue(e.getCause() instanceof DuplicateDiningException);
+				return first;
+			});
+			repository.apply();
+			assertEquals(1, getRewardCount(confirmation));
+			assertEquals(0, repository.getPendingCount());
+			assertEquals(1, (int) jdbcTemplate.queryForObject(
+					"select count(*) from T_REWARD where DINING_FINGERPRINT = ?", Integer.class,
+					DiningFingerprint.of(dining)));
+		} finally {
+			executor.shutdownNow();
+		}
+		repository.shutdown();
+	}
+
+	@Test
+	public void testJournaledDiningClaimedUntilApplied() throws Exception {
+		JournalingRewardRepository repository = newRepository();
+		Dining dining = Dining.createDining("100.00", "1234123412341234", "1234567890");
+
+		repository.confirmReward(newContribution(), dining);
+		assertThrows(DuplicateDiningException.class, () -> repository.confirmReward(newContribution(), dining));
+		repository.apply();
+		assertThrows(DuplicateDiningException.class, () -> repository.confirmReward(newContribution(), dining));
+
+		assertEquals(1, repository.getAppliedCount());
+		assertEquals(0, repository.getPendingCount());
+		repository.shutdown();
+	}
+
+	@Test
+	public void testEntryViolatingConstraintRejected() throws Exception {
+		RewardJournal journal = new RewardJournal(directory, RewardJournal.DEFAULT_SEGMENT_SIZE);
+		JournalingRewardRepository repository = new JournalingRewardRepository(rewardRepository, journal,
+				transactionManager, 3600000);
+		Date rewardDate = new Date();
+		Dining dining = Dining.createDining("100.00", "1234123412341234", "1234567890");
+		// journaled twice for the same dining, as by a previous run
+		Object[] first = rewardRepository.newRewardRow(newContribution(), dining, rewardDate);
+		Object[] duplicate = rewardRepository.newRewardRow(newContribution(), dining, rewardDate);
+		Object[] other = rewardRepository.newRewardRow(newContribution(),
+				Dining.createDining("50.00", "1234123412341234", "1234567890"), rewardDate);
+		journal.appendRewards(Arrays.asList(first, duplicate, other));
+
+		repository.apply();
+		assertEquals(2, repository.getAppliedCount());
+		assertEquals(1, repository.getRejectedCount());
+		assertEquals(0, journal.getDurableCount());
+		assertEquals(1, getRewardCount((String) first[0]));
+		assertEquals(0, getRewardCount((String) duplicate[0]));
+		assertEquals(1, getRewardCount((String) other[0]));
+
+		// not retried
+		repository.apply();
+		assertEquals(2, repository.getAppliedCount());
+		repository.shutdown();
+	}
+
+	@Test
+	public void testUnappliedRewardsReplayedOnStart() throws Exception {
+		RewardJournal journal = new RewardJournal(directory, RewardJournal.DEFAULT_SEGMENT_SIZE);
+		JournalingRewardRepository repository = new JournalingRewardRepository(rewardRepository, journal,
+				transactionManager, 3600000);
+		RewardConfirmation applied = repository.confirmReward(newContribution(),
+				Dining.createDining("100.00", "1234123412341234", "1234567890"));
+		repository.apply();
+		// as if the process died before checkpointing the reward applied and applying the next one
+		Files.delete(directory.resolve("applied.offset"));
+		RewardConfirmation unapplied = repository.confirmReward(newContribution(),
+				Dining.createDining("50.00", "1234123412341234", "1234567890"));
+		journal.close();
+
+		repository = newRepository();
+		assertEquals(1, getRewardCount(applied));
+		assertEquals(1, getRewardCount(unapplied));
+		assertEquals(2, repository.getAppliedCount());
+		repository.shutdown();
+
+		// nothing left to replay
+		repository = newRepository();
+		assertEquals(0, repository.getAppliedCount());
+		repository.shutdown();
+	}
+
+	private JournalingRewardRepository newRepository() throws Exception {
+		// applied by hand only
+		return new JournalingRewardRepository(rewardRepository,
+				new RewardJournal(directory, RewardJournal.DEFAULT_SEGMENT_SIZE), transactionManager, 3600000);
+	}
+
+	private int getRewardCount(RewardConfirmation confirmation) {
+		return getRewardCount(confirmation.getConfirmationNumber());
+	}
+
+	private int getRewardCount(String confirmationNumber) {
+		return jdbcTemplate.queryForObject("select count(*) from T_REWARD where CONFIRMATION_NUMBER = ?",
+				Integer.class, confirmationNumber);
+	}
+
+	private AccountContribution newContribution() {
+		Account account = new Account("1", "Keith and Keri Donald");
+		account.setEntityId(0L);
+		account.addBeneficiary("Annabelle", Percentage.valueOf("100%"));
+		return account.makeContribution(MonetaryAmount.valueOf("8.00"));
+	}
+}
@@ -0,0 +1,194 @@
+package rewards.internal.reward;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import common.datetime.SimpleDate;
+
+/**
+ * Tests the monthly reward counts against a test data source: counts must be seeded from T_REWARD, kept in memory for
+ * recent months and looked up in the database for older ones, and reserved atomically within transactions.
+ */
+public class MonthlyRewardCountsTests {
+
+	private JdbcTemplate jdbcTemplate;
+
+	private DataSource dataSource;
+
+	private SimpleDate today = SimpleDate.today();
+
+	private SimpleDate threeMonthsAgo;
+
+	@BeforeEach
+	public void setUp() {
+		dataSource = createTestDataSource();
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		Calendar calendar = new GregorianCalendar();
+		calendar.add(Calendar.MONTH, -3);
+		threeMonthsAgo = SimpleDate.valueOf(calendar.getTime());
+		insertReward("1", today);
+		insertReward("2", today);
+		insertReward("3", threeMonthsAgo);
+	}
+
+	@Test
+	public void testSeededFromRecordedRewards() {
+		MonthlyRewardCounts counts = new MonthlyRewardCounts(dataSource);
+
+		assertEquals(2, counts.getCount("123456789", "1234567890", today));
+		assertEquals(0, counts.getCount("123456789", "0123456789", today));
+		assertEquals(1, counts.size());
+		assertEquals(0, counts.getDatabaseLookupCount());
+	}
+
+	@Test
+	public void testOlderMonthsCountedInDatabase() {
+		MonthlyRewardCounts counts = new MonthlyRewardCounts(dataSource);
+
+		assertEquals(1, counts.getCount("123456789", "1234567890", threeMonthsAgo));
+		assertEquals(1, counts.getDatabaseLookupCount());
+
+		// already in the database once recorded
+		counts.add("123456789", "1234567890", threeMonthsAgo, 1);
+		assertEquals(1, counts.size());
+	}
+
+	@Test
+	public void testAddAndTakeAway() {
+		MonthlyRewardCounts counts = new MonthlyRewardCounts(dataSource);
+
+		counts.add("123456789", "1234567890", today, 1);
+		counts.add("123456789", "0123456789", today, 1);
+		assertEquals(3, counts.getCount("123456789", "1234567890", today));
+		assertEquals(1, counts.getCount("123456789", "0123456789", today));
+
+		counts.add("123456789", "1234567890", today, -1);
+		assertEquals(2, counts.getCount("123456789", "1234567890", today));
+	}
+
+	@Test
+	public void testConcurrentReservationsStopAtMaximum() throws Exception {
+		MonthlyRewardCounts counts = new MonthlyRewardCounts(dataSource);
+		int transactions = 8;
+		CountDownLatch reserved = new CountDownLatch(transactions);
+		ExecutorService executor = Executors.newFixedThreadPool(transactions);
+		try {
+			List<Future<Boolean>> reservations = new ArrayList<Future<Boolean>>();
+			for (int i = 0; i < transactions; i++) {
+				reservations.add(executor.submit(() -> inTransaction(TransactionSynchronization.STATUS_COMMITTED, () -> {
+					boolean reservation = counts.tryReserve("123456789", "1234567890", today, 5);
+					// every transaction checks before any completes
+					reserved.countDown();
+					await(reserved);
+					if (reservation) {
+						counts.record("123456789", "1234567890", today);
+					}
+					return reservation;
+				})));
+			}
+			int confirmed = 0;
+			for (Future<Boolean> reservation : reservations) {
+				confirmed += reservation.get(5, TimeUnit.SECONDS) ? 1 : 0;
+			}
+			assertEquals(3, confirmed);
+			assertEquals(5, counts.getCount("123456789", "1234567890", today));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testReservationReleasedUnlessRecordedAndCommitted() {
+		MonthlyRewardCounts counts = new MonthlyRewardCounts(dataSource);
+
+		assertTrue(inTransaction(TransactionSynchronization.STATUS_COMMITTED, () -> {
+			assertTrue(counts.tryReserve("123456789", "1234567890", today, 3));
+			assertFalse(counts.tryReserve("123456789", "1234567890", today, 3));
+			return true;
+		}));
+		assertEquals(2, counts.getCount("123456789", "1234567890", today));
+
+		inTransaction(TransactionSynchronization.STATUS_ROLLED_BACK, () -> {
+			counts.tryReserve("123456789", "1234567890", today, 3);
+			counts.record("123456789", "1234567890", today);
+			return null;
+		});
+		assertEquals(2, counts.getCount("123456789", "1234567890", today));
+
+		inTransaction(TransactionSynchronization.STATUS_COMMITTED, () -> {
+			counts.tryReserve("123456789", "1234567890", today, 3);
+			counts.record("123456789", "1234567890", today);
+			return null;
+		});
+		assertEquals(3, counts.getCount("123456789", "1234567890", today));
+	}
+
+	@Test
+	public void testOnlyCheckedWithoutTransaction() {
+		MonthlyRewardCounts counts = new MonthlyRewardCounts(dataSource);
+
+		assertTrue(counts.tryReserve("123456789", "1234567890", today, 3));
+		assertEquals(2, counts.getCount("123456789", "1234567890", today));
+		counts.record("123456789", "1234567890", today);
+		assertFalse(counts.tryReserve("123456789", "1234567890", today, 3));
+	}
+
+	/**
+	 * Runs work within transaction synchronization on this thread, completing it with the given status.
+	 */
+	private <T> T inTransaction(int status, Supplier<T> work) {
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			T result = work.get();
+			TransactionSynchronizationUtils.invokeAfterCompletion(TransactionSynchronizationManager
+					.getSynchronizations(), status);
+			return result;
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void insertReward(String confirmationNumber, SimpleDate diningDate) {
+		jdbcTemplate.update("insert into T_REWARD (CONFIRMATION_NUMBER, REWARD_AMOUNT, REWARD_DATE, ACCOUNT_NUMBER, "
+				+ "DINING_MERCHANT_NUMBER, DINING_DATE, DINING_AMOUNT) values (?, 8.00, ?, '123456789', '1234567890', ?, "
+				+ "100.00)", confirmationNumber, today.asDate(), diningDate.asDate());
+	}
+
+	private DataSource createTestDataSource() {
+		return new EmbeddedDatabaseBuilder()
+			.setName("rewards")
+			.addScript("/rewards/testdb/schema.sql")
+			.addScript("/rewards/testdb/data.sql")
+			.build();
+	}
+}
@@ -0,0 +1,143 @@
+package rewards.internal.reward;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests the reward journal in a temporary directory: entries must come back in order after reopening, torn entries
+ * must be cut off and applied segments deleted.
+ */
+public class RewardJournalTests {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	public void testEntriesHandedOutInOrder() throws Exception {
+		RewardJournal journal = new RewardJournal(directory, RewardJournal.DEFAULT_SEGMENT_SIZE);
+		journal.appendRewards(Arrays.asList(row("1"), row("2")));
+
+		List<RewardJournal.Entry> entries = journal.poll(10);
+		assertEquals(2, entries.size());
+		assertEquals("1", entries.get(0).getRow()[0]);
+		assertEquals(new BigDecimal("8.00"), entries.get(0).getRow()[1]);
+		assertEquals(new Date(86400000L), entries.get(0).getRow()[5]);
+		assertEquals("2", entries.get(1).getRow()[0]);
+		assertTrue(entries.get(0).getEndOffset() < entries.get(1).getEndOffset());
+		assertEquals(0, journal.poll(10).size());
+		journal.close();
+	}
+
+	@Test
+	public void testUnappliedEntriesReadBackOnReopen() throws Exception {
+		RewardJournal journal = new RewardJournal(directory, RewardJournal.DEFAULT_SEGMENT_SIZE);
+		journal.appendRewards(Arrays.asList(row("1"), row("2"), row("3")));
+		List<RewardJournal.Entry> entries = journal.poll(10);
+		journal.markApplied(entries.get(0).getEndOffset());
+		journal.close();
+
+		journal = new RewardJournal(directory, RewardJournal.DEFAULT_SEGMENT_SIZE);
+		entries = journal.poll(10);
+		assertEquals(2, entries.size());
+		assertEquals("2", entries.get(0).getRow()[0]);
+		assertEquals("3", entries.get(1).getRow()[0]);
+		// appended after the entries read back
+		journal.appendRewards(Collections.singletonList(row("4")));
+		assertEquals("4", journal.poll(10).get(0).getRow()[0]);
+		journal.close();
+	}
+
+	@Test
+	public void testTornEntryCutOff() throws Exception {
+		RewardJournal journal = new RewardJournal(directory, RewardJournal.DEFAULT_SEGMENT_SIZE);
+		journal.appendRewards(Arrays.asList(row("1"), row("2")));
+		journal.close();
+		Path segment = Files.list(directory).filter(file -> file.toString().endsWith(".journal")).findFirst().get();
+		long size = Files.size(segment);
+		// as if the process died while writing the second entry
+		try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+			channel.truncate(size - 3);
+		}
+
+		journal = new RewardJournal(directory, RewardJournal.DEFAULT_SEGMENT_SIZE);
+		List<RewardJournal.Entry> entries = journal.poll(10);
+		assertEquals(1, entries.size());
+		assertEquals("1", entries.get(0).getRow()[0]);
+		journal.appendRewards(Collections.singletonList(row("3")));
+		journal.close();
+
+		journal = new RewardJournal(directory, RewardJournal.DEFAULT_SEGMENT_SIZE);
+		entries = journal.poll(10);
+		assertEquals(2, entries.size());
+		assertEquals("3", entries.get(1).getRow()[0]);
+		journal.close();
+	}
+
+	@Test
+	public void testAppliedSegmentsDeleted() throws Exception {
+		// tiny segments, so that each append starts a new one
+		RewardJournal journal = new RewardJournal(directory, 1);
+		for (int i = 0; i < 5; i++) {
+			journal.appendRewards(Collections.singletonList(row(String.valueOf(i))));
+		}
+		assertEquals(5, journal.getSegmentCount());
+		List<RewardJournal.Entry> entries = journal.poll(10);
+		journal.markApplied(entries.get(2).getEndOffset());
+		assertEquals(2, journal.getSegmentCount());
+		journal.close();
+
+		journal = new RewardJournal(directory, 1);
+		entries = journal.poll(10);
+		assertEquals(2, entries.size());
+		assertEquals("3", entries.get(0).getRow()[0]);
+		journal.close();
+	}
+
+	@Test
+	public void testConcurrentAppendsAllDurable() throws Exception {
+		RewardJournal journal = new RewardJournal(directory, RewardJournal.DEFAULT_SEGMENT_SIZE);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for (int t = 0; t < 8; t++) {
+				int thread = t;
+				futures.add(executor.submit(() -> {
+					for (int i = 0; i < 200; i++) {
+						journal.appendRewards(Collections.singletonList(row(thread + "-" + i)));
+					}
+					return null;
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(1600, journal.getEntryCount());
+		assertEquals(1600, journal.poll(2000).size());
+		journal.close();
+	}
+
+	private static Object[] row(String confirmationNumber) {
+		return new Object[] { confirmationNumber, new BigDecimal("8.00"), new Date(0L), "123456789", "1234567890",
+				new Date(86400000L), new BigDecimal("100.00"), "fingerprint-" + confirmationNumber };
+	}
+}
@@ -0,0 +1,163 @@
+package rewards.internal.settlement;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import rewards.Dining;
+import rewards.DuplicateDiningException;
+import rewards.RewardConfirmation;
+import rewards.RewardNetwork;
+import rewards.RewardResult;
+
+/**
+ * Unit tests for reading dining settlement files, using a reward network that records the dinings it is given.
+ */
+public class DiningFileReaderTests {
+
+	@TempDir
+	Path tempDir;
+
+	private RecordingRewardNetwork rewardNetwork = new RecordingRewardNetwork();
+
+	@Test
+	public void testIngestCsvFile() throws Exception {
+		Path file = write("settlement.csv", "100.00,1234123412341234,1234567890,12/29/2010\n"
+				+ "$8.5,1234123412340001,0123456789,1/2/2011\r\n"
+				+ "\n"
+				+ "not a dining\n"
+				+ "10.00,1234123412340003,1234567890,02/31/2011\n"
+				+ "42,1234123412340002,1234567890,02/28/2011");
+		DiningFileReader reader = new DiningFileReader(file, DiningFileFormat.CSV);
+		reader.setChunkSize(2);
+
+		DiningFileReport report = reader.ingest(rewardNetwork);
+
+		assertEquals(5, report.getRecords());
+		// no such day as February 31st
+		assertEquals(2, report.getBadRecords());
+		assertEquals(3, report.getConfirmedRewards());
+		assertEquals(Files.size(file), report.getResumeOffset());
+		assertEquals(2, rewardNetwork.chunks, "dinings should be handed over in chunks");
+		assertEquals(Dining.createDining("100.00", "1234123412341234", "1234567890", 12, 29, 2010),
+				rewardNetwork.dinings.get(0));
+		assertEquals(Dining.createDining("8.50", "1234123412340001", "0123456789", 1, 2, 2011),
+				rewardNetwork.dinings.get(1));
+		assertEquals(Dining.createDining("42.00", "1234123412340002", "1234567890", 2, 28, 2011),
+				rewardNetwork.dinings.get(2));
+	}
+
+	@Test
+	public void testIngestFixedWidthFileAcrossWindows() throws Exception {
+		Path file = write("settlement.dat", "      100.001234123412341234123456789012292010\n"
+				+ "        8.501234123412340001012345678901022011\n"
+				+ "       12.3x1234123412340002123456789002282011\n"
+				+ "       42.001234123412340002123456789002282011\n");
+		DiningFileReader reader = new DiningFileReader(file, DiningFileFormat.FIXED_WIDTH);
+		// force records to straddle mapped windows
+		reader.setWindowSize(70);
+
+		DiningFileReport report = reader.ingest(rewardNetwork);
+
+		assertEquals(4, report.getRecords());
+		assertEquals(1, report.getBadRecords());
+		assertEquals(3, rewardNetwork.dinings.size());
+		assertEquals(Dining.createDining("8.50", "1234123412340001", "0123456789", 1, 2, 2011),
+				rewardNetwork.dinings.get(1));
+		assertEquals(Dining.createDining("42.00", "1234123412340002", "1234567890", 2, 28, 2011),
+				rewardNetwork.dinings.get(2));
+	}
+
+	@Test
+	public void testResumeFromOffset() throws Exception {
+		String first = "100.00,1234123412341234,1234567890,12/29/2010\n";
+		Path file = write("settlement.csv", first + "50.00,1234123412341234,1234567890,12/30/2010\n");
+		DiningFileReader reader = new DiningFileReader(file, DiningFileFormat.CSV);
+
+		DiningFileReport report = reader.ingest(rewardNetwork, first.length());
+
+		assertEquals(1, report.getRecords());
+		assertEquals(Dining.createDining("50.00", "1234123412341234", "1234567890", 12, 30, 2010),
+				rewardNetwork.dinings.get(0));
+	}
+
+	@Test
+	public void testStopAtChunkThatMayBeRewardedLater() throws Exception {
+		String first = "100.00,1234123412341234,1234567890,12/29/2010\n"
+				+ "50.00,1234123412340001,1234567890,12/29/2010\n";
+		String second = "25.00,1234123412340002,1234567890,12/30/2010\n"
+				+ "10.00,1234123412340003,1234567890,12/30/2010\n";
+		Path file = write("settlement.csv", first + second + "5.00,1234123412341234,1234567890,12/31/2010\n");
+		Dining duplicate = Dining.createDining("50.00", "1234123412340001", "1234567890", 12, 29, 2010);
+		rewardNetwork.failuresByCreditCard.put("1234123412340001", new DuplicateDiningException(duplicate));
+		rewardNetwork.failuresByCreditCard.put("1234123412340003",
+				new DataAccessResourceFailureException("database down"));
+		DiningFileReader reader = new DiningFileReader(file, DiningFileFormat.CSV);
+		reader.setChunkSize(2);
+
+		DiningFileReport report = reader.ingest(rewardNetwork);
+
+		// a duplicate is final, but the second chunk may yet be rewarded: the third is never handed over
+		assertEquals(first.length(), report.getResumeOffset());
+		assertEquals(2, report.getConfirmedRewards());
+		assertEquals(2, report.getFailedRewards());
+		assertEquals(2, rewardNetwork.chunks);
+
+		rewardNetwork.failuresByCreditCard.remove("1234123412340003");
+		report = reader.ingest(rewardNetwork, report.getResumeOffset());
+
+		// the whole second chunk is handed over again; a real network would fail its first dining as a duplicate
+		assertEquals(Files.size(file), report.getResumeOffset());
+		assertEquals(3, report.getConfirmedRewards());
+		assertEquals(Dining.createDining("25.00", "1234123412340002", "1234567890", 12, 30, 2010),
+				rewardNetwork.dinings.get(2));
+		assertEquals(Dining.createDining("10.00", "1234123412340003", "1234567890", 12, 30, 2010),
+				rewardNetwork.dinings.get(3));
+	}
+
+	private Path write(String name, String content) throws Exception {
+		return Files.write(tempDir.resolve(name), content.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 * Confirms every dining, except those of credit cards set up to fail, and remembers what it was given.
+	 */
+	private static class RecordingRewardNetwork implements RewardNetwork {
+
+		private List<Dining> dinings = new ArrayList<Dining>();
+
+		private Map<String, RuntimeException> failuresByCreditCard = new HashMap<String, RuntimeException>();
+
+		private int chunks;
+
+		public RewardConfirmation rewardAccountFor(Dining dining) {
+			dinings.add(dining);
+			return new RewardConfirmation(String.valueOf(dinings.size()), null);
+		}
+
+		public List<RewardResult> rewardAccountsFor(Collection<Dining> chunk) {
+			chunks++;
+			List<RewardResult> results = new ArrayList<RewardResult>();
+			for (Dining dining : chunk) {
+				RuntimeException failure = failuresByCreditCard.get(dining.getCreditCardNumber());
+				if (failure != null) {
+					results.add(RewardResult.failed(dining, failure));
+				} else {
+					results.add(RewardResult.confirmed(dining, rewardAccountFor(dining)));
+				}
+			}
+			return results;
+		}
+	}
+}
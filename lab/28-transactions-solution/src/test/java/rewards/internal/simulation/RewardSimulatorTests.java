@@ -0,0 +1,128 @@
+package rewards.internal.simulation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import rewards.Dining;
+import rewards.internal.StubAccountRepository;
+import rewards.internal.StubRestaurantRepository;
+import rewards.internal.restaurant.MaxRewardsPerMonth;
+import rewards.internal.restaurant.Restaurant;
+
+import common.money.MonetaryAmount;
+import common.money.Percentage;
+
+/**
+ * Unit tests for the reward simulator, verifying it calculates the same rewards as the reward network would.
+ */
+public class RewardSimulatorTests {
+
+	private StubAccountRepository accountRepository;
+
+	private StubRestaurantRepository restaurantRepository;
+
+	private RewardSimulator simulator;
+
+	@BeforeEach
+	public void setUp() {
+		accountRepository = new StubAccountRepository();
+		restaurantRepository = new StubRestaurantRepository();
+		simulator = new RewardSimulator(accountRepository, restaurantRepository);
+	}
+
+	@Test
+	public void testSimulate() {
+		List<Dining> dinings = Arrays.asList(
+				Dining.createDining("100.00", "1234123412341234", "1234567890"),
+				Dining.createDining("50.00", "1234123412341234", "1234567890"),
+				Dining.createDining("100.00", "bogus", "1234567890"),
+				Dining.createDining("100.00", "1234123412341234", "bogus"));
+
+		SimulationResult result = simulator.simulate(dinings);
+
+		assertEquals(4, result.getDinings());
+		assertEquals(2, result.getFailedDinings());
+		assertEquals(MonetaryAmount.valueOf("12.00"), result.getTotalReward());
+		assertEquals(MonetaryAmount.valueOf("12.00"), result.getRewardByRestaurant().get("1234567890"));
+		assertEquals(MonetaryAmount.valueOf("12.00"), result.getRewardByAccount().get("123456789"));
+		// nothing was credited
+		assertEquals(MonetaryAmount.zero(),
+				accountRepository.findByCreditCard("1234123412341234").getBeneficiary("Annabelle").getSavings());
+	}
+
+	@Test
+	public void testWhatIfBenefitPercentage() {
+		List<Dining> dinings = Arrays.asList(Dining.createDining("100.00", "1234123412341234", "1234567890"));
+		SimulationSnapshot snapshot = simulator.loadSnapshot(dinings);
+
+		SimulationSnapshot whatIf = snapshot.withBenefitPercentage("1234567890", Percentage.valueOf("12%"));
+
+		assertEquals(MonetaryAmount.valueOf("12.00"), simulator.simulate(whatIf, dinings).getTotalReward());
+		assertEquals(MonetaryAmount.valueOf("8.00"), simulator.simulate(snapshot, dinings).getTotalReward());
+		// a percentage rounds to whole percent when made, and is simulated as a restaurant would calculate it
+		Percentage fractional = Percentage.valueOf("12.5%");
+		assertEquals(dinings.get(0).getAmount().multiplyBy(fractional), simulator
+				.simulate(snapshot.withBenefitPercentage("1234567890", fractional), dinings).getTotalReward());
+		assertThrows(IllegalArgumentException.class,
+				() -> snapshot.withBenefitPercentage("bogus", Percentage.valueOf("12%")));
+	}
+
+	@Test
+	public void testSameRewardsAsRestaurantInParallel() {
+		Restaurant restaurant = restaurantRepository.findByMerchantNumber("1234567890");
+		Random random = new Random(42);
+		List<Dining> dinings = new ArrayList<Dining>();
+		MonetaryAmount expected = MonetaryAmount.zero();
+		for (int i = 0; i < 100000; i++) {
+			Dining dining = Dining.createDining(BigDecimal.valueOf(random.nextInt(100000), 2).toPlainString(),
+					"1234123412341234", "1234567890");
+			dinings.add(dining);
+			expected = expected.add(restaurant.calculateBenefitFor(null, dining));
+		}
+		simulator.setParallelism(8);
+
+		SimulationResult result = simulator.simulate(dinings);
+
+		assertEquals(100000, result.getDinings());
+		assertEquals(expected, result.getTotalReward());
+		assertEquals(expected, result.getRewardByAccount().get("123456789"));
+	}
+
+	@Test
+	public void testMaxRewardsPerMonthCountedInSnapshot() {
+		// the policy has no live counts to read or reserve in; only the dinings replayed are counted
+		restaurantRepository.findByMerchantNumber("1234567890")
+				.setBenefitAvailabilityPolicy(new MaxRewardsPerMonth(1, null));
+		List<Dining> dinings = Arrays.asList(
+				Dining.createDining("100.00", "1234123412341234", "1234567890", 1, 5, 2026),
+				Dining.createDining("50.00", "1234123412341234", "1234567890", 1, 20, 2026),
+				Dining.createDining("25.00", "1234123412341234", "1234567890", 2, 1, 2026));
+		simulator.setParallelism(3);
+
+		SimulationResult result = simulator.simulate(dinings);
+
+		assertEquals(3, result.getDinings());
+		assertEquals(0, result.getFailedDinings());
+		// the first dining of January and the one of February
+		assertEquals(MonetaryAmount.valueOf("10.00"), result.getTotalReward());
+	}
+
+	@Test
+	public void testPercentOfRoundsHalfEven() {
+		// 8% of 0.25 is 0.02 exactly; of 0.31 is 0.0248; 50% of 0.01 and 0.03 are halves
+		assertEquals(2, RewardSimulator.percentOf(25, 8));
+		assertEquals(2, RewardSimulator.percentOf(31, 8));
+		assertEquals(0, RewardSimulator.percentOf(1, 50));
+		assertEquals(2, RewardSimulator.percentOf(3, 50));
+		assertEquals(-2, RewardSimulator.percentOf(-3, 50));
+	}
+}